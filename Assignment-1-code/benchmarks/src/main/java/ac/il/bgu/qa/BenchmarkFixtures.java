@@ -0,0 +1,74 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.InMemoryReviewService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewSessionPool;
+
+/**
+ * Builds the data and the in-memory service stand-ins the benchmarks run against.
+ */
+final class BenchmarkFixtures {
+
+    // Notification service that accepts every notification without doing anything.
+    static final NotificationService SILENT = (userId, message) -> {
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Builds the n-th valid ISBN-13 of the 978 prefix.
+     *
+     * @param n The sequence number, below one billion.
+     * @return The ISBN, without hyphens.
+     */
+    static String isbn(long n) {
+        char[] digits = {'9', '7', '8', '0', '0', '0', '0', '0', '0', '0', '0', '0', '0'};
+        for (int i = 11; i >= 3 && n > 0; i--, n /= 10) {
+            digits[i] = (char) ('0' + n % 10);
+        }
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = digits[i] - '0';
+            sum += (i & 1) == 0 ? digit : digit * 3;
+        }
+        digits[12] = (char) ('0' + (10 - sum % 10) % 10);
+        return new String(digits);
+    }
+
+    /**
+     * Builds the n-th valid user Id.
+     *
+     * @param n The sequence number, below one hundred billion.
+     * @return The 12-digit user Id.
+     */
+    static String userId(long n) {
+        return String.format("1%011d", n);
+    }
+
+    /**
+     * Builds a library over an in-memory database holding the given number of books and users,
+     * each book with two reviews. Review sessions are pooled so they are reused across calls.
+     *
+     * @param database The database to fill.
+     * @param books    The number of books.
+     * @param users    The number of users.
+     * @return The library.
+     */
+    static Library library(InMemoryDatabaseService database, int books, int users) {
+        InMemoryReviewService reviews = new InMemoryReviewService();
+        for (int i = 0; i < books; i++) {
+            String ISBN = isbn(i);
+            database.addBook(ISBN, new Book(ISBN, "Title " + i, "Author Name"));
+            reviews.addReview(ISBN, "Great read");
+            reviews.addReview(ISBN, "Would borrow again");
+        }
+        for (int i = 0; i < users; i++) {
+            String id = userId(i);
+            database.registerUser(id, new User("User " + i, id, SILENT));
+        }
+        ReviewSessionPool sessions = new ReviewSessionPool(reviews::openSession, null, 64, 1_000, 60_000, 600_000);
+        return new Library(database, sessions);
+    }
+}
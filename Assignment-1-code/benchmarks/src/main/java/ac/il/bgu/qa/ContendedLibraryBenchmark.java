@@ -0,0 +1,102 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of {@link Library} operations when several threads share one library.
+ * <p>
+ * The number of books sets the contention: with few books, threads keep racing to borrow the same ones.
+ * Override the thread count with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContendedLibraryBenchmark {
+
+    /**
+     * The library shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedLibrary {
+        // Number of books the threads compete for.
+        @Param({"4", "1024"})
+        public int books;
+
+        // Number of users; every thread borrows as a user of its own.
+        private static final int USERS = 256;
+
+        Library library;
+        // ISBNs of the books, built up front so the measured operations do not format them.
+        String[] ISBNs;
+        final AtomicInteger nextUser = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            library = BenchmarkFixtures.library(new InMemoryDatabaseService(), books, USERS);
+            ISBNs = new String[books];
+            for (int i = 0; i < books; i++) {
+                ISBNs[i] = BenchmarkFixtures.isbn(i);
+            }
+        }
+    }
+
+    /**
+     * The user a benchmark thread acts as.
+     */
+    @State(Scope.Thread)
+    public static class Borrower {
+        String userId;
+
+        @Setup
+        public void setUp(SharedLibrary shared) {
+            userId = BenchmarkFixtures.userId(shared.nextUser.getAndIncrement() % SharedLibrary.USERS);
+        }
+    }
+
+    @Benchmark
+    public boolean borrowAndReturnBook(SharedLibrary shared, Borrower borrower) {
+        String ISBN = shared.ISBNs[ThreadLocalRandom.current().nextInt(shared.books)];
+        try {
+            shared.library.borrowBook(ISBN, borrower.userId);
+        } catch (BookAlreadyBorrowedException e) {
+            return false;
+        }
+        try {
+            shared.library.returnBook(ISBN);
+        } catch (BookNotBorrowedException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public Book getBookByISBN(SharedLibrary shared, Borrower borrower) {
+        String ISBN = shared.ISBNs[ThreadLocalRandom.current().nextInt(shared.books)];
+        try {
+            return shared.library.getBookByISBN(ISBN, borrower.userId);
+        } catch (BookAlreadyBorrowedException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the single-threaded cost of the {@link Library} operations against in-memory services.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate of each operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LibraryBenchmark {
+
+    // Number of books and users in the database.
+    private static final int SIZE = 1_024;
+
+    private Library library;
+    private String ISBN;
+    private String userId;
+    // Sequence number of the next book added by the addBook benchmark.
+    private long nextBook;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        library = BenchmarkFixtures.library(new InMemoryDatabaseService(), SIZE, SIZE);
+        ISBN = BenchmarkFixtures.isbn(SIZE / 2);
+        userId = BenchmarkFixtures.userId(SIZE / 2);
+        nextBook = SIZE;
+    }
+
+    @Benchmark
+    public void addBook() {
+        String ISBN = BenchmarkFixtures.isbn(nextBook++);
+        library.addBook(new Book(ISBN, "Clean Code", "Robert Martin"));
+    }
+
+    @Benchmark
+    public void borrowAndReturnBook() {
+        library.borrowBook(ISBN, userId);
+        library.returnBook(ISBN);
+    }
+
+    @Benchmark
+    public void notifyUserWithBookReviews() {
+        library.notifyUserWithBookReviews(ISBN, userId);
+    }
+
+    @Benchmark
+    public Book getBookByISBN() {
+        return library.getBookByISBN(ISBN, userId);
+    }
+}
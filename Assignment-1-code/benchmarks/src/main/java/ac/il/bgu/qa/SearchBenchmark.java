@@ -0,0 +1,65 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.IndexedDatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.InMemoryReviewService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures prefix searches by title and author over an indexed catalog of a million books.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    // Number of books in the catalog.
+    private static final int BOOKS = 1_000_000;
+    // Words the generated titles and author names are made of.
+    private static final String[] WORDS = {"clean", "code", "design", "patterns", "java", "concurrency",
+            "practice", "effective", "systems", "performance", "robert", "martin", "brian", "goetz"};
+
+    // The prefix searched for; longer prefixes match fewer books.
+    @Param({"c", "clean", "clean code"})
+    public String prefix;
+
+    private Library library;
+
+    @Setup
+    public void setUp() {
+        IndexedDatabaseService database = new IndexedDatabaseService(new InMemoryDatabaseService());
+        for (int i = 0; i < BOOKS; i++) {
+            String ISBN = BenchmarkFixtures.isbn(i);
+            String title = WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            String author = WORDS[(i / 7) % WORDS.length] + " " + WORDS[(i / 11) % WORDS.length];
+            database.addBook(ISBN, new Book(ISBN, title, author));
+        }
+        library = new Library(database, new InMemoryReviewService());
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByTitle() {
+        return library.searchBooksByTitle(prefix, 10);
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByAuthor() {
+        return library.searchBooksByAuthor(prefix, 10);
+    }
+}
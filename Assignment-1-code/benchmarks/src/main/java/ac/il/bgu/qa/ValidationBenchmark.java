@@ -0,0 +1,62 @@
+package ac.il.bgu.qa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the identifier and book validators.
+ * <p>
+ * The author name check is private to {@link Library}; it is measured through {@link Library#validateBook},
+ * which the benchmark reaches by sharing the package. Run with {@code -prof gc} to confirm the validators
+ * allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    /**
+     * The ISBN to validate, plain, hyphenated, or with a wrong check digit.
+     */
+    @State(Scope.Thread)
+    public static class IsbnInput {
+        @Param({"9780306406157", "978-0-306-40615-7", "9780306406158"})
+        public String ISBN;
+    }
+
+    private Book book;
+
+    @Setup
+    public void setUp() {
+        book = new Book("9780306406157", "Clean Code", "Robert C. Martin-O'Neil");
+    }
+
+    @Benchmark
+    public boolean isISBNValid(IsbnInput input) {
+        return IdentifierValidator.isISBNValid(input.ISBN);
+    }
+
+    @Benchmark
+    public boolean isUserIdValid() {
+        return IdentifierValidator.isUserIdValid("123456789012");
+    }
+
+    @Benchmark
+    public String validateBook() {
+        return Library.validateBook(book);
+    }
+}
@@ -0,0 +1,286 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.AsyncDatabaseService;
+import ac.il.bgu.qa.services.AsyncNotificationService;
+import ac.il.bgu.qa.services.AsyncReviewService;
+import ac.il.bgu.qa.services.BorrowLedger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A non-blocking counterpart of {@link Library}, built on asynchronous services.
+ * <p>
+ * Each operation returns at once with a future. The checks are those of {@link Library}, made in the same
+ * order and failing with the same exception types, but a failure completes the future exceptionally rather
+ * than being thrown; an invalid argument thus fails the returned future with an
+ * {@link IllegalArgumentException}, after emitting the same validation event to the {@link EventLog}. Borrows and returns go through a {@link BorrowLedger}, as those of
+ * {@link Library} do, so the same borrow limit applies; share one ledger to have both enforce it together.
+ * Use the adapters of the asynchronous service interfaces to build one from the blocking services.
+ */
+public class AsyncLibrary {
+
+    // Service to interact with the database
+    private final AsyncDatabaseService databaseService;
+
+    // Service that fetches reviews for a book
+    private final AsyncReviewService reviewService;
+
+    // Delivers notifications to users
+    private final AsyncNotificationService notificationService;
+
+    // Receives notification failures that are not reported to the caller
+    private final EventLog events;
+
+    // Records the books each user holds and caps their number
+    private final BorrowLedger ledger;
+
+    // Constructor for AsyncLibrary, initializes the three services
+    public AsyncLibrary(AsyncDatabaseService databaseService, AsyncReviewService reviewService,
+                        AsyncNotificationService notificationService) {
+        this(databaseService, reviewService, notificationService, EventLog.shared());
+    }
+
+    // Constructor for AsyncLibrary emitting its events to the given event log
+    public AsyncLibrary(AsyncDatabaseService databaseService, AsyncReviewService reviewService,
+                        AsyncNotificationService notificationService, EventLog events) {
+        this(databaseService, reviewService, notificationService, events, new BorrowLedger());
+    }
+
+    // Constructor for AsyncLibrary recording borrows in the given ledger, which may cap the books a user holds
+    public AsyncLibrary(AsyncDatabaseService databaseService, AsyncReviewService reviewService,
+                        AsyncNotificationService notificationService, EventLog events, BorrowLedger ledger) {
+        this.databaseService = databaseService;
+        this.reviewService = reviewService;
+        this.notificationService = notificationService;
+        this.events = events;
+        this.ledger = ledger;
+    }
+
+    /**
+     * Borrows a book for a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return A future completed once the book is borrowed.
+     */
+    public CompletableFuture<Void> borrowBookAsync(String ISBN, String userId) {
+        String canonical;
+        try {
+            canonical = canonicalISBN("borrowBook", ISBN, userId);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return databaseService.getBookByISBN(canonical).thenCompose(book -> {
+            // If no book is found for the given ISBN, fail with a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            // Validate the user Id's format (should be a 12-digit number).
+            long userKey = UserKey.parse(userId);
+            if (userKey == UserKey.NONE) {
+                throw rejected("borrowBook", canonical, userId, "Invalid user Id.");
+            }
+
+            return databaseService.getUserById(userId).thenCompose(user -> {
+                // Check if the user Id's corresponds to a registered user in the database.
+                if (user == null) {
+                    throw new UserNotRegisteredException("User not found!");
+                }
+
+                // Atomically mark the book as borrowed by this user and record it in the ledger.
+                long isbnKey = IsbnKey.parse(canonical);
+                BatchOutcome outcome = ledger.tryBorrow(book, isbnKey, userKey);
+                if (outcome == BatchOutcome.ALREADY_BORROWED) {
+                    throw new BookAlreadyBorrowedException("Book is already borrowed!");
+                } else if (outcome == BatchOutcome.LIMIT_EXCEEDED) {
+                    throw new BorrowLimitExceededException("Borrow limit reached!");
+                }
+
+                // Record the borrowing transaction; if the database rejects it, release the book again.
+                return databaseService.borrowBook(canonical, userId).whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        ledger.undoBorrow(book, isbnKey, userKey);
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Returns a previously borrowed book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A future completed once the book is returned.
+     */
+    public CompletableFuture<Void> returnBookAsync(String ISBN) {
+        String canonical;
+        try {
+            canonical = canonicalISBN("returnBook", ISBN, null);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return databaseService.getBookByISBN(canonical).thenCompose(book -> {
+            // If no book is found for the given ISBN, fail with a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            // Atomically change the status of the book to not borrowed and clear it from the ledger.
+            if (!ledger.tryReturn(book, IsbnKey.parse(canonical))) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+
+            // Update the database to reflect the returned status of the book.
+            return databaseService.returnBook(canonical);
+        });
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed when the notification is delivered.
+     */
+    public CompletableFuture<Void> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        String canonical;
+        try {
+            canonical = validate("notifyUserWithBookReviews", ISBN, userId);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return databaseService.getBookByISBN(canonical).thenCompose(book -> {
+            // If no book is found for the given ISBN, fail with a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            return databaseService.getUserById(userId).thenCompose(user -> {
+                // If the user is not found in the database, fail with a user not registered exception.
+                if (user == null) {
+                    throw new UserNotRegisteredException("User not found!");
+                }
+
+                return reviewService.getReviewsForBook(canonical).handle((reviews, failure) -> {
+                    // If there's an issue fetching the reviews, the review service is unavailable.
+                    if (failure != null) {
+                        if (unwrap(failure) instanceof ReviewException) {
+                            throw new ReviewServiceUnavailableException("Review service unavailable!");
+                        }
+                        throw failure instanceof CompletionException
+                                ? (CompletionException) failure : new CompletionException(failure);
+                    }
+
+                    // If no reviews are found or the review list is empty, fail with a no reviews exception.
+                    if (reviews == null || reviews.isEmpty()) {
+                        throw new NoReviewsFoundException("No reviews found!");
+                    }
+                    return "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+                }).thenCompose(message -> notificationService.notifyUser(user, message));
+            });
+        });
+    }
+
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews.
+     * The notification is optional: the future completes with the book without waiting for it, and a
+     * failed notification does not fail the future.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return A future of the book with the given ISBN.
+     */
+    public CompletableFuture<Book> getBookByISBNAsync(String ISBN, String userId) {
+        String canonical;
+        try {
+            canonical = validate("getBookByISBN", ISBN, userId);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return databaseService.getBookByISBN(canonical).thenApply(book -> {
+            // If no book is found for the given ISBN, fail with a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            // If the book is already borrowed, fail with a book already borrowed exception.
+            if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book was already borrowed!");
+            }
+
+            // Notify the user with the book's reviews without waiting for the delivery.
+            notifyUserWithBookReviewsAsync(canonical, userId).whenComplete((result, failure) -> {
+                if (failure != null) {
+                    events.notificationFailed("getBookByISBN", canonical, userId, unwrap(failure).getMessage());
+                }
+            });
+            return book;
+        });
+    }
+
+    /**
+     * Validates the ISBN and user Id given to a notifying operation.
+     *
+     * @param operation The operation the arguments were given to.
+     * @param ISBN      The ISBN to be validated.
+     * @param userId    The user Id to be validated.
+     * @return The ISBN with hyphens stripped.
+     * @throws IllegalArgumentException If the ISBN or the user Id is invalid.
+     */
+    private String validate(String operation, String ISBN, String userId) {
+        String canonical = canonicalISBN(operation, ISBN, userId);
+        if (!IdentifierValidator.isUserIdValid(userId)) {
+            throw rejected(operation, canonical, userId, "Invalid user Id.");
+        }
+        return canonical;
+    }
+
+    /**
+     * Validates an ISBN given to an operation and converts it to its canonical form, emitting a
+     * validation rejection if it is invalid.
+     *
+     * @param operation The operation the ISBN was given to.
+     * @param ISBN      The International Standard Book Number to be validated.
+     * @param userId    The user Id given along with the ISBN, if any.
+     * @return The ISBN with hyphens stripped.
+     * @throws IllegalArgumentException If the ISBN is not a valid ISBN-13.
+     */
+    private String canonicalISBN(String operation, String ISBN, String userId) {
+        long key = IsbnKey.parse(ISBN);
+        if (key == IsbnKey.NONE) {
+            throw rejected(operation, ISBN, userId, "Invalid ISBN.");
+        }
+        return IsbnKey.canonical(ISBN, key);
+    }
+
+    /**
+     * Emits a validation rejection, as {@link Library} does, and creates the exception reporting it.
+     *
+     * @param operation The rejected operation.
+     * @param ISBN      The ISBN given to the operation, if any.
+     * @param userId    The user Id given to the operation, if any.
+     * @param reason    What was invalid.
+     * @return The exception to fail the future with.
+     */
+    private IllegalArgumentException rejected(String operation, String ISBN, String userId, String reason) {
+        events.validationRejected(operation, ISBN, userId, reason);
+        return new IllegalArgumentException(reason);
+    }
+
+    /**
+     * Retrieves the failure wrapped by a completion exception.
+     *
+     * @param failure The failure of a stage.
+     * @return The original failure.
+     */
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+}
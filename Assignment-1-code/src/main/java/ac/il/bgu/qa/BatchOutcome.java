@@ -0,0 +1,33 @@
+package ac.il.bgu.qa;
+
+/**
+ * The outcome of one item of a batch borrow or return (see {@link Library#borrowBooks} and
+ * {@link Library#returnBooks}).
+ */
+public enum BatchOutcome {
+    // The book was borrowed by the user.
+    BORROWED,
+    // The book was returned.
+    RETURNED,
+    // The ISBN is not a valid ISBN-13.
+    INVALID_ISBN,
+    // The same book already appears earlier in the batch.
+    DUPLICATE_ISBN,
+    // No book with the ISBN exists in the database.
+    BOOK_NOT_FOUND,
+    // The book is already borrowed.
+    ALREADY_BORROWED,
+    // The user already holds the maximum number of books.
+    LIMIT_EXCEEDED,
+    // The book is not borrowed, so it cannot be returned.
+    NOT_BORROWED;
+
+    /**
+     * Checks whether the item was applied.
+     *
+     * @return true for {@link #BORROWED} and {@link #RETURNED}, otherwise false.
+     */
+    public boolean isSuccess() {
+        return this == BORROWED || this == RETURNED;
+    }
+}
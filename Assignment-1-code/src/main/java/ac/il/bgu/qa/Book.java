@@ -1,17 +1,31 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a book with its essential details and borrowing status.
+ * <p>
+ * The borrowing status is a small state machine (available, borrowed by a known user, borrowed by
+ * an unknown user) driven by compare-and-set, so concurrent borrow and return attempts are
+ * linearizable: exactly one of several racing borrowers wins.
  */
 public class Book {
+
+    // Borrower state of a book that is not borrowed.
+    private static final long AVAILABLE = -1L;
+    // Borrower state of a book borrowed through borrow(), which does not name the user.
+    private static final long UNKNOWN_BORROWER = -2L;
+
     // The International Standard Book Number (ISBN) uniquely identifying the book.
     private final String ISBN;
+    // The ISBN in its primitive form, or IsbnKey.NONE if the ISBN is not a valid ISBN-13.
+    private final long isbnKey;
     // The title of the book.
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // Key of the user currently borrowing the book, AVAILABLE or UNKNOWN_BORROWER.
+    private final AtomicLong borrower;
 
     /**
      * Constructs a new Book object.
@@ -22,9 +36,10 @@ public class Book {
      */
     public Book(String ISBN, String title, String author) {
         this.ISBN = ISBN;
+        this.isbnKey = IsbnKey.parse(ISBN);
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.borrower = new AtomicLong(AVAILABLE);
     }
 
     // Getter methods
@@ -38,6 +53,15 @@ public class Book {
         return ISBN;
     }
 
+    /**
+     * Retrieves the ISBN of the book in its primitive form.
+     *
+     * @return The book's ISBN key, or {@link IsbnKey#NONE} if the ISBN is not a valid ISBN-13.
+     */
+    public long getISBNKey() {
+        return isbnKey;
+    }
+
     /**
      * Retrieves the title of the book.
      *
@@ -62,7 +86,57 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return borrower.get() != AVAILABLE;
+    }
+
+    /**
+     * Retrieves the key of the user currently borrowing the book.
+     *
+     * @return The borrowing user's Id key, or {@link UserKey#NONE} if the book is not borrowed
+     *         or was borrowed without naming the user.
+     */
+    public long getBorrowerKey() {
+        long current = borrower.get();
+        return current < 0 ? UserKey.NONE : current;
+    }
+
+    /**
+     * Atomically marks the book as borrowed by a user, if it is not borrowed already.
+     *
+     * @param userKey The Id key of the borrowing user.
+     * @return true if this call borrowed the book, false if the book was already borrowed.
+     */
+    public boolean tryBorrow(long userKey) {
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return borrower.compareAndSet(AVAILABLE, userKey);
+    }
+
+    /**
+     * Atomically marks the book as returned, if it is currently borrowed.
+     *
+     * @return true if this call returned the book, false if the book was not borrowed.
+     */
+    public boolean tryReturn() {
+        long current;
+        do {
+            current = borrower.get();
+            if (current == AVAILABLE) {
+                return false;
+            }
+        } while (!borrower.compareAndSet(current, AVAILABLE));
+        return true;
+    }
+
+    /**
+     * Atomically marks the book as returned, if it is currently borrowed by the given user.
+     *
+     * @param userKey The Id key of the expected borrower.
+     * @return true if this call returned the book, otherwise false.
+     */
+    public boolean tryReturn(long userKey) {
+        return userKey >= 0 && borrower.compareAndSet(userKey, AVAILABLE);
     }
 
     /**
@@ -70,9 +144,7 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!borrower.compareAndSet(AVAILABLE, UNKNOWN_BORROWER)) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
@@ -82,9 +154,7 @@ public class Book {
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!tryReturn()) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
@@ -0,0 +1,309 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a book catalog from a delimited text file (CSV or TSV) into a {@link DatabaseService}.
+ * <p>
+ * Each line holds {@code ISBN, title, author}; fields may be wrapped in double quotes, with {@code ""}
+ * standing for a literal quote. The file is streamed in chunks, so only a bounded number of lines is
+ * held in memory. Chunks are parsed and validated in parallel with the same rules as
+ * {@link Library#addBook}, then deduplicated and written in input order: the first occurrence of an
+ * ISBN wins, and books already in the database are rejected.
+ */
+public class CatalogImporter {
+
+    // Default number of lines per chunk.
+    private static final int DEFAULT_CHUNK_SIZE = 1_000;
+
+    // Service to interact with the database
+    private final DatabaseService databaseService;
+
+    // Number of lines validated and written together.
+    private final int chunkSize;
+
+    // Number of chunks validated in parallel.
+    private final int parallelism;
+
+    /**
+     * Constructs an importer that validates on all available processors.
+     *
+     * @param databaseService The database to import into.
+     */
+    public CatalogImporter(DatabaseService databaseService) {
+        this(databaseService, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an importer.
+     *
+     * @param databaseService The database to import into.
+     * @param chunkSize       The number of lines validated and written together.
+     * @param parallelism     The number of chunks validated in parallel.
+     */
+    public CatalogImporter(DatabaseService databaseService, int chunkSize, int parallelism) {
+        if (databaseService == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size.");
+        } else if (parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid parallelism.");
+        }
+        this.databaseService = databaseService;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports a UTF-8 catalog file.
+     *
+     * @param file       The catalog file.
+     * @param delimiter  The field delimiter, e.g. ',' or '\t'.
+     * @param skipHeader Whether the first line is a header to be skipped.
+     * @return The import report.
+     * @throws IOException If the file cannot be read.
+     */
+    public ImportReport importFile(Path file, char delimiter, boolean skipHeader) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, delimiter, skipHeader);
+        }
+    }
+
+    /**
+     * Imports a catalog from a reader. The reader is not closed.
+     *
+     * @param reader     The catalog source.
+     * @param delimiter  The field delimiter, e.g. ',' or '\t'.
+     * @param skipHeader Whether the first line is a header to be skipped.
+     * @return The import report.
+     * @throws IOException If the reader fails.
+     */
+    public ImportReport importFrom(Reader reader, char delimiter, boolean skipHeader) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        ChunkWriter writer = new ChunkWriter();
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        long lineNumber = 0;
+        try {
+            if (skipHeader && lines.readLine() != null) {
+                lineNumber++;
+            }
+
+            List<String> batch = new ArrayList<>(chunkSize);
+            long firstLine = lineNumber + 1;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                batch.add(line);
+                if (batch.size() == chunkSize) {
+                    inFlight.add(submit(executor, batch, firstLine, delimiter));
+                    batch = new ArrayList<>(chunkSize);
+                    firstLine = lineNumber + 1;
+                    // Keep memory bounded: wait for the oldest chunk once enough are in flight.
+                    if (inFlight.size() > parallelism) {
+                        writer.write(await(inFlight.poll()));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                inFlight.add(submit(executor, batch, firstLine, delimiter));
+            }
+            while (!inFlight.isEmpty()) {
+                writer.write(await(inFlight.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long linesRead = lineNumber - (skipHeader && lineNumber > 0 ? 1 : 0);
+        writer.rejections.sort(Comparator.comparingLong(ImportReport.Rejection::getLineNumber));
+        return new ImportReport(linesRead, writer.imported, writer.rejections, System.nanoTime() - start);
+    }
+
+    private static Future<Chunk> submit(ExecutorService executor, List<String> lines, long firstLine, char delimiter) {
+        return executor.submit(() -> Chunk.parse(lines, firstLine, delimiter));
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed.", e.getCause());
+        }
+    }
+
+    /**
+     * The outcome of parsing and validating one chunk of lines, in input order.
+     */
+    private static final class Chunk {
+        final List<Book> books = new ArrayList<>();
+        final List<Long> lineNumbers = new ArrayList<>();
+        final List<ImportReport.Rejection> rejections = new ArrayList<>();
+
+        static Chunk parse(List<String> lines, long firstLine, char delimiter) {
+            Chunk chunk = new Chunk();
+            for (int i = 0; i < lines.size(); i++) {
+                long lineNumber = firstLine + i;
+                List<String> fields = split(lines.get(i), delimiter);
+                if (fields == null || fields.size() != 3) {
+                    chunk.rejections.add(new ImportReport.Rejection(lineNumber,
+                            fields == null || fields.isEmpty() ? null : fields.get(0), "Malformed line."));
+                    continue;
+                }
+                Book book = new Book(fields.get(0), fields.get(1), fields.get(2));
+                String error = Library.validateBook(book);
+                if (error != null) {
+                    chunk.rejections.add(new ImportReport.Rejection(lineNumber, book.getISBN(), error));
+                } else {
+                    chunk.books.add(book);
+                    chunk.lineNumbers.add(lineNumber);
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * Splits one line into fields, honoring double-quoted fields.
+         *
+         * @return The fields, or null if a quoted field is not terminated.
+         */
+        static List<String> split(String line, char delimiter) {
+            List<String> fields = new ArrayList<>(3);
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    /**
+     * Deduplicates validated chunks and writes them to the database, one chunk at a time.
+     * Only used from the importing thread.
+     */
+    private final class ChunkWriter {
+        final LongSet seen = new LongSet();
+        final List<ImportReport.Rejection> rejections = new ArrayList<>();
+        long imported;
+
+        void write(Chunk chunk) {
+            // Drop books whose ISBN already appeared earlier in the catalog.
+            Map<String, Book> fresh = new LinkedHashMap<>();
+            Map<String, Long> lineNumbers = new LinkedHashMap<>();
+            for (int i = 0; i < chunk.books.size(); i++) {
+                Book book = chunk.books.get(i);
+                long lineNumber = chunk.lineNumbers.get(i);
+                if (!seen.add(book.getISBNKey())) {
+                    rejections.add(new ImportReport.Rejection(lineNumber, book.getISBN(), "Duplicate ISBN."));
+                    continue;
+                }
+                String ISBN = IsbnKey.canonical(book.getISBN(), book.getISBNKey());
+                fresh.put(ISBN, book);
+                lineNumbers.put(ISBN, lineNumber);
+            }
+
+            // Drop books that already exist in the database, probing the whole chunk at once.
+            if (!fresh.isEmpty()) {
+                for (String ISBN : databaseService.getBooksByISBN(new ArrayList<>(fresh.keySet())).keySet()) {
+                    Book book = fresh.remove(ISBN);
+                    rejections.add(new ImportReport.Rejection(lineNumbers.get(ISBN), book.getISBN(), "Book already exists."));
+                }
+            }
+
+            if (!fresh.isEmpty()) {
+                databaseService.addBooks(fresh);
+                imported += fresh.size();
+            }
+            rejections.addAll(chunk.rejections);
+        }
+    }
+
+    /**
+     * A minimal open-addressing set of non-negative longs, so deduplicating millions of ISBNs
+     * does not box every key.
+     */
+    private static final class LongSet {
+        private static final long EMPTY = -1L;
+
+        private long[] slots = newSlots(1 << 12);
+        private int size;
+
+        boolean add(long value) {
+            int mask = slots.length - 1;
+            int slot = Long.hashCode(value * 0x9E3779B97F4A7C15L) & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+            if (++size * 2 > slots.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = newSlots(old.length * 2);
+            size = 0;
+            for (long value : old) {
+                if (value != EMPTY) {
+                    add(value);
+                }
+            }
+        }
+
+        private static long[] newSlots(int capacity) {
+            long[] slots = new long[capacity];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous log of {@link LibraryEvent}s, handed to a pluggable {@link Sink} on a background thread.
+ * <p>
+ * Events are written into the preallocated slots of a ring buffer, so emitting one allocates nothing and
+ * never blocks: when the buffer is full the new event is dropped and counted instead, so a slow sink
+ * cannot slow the library down. Any number of threads may emit events; a single thread hands them to the
+ * sink, in order.
+ * <p>
+ * {@link #shared()} is the process-wide log the library uses unless given another one. It writes the
+ * notification events to the standard error stream, where the library has always reported notification
+ * failures, and drops validation rejections, which the caller already sees as exceptions.
+ */
+public class EventLog implements AutoCloseable {
+
+    /**
+     * Receives the events of a log, one at a time, on the log's thread.
+     */
+    public interface Sink {
+
+        /**
+         * Handles an event. The event is reused once this method returns.
+         *
+         * @param event The event.
+         */
+        void accept(LibraryEvent event);
+
+        /**
+         * Creates a sink writing each event as a line to the standard error stream.
+         *
+         * @return The console sink.
+         */
+        static Sink console() {
+            return event -> System.err.println(event);
+        }
+
+        /**
+         * Creates a sink writing the notification events to the standard error stream and dropping the
+         * rest, the output of {@link #shared()}.
+         *
+         * @return The notification console sink.
+         */
+        static Sink notificationConsole() {
+            return event -> {
+                if (event.getType() != LibraryEvent.Type.VALIDATION_REJECTED) {
+                    System.err.println(event);
+                }
+            };
+        }
+    }
+
+    // How long the log thread sleeps when idle before checking again, should a wakeup be missed.
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private final Sink sink;
+    // The ring buffer; its length is a power of two.
+    private final LibraryEvent[] slots;
+    private final int mask;
+    // Sequence number of the next event to be emitted.
+    private final AtomicLong tail = new AtomicLong();
+    // Sequence number of the next event to be handed to the sink.
+    private volatile long head;
+    // Set while the log thread is parked waiting for events.
+    private volatile boolean idle;
+    private volatile boolean closed;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+
+    /**
+     * Constructs a log and starts its thread.
+     *
+     * @param capacity The number of events that may wait for the sink; rounded up to a power of two.
+     * @param sink     Receives the events.
+     */
+    public EventLog(int capacity, Sink sink) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (sink == null) {
+            throw new IllegalArgumentException("Invalid sink.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.sink = sink;
+        this.slots = new LibraryEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new LibraryEvent();
+        }
+        this.mask = size - 1;
+        this.thread = new Thread(this::drain, "event-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Retrieves the process-wide log, which writes the notification events to the standard error stream.
+     *
+     * @return The shared log.
+     */
+    public static EventLog shared() {
+        return Shared.LOG;
+    }
+
+    // Started on first use.
+    private static final class Shared {
+        static final EventLog LOG = new EventLog(4096, Sink.notificationConsole());
+    }
+
+    /**
+     * Emits a failed notification attempt.
+     *
+     * @param userId      The Id of the user being notified.
+     * @param attempt     The attempt that failed.
+     * @param maxAttempts The number of attempts allowed.
+     * @param reason      Why the attempt failed.
+     */
+    public void notificationRetry(String userId, int attempt, int maxAttempts, String reason) {
+        emit(LibraryEvent.Type.NOTIFICATION_RETRY, null, null, userId, attempt, maxAttempts, reason);
+    }
+
+    /**
+     * Emits a notification failure that is not reported to the caller.
+     *
+     * @param operation The library operation that sent the notification.
+     * @param ISBN      The ISBN of the book the notification was about.
+     * @param userId    The Id of the user being notified.
+     * @param reason    Why the notification failed.
+     */
+    public void notificationFailed(String operation, String ISBN, String userId, String reason) {
+        emit(LibraryEvent.Type.NOTIFICATION_FAILED, operation, ISBN, userId, 0, 0, reason);
+    }
+
+    /**
+     * Emits the rejection of an operation because of an invalid argument.
+     *
+     * @param operation The library operation.
+     * @param ISBN      The ISBN given, if any.
+     * @param userId    The user Id given, if any.
+     * @param reason    What was invalid.
+     */
+    public void validationRejected(String operation, String ISBN, String userId, String reason) {
+        emit(LibraryEvent.Type.VALIDATION_REJECTED, operation, ISBN, userId, 0, 0, reason);
+    }
+
+    private void emit(LibraryEvent.Type type, String operation, String ISBN, String userId,
+                      int attempt, int maxAttempts, String reason) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+
+        // Claim the next slot, unless the sink has yet to consume the event it holds.
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        LibraryEvent slot = slots[(int) (sequence & mask)];
+        slot.type = type;
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.operation = operation;
+        slot.ISBN = ISBN;
+        slot.userId = userId;
+        slot.attempt = attempt;
+        slot.maxAttempts = maxAttempts;
+        slot.reason = reason;
+        slot.published = sequence;
+
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Runs on the log thread: hands events to the sink in order until closed and drained.
+    private void drain() {
+        long next = head;
+        while (true) {
+            LibraryEvent slot = slots[(int) (next & mask)];
+            if (slot.published == next) {
+                try {
+                    sink.accept(slot);
+                } catch (RuntimeException e) {
+                    // A failing sink loses the event, not the log.
+                }
+                slot.operation = null;
+                slot.ISBN = null;
+                slot.userId = null;
+                slot.reason = null;
+                head = ++next;
+            } else if (closed && next == tail.get()) {
+                return;
+            } else {
+                idle = true;
+                if (slot.published != next && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    /**
+     * Counts the events dropped because the buffer was full or the log closed.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Counts the events handed to the sink so far.
+     *
+     * @return The number of delivered events.
+     */
+    public long getDeliveredCount() {
+        return head;
+    }
+
+    /**
+     * Stops accepting events, and waits until the events already emitted are handed to the sink.
+     * An event emitted while the log is closing may be lost.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates the identifiers used by the library (ISBN-13 numbers and user Ids).
+ * All checks run in a single pass over the characters and allocate nothing.
+ */
+public final class IdentifierValidator {
+
+    // Number of digits in an ISBN-13, hyphens excluded.
+    private static final int ISBN_LENGTH = 13;
+
+    // Number of digits in a user Id.
+    private static final int USER_ID_LENGTH = 12;
+
+    private IdentifierValidator() {
+    }
+
+    /**
+     * Validates if input is of type ISBN-13.
+     * Hyphens are ignored wherever they appear; the remaining characters must be
+     * exactly 13 ASCII digits whose last digit matches the ISBN-13 check digit.
+     *
+     * @param isbn The International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isISBNValid(CharSequence isbn) {
+        return parseISBN(isbn) != IsbnKey.NONE;
+    }
+
+    /**
+     * Validates an ISBN-13 and returns its digits as a number.
+     *
+     * @param isbn The International Standard Book Number to be parsed.
+     * @return The 13 digits of the ISBN as a long, or {@link IsbnKey#NONE} if the ISBN is invalid.
+     */
+    static long parseISBN(CharSequence isbn) {
+        // Check if the ISBN is null, reject it if it is
+        if (isbn == null) {
+            return IsbnKey.NONE;
+        }
+
+        // Odd position digits are multiplied by 1, even position digits by 3.
+        int digits = 0;
+        int sum = 0;
+        int lastDigit = 0;
+        long value = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == ISBN_LENGTH) {
+                return IsbnKey.NONE;
+            }
+            lastDigit = c - '0';
+            value = value * 10 + lastDigit;
+            if (digits < ISBN_LENGTH - 1) {
+                sum += (digits & 1) == 0 ? lastDigit : lastDigit * 3;
+            }
+            digits++;
+        }
+
+        if (digits != ISBN_LENGTH) {
+            return IsbnKey.NONE;
+        }
+
+        // Calculate the check digit and compare it with the last digit of the ISBN
+        int checkDigit = 10 - (sum % 10);
+        if (checkDigit == 10) {
+            checkDigit = 0;
+        }
+        return checkDigit == lastDigit ? value : IsbnKey.NONE;
+    }
+
+    /**
+     * Validates an array of ISBNs, writing one result per entry.
+     *
+     * @param isbns   The ISBNs to be validated.
+     * @param results Receives true at index i if isbns[i] is valid; must be at least as long as isbns.
+     * @return The number of valid ISBNs.
+     */
+    public static int validateISBNs(CharSequence[] isbns, boolean[] results) {
+        if (isbns == null || results == null || results.length < isbns.length) {
+            throw new IllegalArgumentException("Invalid arguments.");
+        }
+
+        int valid = 0;
+        for (int i = 0; i < isbns.length; i++) {
+            results[i] = isISBNValid(isbns[i]);
+            if (results[i]) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Validates an array of ISBNs.
+     *
+     * @param isbns The ISBNs to be validated.
+     * @return An array holding true at index i if isbns[i] is valid.
+     */
+    public static boolean[] validateISBNs(CharSequence[] isbns) {
+        boolean[] results = new boolean[isbns.length];
+        validateISBNs(isbns, results);
+        return results;
+    }
+
+    /**
+     * Validates if input is a user Id, i.e. exactly 12 ASCII digits.
+     *
+     * @param userId The user Id to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isUserIdValid(CharSequence userId) {
+        return parseUserId(userId) != UserKey.NONE;
+    }
+
+    /**
+     * Validates a user Id and returns its digits as a number.
+     *
+     * @param userId The user Id to be parsed.
+     * @return The 12 digits of the user Id as a long, or {@link UserKey#NONE} if the Id is invalid.
+     */
+    static long parseUserId(CharSequence userId) {
+        if (userId == null || userId.length() != USER_ID_LENGTH) {
+            return UserKey.NONE;
+        }
+        long value = 0;
+        for (int i = 0; i < USER_ID_LENGTH; i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return UserKey.NONE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
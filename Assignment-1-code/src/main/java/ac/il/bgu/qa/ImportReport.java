@@ -0,0 +1,127 @@
+package ac.il.bgu.qa;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summarizes a bulk catalog import (see {@link CatalogImporter}).
+ */
+public class ImportReport {
+
+    /**
+     * A catalog line that was not imported, with the reason it was rejected.
+     */
+    public static class Rejection {
+        // The 1-based number of the rejected line in the input.
+        private final long lineNumber;
+        // The ISBN field of the line, or null if the line could not be split into fields.
+        private final String ISBN;
+        // Why the line was rejected.
+        private final String reason;
+
+        Rejection(long lineNumber, String ISBN, String reason) {
+            this.lineNumber = lineNumber;
+            this.ISBN = ISBN;
+            this.reason = reason;
+        }
+
+        /**
+         * Retrieves the line number of the rejected line.
+         *
+         * @return The 1-based line number.
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Retrieves the ISBN field of the rejected line.
+         *
+         * @return The ISBN as written in the catalog, or null if the line could not be split into fields.
+         */
+        public String getISBN() {
+            return ISBN;
+        }
+
+        /**
+         * Retrieves the reason the line was rejected.
+         *
+         * @return The reason.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + " (" + ISBN + "): " + reason;
+        }
+    }
+
+    // Number of catalog lines read, header excluded.
+    private final long linesRead;
+    // Number of books written to the database.
+    private final long imported;
+    // The rejected lines in input order.
+    private final List<Rejection> rejections;
+    // Wall-clock duration of the import.
+    private final long elapsedNanos;
+
+    ImportReport(long linesRead, long imported, List<Rejection> rejections, long elapsedNanos) {
+        this.linesRead = linesRead;
+        this.imported = imported;
+        this.rejections = Collections.unmodifiableList(rejections);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Retrieves the number of catalog lines read, header excluded.
+     *
+     * @return The number of lines read.
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    /**
+     * Retrieves the number of books written to the database.
+     *
+     * @return The number of imported books.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Retrieves the rejected lines, in input order.
+     *
+     * @return The rejected lines.
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Retrieves the wall-clock duration of the import.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Computes the import throughput.
+     *
+     * @return The number of lines processed per second.
+     */
+    public double getLinesPerSecond() {
+        return elapsedNanos == 0 ? 0 : linesRead * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %d of %d lines (%d rejected) in %.3f s, %.0f lines/s",
+                imported, linesRead, rejections.size(), elapsedNanos / 1e9, getLinesPerSecond());
+    }
+}
@@ -0,0 +1,63 @@
+package ac.il.bgu.qa;
+
+/**
+ * Canonical primitive encoding of an ISBN-13: its 13 digits, hyphens stripped, read as a long.
+ * Keys let stores hash and compare ISBNs without touching strings.
+ */
+public final class IsbnKey {
+
+    // Key returned for anything that is not a valid ISBN-13.
+    public static final long NONE = -1L;
+
+    // Number of digits in an ISBN-13.
+    private static final int LENGTH = 13;
+
+    private IsbnKey() {
+    }
+
+    /**
+     * Parses an ISBN-13 into its key.
+     *
+     * @param isbn The International Standard Book Number, with or without hyphens.
+     * @return The key of the ISBN, or {@link #NONE} if it is not a valid ISBN-13.
+     */
+    public static long parse(CharSequence isbn) {
+        return IdentifierValidator.parseISBN(isbn);
+    }
+
+    /**
+     * Parses an ISBN-13 into its key, rejecting invalid input.
+     *
+     * @param isbn The International Standard Book Number, with or without hyphens.
+     * @return The key of the ISBN.
+     * @throws IllegalArgumentException If the ISBN is not a valid ISBN-13.
+     */
+    public static long of(CharSequence isbn) {
+        long key = parse(isbn);
+        if (key == NONE) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    /**
+     * Formats a key back into its canonical ISBN string (13 digits, no hyphens).
+     *
+     * @param key The key of the ISBN.
+     * @return The canonical ISBN.
+     */
+    public static String toString(long key) {
+        return Keys.format(key, LENGTH);
+    }
+
+    /**
+     * Returns the canonical form of an ISBN, reusing the given string when it is already canonical.
+     *
+     * @param isbn The International Standard Book Number, with or without hyphens.
+     * @param key  The key previously parsed from the ISBN.
+     * @return The ISBN with hyphens stripped.
+     */
+    static String canonical(String isbn, long key) {
+        return isbn.length() == LENGTH ? isbn : toString(key);
+    }
+}
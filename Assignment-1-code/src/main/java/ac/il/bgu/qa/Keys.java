@@ -0,0 +1,32 @@
+package ac.il.bgu.qa;
+
+/**
+ * Helpers shared by {@link IsbnKey} and {@link UserKey}.
+ */
+final class Keys {
+
+    private Keys() {
+    }
+
+    /**
+     * Formats a non-negative key as a zero-padded decimal string.
+     *
+     * @param key    The key to format.
+     * @param length The number of digits to produce.
+     * @return The formatted key.
+     */
+    static String format(long key, int length) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+        char[] digits = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + key % 10);
+            key /= 10;
+        }
+        if (key != 0) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+        return new String(digits);
+    }
+}
@@ -1,26 +1,90 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.BorrowLedger;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewSessionProvider;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Represents a library which manages a collection of books and users.
+ * <p>
+ * {@link #searchBooksByTitle} and {@link #searchBooksByAuthor} work with any database that can list its
+ * books, which they then scan; an {@link ac.il.bgu.qa.services.IndexedDatabaseService} answers them
+ * without scanning.
  */
 public class Library {
 
     // Service to interact with the database
     private final DatabaseService databaseService;
 
-    // Service to fetch reviews for a book
-    private final ReviewService reviewService;
+    // Leases sessions of the service that fetches reviews for a book
+    private final ReviewSessionProvider reviewSessions;
 
-    // Constructor for Library, initializes both services
+    // Delivers notifications to users, with retries
+    private final NotificationDispatcher notificationDispatcher;
+
+    // Runs the independent lookups of a notification concurrently; null to run them in sequence
+    private final ExecutorService lookupExecutor;
+
+    // Receives validation rejections and notification failures that are not reported to the caller
+    private final EventLog events;
+
+    // Records which user holds which book and caps how many books a user may hold
+    private final BorrowLedger ledger;
+
+    // Constructor for Library, initializes both services; notifications are retried inline up to 5 times
     public Library(DatabaseService databaseService, ReviewService reviewService) {
+        this(databaseService, reviewService, NotificationDispatcher.inline(5));
+    }
+
+    // Constructor for Library with a custom notification dispatcher; the review service is closed after every use
+    public Library(DatabaseService databaseService, ReviewService reviewService,
+                   NotificationDispatcher notificationDispatcher) {
+        this(databaseService, ReviewSessionProvider.closingEach(reviewService), notificationDispatcher);
+    }
+
+    // Constructor for Library leasing review sessions from a provider, such as a session pool
+    public Library(DatabaseService databaseService, ReviewSessionProvider reviewSessions) {
+        this(databaseService, reviewSessions, NotificationDispatcher.inline(5));
+    }
+
+    // Constructor for Library leasing review sessions from a provider, with a custom notification dispatcher
+    public Library(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                   NotificationDispatcher notificationDispatcher) {
+        this(databaseService, reviewSessions, notificationDispatcher, null);
+    }
+
+    // Constructor for Library fetching the book, the user and the reviews of a notification concurrently
+    public Library(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                   NotificationDispatcher notificationDispatcher, ExecutorService lookupExecutor) {
+        this(databaseService, reviewSessions, notificationDispatcher, lookupExecutor, EventLog.shared());
+    }
+
+    // Constructor for Library with every option, emitting its events to the given event log
+    public Library(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                   NotificationDispatcher notificationDispatcher, ExecutorService lookupExecutor, EventLog events) {
+        this(databaseService, reviewSessions, notificationDispatcher, lookupExecutor, events, new BorrowLedger());
+    }
+
+    // Constructor for Library recording borrows in the given ledger, which may cap the books a user holds
+    public Library(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                   NotificationDispatcher notificationDispatcher, ExecutorService lookupExecutor, EventLog events,
+                   BorrowLedger ledger) {
         this.databaseService = databaseService;
-        this.reviewService = reviewService;
+        this.reviewSessions = reviewSessions;
+        this.notificationDispatcher = notificationDispatcher;
+        this.lookupExecutor = lookupExecutor;
+        this.events = events;
+        this.ledger = ledger;
     }
 
     /**
@@ -30,67 +94,74 @@ public class Library {
      */
     public void addBook(Book book) {
         // Multiple checks to validate the book object's properties
-        if (book == null) {
-            throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
-            throw new IllegalArgumentException("Invalid ISBN.");
-        } else if (book.getTitle() == null || book.getTitle().equals("")) {
-            throw new IllegalArgumentException("Invalid title.");
-        } else if (!isAuthorValid(book.getAuthor())) {
-            throw new IllegalArgumentException("Invalid author.");
-        } else if (book.isBorrowed()) {
-            throw new IllegalArgumentException("Book with invalid borrowed state.");
+        String error = validateBook(book);
+        if (error != null) {
+            throw rejected("addBook", book == null ? null : book.getISBN(), null, error);
         }
 
+        // The database is always addressed by the canonical (hyphen-free) ISBN.
+        String ISBN = IsbnKey.canonical(book.getISBN(), book.getISBNKey());
+
         // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
+        if (databaseService.getBookByISBN(ISBN) != null)
+            throw rejected("addBook", ISBN, null, "Book already exists.");
 
         // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
+        databaseService.addBook(ISBN, book);
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     *  Validates the properties of a book about to be added to the collection.
+     *  Shared by {@link #addBook} and the bulk {@link CatalogImporter}.
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
+     *  @param book The book to be validated.
+     *  @return null if valid, otherwise the reason the book is invalid.
     */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
-        }
-
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
-
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
-        }
-
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
-            } else {
-                sum += digit * 3;
-            }
+    static String validateBook(Book book) {
+        if (book == null) {
+            return "Invalid book.";
+        } else if (book.getISBNKey() == IsbnKey.NONE) {
+            return "Invalid ISBN.";
+        } else if (book.getTitle() == null || book.getTitle().equals("")) {
+            return "Invalid title.";
+        } else if (!isAuthorValid(book.getAuthor())) {
+            return "Invalid author.";
+        } else if (book.isBorrowed()) {
+            return "Book with invalid borrowed state.";
         }
+        return null;
+    }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+    /**
+     *  Validates an ISBN given to an operation and converts it to its canonical form,
+     *  emitting a validation rejection if it is invalid.
+     *
+     *  @param operation The operation the ISBN was given to.
+     *  @param ISBN      The International Standard Book Number to be validated.
+     *  @param userId    The user Id given along with the ISBN, if any.
+     *  @return The ISBN with hyphens stripped.
+     *  @throws IllegalArgumentException If the ISBN is not a valid ISBN-13.
+    */
+    private String canonicalISBN(String operation, String ISBN, String userId) {
+        long key = IsbnKey.parse(ISBN);
+        if (key == IsbnKey.NONE) {
+            throw rejected(operation, ISBN, userId, "Invalid ISBN.");
         }
+        return IsbnKey.canonical(ISBN, key);
+    }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+    /**
+     *  Emits a validation rejection and creates the exception reporting it.
+     *
+     *  @param operation The rejected operation.
+     *  @param ISBN      The ISBN given to the operation, if any.
+     *  @param userId    The user Id given to the operation, if any.
+     *  @param reason    What was invalid.
+     *  @return The exception to throw.
+    */
+    private IllegalArgumentException rejected(String operation, String ISBN, String userId, String reason) {
+        events.validationRejected(operation, ISBN, userId, reason);
+        return new IllegalArgumentException(reason);
     }
 
     /**
@@ -99,7 +170,7 @@ public class Library {
      *  @param name The name of the author.
      *  @return true if valid, false otherwise.
     */
-    private boolean isAuthorValid(String name) {
+    private static boolean isAuthorValid(String name) {
         /*
          * Three key criteria for a valid author name:
          * 1) The name should only consist of alphabetic characters, hyphens, spaces, dots, and apostrophes.
@@ -147,19 +218,19 @@ public class Library {
     public void registerUser(User user) {
         // Multiple checks to validate the user object's properties.
         if (user == null) {
-            throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+            throw rejected("registerUser", null, null, "Invalid user.");
+        } else if (user.getIdKey() == UserKey.NONE) {
+            throw rejected("registerUser", null, user.getId(), "Invalid user Id.");
         } else if (user.getName() == null || user.getName().equals("")) {
-            throw new IllegalArgumentException("Invalid user name.");
+            throw rejected("registerUser", null, user.getId(), "Invalid user name.");
         } else if (user.getNotificationService() == null) {
-            throw new IllegalArgumentException("Invalid notification service.");
+            throw rejected("registerUser", null, user.getId(), "Invalid notification service.");
         }
 
         // Before registering, check if a user with the given Id already exists.
         // If such a user is found, throw an exception.
         if (databaseService.getUserById(user.getId()) != null)
-            throw new IllegalArgumentException("User already exists.");
+            throw rejected("registerUser", null, user.getId(), "User already exists.");
 
         // If all checks have passed, call the database service to register the user.
         databaseService.registerUser(user.getId(), user);
@@ -174,10 +245,8 @@ public class Library {
      */
     public void borrowBook(String ISBN, String userId) {
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        // Validate the ISBN and strip its hyphens. If it's invalid, throw an exception.
+        ISBN = canonicalISBN("borrowBook", ISBN, userId);
 
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
@@ -189,8 +258,9 @@ public class Library {
 
         // Validate the user Id's format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+        long userKey = UserKey.parse(userId);
+        if (userKey == UserKey.NONE) {
+            throw rejected("borrowBook", ISBN, userId, "Invalid user Id.");
         }
 
         // Check if the user Id's corresponds to a registered user in the database.
@@ -199,16 +269,25 @@ public class Library {
             throw new UserNotRegisteredException("User not found!");
         }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
+        // Atomically mark the book as borrowed by this user and record it in the ledger. If the book is
+        // already borrowed, including by a concurrent call that won the race, throw an exception; likewise
+        // if the user already holds as many books as allowed.
+        long isbnKey = IsbnKey.parse(ISBN);
+        BatchOutcome outcome = ledger.tryBorrow(book, isbnKey, userKey);
+        if (outcome == BatchOutcome.ALREADY_BORROWED) {
             throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        } else if (outcome == BatchOutcome.LIMIT_EXCEEDED) {
+            throw new BorrowLimitExceededException("Borrow limit reached!");
         }
 
-        // Mark the book as borrowed.
-        book.borrow();
-
         // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+        // Only the caller that borrowed the book gets here; if the database rejects it, release the book again.
+        try {
+            databaseService.borrowBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            ledger.undoBorrow(book, isbnKey, userKey);
+            throw e;
+        }
     }
 
     /**
@@ -218,10 +297,8 @@ public class Library {
      */
     public void returnBook(String ISBN) {
         
-        // Validate the ISBN. If it's not valid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        // Validate the ISBN and strip its hyphens. If it's not valid, throw an exception.
+        ISBN = canonicalISBN("returnBook", ISBN, null);
 
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
@@ -231,88 +308,390 @@ public class Library {
             throw new BookNotFoundException("Book not found!");
         }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
-        if (!book.isBorrowed()) {
+        // Atomically change the status of the book to not borrowed and clear it from the ledger. If it was not
+        // borrowed, it means it was never borrowed or it has already been returned, therefore throw an exception.
+        if (!ledger.tryReturn(book, IsbnKey.parse(ISBN))) {
             throw new BookNotBorrowedException("Book wasn't borrowed!");
         }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
-
         // Update the database to reflect the returned status of the book.
         databaseService.returnBook(ISBN);
     }
 
     /**
-     * Notifies a user with the reviews of a specified book.
+     * Borrows several books for a user in one transaction.
+     * The user is validated once; each ISBN then gets its own outcome instead of the whole batch
+     * failing on the first bad item. The database is queried and updated with one batch call each.
      *
-     * @param ISBN The ISBN of the book whose reviews are to be sent.
-     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @param userId The Id of the user borrowing the books.
+     * @param ISBNs  The International Standard Book Numbers of the books.
+     * @return The outcome for each ISBN, in the order given.
      */
-    public void notifyUserWithBookReviews(String ISBN, String userId) {
+    public Map<String, BatchOutcome> borrowBooks(String userId, Collection<String> ISBNs) {
+        // Validate the user Id's format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        long userKey = UserKey.parse(userId);
+        if (userKey == UserKey.NONE) {
+            throw rejected("borrowBooks", null, userId, "Invalid user Id.");
+        }
+        if (ISBNs == null) {
+            throw rejected("borrowBooks", null, userId, "Invalid ISBNs.");
+        }
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+        // Check if the user Id's corresponds to a registered user in the database.
+        // If not, throw an exception indicating the user is not registered.
+        if (databaseService.getUserById(userId) == null) {
+            throw new UserNotRegisteredException("User not found!");
         }
 
-        // Validate the user Id format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+        // Validate and canonicalize every ISBN, then fetch all the valid ones at once.
+        Map<String, BatchOutcome> outcomes = new LinkedHashMap<>();
+        Map<String, String> canonical = canonicalISBNs(ISBNs, outcomes);
+        if (canonical.isEmpty()) {
+            return outcomes;
+        }
+        Map<String, Book> books = databaseService.getBooksByISBN(new ArrayList<>(canonical.values()));
+
+        // Atomically mark each found book as borrowed by this user, while the user is below the borrow limit.
+        List<String> borrowed = new ArrayList<>();
+        List<Book> borrowedBooks = new ArrayList<>();
+        for (Map.Entry<String, String> entry : canonical.entrySet()) {
+            Book book = books.get(entry.getValue());
+            BatchOutcome outcome = book == null ? BatchOutcome.BOOK_NOT_FOUND
+                    : ledger.tryBorrow(book, IsbnKey.parse(entry.getValue()), userKey);
+            outcomes.put(entry.getKey(), outcome);
+            if (outcome == BatchOutcome.BORROWED) {
+                borrowed.add(entry.getValue());
+                borrowedBooks.add(book);
+            }
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Record all the borrowing transactions in the database at once; the batch is applied whole or not at all.
+        // If the database rejects it, release the books again.
+        if (!borrowed.isEmpty()) {
+            try {
+                databaseService.borrowBooks(borrowed, userId);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < borrowed.size(); i++) {
+                    ledger.undoBorrow(borrowedBooks.get(i), IsbnKey.parse(borrowed.get(i)), userKey);
+                }
+                throw e;
+            }
+        }
+        return outcomes;
+    }
 
-        // If no book is found for the given ISBN, throw a book not found exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+    /**
+     * Returns several previously borrowed books in one transaction.
+     * Each ISBN gets its own outcome instead of the whole batch failing on the first bad item.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The outcome for each ISBN, in the order given.
+     */
+    public Map<String, BatchOutcome> returnBooks(Collection<String> ISBNs) {
+        if (ISBNs == null) {
+            throw rejected("returnBooks", null, null, "Invalid ISBNs.");
         }
 
-        // Retrieve the user associated with the user Id from the database.
-        User user = databaseService.getUserById(userId);
+        // Validate and canonicalize every ISBN, then fetch all the valid ones at once.
+        Map<String, BatchOutcome> outcomes = new LinkedHashMap<>();
+        Map<String, String> canonical = canonicalISBNs(ISBNs, outcomes);
+        if (canonical.isEmpty()) {
+            return outcomes;
+        }
+        Map<String, Book> books = databaseService.getBooksByISBN(new ArrayList<>(canonical.values()));
+
+        // Atomically change the status of each found book to not borrowed and clear it from the ledger.
+        List<String> returned = new ArrayList<>();
+        for (Map.Entry<String, String> entry : canonical.entrySet()) {
+            Book book = books.get(entry.getValue());
+            if (book == null) {
+                outcomes.put(entry.getKey(), BatchOutcome.BOOK_NOT_FOUND);
+            } else if (!ledger.tryReturn(book, IsbnKey.parse(entry.getValue()))) {
+                outcomes.put(entry.getKey(), BatchOutcome.NOT_BORROWED);
+            } else {
+                outcomes.put(entry.getKey(), BatchOutcome.RETURNED);
+                returned.add(entry.getValue());
+            }
+        }
 
-        // If the user is not found in the database, throw an exception.
-        if (user == null) {
-            throw new UserNotRegisteredException("User not found!");
+        // Update the database to reflect the returned status of all the books at once.
+        if (!returned.isEmpty()) {
+            databaseService.returnBooks(returned);
         }
+        return outcomes;
+    }
 
-        // Fetch the list of reviews for the specified book using the review service.
-        List<String> reviews;
+    /**
+     * Canonicalizes the ISBNs of a batch, recording an outcome for the invalid and duplicate ones.
+     *
+     * Different spellings of the same ISBN (with and without hyphens) are duplicates.
+     *
+     * @param ISBNs    The ISBNs as given by the caller.
+     * @param outcomes Receives a slot for every ISBN in the order given, and the outcome of the rejected ones.
+     * @return The canonical form of every accepted ISBN, by the ISBN as given.
+     */
+    private static Map<String, String> canonicalISBNs(Collection<String> ISBNs, Map<String, BatchOutcome> outcomes) {
+        Map<String, String> canonical = new LinkedHashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (String ISBN : ISBNs) {
+            // An ISBN repeated verbatim shares the outcome of its first occurrence.
+            if (outcomes.containsKey(ISBN)) {
+                continue;
+            }
+            long key = IsbnKey.parse(ISBN);
+            if (key == IsbnKey.NONE) {
+                outcomes.put(ISBN, BatchOutcome.INVALID_ISBN);
+            } else if (!seen.add(key)) {
+                outcomes.put(ISBN, BatchOutcome.DUPLICATE_ISBN);
+            } else {
+                outcomes.put(ISBN, null);
+                canonical.put(ISBN, IsbnKey.canonical(ISBN, key));
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Searches the collection for books whose title, or a word of it, starts with a prefix, ignoring case.
+     * Suited to title autocompletion once the database is indexed (see
+     * {@link ac.il.bgu.qa.services.IndexedDatabaseService}); otherwise every book is scanned.
+     *
+     * @param prefix The prefix to search for.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database can neither search nor list its books.
+     */
+    public List<Book> searchBooksByTitle(String prefix, int limit) {
+        validateSearch("searchBooksByTitle", prefix, limit);
+        return databaseService.findBooksByTitlePrefix(prefix, limit);
+    }
+
+    /**
+     * Searches the collection for books whose author's name, or a word of it, starts with a prefix,
+     * ignoring case. Every book is scanned unless the database is indexed (see
+     * {@link ac.il.bgu.qa.services.IndexedDatabaseService}).
+     *
+     * @param prefix The prefix to search for.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database can neither search nor list its books.
+     */
+    public List<Book> searchBooksByAuthor(String prefix, int limit) {
+        validateSearch("searchBooksByAuthor", prefix, limit);
+        return databaseService.findBooksByAuthorPrefix(prefix, limit);
+    }
+
+    /**
+     * Validates the arguments of a search.
+     *
+     * @param operation The search operation.
+     * @param prefix    The prefix to search for.
+     * @param limit     The maximum number of books to return.
+     * @throws IllegalArgumentException If the prefix is missing or the limit is not positive.
+     */
+    private void validateSearch(String operation, String prefix, int limit) {
+        if (prefix == null) {
+            throw rejected(operation, null, null, "Invalid prefix.");
+        } else if (limit <= 0) {
+            throw rejected(operation, null, null, "Invalid limit.");
+        }
+    }
+
+    /**
+     * Retrieves the books a user currently holds, as recorded by the borrows made through this library.
+     *
+     * @param userId The Id of the user.
+     * @return The ISBNs of the books, in increasing order.
+     */
+    public List<String> getBorrowedBooks(String userId) {
+        // Validate the user Id's format (should be a 12-digit number).
+        long userKey = UserKey.parse(userId);
+        if (userKey == UserKey.NONE) {
+            throw rejected("getBorrowedBooks", null, userId, "Invalid user Id.");
+        }
+
+        long[] keys = ledger.getBooksOf(userKey);
+        List<String> ISBNs = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            ISBNs.add(IsbnKey.toString(key));
+        }
+        return ISBNs;
+    }
+
+    /**
+     * Retrieves the user currently holding a book, as recorded by the borrows made through this library.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not recorded as borrowed.
+     */
+    public String getBorrower(String ISBN) {
+        // Validate the ISBN and strip its hyphens. If it's invalid, throw an exception.
+        long userKey = ledger.getBorrowerOf(IsbnKey.parse(canonicalISBN("getBorrower", ISBN, null)));
+        return userKey == UserKey.NONE ? null : UserKey.toString(userKey);
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book, waiting until the notification is delivered.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     */
+    public void notifyUserWithBookReviews(String ISBN, String userId) {
         try {
-            reviews = reviewService.getReviewsForBook(ISBN);
+            sendBookReviews(ISBN, userId).join();
+        } catch (CompletionException e) {
+            // Rethrow the delivery failure itself, typically a notification exception.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-            // If no reviews are found or the review list is empty, throw an exception.
-            if (reviews == null || reviews.isEmpty()) {
-                throw new NoReviewsFoundException("No reviews found!");
+    /**
+     * Notifies a user with the reviews of a specified book without waiting for the notification to be delivered.
+     * The book, the user and the reviews are looked up before returning; delivery and its retries are left
+     * to the notification dispatcher.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed when the notification is delivered, or completed exceptionally with a
+     *         notification exception if every delivery attempt failed.
+     */
+    public CompletableFuture<Void> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        return sendBookReviews(ISBN, userId);
+    }
+
+    // Looks up the book, the user and the reviews and hands the notification to the dispatcher. Shared by
+    // the blocking and the asynchronous notification, so that overriding one does not affect the other.
+    private CompletableFuture<Void> sendBookReviews(String ISBN, String userId) {
+
+        // Validate the ISBN and strip its hyphens. If it's invalid, throw an exception.
+        ISBN = canonicalISBN("notifyUserWithBookReviews", ISBN, userId);
+
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        if (!IdentifierValidator.isUserIdValid(userId)) {
+            throw rejected("notifyUserWithBookReviews", ISBN, userId, "Invalid user Id.");
+        }
+
+        // Fetch the book, the user and the reviews, concurrently if there is an executor for it.
+        Book book;
+        User user;
+        List<String> reviews;
+        if (lookupExecutor == null) {
+            // Retrieve the book associated with the ISBN from the database.
+            book = databaseService.getBookByISBN(ISBN);
+
+            // If no book is found for the given ISBN, throw a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
             }
-        } catch (ReviewException e) {
+
+            // Retrieve the user associated with the user Id from the database.
+            user = databaseService.getUserById(userId);
+
+            // If the user is not found in the database, throw an exception.
+            if (user == null) {
+                throw new UserNotRegisteredException("User not found!");
+            }
+
+            // Fetch the list of reviews for the specified book.
             // If there's an issue fetching the reviews, throw a service unavailable exception.
-            throw new ReviewServiceUnavailableException("Review service unavailable!");
-        } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
+            try {
+                reviews = fetchReviews(ISBN);
+            } catch (ReviewException e) {
+                throw new ReviewServiceUnavailableException("Review service unavailable!");
+            }
+        } else {
+            // The three lookups are independent, so issue them at once. Their results are examined in the
+            // order above, so a failure surfaces with the same precedence; the lookups still running once
+            // the outcome is known are cancelled.
+            String canonical = ISBN;
+            Future<Book> bookLookup = lookupExecutor.submit(() -> databaseService.getBookByISBN(canonical));
+            Future<User> userLookup = lookupExecutor.submit(() -> databaseService.getUserById(userId));
+            Future<List<String>> reviewLookup = lookupExecutor.submit(() -> fetchReviews(canonical));
+            try {
+                book = await(bookLookup);
+                if (book == null) {
+                    throw new BookNotFoundException("Book not found!");
+                }
+                user = await(userLookup);
+                if (user == null) {
+                    throw new UserNotRegisteredException("User not found!");
+                }
+                try {
+                    reviews = await(reviewLookup);
+                } catch (ReviewException e) {
+                    throw new ReviewServiceUnavailableException("Review service unavailable!");
+                }
+            } finally {
+                bookLookup.cancel(true);
+                userLookup.cancel(true);
+                reviewLookup.cancel(true);
+            }
+        }
+
+        // If no reviews are found or the review list is empty, throw an exception.
+        if (reviews == null || reviews.isEmpty()) {
+            throw new NoReviewsFoundException("No reviews found!");
         }
 
         // Construct the notification message containing the book's title and its reviews.
         String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
 
-        // Attempt to send the notification to the user. If it fails, retry up to 5 times.
-        int retryCount = 0;
-        while (retryCount < 5) {
-            try {
-                user.sendNotification(notificationMessage);
-                return;
-            } catch (NotificationException e) {
-                retryCount++;
-                System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
+        // Hand the notification to the dispatcher, which retries it if it fails.
+        return notificationDispatcher.dispatch(user, notificationMessage);
+    }
+
+    /**
+     * Fetches the reviews of a book with a leased review session.
+     * The session is handed back afterwards; a session that failed is discarded rather than reused.
+     *
+     * @param ISBN The canonical ISBN of the book.
+     * @return The reviews of the book, as returned by the review service.
+     * @throws ReviewException If no session is available or fetching the reviews failed.
+     */
+    private List<String> fetchReviews(String ISBN) throws ReviewException {
+        ReviewService reviewService = reviewSessions.acquire();
+        boolean healthy = true;
+        try {
+            return reviewService.getReviewsForBook(ISBN);
+        } catch (ReviewException e) {
+            // A rejected call never reached the session, so the session is still good.
+            healthy = e instanceof ReviewCallRejectedException;
+            throw e;
+        } finally {
+            if (healthy) {
+                reviewSessions.release(reviewService);
+            } else {
+                reviewSessions.invalidate(reviewService);
             }
         }
+    }
 
-        // If all retry attempts fail, throw a notification exception.
-        throw new NotificationException("Notification failed!");
+    /**
+     * Waits for a concurrent lookup to finish.
+     *
+     * @param lookup The lookup.
+     * @return The result of the lookup.
+     * @throws RuntimeException The exception thrown by the lookup, as is.
+     */
+    private static <T> T await(Future<T> lookup) {
+        try {
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
     }
 
     /**
@@ -323,15 +702,13 @@ public class Library {
      * @return       The book with the given ISBN if found, and notifies the user with its reviews.
      */
     public Book getBookByISBN(String ISBN, String userId) {
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        // Validate the ISBN and strip its hyphens. If it's invalid, throw an exception.
+        ISBN = canonicalISBN("getBookByISBN", ISBN, userId);
 
         // Validate the user Id format (should be a 12-digit number). 
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+        if (!IdentifierValidator.isUserIdValid(userId)) {
+            throw rejected("getBookByISBN", ISBN, userId, "Invalid user Id.");
         }
 
         // Retrieve the book associated with the ISBN from the database.
@@ -347,12 +724,19 @@ public class Library {
             throw new BookAlreadyBorrowedException("Book was already borrowed!");
         }
 
-        // Attempt to notify the user with the book's reviews.
+        // Attempt to notify the user with the book's reviews without waiting for the delivery.
         // This step is optional, so even if it fails, the book should still be returned.
+        String canonical = ISBN;
         try {
-            notifyUserWithBookReviews(ISBN, userId);
+            notifyUserWithBookReviewsAsync(ISBN, userId).whenComplete((result, failure) -> {
+                if (failure != null) {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                    events.notificationFailed("getBookByISBN", canonical, userId, cause.getMessage());
+                }
+            });
         } catch (Exception e) {
-            System.out.println("Notification failed!");
+            events.notificationFailed("getBookByISBN", ISBN, userId, e.getMessage());
         }
 
         // Return the retrieved book.
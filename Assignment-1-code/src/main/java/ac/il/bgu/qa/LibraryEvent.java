@@ -0,0 +1,137 @@
+package ac.il.bgu.qa;
+
+/**
+ * An event emitted by the library to an {@link EventLog}.
+ * <p>
+ * Events are slots of the log's ring buffer and are reused: an {@link EventLog.Sink} may read an event only
+ * while it is being handed the event, and must copy whatever it keeps.
+ */
+public final class LibraryEvent {
+
+    /**
+     * The kinds of events.
+     */
+    public enum Type {
+        // A notification attempt failed; another attempt may follow.
+        NOTIFICATION_RETRY,
+        // A notification failed and the failure was not reported to the caller.
+        NOTIFICATION_FAILED,
+        // An operation was rejected because of an invalid argument.
+        VALIDATION_REJECTED
+    }
+
+    // Sequence number of the event the slot holds, once published; -1 before the first one.
+    volatile long published = -1;
+
+    Type type;
+    // Wall-clock time of the event, in milliseconds.
+    long timestampMillis;
+    // The library operation, such as getBookByISBN; may be null.
+    String operation;
+    // The ISBN concerned; may be null.
+    String ISBN;
+    // The Id of the user concerned; may be null.
+    String userId;
+    // The attempt that failed, for retries; 0 otherwise.
+    int attempt;
+    // The number of attempts allowed, for retries; 0 otherwise.
+    int maxAttempts;
+    // Why the event happened, typically an exception message; may be null.
+    String reason;
+
+    LibraryEvent() {
+    }
+
+    /**
+     * Retrieves the kind of the event.
+     *
+     * @return The type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves when the event happened.
+     *
+     * @return The wall-clock time in milliseconds.
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Retrieves the library operation during which the event happened.
+     *
+     * @return The operation name, or null if not known.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Retrieves the ISBN of the book concerned.
+     *
+     * @return The ISBN as given, or null if no book is concerned.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the Id of the user concerned.
+     *
+     * @return The user Id as given, or null if no user is concerned.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the attempt that failed.
+     *
+     * @return The attempt number, starting at 1, or 0 if the event is not a retry.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Retrieves the number of attempts allowed.
+     *
+     * @return The attempt limit, or 0 if the event is not a retry.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Retrieves why the event happened.
+     *
+     * @return The reason, or null if none was given.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder().append(timestampMillis).append(' ').append(type);
+        if (operation != null) {
+            line.append(" operation=").append(operation);
+        }
+        if (ISBN != null) {
+            line.append(" isbn=").append(ISBN);
+        }
+        if (userId != null) {
+            line.append(" userId=").append(userId);
+        }
+        if (attempt > 0) {
+            line.append(" attempt=").append(attempt).append('/').append(maxAttempts);
+        }
+        if (reason != null) {
+            line.append(" reason=\"").append(reason).append('"');
+        }
+        return line.toString();
+    }
+}
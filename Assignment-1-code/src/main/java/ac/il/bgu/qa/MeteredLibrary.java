@@ -0,0 +1,155 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.BorrowLedger;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.MetricsRegistry;
+import ac.il.bgu.qa.services.OperationMetrics;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewSessionProvider;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link Library} that records the latency and outcome of every public operation in a
+ * {@link MetricsRegistry}, under {@code library.<method>}.
+ * <p>
+ * The outcome is {@value OperationMetrics#SUCCESS} or the simple name of the exception thrown, so each
+ * exception type of the {@code errors} package gets its own counter. An asynchronous notification is
+ * measured until its delivery completes. Wrap the services in the metered decorators to see how much of
+ * an operation is spent in each service.
+ */
+public class MeteredLibrary extends Library {
+
+    private final OperationMetrics addBook;
+    private final OperationMetrics registerUser;
+    private final OperationMetrics borrowBook;
+    private final OperationMetrics returnBook;
+    private final OperationMetrics borrowBooks;
+    private final OperationMetrics returnBooks;
+    private final OperationMetrics notifyUserWithBookReviews;
+    private final OperationMetrics notifyUserWithBookReviewsAsync;
+    private final OperationMetrics getBookByISBN;
+    private final OperationMetrics searchBooksByTitle;
+    private final OperationMetrics searchBooksByAuthor;
+    private final OperationMetrics getBorrowedBooks;
+    private final OperationMetrics getBorrower;
+
+    // Constructor for MeteredLibrary, initializes both services as Library does
+    public MeteredLibrary(DatabaseService databaseService, ReviewService reviewService, MetricsRegistry metrics) {
+        this(databaseService, ReviewSessionProvider.closingEach(reviewService), NotificationDispatcher.inline(5),
+                null, metrics);
+    }
+
+    // Constructor for MeteredLibrary fetching the book, the user and the reviews of a notification concurrently
+    public MeteredLibrary(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                          NotificationDispatcher notificationDispatcher, ExecutorService lookupExecutor,
+                          MetricsRegistry metrics) {
+        this(databaseService, reviewSessions, notificationDispatcher, lookupExecutor, EventLog.shared(),
+                new BorrowLedger(), metrics);
+    }
+
+    // Constructor for MeteredLibrary with every option of Library
+    public MeteredLibrary(DatabaseService databaseService, ReviewSessionProvider reviewSessions,
+                          NotificationDispatcher notificationDispatcher, ExecutorService lookupExecutor,
+                          EventLog events, BorrowLedger ledger, MetricsRegistry metrics) {
+        super(databaseService, reviewSessions, notificationDispatcher, lookupExecutor, events, ledger);
+        this.addBook = metrics.operation("library.addBook");
+        this.registerUser = metrics.operation("library.registerUser");
+        this.borrowBook = metrics.operation("library.borrowBook");
+        this.returnBook = metrics.operation("library.returnBook");
+        this.borrowBooks = metrics.operation("library.borrowBooks");
+        this.returnBooks = metrics.operation("library.returnBooks");
+        this.notifyUserWithBookReviews = metrics.operation("library.notifyUserWithBookReviews");
+        this.notifyUserWithBookReviewsAsync = metrics.operation("library.notifyUserWithBookReviewsAsync");
+        this.getBookByISBN = metrics.operation("library.getBookByISBN");
+        this.searchBooksByTitle = metrics.operation("library.searchBooksByTitle");
+        this.searchBooksByAuthor = metrics.operation("library.searchBooksByAuthor");
+        this.getBorrowedBooks = metrics.operation("library.getBorrowedBooks");
+        this.getBorrower = metrics.operation("library.getBorrower");
+    }
+
+    @Override
+    public void addBook(Book book) {
+        addBook.run(() -> super.addBook(book));
+    }
+
+    @Override
+    public void registerUser(User user) {
+        registerUser.run(() -> super.registerUser(user));
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook.run(() -> super.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook.run(() -> super.returnBook(ISBN));
+    }
+
+    @Override
+    public Map<String, BatchOutcome> borrowBooks(String userId, Collection<String> ISBNs) {
+        return borrowBooks.call(() -> super.borrowBooks(userId, ISBNs));
+    }
+
+    @Override
+    public Map<String, BatchOutcome> returnBooks(Collection<String> ISBNs) {
+        return returnBooks.call(() -> super.returnBooks(ISBNs));
+    }
+
+    @Override
+    public void notifyUserWithBookReviews(String ISBN, String userId) {
+        notifyUserWithBookReviews.run(() -> super.notifyUserWithBookReviews(ISBN, userId));
+    }
+
+    @Override
+    public CompletableFuture<Void> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        long start = notifyUserWithBookReviewsAsync.start();
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = super.notifyUserWithBookReviewsAsync(ISBN, userId);
+        } catch (Throwable e) {
+            notifyUserWithBookReviewsAsync.failure(start, e);
+            throw e;
+        }
+        return delivery.whenComplete((result, failure) -> {
+            if (failure == null) {
+                notifyUserWithBookReviewsAsync.success(start);
+            } else {
+                notifyUserWithBookReviewsAsync.failure(start,
+                        failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            }
+        });
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN, String userId) {
+        return getBookByISBN.call(() -> super.getBookByISBN(ISBN, userId));
+    }
+
+    @Override
+    public List<Book> searchBooksByTitle(String prefix, int limit) {
+        return searchBooksByTitle.call(() -> super.searchBooksByTitle(prefix, limit));
+    }
+
+    @Override
+    public List<Book> searchBooksByAuthor(String prefix, int limit) {
+        return searchBooksByAuthor.call(() -> super.searchBooksByAuthor(prefix, limit));
+    }
+
+    @Override
+    public List<String> getBorrowedBooks(String userId) {
+        return getBorrowedBooks.call(() -> super.getBorrowedBooks(userId));
+    }
+
+    @Override
+    public String getBorrower(String ISBN) {
+        return getBorrower.call(() -> super.getBorrower(ISBN));
+    }
+}
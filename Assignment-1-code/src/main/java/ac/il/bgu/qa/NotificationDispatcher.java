@@ -0,0 +1,317 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.NotificationRejectedException;
+import ac.il.bgu.qa.services.AsyncNotificationService;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Delivers notifications to users, retrying failed deliveries.
+ * <p>
+ * An asynchronous dispatcher runs deliveries on a bounded pool of worker threads. A failed attempt is
+ * retried after an exponentially growing delay with full jitter (a random delay between zero and the
+ * current backoff), so a struggling notification service is not hammered. At most a fixed number of
+ * notifications are pending at once; {@link #dispatch} blocks the caller while the dispatcher is full.
+ * A notification whose every attempt failed is handed to the dead-letter handler, as is one rejected
+ * by a guard such as {@link ac.il.bgu.qa.services.ResilientNotificationService}, which is not retried.
+ * Every failed attempt is reported to an {@link EventLog}.
+ * <p>
+ * An inline dispatcher (see {@link #inline}) makes every attempt on the calling thread without delay,
+ * as {@link Library} always did; its futures are complete when {@link #dispatch} returns.
+ */
+public class NotificationDispatcher implements AsyncNotificationService, AutoCloseable {
+
+    /**
+     * A notification that could not be delivered.
+     */
+    public static class FailedNotification {
+        // The Id of the user the notification was for.
+        private final String userId;
+        // The notification message.
+        private final String message;
+        // The failure of the last attempt.
+        private final NotificationException cause;
+        // The number of attempts made.
+        private final int attempts;
+
+        FailedNotification(String userId, String message, NotificationException cause, int attempts) {
+            this.userId = userId;
+            this.message = message;
+            this.cause = cause;
+            this.attempts = attempts;
+        }
+
+        /**
+         * Retrieves the Id of the user the notification was for.
+         *
+         * @return The user Id.
+         */
+        public String getUserId() {
+            return userId;
+        }
+
+        /**
+         * Retrieves the notification message.
+         *
+         * @return The message.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Retrieves the failure of the last attempt.
+         *
+         * @return The exception thrown by the notification service.
+         */
+        public NotificationException getCause() {
+            return cause;
+        }
+
+        /**
+         * Retrieves the number of attempts made.
+         *
+         * @return The attempt count.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    // Number of attempts per notification, including the first.
+    private final int maxAttempts;
+    // Backoff before the first retry.
+    private final long baseDelayMillis;
+    // Upper bound on the backoff.
+    private final long maxDelayMillis;
+    // Receives notifications whose every attempt failed; may be null.
+    private final Consumer<FailedNotification> deadLetters;
+    // Runs the attempts; null for an inline dispatcher.
+    private final ScheduledThreadPoolExecutor executor;
+    // One permit per notification that may be pending; null for an inline dispatcher.
+    private final Semaphore capacity;
+    // Deliveries not yet completed.
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    // Receives an event for every failed attempt.
+    private final EventLog events;
+
+    /**
+     * Constructs an asynchronous dispatcher.
+     *
+     * @param workers         The number of worker threads.
+     * @param maxPending      The maximum number of notifications pending delivery at once.
+     * @param maxAttempts     The number of attempts per notification, including the first.
+     * @param baseDelayMillis The backoff before the first retry; doubled for every further retry.
+     * @param maxDelayMillis  The upper bound on the backoff.
+     * @param deadLetters     Receives notifications whose every attempt failed; may be null.
+     */
+    public NotificationDispatcher(int workers, int maxPending, int maxAttempts, long baseDelayMillis,
+                                  long maxDelayMillis, Consumer<FailedNotification> deadLetters) {
+        this(workers, maxPending, maxAttempts, baseDelayMillis, maxDelayMillis, deadLetters, EventLog.shared());
+    }
+
+    /**
+     * Constructs an asynchronous dispatcher that reports failed attempts to the given event log.
+     *
+     * @param workers         The number of worker threads.
+     * @param maxPending      The maximum number of notifications pending delivery at once.
+     * @param maxAttempts     The number of attempts per notification, including the first.
+     * @param baseDelayMillis The backoff before the first retry; doubled for every further retry.
+     * @param maxDelayMillis  The upper bound on the backoff.
+     * @param deadLetters     Receives notifications whose every attempt failed; may be null.
+     * @param events          Receives an event for every failed attempt.
+     */
+    public NotificationDispatcher(int workers, int maxPending, int maxAttempts, long baseDelayMillis,
+                                  long maxDelayMillis, Consumer<FailedNotification> deadLetters, EventLog events) {
+        if (events == null) {
+            throw new IllegalArgumentException("Invalid event log.");
+        } else if (workers <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay.");
+        }
+        this.maxAttempts = validateAttempts(maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.deadLetters = deadLetters;
+        this.capacity = new Semaphore(maxPending);
+        this.events = events;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(workers, runnable -> {
+            Thread thread = new Thread(runnable, "notification-dispatcher-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    private NotificationDispatcher(int maxAttempts, EventLog events) {
+        if (events == null) {
+            throw new IllegalArgumentException("Invalid event log.");
+        }
+        this.maxAttempts = validateAttempts(maxAttempts);
+        this.events = events;
+        this.baseDelayMillis = 0;
+        this.maxDelayMillis = 0;
+        this.deadLetters = null;
+        this.executor = null;
+        this.capacity = null;
+    }
+
+    /**
+     * Creates a dispatcher that makes every attempt on the calling thread, without delay.
+     *
+     * @param maxAttempts The number of attempts per notification, including the first.
+     * @return The inline dispatcher.
+     */
+    public static NotificationDispatcher inline(int maxAttempts) {
+        return inline(maxAttempts, EventLog.shared());
+    }
+
+    /**
+     * Creates a dispatcher that makes every attempt on the calling thread, without delay, and reports
+     * failed attempts to the given event log.
+     *
+     * @param maxAttempts The number of attempts per notification, including the first.
+     * @param events      Receives an event for every failed attempt.
+     * @return The inline dispatcher.
+     */
+    public static NotificationDispatcher inline(int maxAttempts, EventLog events) {
+        return new NotificationDispatcher(maxAttempts, events);
+    }
+
+    /**
+     * Delivers a notification to a user. Blocks while the maximum number of notifications is pending.
+     *
+     * @param user    The user to be notified.
+     * @param message The notification message.
+     * @return A future completed when the notification is delivered, or completed exceptionally with a
+     *         {@link NotificationException} when every attempt failed or the dispatcher is closed.
+     */
+    public CompletableFuture<Void> dispatch(User user, String message) {
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+        if (executor == null) {
+            for (int attempt = 1; !delivery.isDone(); attempt++) {
+                attempt(user, message, attempt, delivery);
+            }
+            return delivery;
+        }
+
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delivery.completeExceptionally(new NotificationException("Notification failed!"));
+            return delivery;
+        }
+        pending.add(delivery);
+        delivery.whenComplete((result, failure) -> {
+            pending.remove(delivery);
+            capacity.release();
+        });
+        schedule(user, message, 1, 0, delivery);
+        return delivery;
+    }
+
+    /**
+     * Delivers a notification to a user, as {@link #dispatch} does.
+     *
+     * @param user    The user to be notified.
+     * @param message The notification message.
+     * @return A future completed when the notification is delivered.
+     */
+    @Override
+    public CompletableFuture<Void> notifyUser(User user, String message) {
+        return dispatch(user, message);
+    }
+
+    /**
+     * Counts the notifications pending delivery.
+     *
+     * @return The number of pending notifications; always 0 for an inline dispatcher.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops accepting notifications and abandons pending retries, failing their futures.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            for (CompletableFuture<Void> delivery : pending) {
+                delivery.completeExceptionally(new NotificationException("Notification failed!"));
+            }
+        }
+    }
+
+    private void schedule(User user, String message, int attempt, long delayMillis, CompletableFuture<Void> delivery) {
+        try {
+            executor.schedule(() -> {
+                if (attempt(user, message, attempt, delivery)) {
+                    schedule(user, message, attempt + 1, backoff(attempt), delivery);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            delivery.completeExceptionally(new NotificationException("Notification failed!"));
+        }
+    }
+
+    // Makes one attempt; returns true if another attempt should follow.
+    private boolean attempt(User user, String message, int attempt, CompletableFuture<Void> delivery) {
+        try {
+            user.sendNotification(message);
+            delivery.complete(null);
+            return false;
+        } catch (NotificationException e) {
+            events.notificationRetry(user.getId(), attempt, maxAttempts, e.getMessage());
+            // A rejected notification was not attempted; retrying right away would only be rejected again.
+            if (attempt < maxAttempts && !(e instanceof NotificationRejectedException)) {
+                return true;
+            }
+            NotificationException failure = new NotificationException("Notification failed!");
+            if (deadLetters != null) {
+                try {
+                    deadLetters.accept(new FailedNotification(user.getId(), message, e, attempt));
+                } catch (Throwable handlerFailure) {
+                    failure.addSuppressed(handlerFailure);
+                }
+            }
+            delivery.completeExceptionally(failure);
+            return false;
+        } catch (Throwable e) {
+            // Whatever escapes, the delivery must complete, or its pending permit is never released.
+            delivery.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    // Full jitter: a random delay between zero and the exponential backoff for the attempt.
+    private long backoff(int attempt) {
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static int validateAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid number of attempts.");
+        }
+        return maxAttempts;
+    }
+}
@@ -12,6 +12,8 @@ public class User {
     private final String name;
     // The unique identifier for the user.
     private final String id;
+    // The identifier in its primitive form, or UserKey.NONE if the identifier is not 12 digits.
+    private final long idKey;
     // The service responsible for sending notifications to users.
     private final NotificationService notificationService;
 
@@ -25,6 +27,7 @@ public class User {
     public User(String name, String id, NotificationService notificationService) {
         this.name = name;
         this.id = id;
+        this.idKey = UserKey.parse(id);
         this.notificationService = notificationService;
     }
 
@@ -49,6 +52,15 @@ public class User {
         return id;
     }
 
+    /**
+     * Retrieves the unique identifier of the user in its primitive form.
+     *
+     * @return The user's Id key, or {@link UserKey#NONE} if the Id is not 12 digits.
+     */
+    public long getIdKey() {
+        return idKey;
+    }
+
     /**
      * Retrieves the notification service associated with the user.
      *
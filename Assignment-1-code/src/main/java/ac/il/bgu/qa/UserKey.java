@@ -0,0 +1,52 @@
+package ac.il.bgu.qa;
+
+/**
+ * Canonical primitive encoding of a user Id: its 12 digits read as a long.
+ * Keys let stores hash and compare user Ids without touching strings.
+ */
+public final class UserKey {
+
+    // Key returned for anything that is not a valid user Id.
+    public static final long NONE = -1L;
+
+    // Number of digits in a user Id.
+    private static final int LENGTH = 12;
+
+    private UserKey() {
+    }
+
+    /**
+     * Parses a user Id into its key.
+     *
+     * @param userId The user Id.
+     * @return The key of the user Id, or {@link #NONE} if it is not 12 digits.
+     */
+    public static long parse(CharSequence userId) {
+        return IdentifierValidator.parseUserId(userId);
+    }
+
+    /**
+     * Parses a user Id into its key, rejecting invalid input.
+     *
+     * @param userId The user Id.
+     * @return The key of the user Id.
+     * @throws IllegalArgumentException If the user Id is not 12 digits.
+     */
+    public static long of(CharSequence userId) {
+        long key = parse(userId);
+        if (key == NONE) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return key;
+    }
+
+    /**
+     * Formats a key back into its user Id string.
+     *
+     * @param key The key of the user Id.
+     * @return The 12-digit user Id.
+     */
+    public static String toString(long key) {
+        return Keys.format(key, LENGTH);
+    }
+}
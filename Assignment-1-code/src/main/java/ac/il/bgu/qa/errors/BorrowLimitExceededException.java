@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception thrown when a user who already holds
+ * the maximum number of books attempts to borrow another one.
+ */
+public class BorrowLimitExceededException extends RuntimeException {
+
+    /**
+     * Constructs a new BorrowLimitExceededException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public BorrowLimitExceededException(String message) {
+        super(message);
+    }
+}
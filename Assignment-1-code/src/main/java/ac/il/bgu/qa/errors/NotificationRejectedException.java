@@ -0,0 +1,18 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a notification is rejected
+ * without being attempted, because the NotificationService's circuit breaker is
+ * open or its bulkhead is full. Retrying immediately is pointless.
+ */
+public class NotificationRejectedException extends NotificationException {
+
+    /**
+     * Constructs a new NotificationRejectedException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public NotificationRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a call to the ReviewService
+ * is rejected without being attempted, because its circuit breaker is open or
+ * its bulkhead is full.
+ */
+public class ReviewCallRejectedException extends ReviewException {
+
+    /**
+     * Constructs a new ReviewCallRejectedException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public ReviewCallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,41 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface for delivering notifications to users.
+ * <p>
+ * Unlike {@link NotificationService}, which belongs to a single user, an asynchronous notification service
+ * delivers to any user through that user's own notification service.
+ * {@link ac.il.bgu.qa.NotificationDispatcher} is one, adding retries; {@link #of} is a plain one.
+ */
+public interface AsyncNotificationService {
+
+    /**
+     * Sends a notification message to a user.
+     *
+     * @param user    The user to be notified.
+     * @param message The content of the notification message.
+     * @return A future completed once the notification is delivered, or completed exceptionally with a
+     *         {@link NotificationException} if there's an issue sending the notification.
+     */
+    CompletableFuture<Void> notifyUser(User user, String message);
+
+    /**
+     * Adapts the users' blocking notification services, making one delivery attempt for each
+     * notification on the given executor.
+     *
+     * @param executor Runs the blocking deliveries.
+     * @return The non-blocking notification service.
+     */
+    static AsyncNotificationService of(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        return (user, message) -> CompletableFuture.runAsync(() -> user.sendNotification(message), executor);
+    }
+}
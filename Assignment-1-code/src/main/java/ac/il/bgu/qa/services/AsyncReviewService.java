@@ -0,0 +1,71 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewCallRejectedException;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface for services that retrieve book reviews.
+ * <p>
+ * Use {@link #of} to run a blocking {@link ReviewService} on an executor.
+ */
+public interface AsyncReviewService {
+
+    /**
+     * Fetches the list of reviews for a book based on its ISBN.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return A future of the reviews associated with the given book's ISBN, completed exceptionally with a
+     *         {@link ReviewException} if there's an issue fetching the reviews.
+     */
+    CompletableFuture<List<String>> getReviewsForBook(String ISBN);
+
+    /**
+     * Adapts a blocking review service, running each fetch on the given executor and closing the service
+     * after it, as {@link ReviewSessionProvider#closingEach} does.
+     *
+     * @param reviewService The review service to adapt.
+     * @param executor      Runs the blocking fetches.
+     * @return The non-blocking view of the review service.
+     */
+    static AsyncReviewService of(ReviewService reviewService, Executor executor) {
+        return of(ReviewSessionProvider.closingEach(reviewService), executor);
+    }
+
+    /**
+     * Adapts review sessions leased from a provider, running each fetch on the given executor.
+     * A session is released after a successful fetch and invalidated after a failed one, unless the
+     * fetch was rejected with a {@link ReviewCallRejectedException} before it reached the session.
+     *
+     * @param reviewSessions Leases the review sessions.
+     * @param executor       Runs the blocking fetches.
+     * @return The non-blocking view of the review sessions.
+     */
+    static AsyncReviewService of(ReviewSessionProvider reviewSessions, Executor executor) {
+        if (reviewSessions == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        return ISBN -> CompletableFuture.supplyAsync(() -> {
+            ReviewService session = reviewSessions.acquire();
+            boolean healthy = true;
+            try {
+                return session.getReviewsForBook(ISBN);
+            } catch (ReviewException e) {
+                // A rejected call never reached the session, so the session is still good.
+                healthy = e instanceof ReviewCallRejectedException;
+                throw e;
+            } finally {
+                if (healthy) {
+                    reviewSessions.release(session);
+                } else {
+                    reviewSessions.invalidate(session);
+                }
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,454 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link DatabaseService} decorator that mirrors the borrow state of the catalog in a compressed bitmap,
+ * answering inventory queries without fetching every book.
+ * <p>
+ * Every book added through this decorator gets a dense ordinal, in the order books are first added, and its
+ * bit in an {@link OrdinalBitmap} is set while it is available. Books are spread by ISBN over locked
+ * stripes, each with its own bitmap; a borrow or return call and the update of the book's bit happen under
+ * the book's stripe lock, once the wrapped database accepted the call, so calls for one book update its bit
+ * in the order the database applied them while calls for other books go ahead. Counting available books
+ * touches one counter per stripe, and listing available books or narrowing a search to them touches only
+ * the bitmaps. Stripes are read one after another, so the answers for a busy catalog may not be from a
+ * single instant. Books already in the wrapped database are not tracked. Every other call is forwarded
+ * as is.
+ */
+public class AvailabilityDatabaseService implements DatabaseService {
+
+    // Number of stripes books are spread over; a power of two.
+    private static final int LOCK_STRIPES = 64;
+
+    private final DatabaseService delegate;
+    // Availability of the books by stripe.
+    private final Stripe[] stripes = new Stripe[LOCK_STRIPES];
+    // Guards assigning ordinals and growing the book array.
+    private final Object catalog = new Object();
+    // Ordinal of each tracked book by ISBN.
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    // Tracked books by ordinal; replaced by a larger copy when full.
+    private volatile Book[] books = new Book[16];
+
+    /**
+     * The books of one stripe.
+     */
+    private static final class Stripe {
+        // Orders the calls for the stripe's books with the updates of their bits, and guards the bitmap.
+        private final ReentrantLock lock = new ReentrantLock();
+        // Ordinals of the stripe's available books.
+        private final OrdinalBitmap available = new OrdinalBitmap();
+    }
+
+    /**
+     * Constructs an availability-tracking decorator.
+     *
+     * @param delegate The database to track.
+     */
+    public AvailabilityDatabaseService(DatabaseService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        Stripe stripe = stripes[stripe(ISBN)];
+        stripe.lock.lock();
+        try {
+            delegate.addBook(ISBN, book);
+            track(stripe, ISBN, book);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        BitSet locked = lock(books.keySet());
+        try {
+            delegate.addBooks(books);
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                track(stripes[stripe(entry.getKey())], entry.getKey(), entry.getValue());
+            }
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        Stripe stripe = stripes[stripe(ISBN)];
+        stripe.lock.lock();
+        try {
+            delegate.borrowBook(ISBN, userId);
+            mark(stripe, ISBN, false);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        String isbn = IsbnKey.toString(ISBN);
+        Stripe stripe = stripes[stripe(isbn)];
+        stripe.lock.lock();
+        try {
+            delegate.borrowBook(ISBN, userId);
+            mark(stripe, isbn, false);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        BitSet locked = lock(ISBNs);
+        try {
+            delegate.borrowBooks(ISBNs, userId);
+            for (String ISBN : ISBNs) {
+                mark(stripes[stripe(ISBN)], ISBN, false);
+            }
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        Stripe stripe = stripes[stripe(ISBN)];
+        stripe.lock.lock();
+        try {
+            delegate.returnBook(ISBN);
+            mark(stripe, ISBN, true);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        String isbn = IsbnKey.toString(ISBN);
+        Stripe stripe = stripes[stripe(isbn)];
+        stripe.lock.lock();
+        try {
+            delegate.returnBook(ISBN);
+            mark(stripe, isbn, true);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        BitSet locked = lock(ISBNs);
+        try {
+            delegate.returnBooks(ISBNs);
+            for (String ISBN : ISBNs) {
+                mark(stripes[stripe(ISBN)], ISBN, true);
+            }
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * Counts the tracked books that are available.
+     *
+     * @return The number of available books.
+     */
+    public long getAvailableCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                count += stripe.available.cardinality();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the tracked books.
+     *
+     * @return The number of books added through this decorator.
+     */
+    public int getTrackedCount() {
+        return ordinals.size();
+    }
+
+    /**
+     * Tells whether a tracked book is available.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return true if the book is tracked and not borrowed.
+     */
+    public boolean isAvailable(String ISBN) {
+        Integer ordinal = ISBN == null ? null : ordinals.get(ISBN);
+        if (ordinal == null) {
+            return false;
+        }
+        Stripe stripe = stripes[stripe(ISBN)];
+        stripe.lock.lock();
+        try {
+            return stripe.available.contains(ordinal);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the first available books, in the order they were added.
+     *
+     * @param limit The maximum number of books to return.
+     * @return The available books, at most limit of them.
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    public List<Book> getAvailableBooks(int limit) {
+        validateLimit(limit);
+        return first(null, limit);
+    }
+
+    /**
+     * Narrows a set of books, such as search results, to the available ones.
+     *
+     * @param candidates The books to narrow; untracked books are dropped.
+     * @param limit      The maximum number of books to return.
+     * @return The available candidates in the order they were added, at most limit of them.
+     * @throws IllegalArgumentException If the limit is not positive.
+     */
+    public List<Book> retainAvailable(Collection<Book> candidates, int limit) {
+        validateLimit(limit);
+        OrdinalBitmap[] wanted = new OrdinalBitmap[LOCK_STRIPES];
+        for (Book book : candidates) {
+            Integer ordinal = book == null || book.getISBN() == null ? null : ordinals.get(book.getISBN());
+            if (ordinal != null) {
+                int stripe = stripe(book.getISBN());
+                if (wanted[stripe] == null) {
+                    wanted[stripe] = new OrdinalBitmap();
+                }
+                wanted[stripe].add(ordinal);
+            }
+        }
+        return first(wanted, limit);
+    }
+
+    /**
+     * Finds available books whose title starts with a prefix, ignoring case.
+     *
+     * @param prefix The prefix of the title.
+     * @param limit  The maximum number of books to return.
+     * @return The matching available books in the order the wrapped database ranks them, at most limit of them.
+     * @throws UnsupportedOperationException If the wrapped database can neither search nor list its books.
+     */
+    public List<Book> findAvailableBooksByTitlePrefix(String prefix, int limit) {
+        validateLimit(limit);
+        return findAvailable(count -> delegate.findBooksByTitlePrefix(prefix, count), limit);
+    }
+
+    /**
+     * Finds available books whose author's name starts with a prefix, ignoring case.
+     *
+     * @param prefix The prefix of the author's name.
+     * @param limit  The maximum number of books to return.
+     * @return The matching available books in the order the wrapped database ranks them, at most limit of them.
+     * @throws UnsupportedOperationException If the wrapped database can neither search nor list its books.
+     */
+    public List<Book> findAvailableBooksByAuthorPrefix(String prefix, int limit) {
+        validateLimit(limit);
+        return findAvailable(count -> delegate.findBooksByAuthorPrefix(prefix, count), limit);
+    }
+
+    // Asks for a few more matches than wanted, and for more again while too many of them are borrowed.
+    private List<Book> findAvailable(IntFunction<List<Book>> find, int limit) {
+        int requested = (int) Math.min(Integer.MAX_VALUE, limit * 2L);
+        while (true) {
+            List<Book> matches = find.apply(requested);
+            List<Book> result = new ArrayList<>(limit);
+            for (Book book : matches) {
+                if (book != null && isAvailable(book.getISBN())) {
+                    result.add(book);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+            if (matches.size() < requested || requested == Integer.MAX_VALUE) {
+                return result;
+            }
+            requested = (int) Math.min(Integer.MAX_VALUE, requested * 4L);
+        }
+    }
+
+    // The smallest available ordinals of every stripe, or of the wanted ones, merged; wanted is null for all.
+    private List<Book> first(OrdinalBitmap[] wanted, int limit) {
+        int[] found = new int[0];
+        for (int i = 0; i < stripes.length; i++) {
+            if (wanted != null && wanted[i] == null) {
+                continue;
+            }
+            int[] ordinals;
+            stripes[i].lock.lock();
+            try {
+                OrdinalBitmap available = stripes[i].available;
+                ordinals = (wanted == null ? available : wanted[i].and(available)).first(limit);
+            } finally {
+                stripes[i].lock.unlock();
+            }
+            int length = found.length;
+            found = Arrays.copyOf(found, length + ordinals.length);
+            System.arraycopy(ordinals, 0, found, length, ordinals.length);
+        }
+        Arrays.sort(found);
+        return booksOf(Arrays.copyOf(found, Math.min(limit, found.length)));
+    }
+
+    // Gives a book its ordinal, keeping the one of a book it replaces; the caller holds the stripe lock.
+    private void track(Stripe stripe, String ISBN, Book book) {
+        if (ISBN == null || book == null) {
+            return;
+        }
+        int ordinal;
+        synchronized (catalog) {
+            Integer existing = ordinals.get(ISBN);
+            ordinal = existing != null ? existing : ordinals.size();
+            Book[] tracked = books;
+            if (ordinal == tracked.length) {
+                tracked = Arrays.copyOf(tracked, ordinal * 2);
+            }
+            tracked[ordinal] = book;
+            books = tracked;
+            ordinals.put(ISBN, ordinal);
+        }
+        if (book.isBorrowed()) {
+            stripe.available.remove(ordinal);
+        } else {
+            stripe.available.add(ordinal);
+        }
+    }
+
+    // The caller holds the stripe lock.
+    private void mark(Stripe stripe, String ISBN, boolean isAvailable) {
+        Integer ordinal = ISBN == null ? null : ordinals.get(ISBN);
+        if (ordinal == null) {
+            return;
+        } else if (isAvailable) {
+            stripe.available.add(ordinal);
+        } else {
+            stripe.available.remove(ordinal);
+        }
+    }
+
+    // Locks the stripes of a batch in ascending order, so concurrent batches cannot deadlock.
+    private BitSet lock(Collection<String> ISBNs) {
+        BitSet locked = new BitSet(LOCK_STRIPES);
+        for (String ISBN : ISBNs) {
+            locked.set(stripe(ISBN));
+        }
+        for (int i = locked.nextSetBit(0); i >= 0; i = locked.nextSetBit(i + 1)) {
+            stripes[i].lock.lock();
+        }
+        return locked;
+    }
+
+    private void unlock(BitSet locked) {
+        for (int i = locked.nextSetBit(0); i >= 0; i = locked.nextSetBit(i + 1)) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    private static int stripe(String ISBN) {
+        int hash = (ISBN == null ? 0 : ISBN.hashCode()) * 0x9E3779B9;
+        return hash >>> 26;
+    }
+
+    private List<Book> booksOf(int[] found) {
+        Book[] books = this.books;
+        List<Book> result = new ArrayList<>(found.length);
+        for (int ordinal : found) {
+            result.add(books[ordinal]);
+        }
+        return result;
+    }
+
+    private static void validateLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return delegate.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return delegate.findBooksByTitlePrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return delegate.findBooksByAuthorPrefix(prefix, limit);
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        delegate.forEachISBN(action);
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        delegate.forEachUserId(action);
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+}
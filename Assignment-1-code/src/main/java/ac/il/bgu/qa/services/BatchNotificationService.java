@@ -0,0 +1,40 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.List;
+
+/**
+ * A {@link NotificationService} that can deliver several messages to a user as one notification.
+ */
+public interface BatchNotificationService extends NotificationService {
+
+    /**
+     * Sends several notification messages to a specific user in one delivery.
+     *
+     * @param userId   The unique identifier of the user to be notified.
+     * @param messages The contents of the notification messages, in the order they were produced.
+     * @throws NotificationException If there's an issue sending the notification.
+     */
+    void notifyUser(String userId, List<String> messages) throws NotificationException;
+
+    @Override
+    default void notifyUser(String userId, String message) throws NotificationException {
+        notifyUser(userId, List.of(message));
+    }
+
+    /**
+     * Adapts a notification service that sends one message at a time, delivering a batch as a single
+     * message made of the batched messages joined by a separator.
+     *
+     * @param notificationService The service to adapt.
+     * @param separator           The text placed between two batched messages.
+     * @return The batch-capable service.
+     */
+    static BatchNotificationService joining(NotificationService notificationService, String separator) {
+        if (notificationService == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        return (userId, messages) -> notificationService.notifyUser(userId, String.join(separator, messages));
+    }
+}
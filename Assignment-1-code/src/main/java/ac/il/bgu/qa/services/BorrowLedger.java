@@ -0,0 +1,275 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.BatchOutcome;
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.UserKey;
+
+import java.util.Arrays;
+
+/**
+ * Records which user holds which book, in both directions, and caps the number of books a user may hold.
+ * <p>
+ * Books and users are addressed by their primitive keys: a {@link StripedLongMap} leads from a book to the
+ * holdings of its borrower, and from a user to their holdings, an open-addressing set of book keys. Every
+ * borrow and return flips the {@link Book}'s own state and updates the ledger under one lock per book,
+ * so the two agree even when calls on the same book race, and the limit is checked against the size of
+ * the holdings in constant time. A book the ledger records as held is not borrowed again, even through a
+ * different {@link Book} instance of it, as a database that builds a new one per lookup hands out; and
+ * undoing a borrow only clears the record of the user who made it. Only books borrowed through the ledger
+ * are recorded.
+ */
+public class BorrowLedger {
+
+    // The limit of a ledger that does not cap borrowing.
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    // Number of locks books are spread over; a power of two.
+    private static final int LOCK_STRIPES = 64;
+
+    // The maximum number of books a user may hold.
+    private final int maxBooksPerUser;
+    // Holdings of the borrower of each recorded book, by book key.
+    private final StripedLongMap<Holdings> holders = new StripedLongMap<>(16);
+    // Holdings of each user who borrowed, by user key.
+    private final StripedLongMap<Holdings> users = new StripedLongMap<>(16);
+    // Serializes the calls on each book.
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Constructs a ledger that does not cap borrowing.
+     */
+    public BorrowLedger() {
+        this(UNLIMITED);
+    }
+
+    /**
+     * Constructs a ledger.
+     *
+     * @param maxBooksPerUser The maximum number of books a user may hold at once.
+     */
+    public BorrowLedger(int maxBooksPerUser) {
+        if (maxBooksPerUser <= 0) {
+            throw new IllegalArgumentException("Invalid borrow limit.");
+        }
+        this.maxBooksPerUser = maxBooksPerUser;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Borrows a book for a user, if it is not borrowed and the user is below the limit.
+     *
+     * @param book    The book.
+     * @param ISBN    The key of the book's International Standard Book Number.
+     * @param userKey The Id key of the borrowing user.
+     * @return {@link BatchOutcome#BORROWED}, {@link BatchOutcome#ALREADY_BORROWED} or
+     *         {@link BatchOutcome#LIMIT_EXCEEDED}.
+     */
+    public BatchOutcome tryBorrow(Book book, long ISBN, long userKey) {
+        Holdings holdings = holdingsOf(userKey);
+        synchronized (lockFor(ISBN)) {
+            if (holders.get(ISBN) != null || !book.tryBorrow(userKey)) {
+                return BatchOutcome.ALREADY_BORROWED;
+            }
+            synchronized (holdings) {
+                if (holdings.size >= maxBooksPerUser) {
+                    book.tryReturn(userKey);
+                    return BatchOutcome.LIMIT_EXCEEDED;
+                }
+                holdings.add(ISBN);
+            }
+            holders.put(ISBN, holdings);
+            return BatchOutcome.BORROWED;
+        }
+    }
+
+    /**
+     * Returns a book, if it is borrowed.
+     *
+     * @param book The book.
+     * @param ISBN The key of the book's International Standard Book Number.
+     * @return true if this call returned the book, false if it was not borrowed.
+     */
+    public boolean tryReturn(Book book, long ISBN) {
+        synchronized (lockFor(ISBN)) {
+            if (!book.tryReturn()) {
+                return false;
+            }
+            release(ISBN, UserKey.NONE);
+            return true;
+        }
+    }
+
+    /**
+     * Undoes a borrow the database rejected, if the book is still held by the user.
+     *
+     * @param book    The book.
+     * @param ISBN    The key of the book's International Standard Book Number.
+     * @param userKey The Id key of the user who borrowed it.
+     */
+    public void undoBorrow(Book book, long ISBN, long userKey) {
+        synchronized (lockFor(ISBN)) {
+            book.tryReturn(userKey);
+            release(ISBN, userKey);
+        }
+    }
+
+    /**
+     * Retrieves the books a user holds.
+     *
+     * @param userKey The Id key of the user.
+     * @return The keys of the books' International Standard Book Numbers, in increasing order.
+     */
+    public long[] getBooksOf(long userKey) {
+        Holdings holdings = users.get(userKey);
+        if (holdings == null) {
+            return new long[0];
+        }
+        synchronized (holdings) {
+            return holdings.toSortedArray();
+        }
+    }
+
+    /**
+     * Counts the books a user holds.
+     *
+     * @param userKey The Id key of the user.
+     * @return The number of books.
+     */
+    public int getBorrowedCount(long userKey) {
+        Holdings holdings = users.get(userKey);
+        if (holdings == null) {
+            return 0;
+        }
+        synchronized (holdings) {
+            return holdings.size;
+        }
+    }
+
+    /**
+     * Retrieves the user holding a book.
+     *
+     * @param ISBN The key of the book's International Standard Book Number.
+     * @return The Id key of the borrower, or {@link UserKey#NONE} if the book is not recorded as borrowed.
+     */
+    public long getBorrowerOf(long ISBN) {
+        Holdings holdings = holders.get(ISBN);
+        return holdings == null ? UserKey.NONE : holdings.userKey;
+    }
+
+    /**
+     * Retrieves the maximum number of books a user may hold.
+     *
+     * @return The limit, or {@link #UNLIMITED}.
+     */
+    public int getMaxBooksPerUser() {
+        return maxBooksPerUser;
+    }
+
+    // Removes a book from its borrower's holdings, if held by the given user or any for NONE; the caller
+    // holds the book's lock.
+    private void release(long ISBN, long userKey) {
+        Holdings holdings = holders.get(ISBN);
+        if (holdings != null && (userKey == UserKey.NONE || holdings.userKey == userKey)) {
+            holders.remove(ISBN);
+            synchronized (holdings) {
+                holdings.remove(ISBN);
+            }
+        }
+    }
+
+    private Holdings holdingsOf(long userKey) {
+        Holdings holdings = users.get(userKey);
+        if (holdings == null) {
+            Holdings created = new Holdings(userKey);
+            holdings = users.putIfAbsent(userKey, created);
+            if (holdings == null) {
+                holdings = created;
+            }
+        }
+        return holdings;
+    }
+
+    private Object lockFor(long ISBN) {
+        long hash = ISBN * 0x9E3779B97F4A7C15L;
+        return locks[(int) (hash >>> 58) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * The books a user holds: an open-addressing set of book keys with linear probing. Guarded by its monitor.
+     */
+    private static final class Holdings {
+        // Marks a free slot; book keys are never negative.
+        private static final long FREE = -1L;
+
+        private final long userKey;
+        private long[] slots = newSlots(8);
+        private int size;
+
+        Holdings(long userKey) {
+            this.userKey = userKey;
+        }
+
+        void add(long ISBN) {
+            if ((size + 1) * 2 > slots.length) {
+                long[] old = slots;
+                slots = newSlots(old.length * 2);
+                for (long key : old) {
+                    if (key != FREE) {
+                        slots[indexOf(key)] = key;
+                    }
+                }
+            }
+            int index = indexOf(ISBN);
+            if (slots[index] == FREE) {
+                slots[index] = ISBN;
+                size++;
+            }
+        }
+
+        void remove(long ISBN) {
+            int index = indexOf(ISBN);
+            if (slots[index] == FREE) {
+                return;
+            }
+            slots[index] = FREE;
+            size--;
+            // Reinsert the rest of the probe run, so no key is cut off from its home slot.
+            int mask = slots.length - 1;
+            for (int next = (index + 1) & mask; slots[next] != FREE; next = (next + 1) & mask) {
+                long key = slots[next];
+                slots[next] = FREE;
+                slots[indexOf(key)] = key;
+            }
+        }
+
+        long[] toSortedArray() {
+            long[] keys = new long[size];
+            int count = 0;
+            for (long key : slots) {
+                if (key != FREE) {
+                    keys[count++] = key;
+                }
+            }
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        // The slot holding the key, or the free slot ending its probe run.
+        private int indexOf(long ISBN) {
+            int mask = slots.length - 1;
+            int index = (int) ((ISBN * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (slots[index] != FREE && slots[index] != ISBN) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private static long[] newSlots(int length) {
+            long[] slots = new long[length];
+            Arrays.fill(slots, FREE);
+            return slots;
+        }
+    }
+}
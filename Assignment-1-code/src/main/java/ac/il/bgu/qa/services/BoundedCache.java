@@ -0,0 +1,179 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of values by primitive long key with frequency-aware admission.
+ * <p>
+ * Keys are spread over independently locked stripes, so lookups of different keys rarely contend.
+ * Within a stripe, entries are kept in least-recently-used order. When a stripe is full, a new entry
+ * is admitted only if its key was accessed more often recently than the stripe's least recently used
+ * entry, according to a {@link FrequencySketch}; otherwise it is dropped. This keeps one-off lookups
+ * from flushing popular entries out of the cache.
+ * <p>
+ * A value loaded from the backing store is stored with the stamp of its key read before loading it;
+ * if the key was invalidated in the meantime, the value may be stale and is not stored. Invalidating
+ * one key leaves loads of other keys alone, except for the rare key that shares its stamp counter.
+ *
+ * @param <V> The type of the values.
+ */
+final class BoundedCache<V> {
+
+    // Most stripes a cache is split into; a power of two.
+    private static final int MAX_STRIPES = 16;
+    // Fewest entries a stripe holds, so small caches keep one LRU order and admission policy.
+    private static final int MIN_STRIPE_CAPACITY = 64;
+    // Stamp counters per stripe entry, so few keys share a counter.
+    private static final int STAMPS_PER_ENTRY = 2;
+
+    private final Stripe<V>[] stripes;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity The maximum number of entries.
+     */
+    @SuppressWarnings("unchecked")
+    BoundedCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        int count = Math.min(MAX_STRIPES, Math.max(1, Integer.highestOneBit(capacity / MIN_STRIPE_CAPACITY)));
+        stripes = (Stripe<V>[]) new Stripe<?>[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the stripe capacities add up to the cache capacity.
+            stripes[i] = new Stripe<>(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Retrieves a cached value and records the access.
+     *
+     * @param key The key.
+     * @return The cached value, or null on a miss.
+     */
+    V get(long key) {
+        return stripeFor(key).get(key);
+    }
+
+    /**
+     * Retrieves the stamp to pass to {@link #put} for a value about to be loaded.
+     *
+     * @param key The key of the value.
+     * @return The current stamp of the key.
+     */
+    long stamp(long key) {
+        return stripeFor(key).stamp(key);
+    }
+
+    /**
+     * Stores a loaded value, unless its key was invalidated since the stamp was read or the admission
+     * policy rejects it.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @param stamp The stamp of the key read before loading the value.
+     */
+    void put(long key, V value, long stamp) {
+        stripeFor(key).put(key, value, stamp);
+    }
+
+    /**
+     * Removes an entry, if cached.
+     *
+     * @param key The key.
+     */
+    void invalidate(long key) {
+        stripeFor(key).invalidate(key);
+    }
+
+    /**
+     * Takes a snapshot of the cache statistics. Stripes are read one after another, so the counts of a
+     * busy cache may not be from a single instant.
+     *
+     * @return The statistics.
+     */
+    CacheStatistics statistics() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        long size = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.hits;
+                misses += stripe.misses;
+                evictions += stripe.evictions;
+                size += stripe.entries.size();
+            }
+        }
+        return new CacheStatistics(hits, misses, evictions, size);
+    }
+
+    private Stripe<V> stripeFor(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 58) & (stripes.length - 1)];
+    }
+
+    // One independently locked part of the cache.
+    private static final class Stripe<V> {
+
+        private final int capacity;
+        private final LinkedHashMap<Long, V> entries;
+        private final FrequencySketch sketch;
+        // Invalidation counters, by hash of the key.
+        private final long[] stamps;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+            this.sketch = new FrequencySketch(capacity);
+            this.stamps = new long[Integer.highestOneBit(Math.max(capacity * STAMPS_PER_ENTRY, 16) * 2 - 1)];
+        }
+
+        synchronized V get(long key) {
+            sketch.increment(key);
+            V value = entries.get(key);
+            if (value == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return value;
+        }
+
+        synchronized long stamp(long key) {
+            return stamps[stampIndex(key)];
+        }
+
+        synchronized void put(long key, V value, long stamp) {
+            if (stamp != stamps[stampIndex(key)]) {
+                return;
+            }
+            if (entries.size() >= capacity && !entries.containsKey(key)) {
+                Iterator<Map.Entry<Long, V>> eldest = entries.entrySet().iterator();
+                long victim = eldest.next().getKey();
+                if (sketch.frequency(key) <= sketch.frequency(victim)) {
+                    return;
+                }
+                eldest.remove();
+                evictions++;
+            }
+            entries.put(key, value);
+        }
+
+        synchronized void invalidate(long key) {
+            stamps[stampIndex(key)]++;
+            entries.remove(key);
+        }
+
+        private int stampIndex(long key) {
+            long hash = (key ^ (key >>> 29)) * 0xBF58476D1CE4E5B9L;
+            return (int) (hash ^ (hash >>> 32)) & (stamps.length - 1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent calls to a dependency, so a slow dependency cannot tie up every
+ * calling thread.
+ * <p>
+ * A call waits up to a fixed time for one of the permits and is rejected if none frees up.
+ */
+public class Bulkhead {
+
+    // Identifies the bulkhead in messages.
+    private final String name;
+    // Number of calls allowed at once.
+    private final int maxConcurrentCalls;
+    // How long a call waits for a permit.
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    /**
+     * Constructs a bulkhead.
+     *
+     * @param name               Identifies the bulkhead.
+     * @param maxConcurrentCalls The number of calls allowed at once.
+     * @param maxWaitMillis      How long a call waits for a permit before it is rejected.
+     */
+    public Bulkhead(String name, int maxConcurrentCalls, long maxWaitMillis) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid wait.");
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Waits for a permit to make a call. Every permitted call must be followed by {@link #release()}.
+     *
+     * @return true if the call may be made, false if it must be rejected.
+     */
+    public boolean tryAcquire() {
+        try {
+            if (permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCalls.increment();
+        return false;
+    }
+
+    /**
+     * Returns the permit of a finished call.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Retrieves the name of the bulkhead.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the number of calls in progress.
+     *
+     * @return The number of permits taken.
+     */
+    public int getConcurrentCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    /**
+     * Retrieves the number of calls rejected because no permit freed up in time.
+     *
+     * @return The rejection count.
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+}
@@ -0,0 +1,75 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * A snapshot of the hit, miss and eviction counts of a cache.
+ */
+public class CacheStatistics {
+
+    // Lookups answered from the cache.
+    private final long hits;
+    // Lookups that went to the wrapped service.
+    private final long misses;
+    // Entries removed to make room for others.
+    private final long evictions;
+    // Entries currently cached.
+    private final long size;
+
+    CacheStatistics(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * Retrieves the number of lookups answered from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the number of lookups that went to the wrapped service.
+     *
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Retrieves the number of entries removed to make room for others.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Retrieves the number of entries currently cached.
+     *
+     * @return The cache size.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Computes the fraction of lookups answered from the cache.
+     *
+     * @return The hit rate, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d evictions=%d size=%d hitRate=%.3f",
+                hits, misses, evictions, size, getHitRate());
+    }
+}
@@ -0,0 +1,247 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * A read-through {@link DatabaseService} decorator that caches books and users in memory.
+ * <p>
+ * Each cache holds a bounded number of entries and favours frequently read ones (see
+ * {@link BoundedCache}). Lookups that miss are forwarded to the wrapped database; books or users it
+ * does not have are not cached. Every write is forwarded first and then invalidates the entries it
+ * touched, so the next lookup reads the stored state.
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    // The database reads are forwarded to on a miss and writes are forwarded to.
+    private final DatabaseService delegate;
+    // Cached books by ISBN key.
+    private final BoundedCache<Book> books;
+    // Cached users by Id key.
+    private final BoundedCache<User> users;
+
+    /**
+     * Constructs a caching decorator.
+     *
+     * @param delegate     The database to cache.
+     * @param bookCapacity The maximum number of cached books.
+     * @param userCapacity The maximum number of cached users.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int bookCapacity, int userCapacity) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.books = new BoundedCache<>(bookCapacity);
+        this.users = new BoundedCache<>(userCapacity);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        long key = UserKey.parse(id);
+        if (key != UserKey.NONE) {
+            users.invalidate(key);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        return key == IsbnKey.NONE ? delegate.getBookByISBN(ISBN) : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        Book book = books.get(ISBN);
+        if (book == null) {
+            long stamp = books.stamp(ISBN);
+            book = delegate.getBookByISBN(ISBN);
+            if (book != null) {
+                books.put(ISBN, book, stamp);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserKey.parse(userId);
+        return key == UserKey.NONE ? delegate.getUserById(userId) : getUserById(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        User user = users.get(userId);
+        if (user == null) {
+            long stamp = users.stamp(userId);
+            user = delegate.getUserById(userId);
+            if (user != null) {
+                users.put(userId, user, stamp);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            books.invalidate(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            books.invalidate(ISBN);
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> added) {
+        delegate.addBooks(added);
+        added.keySet().forEach(this::invalidateBook);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Books that are cached are answered from the cache; the rest are fetched in one call to the
+     * wrapped database.
+     */
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        // Stamps of the missing books, by ISBN key.
+        Map<Long, Long> stamps = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            long key = IsbnKey.parse(ISBN);
+            Book book = key == IsbnKey.NONE ? null : books.get(key);
+            if (book != null) {
+                found.put(ISBN, book);
+            } else {
+                missing.add(ISBN);
+                if (key != IsbnKey.NONE) {
+                    stamps.put(key, books.stamp(key));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Book> entry : delegate.getBooksByISBN(missing).entrySet()) {
+                found.put(entry.getKey(), entry.getValue());
+                long key = IsbnKey.parse(entry.getKey());
+                Long stamp = stamps.get(key);
+                if (stamp != null) {
+                    books.put(key, entry.getValue(), stamp);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        try {
+            delegate.borrowBooks(ISBNs, userId);
+        } finally {
+            ISBNs.forEach(this::invalidateBook);
+        }
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        try {
+            delegate.returnBooks(ISBNs);
+        } finally {
+            ISBNs.forEach(this::invalidateBook);
+        }
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return delegate.findBooksByTitlePrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return delegate.findBooksByAuthorPrefix(prefix, limit);
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        delegate.forEachISBN(action);
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        delegate.forEachUserId(action);
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    /**
+     * Retrieves the statistics of the book cache.
+     *
+     * @return A snapshot of the book cache statistics.
+     */
+    public CacheStatistics getBookStatistics() {
+        return books.statistics();
+    }
+
+    /**
+     * Retrieves the statistics of the user cache.
+     *
+     * @return A snapshot of the user cache statistics.
+     */
+    public CacheStatistics getUserStatistics() {
+        return users.statistics();
+    }
+
+    private void invalidateBook(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        if (key != IsbnKey.NONE) {
+            books.invalidate(key);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.errors.ReviewCallRejectedException;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link ReviewService} decorator that caches the reviews of each book for a limited time.
+ * <p>
+ * Reviews are cached per ISBN for a fixed time to live. A book with no reviews is cached too, for its
+ * own (usually shorter) time to live, so repeated lookups of a book without reviews do not reach the
+ * wrapped service. Concurrent lookups of the same uncached ISBN share a single upstream call; if it
+ * fails, they all see its exception and nothing is cached. The total length of the cached review text
+ * is bounded; when it is exceeded, the oldest entries are evicted first.
+ * <p>
+ * Every upstream call leases a session from a {@link ReviewSessionProvider}, such as a
+ * {@link ReviewSessionPool}, and hands it back afterwards; a session that fails with a
+ * {@link ReviewException} other than a rejection is invalidated. A cache built over a plain {@link ReviewService} leases it
+ * through {@link ReviewSessionProvider#closingEach}, so that service is closed after every upstream
+ * call. The cache itself holds no session between lookups, so closing it is a no-op and it can be
+ * leased to a {@link ac.il.bgu.qa.Library} either way.
+ */
+public class CachingReviewService implements ReviewService {
+
+    /**
+     * The cached reviews of one book.
+     */
+    private static final class Entry {
+        final long key;
+        final List<String> reviews;
+        final long expiresAt;
+        final long characters;
+
+        Entry(long key, List<String> reviews, long expiresAt, long characters) {
+            this.key = key;
+            this.reviews = reviews;
+            this.expiresAt = expiresAt;
+            this.characters = characters;
+        }
+    }
+
+    // Leases the sessions cache misses are forwarded to.
+    private final ReviewSessionProvider upstream;
+    // How long a non-empty review list is cached.
+    private final long ttlNanos;
+    // How long an empty review list is cached.
+    private final long negativeTtlNanos;
+    // Bound on the total length of the cached review text.
+    private final long maxCharacters;
+    // Monotonic time source in nanoseconds.
+    private final LongSupplier clock;
+
+    // Cached reviews by ISBN key.
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    // Entries in insertion order, for eviction. May hold entries that were already replaced or removed.
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    // Number of entries in the insertion order queue, live or not.
+    private final AtomicInteger queued = new AtomicInteger();
+    // Upstream calls in progress by ISBN key.
+    private final ConcurrentHashMap<Long, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+    // Total length of the cached review text.
+    private final AtomicLong characters = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a caching decorator that closes the wrapped service after every upstream call.
+     *
+     * @param delegate          The service to cache.
+     * @param ttlMillis         How long the reviews of a book are cached.
+     * @param negativeTtlMillis How long the absence of reviews for a book is cached; 0 disables negative caching.
+     * @param maxCharacters     The maximum total length of the cached review text.
+     */
+    public CachingReviewService(ReviewService delegate, long ttlMillis, long negativeTtlMillis, long maxCharacters) {
+        this(closingEach(delegate), ttlMillis, negativeTtlMillis, maxCharacters, System::nanoTime);
+    }
+
+    /**
+     * Constructs a caching decorator that leases a session for every upstream call.
+     *
+     * @param upstream          Leases the sessions cache misses are forwarded to.
+     * @param ttlMillis         How long the reviews of a book are cached.
+     * @param negativeTtlMillis How long the absence of reviews for a book is cached; 0 disables negative caching.
+     * @param maxCharacters     The maximum total length of the cached review text.
+     */
+    public CachingReviewService(ReviewSessionProvider upstream, long ttlMillis, long negativeTtlMillis,
+                                long maxCharacters) {
+        this(upstream, ttlMillis, negativeTtlMillis, maxCharacters, System::nanoTime);
+    }
+
+    CachingReviewService(ReviewSessionProvider upstream, long ttlMillis, long negativeTtlMillis, long maxCharacters,
+                         LongSupplier clock) {
+        if (upstream == null) {
+            throw new IllegalArgumentException("Invalid review session provider.");
+        } else if (ttlMillis < 0 || negativeTtlMillis < 0) {
+            throw new IllegalArgumentException("Invalid time to live.");
+        } else if (maxCharacters < 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        this.upstream = upstream;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000;
+        this.maxCharacters = maxCharacters;
+        this.clock = clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list is unmodifiable. An ISBN that is not a valid ISBN-13 is forwarded uncached.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long key = IsbnKey.parse(ISBN);
+        if (key == IsbnKey.NONE) {
+            return fetch(ISBN);
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (clock.getAsLong() - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.reviews;
+            }
+            remove(entry);
+        }
+
+        CompletableFuture<List<String>> call = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            hits.increment();
+            return await(existing);
+        }
+
+        misses.increment();
+        try {
+            List<String> reviews = fetch(ISBN);
+            cache(key, reviews);
+            call.complete(reviews);
+            return reviews;
+        } catch (Throwable e) {
+            // Waiters must never be left blocked, whatever the lookup threw.
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Does nothing: upstream sessions are handed back after every call.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Drops the cached reviews of a book, so the next lookup reaches the wrapped service.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        Entry entry = key == IsbnKey.NONE ? null : entries.get(key);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Drops all cached reviews.
+     */
+    public void invalidateAll() {
+        for (Entry entry : entries.values()) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the cache statistics. Lookups that waited for a concurrent upstream call
+     * count as hits.
+     *
+     * @return The statistics.
+     */
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    /**
+     * Retrieves the total length of the cached review text.
+     *
+     * @return The number of cached characters.
+     */
+    public long getCachedCharacters() {
+        return characters.get();
+    }
+
+    private List<String> fetch(String ISBN) {
+        ReviewService session = upstream.acquire();
+        List<String> reviews;
+        boolean healthy = true;
+        try {
+            reviews = session.getReviewsForBook(ISBN);
+        } catch (ReviewException e) {
+            // A rejected call never reached the session, so the session is still good.
+            healthy = e instanceof ReviewCallRejectedException;
+            throw e;
+        } finally {
+            if (healthy) {
+                upstream.release(session);
+            } else {
+                upstream.invalidate(session);
+            }
+        }
+        return reviews == null || reviews.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(reviews));
+    }
+
+    private void cache(long key, List<String> reviews) {
+        long ttl = reviews.isEmpty() ? negativeTtlNanos : ttlNanos;
+        long length = 0;
+        for (String review : reviews) {
+            length += review == null ? 0 : review.length();
+        }
+        if (ttl == 0 || length > maxCharacters) {
+            return;
+        }
+
+        Entry entry = new Entry(key, reviews, clock.getAsLong() + ttl, length);
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            characters.addAndGet(-replaced.characters);
+        }
+        characters.addAndGet(length);
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+
+        while (characters.get() > maxCharacters) {
+            Entry eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            if (remove(eldest)) {
+                evictions.increment();
+            }
+        }
+
+        // Expired, replaced and invalidated entries stay queued; sweep them out once they dominate the queue.
+        if (queued.get() > 2 * entries.size() + 64) {
+            for (Iterator<Entry> it = insertionOrder.iterator(); it.hasNext(); ) {
+                Entry queuedEntry = it.next();
+                if (entries.get(queuedEntry.key) != queuedEntry) {
+                    it.remove();
+                    queued.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Removes an entry if it is still the cached one for its key.
+    private boolean remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            characters.addAndGet(-entry.characters);
+            return true;
+        }
+        return false;
+    }
+
+    private static ReviewSessionProvider closingEach(ReviewService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        return ReviewSessionProvider.closingEach(delegate);
+    }
+
+    private static List<String> await(CompletableFuture<List<String>> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package ac.il.bgu.qa.services;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker that stops calls to a failing dependency for a while, so callers fail fast instead
+ * of waiting on it.
+ * <p>
+ * While {@link State#CLOSED}, the outcomes of the most recent calls are kept in a sliding window; once
+ * the window holds the minimum number of calls and the share of failures reaches the threshold, the
+ * breaker opens. While {@link State#OPEN}, every call is rejected. When the open duration has passed,
+ * the breaker lets a few trial calls through ({@link State#HALF_OPEN}): if they all succeed it closes
+ * again with an empty window, and if any fails it opens again.
+ * <p>
+ * Callers ask for permission before each call and report its outcome afterwards. Listeners are told of
+ * every state change, after the change, on the thread that caused it.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        // Calls are permitted and their outcomes recorded.
+        CLOSED,
+        // Calls are rejected.
+        OPEN,
+        // A limited number of trial calls are permitted.
+        HALF_OPEN
+    }
+
+    /**
+     * Receives the state changes of circuit breakers.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        /**
+         * Called after a circuit breaker changed state.
+         *
+         * @param name The name of the circuit breaker.
+         * @param from The previous state.
+         * @param to   The new state.
+         */
+        void onStateChange(String name, State from, State to);
+    }
+
+    // Identifies the breaker in events.
+    private final String name;
+    // Percentage of failed calls in the window that opens the breaker.
+    private final double failureRateThreshold;
+    // Number of calls the window must hold before the failure rate is evaluated.
+    private final int minimumCalls;
+    // How long the breaker stays open before trial calls are let through.
+    private final long openDurationNanos;
+    // Number of trial calls in the half-open state.
+    private final int halfOpenCalls;
+    // Monotonic time source in nanoseconds.
+    private final LongSupplier clock;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Outcomes of the most recent calls in a ring buffer; true for a failure.
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    private long successfulCalls;
+    private long failedCalls;
+    private long rejectedCalls;
+
+    /**
+     * Constructs a closed circuit breaker.
+     *
+     * @param name                 Identifies the breaker in events.
+     * @param windowSize           The number of most recent calls the failure rate is computed over.
+     * @param minimumCalls         The number of calls the window must hold before the breaker may open.
+     * @param failureRateThreshold The percentage of failed calls that opens the breaker.
+     * @param openDurationMillis   How long the breaker stays open before trial calls are let through.
+     * @param halfOpenCalls        The number of trial calls that must succeed to close the breaker.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          long openDurationMillis, int halfOpenCalls) {
+        this(name, windowSize, minimumCalls, failureRateThreshold, openDurationMillis, halfOpenCalls, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   long openDurationMillis, int halfOpenCalls, LongSupplier clock) {
+        if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("Invalid window.");
+        } else if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+            throw new IllegalArgumentException("Invalid failure rate threshold.");
+        } else if (openDurationMillis < 0) {
+            throw new IllegalArgumentException("Invalid open duration.");
+        }
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers a listener for state changes.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Asks for permission to make a call. Every permitted call must be followed by
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return true if the call may be made, false if it must be rejected.
+     */
+    public boolean tryAcquirePermission() {
+        State from;
+        State to;
+        boolean permitted;
+        synchronized (this) {
+            from = state;
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openDurationNanos) {
+                state = State.HALF_OPEN;
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.CLOSED) {
+                permitted = true;
+            } else if (state == State.HALF_OPEN && trialsStarted < halfOpenCalls) {
+                trialsStarted++;
+                permitted = true;
+            } else {
+                rejectedCalls++;
+                permitted = false;
+            }
+            to = state;
+        }
+        fire(from, to, from != to);
+        return permitted;
+    }
+
+    /**
+     * Gives back a permission the caller did not use, because the call was rejected for another
+     * reason before it was made. A trial call of a half-open breaker becomes available again.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    /**
+     * Records a permitted call that succeeded.
+     */
+    public void onSuccess() {
+        State from;
+        State to;
+        synchronized (this) {
+            successfulCalls++;
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (++trialsSucceeded == halfOpenCalls) {
+                    state = State.CLOSED;
+                    windowNext = 0;
+                    windowCount = 0;
+                    windowFailures = 0;
+                }
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+            to = state;
+        }
+        fire(from, to, from != to);
+    }
+
+    /**
+     * Records a permitted call that failed.
+     */
+    public void onFailure() {
+        State from;
+        State to;
+        synchronized (this) {
+            failedCalls++;
+            from = state;
+            if (state == State.HALF_OPEN) {
+                open();
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (windowCount >= minimumCalls && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                    open();
+                }
+            }
+            to = state;
+        }
+        fire(from, to, from != to);
+    }
+
+    /**
+     * Retrieves the name of the breaker.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the current state. An open breaker whose open duration has passed reports
+     * {@link State#OPEN} until the next call asks for permission.
+     *
+     * @return The state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Computes the failure rate over the calls in the window.
+     *
+     * @return The percentage of failed calls, or 0 if the window is empty.
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0 : windowFailures * 100.0 / windowCount;
+    }
+
+    /**
+     * Retrieves the number of permitted calls that succeeded.
+     *
+     * @return The success count.
+     */
+    public synchronized long getSuccessfulCalls() {
+        return successfulCalls;
+    }
+
+    /**
+     * Retrieves the number of permitted calls that failed.
+     *
+     * @return The failure count.
+     */
+    public synchronized long getFailedCalls() {
+        return failedCalls;
+    }
+
+    /**
+     * Retrieves the number of calls rejected while the breaker was not closed.
+     *
+     * @return The rejection count.
+     */
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowNext]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void fire(State from, State to, boolean changed) {
+        if (changed) {
+            for (StateListener listener : listeners) {
+                listener.onStateChange(name, from, to);
+            }
+        }
+    }
+}
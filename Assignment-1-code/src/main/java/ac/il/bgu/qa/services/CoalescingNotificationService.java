@@ -0,0 +1,224 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link NotificationService} that coalesces the messages sent to the same user within a time window
+ * into one delivery through a {@link BatchNotificationService}.
+ * <p>
+ * The first message for a user opens a batch; the batch is delivered when the window since that
+ * message elapses or when it reaches the maximum batch size, whichever comes first. Messages are
+ * delivered in the order they were sent. A single timer thread closes the batches; the deliveries
+ * themselves run on the given executor, so a slow user does not hold up the batches of others.
+ * <p>
+ * {@link #submit} queues a message and returns a future of its batch's delivery, so a failure reaches
+ * the caller, which may retry it. {@link #notifyUser} waits for that future, as a
+ * {@link ac.il.bgu.qa.NotificationDispatcher} expects of a blocking notification service; only
+ * messages sent by different threads can then share a batch.
+ * <p>
+ * Coalescing thus needs an asynchronous dispatcher. Behind an inline one, such as the default of
+ * {@link ac.il.bgu.qa.Library}, the thread that sends a message also produces the next one, so every
+ * call waits out the whole window and its batch holds that single message.
+ */
+public class CoalescingNotificationService implements NotificationService, AutoCloseable {
+
+    /**
+     * The messages waiting to be delivered to one user.
+     */
+    private static final class Batch {
+        final List<String> messages = new ArrayList<>();
+        final CompletableFuture<Void> delivery = new CompletableFuture<>();
+        ScheduledFuture<?> timer;
+    }
+
+    // The service batches are delivered through.
+    private final BatchNotificationService delegate;
+    // How long the first message of a batch waits for others.
+    private final long windowMillis;
+    // Number of messages that triggers an immediate delivery.
+    private final int maxBatchSize;
+    // Runs the deliveries.
+    private final Executor deliveries;
+    // Fires the window timers.
+    private final ScheduledExecutorService scheduler;
+
+    // Open batches by user Id.
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    // Set once closed; no batch is opened after that.
+    private volatile boolean closed;
+
+    /**
+     * Constructs a coalescing notification service.
+     *
+     * @param delegate     The service batches are delivered through.
+     * @param windowMillis How long the first message of a batch waits for others.
+     * @param maxBatchSize The number of messages that triggers an immediate delivery.
+     * @param deliveries   Runs the deliveries; not shut down by {@link #close}.
+     */
+    public CoalescingNotificationService(BatchNotificationService delegate, long windowMillis, int maxBatchSize,
+                                         Executor deliveries) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        } else if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Invalid window.");
+        } else if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size.");
+        } else if (deliveries == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        this.delegate = delegate;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.deliveries = deliveries;
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "notification-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Queues a message for a user and waits until it is delivered with the user's other messages.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     * @throws NotificationException If the batch could not be delivered or this service is closed.
+     */
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        try {
+            submit(userId, message).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a message for a user. The message is delivered with the user's other messages when the
+     * batch closes.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     * @return A future completed when the batch holding the message is delivered, or completed
+     *         exceptionally with the failure of the delivery, or with a {@link NotificationException} if
+     *         this service is closed.
+     */
+    public CompletableFuture<Void> submit(String userId, String message) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new NotificationException("Notification failed!"));
+        }
+        messages.increment();
+        Batch[] full = new Batch[1];
+        Batch queued = batches.compute(userId, (id, batch) -> {
+            if (batch == null) {
+                batch = new Batch();
+                Batch opened = batch;
+                try {
+                    opened.timer = scheduler.schedule(() -> deliver(id, opened), windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Closed concurrently; the batch is sent right away below.
+                    full[0] = opened;
+                }
+            }
+            batch.messages.add(message);
+            if (full[0] == null && batch.messages.size() < maxBatchSize) {
+                return batch;
+            }
+            if (batch.timer != null) {
+                batch.timer.cancel(false);
+            }
+            full[0] = batch;
+            return null;
+        });
+        Batch batch = queued != null ? queued : full[0];
+        if (full[0] != null) {
+            send(userId, full[0]);
+        }
+        return batch.delivery.copy();
+    }
+
+    /**
+     * Hands every open batch to the delivery executor now.
+     */
+    public void flush() {
+        for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+            entry.getValue().timer.cancel(false);
+            deliver(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Counts the messages queued so far.
+     *
+     * @return The number of messages.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * Counts the batches delivered so far, successfully or not.
+     *
+     * @return The number of deliveries.
+     */
+    public long getDeliveryCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * Stops accepting messages, hands every open batch to the delivery executor and stops the window
+     * timers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        scheduler.shutdown();
+    }
+
+    // Delivers a batch unless it was already delivered.
+    private void deliver(String userId, Batch batch) {
+        if (batches.remove(userId, batch)) {
+            send(userId, batch);
+        }
+    }
+
+    private void send(String userId, Batch batch) {
+        try {
+            deliveries.execute(() -> {
+                delivered.increment();
+                try {
+                    delegate.notifyUser(userId, Collections.unmodifiableList(batch.messages));
+                    batch.delivery.complete(null);
+                } catch (Throwable e) {
+                    batch.delivery.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.delivery.completeExceptionally(new NotificationException("Notification failed!"));
+        }
+    }
+}
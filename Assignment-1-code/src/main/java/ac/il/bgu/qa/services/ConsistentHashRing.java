@@ -0,0 +1,148 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Arrays;
+
+/**
+ * An immutable consistent-hash ring of named shards.
+ * <p>
+ * Every shard is placed on a 64-bit ring at a number of pseudo-random points, its virtual nodes, and a key
+ * belongs to the shard owning the first point at or after the key's hash, wrapping around. Adding or removing
+ * a shard therefore moves only the keys of the ring segments it gains or loses, about 1/N of them, and the
+ * virtual nodes spread each shard's share evenly around the ring. Lookups are a binary search over the
+ * sorted points.
+ */
+final class ConsistentHashRing {
+
+    // Sorted positions of the virtual nodes.
+    private final long[] points;
+    // Shard owning each point.
+    private final String[] owners;
+    // Names of the shards on the ring.
+    private final String[] shards;
+    private final int virtualNodes;
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param virtualNodes The number of points of each shard.
+     */
+    ConsistentHashRing(int virtualNodes) {
+        this(new String[0], virtualNodes);
+    }
+
+    private ConsistentHashRing(String[] shards, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Invalid number of virtual nodes.");
+        }
+        this.shards = shards;
+        this.virtualNodes = virtualNodes;
+
+        // Sort the points of every shard together, carrying each point's owner along.
+        int count = shards.length * virtualNodes;
+        long[][] placed = new long[count][];
+        for (int s = 0; s < shards.length; s++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[s * virtualNodes + v] = new long[]{hash(v, shards[s]), s};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = placed[i][0];
+            owners[i] = shards[(int) placed[i][1]];
+        }
+    }
+
+    /**
+     * Creates a ring with a shard added.
+     *
+     * @param shard The name of the shard.
+     * @return The new ring.
+     */
+    ConsistentHashRing with(String shard) {
+        String[] added = Arrays.copyOf(shards, shards.length + 1);
+        added[shards.length] = shard;
+        return new ConsistentHashRing(added, virtualNodes);
+    }
+
+    /**
+     * Creates a ring with a shard removed.
+     *
+     * @param shard The name of the shard.
+     * @return The new ring.
+     */
+    ConsistentHashRing without(String shard) {
+        return new ConsistentHashRing(
+                Arrays.stream(shards).filter(name -> !name.equals(shard)).toArray(String[]::new), virtualNodes);
+    }
+
+    /**
+     * Finds the shard a key belongs to.
+     *
+     * @param seed Separates the key spaces of different kinds of keys.
+     * @param key  The key.
+     * @return The name of the owning shard, or null if the ring is empty.
+     */
+    String owner(long seed, String key) {
+        return owner(hash(seed, key));
+    }
+
+    /**
+     * Finds the shard a position on the ring belongs to.
+     *
+     * @param hash The position, as computed by {@link #hash}.
+     * @return The name of the owning shard, or null if the ring is empty.
+     */
+    String owner(long hash) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Retrieves the positions of the virtual nodes; each ends the segment of the ring its shard owns.
+     *
+     * @return The positions in increasing order.
+     */
+    long[] getPoints() {
+        return points.clone();
+    }
+
+    /**
+     * Tells whether a shard is on the ring.
+     *
+     * @param shard The name of the shard.
+     * @return true if it is.
+     */
+    boolean contains(String shard) {
+        return Arrays.asList(shards).contains(shard);
+    }
+
+    /**
+     * Retrieves the names of the shards on the ring.
+     *
+     * @return The names, in the order the shards were added.
+     */
+    String[] getShards() {
+        return shards.clone();
+    }
+
+    // FNV-1a over the seed and the characters, finished with the 64-bit mixer of MurmurHash3.
+    static long hash(long seed, String key) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -1,10 +1,23 @@
 package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
 import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
 
 /**
  * Provides an interface for services responsible for managing the database of books and users.
+ * <p>
+ * Besides the string-keyed methods, books and users can be addressed by their primitive keys
+ * (see {@link IsbnKey} and {@link UserKey}). The key-based methods default to the string-keyed
+ * ones with the canonical form of the key; stores that index by key should override both.
  */
 public interface DatabaseService {
 
@@ -56,4 +69,178 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Fetches a book from the database using its ISBN key.
+     *
+     * @param ISBN The key of the International Standard Book Number.
+     * @return The book with the given ISBN or null if the book does not exist in the database.
+     */
+    default Book getBookByISBN(long ISBN) {
+        return getBookByISBN(IsbnKey.toString(ISBN));
+    }
+
+    /**
+     * Fetches a user from the database using their ID key.
+     *
+     * @param userId The key of the user's unique identifier.
+     * @return The user with the given ID or null if the user is not registered in the database.
+     */
+    default User getUserById(long userId) {
+        return getUserById(UserKey.toString(userId));
+    }
+
+    /**
+     * Borrows a book identified by its ISBN key for a user identified by their ID key.
+     *
+     * @param ISBN   The key of the International Standard Book Number of the book to be borrowed.
+     * @param userId The key of the unique identifier for the user borrowing the book.
+     */
+    default void borrowBook(long ISBN, long userId) {
+        borrowBook(IsbnKey.toString(ISBN), UserKey.toString(userId));
+    }
+
+    /**
+     * Marks a book identified by its ISBN key as returned in the database.
+     *
+     * @param ISBN The key of the International Standard Book Number of the book to be returned.
+     */
+    default void returnBook(long ISBN) {
+        returnBook(IsbnKey.toString(ISBN));
+    }
+
+    /**
+     * Adds several books to the database in one call.
+     * The default implementation adds them one by one; remote stores should override it.
+     *
+     * @param books The books to be added, by International Standard Book Number.
+     */
+    default void addBooks(Map<String, Book> books) {
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            addBook(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Fetches several books from the database in one call.
+     * The default implementation fetches them one by one; remote stores should override it.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books found, by ISBN. ISBNs with no book are absent from the map.
+     */
+    default Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> books = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = getBookByISBN(ISBN);
+            if (book != null) {
+                books.put(ISBN, book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Borrows several books for a user in one call, all or none of them.
+     * The default implementation borrows them one by one and, if one fails, returns the books it already
+     * borrowed before rethrowing; remote stores should override it.
+     *
+     * @param ISBNs  The International Standard Book Numbers of the books to be borrowed.
+     * @param userId The unique identifier for the user borrowing the books.
+     */
+    default void borrowBooks(Collection<String> ISBNs, String userId) {
+        List<String> borrowed = new ArrayList<>();
+        try {
+            for (String ISBN : ISBNs) {
+                borrowBook(ISBN, userId);
+                borrowed.add(ISBN);
+            }
+        } catch (RuntimeException e) {
+            for (String ISBN : borrowed) {
+                try {
+                    returnBook(ISBN);
+                } catch (RuntimeException undo) {
+                    e.addSuppressed(undo);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Marks several books as returned in one call.
+     * The default implementation returns them one by one; remote stores should override it.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books to be returned.
+     */
+    default void returnBooks(Collection<String> ISBNs) {
+        for (String ISBN : ISBNs) {
+            returnBook(ISBN);
+        }
+    }
+
+    /**
+     * Finds books whose title, or a word of it, starts with a prefix, ignoring case.
+     * The default implementation reads every book listed by {@link #forEachISBN}; indexed stores
+     * (see {@link IndexedDatabaseService}) override it to answer without scanning.
+     *
+     * @param prefix The prefix of the title.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database can neither search nor list its books.
+     */
+    default List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return PrefixIndex.scan(this, prefix, limit, Book::getTitle);
+    }
+
+    /**
+     * Finds books whose author's name, or a word of it, starts with a prefix, ignoring case.
+     * The default implementation reads every book listed by {@link #forEachISBN}; indexed stores
+     * (see {@link IndexedDatabaseService}) override it to answer without scanning.
+     *
+     * @param prefix The prefix of the author's name.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database can neither search nor list its books.
+     */
+    default List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return PrefixIndex.scan(this, prefix, limit, Book::getAuthor);
+    }
+
+    /**
+     * Visits the ISBN key of every book in the database, such as to move books between stores.
+     * The default implementation does not support listing; stores that can enumerate their books
+     * (see {@link InMemoryDatabaseService}) override it.
+     *
+     * @param action Receives each ISBN key; must not call back into the database.
+     * @throws UnsupportedOperationException If the database cannot list its books.
+     */
+    default void forEachISBN(LongConsumer action) {
+        throw new UnsupportedOperationException("Listing books not supported.");
+    }
+
+    /**
+     * Visits the Id key of every user in the database, such as to move users between stores.
+     * The default implementation does not support listing; stores that can enumerate their users
+     * (see {@link InMemoryDatabaseService}) override it.
+     *
+     * @param action Receives each Id key; must not call back into the database.
+     * @throws UnsupportedOperationException If the database cannot list its users.
+     */
+    default void forEachUserId(LongConsumer action) {
+        throw new UnsupportedOperationException("Listing users not supported.");
+    }
+
+    /**
+     * Fetches the Id key of the user a book is recorded as borrowed by, such as to move the book between stores.
+     * The default implementation reads it from the book, which does not name a borrower it was borrowed
+     * without; stores that record the borrower of each book (see {@link InMemoryDatabaseService}) override it.
+     *
+     * @param ISBN The key of the International Standard Book Number.
+     * @return The borrowing user's Id key, or {@link UserKey#NONE} if the book is absent, not borrowed or
+     *         its borrower is not known.
+     */
+    default long getBorrowerId(long ISBN) {
+        Book book = getBookByISBN(ISBN);
+        return book == null ? UserKey.NONE : book.getBorrowerKey();
+    }
 }
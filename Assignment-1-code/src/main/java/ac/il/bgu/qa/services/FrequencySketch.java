@@ -0,0 +1,83 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * A count-min sketch of how often primitive long keys were accessed recently, using four-bit
+ * counters packed sixteen to a long.
+ * <p>
+ * Every key maps to one counter in each of four rows; its estimated frequency is the smallest of
+ * them. After a number of increments proportional to the tracked capacity, all counters are halved
+ * so the estimate favours recent accesses. Not thread-safe; callers synchronize.
+ */
+final class FrequencySketch {
+
+    // One hash seed per row.
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    // Clears the high bit of every four-bit counter after a shift right by one.
+    private static final long RESET_MASK = 0x7777777777777777L;
+    // Largest value of a four-bit counter.
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int counterMask;
+    // Number of increments after which the counters are halved.
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Constructs a sketch for a cache.
+     *
+     * @param capacity The number of entries of the cache.
+     */
+    FrequencySketch(int capacity) {
+        int counters = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1) * 4;
+        table = new long[counters / 16];
+        counterMask = counters - 1;
+        sampleSize = Math.max(capacity, 16) * 10;
+    }
+
+    /**
+     * Records an access to a key.
+     *
+     * @param key The key.
+     */
+    void increment(long key) {
+        boolean added = false;
+        for (long seed : SEEDS) {
+            int index = index(key, seed);
+            int shift = (index & 15) << 2;
+            if (((table[index >>> 4] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[index >>> 4] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+    }
+
+    /**
+     * Estimates how often a key was accessed recently.
+     *
+     * @param key The key.
+     * @return The estimated frequency, between 0 and 15.
+     */
+    int frequency(long key) {
+        int frequency = MAX_COUNT;
+        for (long seed : SEEDS) {
+            int index = index(key, seed);
+            frequency = Math.min(frequency, (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT));
+        }
+        return frequency;
+    }
+
+    private int index(long key, long seed) {
+        long hash = (key + seed) * seed;
+        hash ^= hash >>> 32;
+        return (int) hash & counterMask;
+    }
+}
@@ -0,0 +1,84 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * A snapshot of a {@link LatencyHistogram}.
+ */
+public class HistogramSnapshot {
+
+    // Count of each bucket of the histogram.
+    private final long[] counts;
+    // Number of latencies recorded.
+    private final long count;
+    // Sum of the latencies recorded, in nanoseconds.
+    private final long sum;
+    // Highest latency recorded, in nanoseconds.
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Retrieves the number of latencies recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves the mean latency.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Retrieves the highest latency recorded.
+     *
+     * @return The maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Retrieves the latency at or below which a given percentage of the recorded latencies fall.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The latency in nanoseconds, accurate to the bucket resolution, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile.");
+        }
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + " mean=" + Math.round(getMean()) + "ns p50=" + getValueAtPercentile(50)
+                + "ns p99=" + getValueAtPercentile(99) + "ns max=" + max + "ns";
+    }
+}
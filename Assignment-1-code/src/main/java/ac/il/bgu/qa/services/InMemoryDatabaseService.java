@@ -0,0 +1,175 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.util.function.LongConsumer;
+
+/**
+ * An in-memory {@link DatabaseService} safe for use by many threads at once.
+ * <p>
+ * Books, users and the ISBN to user Id borrow association are kept in striped primitive-keyed
+ * hash maps: lookups never take a lock unless they race with a write to the same stripe, and
+ * writes contend only per stripe.
+ * <p>
+ * The store records which user borrowed a book; the borrowed state of the {@link Book} itself is
+ * maintained by the caller (see {@link ac.il.bgu.qa.Library}).
+ */
+public class InMemoryDatabaseService implements DatabaseService {
+
+    // Default number of stripes per map.
+    private static final int DEFAULT_CONCURRENCY = 64;
+
+    // Books by ISBN key.
+    private final StripedLongMap<Book> books;
+    // Users by Id key.
+    private final StripedLongMap<User> users;
+    // Id key of the user currently borrowing each book, by ISBN key.
+    private final StripedLongMap<Long> borrowers;
+
+    /**
+     * Constructs an empty database sized for {@value #DEFAULT_CONCURRENCY} concurrent writers.
+     */
+    public InMemoryDatabaseService() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Constructs an empty database.
+     *
+     * @param concurrency The expected number of concurrent writers.
+     */
+    public InMemoryDatabaseService(int concurrency) {
+        books = new StripedLongMap<>(concurrency);
+        users = new StripedLongMap<>(concurrency);
+        borrowers = new StripedLongMap<>(concurrency);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        books.put(IsbnKey.of(ISBN), book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        users.put(UserKey.of(id), user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        return key == IsbnKey.NONE ? null : books.get(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return books.get(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserKey.parse(userId);
+        return key == UserKey.NONE ? null : users.get(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(IsbnKey.of(ISBN), UserKey.of(userId));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotFoundException        If the book is not in the database.
+     * @throws BookAlreadyBorrowedException If the book is recorded as borrowed by another user.
+     */
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        if (!books.containsKey(ISBN)) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        Long borrower = borrowers.putIfAbsent(ISBN, userId);
+        if (borrower != null && borrower != userId) {
+            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(IsbnKey.of(ISBN));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotBorrowedException If the book is not recorded as borrowed.
+     */
+    @Override
+    public void returnBook(long ISBN) {
+        if (borrowers.remove(ISBN) == null) {
+            throw new BookNotBorrowedException("Book wasn't borrowed!");
+        }
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        books.forEach((key, book) -> action.accept(key));
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        users.forEach((key, user) -> action.accept(key));
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        Long borrower = borrowers.get(ISBN);
+        return borrower == null ? UserKey.NONE : borrower;
+    }
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        Long borrower = key == IsbnKey.NONE ? null : borrowers.get(key);
+        return borrower == null ? null : UserKey.toString(borrower);
+    }
+
+    /**
+     * Counts the books in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        return books.size();
+    }
+
+    /**
+     * Counts the users registered in the database.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+}
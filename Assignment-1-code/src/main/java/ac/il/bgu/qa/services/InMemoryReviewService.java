@@ -0,0 +1,97 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process {@link ReviewService} stand-in for a remote review backend, for tests and local runs.
+ * <p>
+ * Reviews are kept in memory by ISBN key. {@link #openSession()} opens another session on the same
+ * reviews, as a connection to the backend would; a closed session rejects lookups with a
+ * {@link ReviewException}.
+ */
+public class InMemoryReviewService implements ReviewService {
+
+    // Reviews by ISBN key, shared by all sessions.
+    private final ConcurrentHashMap<Long, List<String>> reviews;
+    // Number of sessions opened on the shared reviews, shared by all sessions.
+    private final AtomicLong sessionsOpened;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a review service with no reviews.
+     */
+    public InMemoryReviewService() {
+        this(new ConcurrentHashMap<>(), new AtomicLong());
+    }
+
+    private InMemoryReviewService(ConcurrentHashMap<Long, List<String>> reviews, AtomicLong sessionsOpened) {
+        this.reviews = reviews;
+        this.sessionsOpened = sessionsOpened;
+        sessionsOpened.incrementAndGet();
+    }
+
+    /**
+     * Opens another session on the same reviews.
+     *
+     * @return The new session.
+     */
+    public InMemoryReviewService openSession() {
+        return new InMemoryReviewService(reviews, sessionsOpened);
+    }
+
+    /**
+     * Adds a review of a book.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param review The review.
+     */
+    public void addReview(String ISBN, String review) {
+        reviews.computeIfAbsent(IsbnKey.of(ISBN), key -> new CopyOnWriteArrayList<>()).add(review);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ReviewException If this session is closed.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        if (closed) {
+            throw new ReviewException("Review session closed.");
+        }
+        long key = IsbnKey.parse(ISBN);
+        List<String> found = key == IsbnKey.NONE ? null : reviews.get(key);
+        return found == null ? Collections.emptyList() : new ArrayList<>(found);
+    }
+
+    /**
+     * Checks whether this session can still be used.
+     *
+     * @return true if the session is open, false otherwise.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Counts the sessions opened on these reviews, including the first.
+     *
+     * @return The number of sessions opened.
+     */
+    public long getSessionsOpened() {
+        return sessionsOpened.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
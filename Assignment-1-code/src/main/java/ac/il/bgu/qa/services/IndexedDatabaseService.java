@@ -0,0 +1,223 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link DatabaseService} decorator that keeps secondary indexes on the title and the author of books,
+ * answering prefix searches without scanning the catalog (see {@link PrefixIndex}).
+ * <p>
+ * The indexes are built at construction from the books already in the wrapped database, which must be able
+ * to list them (see {@link DatabaseService#forEachISBN}), and then maintained as books are added through
+ * this decorator, after the wrapped database accepted them. A book added again under the same
+ * ISBN replaces the earlier one in the indexes. Adding a book and indexing it happen under a lock per
+ * ISBN, so racing additions of one ISBN leave the indexes with the book the database kept. Every other
+ * call is forwarded as is.
+ */
+public class IndexedDatabaseService implements DatabaseService {
+
+    // Number of locks ISBNs are spread over; a power of two.
+    private static final int LOCK_STRIPES = 64;
+
+    private final DatabaseService delegate;
+    // Orders the additions of one ISBN to the database and to the indexes.
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // The indexed books by ISBN, to find their earlier entries when replaced.
+    private final ConcurrentHashMap<String, Book> indexed = new ConcurrentHashMap<>();
+    private final PrefixIndex titles = new PrefixIndex();
+    private final PrefixIndex authors = new PrefixIndex();
+
+    /**
+     * Constructs an indexing decorator.
+     *
+     * @param delegate The database to index.
+     * @throws UnsupportedOperationException If the database cannot list its books.
+     */
+    public IndexedDatabaseService(DatabaseService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        // The keys are collected first, as the database may not be called back while listing.
+        List<Long> keys = new ArrayList<>();
+        delegate.forEachISBN(keys::add);
+        for (long key : keys) {
+            Book book = delegate.getBookByISBN(key);
+            if (book != null) {
+                index(book.getISBN(), book);
+            }
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        ReentrantLock lock = locks[stripe(ISBN)];
+        lock.lock();
+        try {
+            delegate.addBook(ISBN, book);
+            index(ISBN, book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        // Lock the stripes of the batch in ascending order, so concurrent batches cannot deadlock.
+        BitSet stripes = new BitSet(LOCK_STRIPES);
+        for (String ISBN : books.keySet()) {
+            stripes.set(stripe(ISBN));
+        }
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            locks[i].lock();
+        }
+        try {
+            delegate.addBooks(books);
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                index(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Words of the title match as well, so "code" finds "Clean Code".
+     */
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return titles.find(prefix, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Words of the name match as well, so "mart" finds "Robert Martin".
+     */
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return authors.find(prefix, limit);
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        delegate.forEachISBN(action);
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        delegate.forEachUserId(action);
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    /**
+     * Counts the books in the indexes.
+     *
+     * @return The number of indexed books.
+     */
+    public int getIndexedCount() {
+        return indexed.size();
+    }
+
+    // Called with the ISBN's lock held.
+    private void index(String ISBN, Book book) {
+        if (book == null) {
+            return;
+        }
+        indexed.compute(ISBN, (key, previous) -> {
+            if (previous != null) {
+                titles.remove(key, previous.getTitle());
+                authors.remove(key, previous.getAuthor());
+            }
+            titles.add(key, book.getTitle(), book);
+            authors.add(key, book.getAuthor(), book);
+            return book;
+        });
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return delegate.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        delegate.borrowBooks(ISBNs, userId);
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        delegate.returnBooks(ISBNs);
+    }
+
+    private static int stripe(String ISBN) {
+        int hash = (ISBN == null ? 0 : ISBN.hashCode()) * 0x9E3779B9;
+        return hash >>> 26;
+    }
+}
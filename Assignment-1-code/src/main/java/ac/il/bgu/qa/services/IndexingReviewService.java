@@ -0,0 +1,46 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+
+/**
+ * A {@link ReviewService} decorator that adds the reviews it fetches to a {@link ReviewIndex}, so the
+ * index follows the review backend as books are looked up. Many decorators, such as one per pooled
+ * session, may share an index.
+ */
+public class IndexingReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+    private final ReviewIndex index;
+
+    /**
+     * Constructs an indexing decorator.
+     *
+     * @param delegate The service to fetch reviews from.
+     * @param index    Receives the fetched reviews.
+     */
+    public IndexingReviewService(ReviewService delegate, ReviewIndex index) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (index == null) {
+            throw new IllegalArgumentException("Invalid review index.");
+        }
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        List<String> reviews = delegate.getReviewsForBook(ISBN);
+        if (ISBN != null) {
+            index.index(ISBN, reviews);
+        }
+        return reviews;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,339 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link DatabaseService} decorator that records every mutation in a {@link WriteAheadLog}, so the
+ * mutations can be replayed into a fresh database after a crash.
+ * <p>
+ * Reads go straight to the wrapped database. A mutation is logged first and applied once its record is as
+ * durable as the log's {@link WriteAheadLog.Durability} promises; mutations of one book (or user) are applied
+ * in the order they were logged, but no lock is held while waiting for the disk. A mutation the wrapped
+ * database rejects stays in the log: replaying the log in order rejects it again. If its record cannot be
+ * written or forced, the mutation is not applied and the call fails with an {@link UncheckedIOException};
+ * a record that was written but not forced may still be replayed after a crash.
+ */
+public class LoggingDatabaseService implements DatabaseService, Closeable {
+
+    // Number of locks books and users are spread over; a power of two.
+    private static final int LOCK_STRIPES = 64;
+
+    // The database the mutations are applied to.
+    private final DatabaseService delegate;
+
+    // The log the mutations are recorded in.
+    private final WriteAheadLog log;
+
+    // Orders the mutations of the books and users hashed to each stripe.
+    private final Stripe[] stripes = new Stripe[LOCK_STRIPES];
+
+    /**
+     * Applies the mutations of the books and users hashed to it in the order they were logged.
+     */
+    private static final class Stripe {
+        // Number of mutations logged through the stripe.
+        long logged;
+        // Number of mutations applied or abandoned through the stripe.
+        long applied;
+    }
+
+    /**
+     * Appends the record of a mutation to the log.
+     */
+    private interface Record {
+        long append() throws IOException;
+    }
+
+    /**
+     * Constructs a logging decorator.
+     *
+     * @param delegate The database the mutations are applied to.
+     * @param log      The log the mutations are recorded in.
+     */
+    public LoggingDatabaseService(DatabaseService delegate, WriteAheadLog log) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (log == null) {
+            throw new IllegalArgumentException("Invalid log.");
+        }
+        this.delegate = delegate;
+        this.log = log;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Replays a log into a database and then opens the log to record further mutations to it.
+     *
+     * @param logFile              The log file.
+     * @param delegate             The database to recover into and apply further mutations to.
+     * @param durability           When logged mutations are forced to the storage device.
+     * @param flushIntervalMillis  How often the log is forced in {@link WriteAheadLog.Durability#ASYNC} mode.
+     * @param notificationServices Supplies the notification service of a replayed user, by user Id.
+     * @return The logging database.
+     * @throws IOException If the log cannot be read or opened.
+     */
+    public static LoggingDatabaseService recover(Path logFile, DatabaseService delegate,
+                                                 WriteAheadLog.Durability durability, long flushIntervalMillis,
+                                                 Function<String, NotificationService> notificationServices) throws IOException {
+        replay(logFile, delegate, notificationServices);
+        return new LoggingDatabaseService(delegate, WriteAheadLog.open(logFile, durability, flushIntervalMillis));
+    }
+
+    /**
+     * Replays a log into any database. Mutations the database rejects as it did when they were logged
+     * (an unknown, already borrowed or not borrowed book) are skipped.
+     *
+     * @param logFile              The log file.
+     * @param target               The database to apply the logged mutations to.
+     * @param notificationServices Supplies the notification service of a replayed user, by user Id.
+     * @return The number of mutations applied.
+     * @throws IOException If the log cannot be read, or the database fails to apply a mutation otherwise.
+     */
+    public static long replay(Path logFile, DatabaseService target,
+                              Function<String, NotificationService> notificationServices) throws IOException {
+        long[] applied = new long[1];
+        try {
+            replay(logFile, target, notificationServices, applied);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return applied[0];
+    }
+
+    private static void replay(Path logFile, DatabaseService target,
+                               Function<String, NotificationService> notificationServices,
+                               long[] applied) throws IOException {
+        WriteAheadLog.replay(logFile, new WriteAheadLog.Visitor() {
+            @Override
+            public void addBook(long ISBN, String title, String author) {
+                apply(() -> {
+                    String isbn = IsbnKey.toString(ISBN);
+                    target.addBook(isbn, new Book(isbn, title, author));
+                });
+            }
+
+            @Override
+            public void registerUser(long userId, String name) {
+                apply(() -> {
+                    String id = UserKey.toString(userId);
+                    target.registerUser(id, new User(name, id, notificationServices.apply(id)));
+                });
+            }
+
+            @Override
+            public void borrowBook(long ISBN, long userId) {
+                apply(() -> {
+                    // Keep the book's own state in step, as Library does.
+                    Book book = target.getBookByISBN(ISBN);
+                    if (book != null && !book.isBorrowed()) {
+                        book.tryBorrow(userId);
+                    }
+                    target.borrowBook(ISBN, userId);
+                });
+            }
+
+            @Override
+            public void returnBook(long ISBN) {
+                apply(() -> {
+                    Book book = target.getBookByISBN(ISBN);
+                    if (book != null) {
+                        book.tryReturn();
+                    }
+                    target.returnBook(ISBN);
+                });
+            }
+
+            private void apply(Runnable mutation) {
+                try {
+                    mutation.run();
+                    applied[0]++;
+                } catch (BookNotFoundException | BookAlreadyBorrowedException | BookNotBorrowedException e) {
+                    // The database rejected the mutation when it was logged, too.
+                } catch (RuntimeException e) {
+                    throw new UncheckedIOException(
+                            new IOException("Cannot replay a record of " + logFile, e));
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return delegate.findBooksByTitlePrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return delegate.findBooksByAuthorPrefix(prefix, limit);
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        delegate.forEachISBN(action);
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        delegate.forEachUserId(action);
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long key = IsbnKey.of(ISBN);
+        mutate(key, () -> log.appendAddBook(key, book.getTitle(), book.getAuthor()),
+                () -> delegate.addBook(ISBN, book));
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long key = UserKey.of(id);
+        mutate(key, () -> log.appendRegisterUser(key, user.getName()), () -> delegate.registerUser(id, user));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return delegate.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        long key = IsbnKey.of(ISBN);
+        long userKey = UserKey.of(userId);
+        mutate(key, () -> log.appendBorrowBook(key, userKey), () -> delegate.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        mutate(ISBN, () -> log.appendBorrowBook(ISBN, userId), () -> delegate.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        long key = IsbnKey.of(ISBN);
+        mutate(key, () -> log.appendReturnBook(key), () -> delegate.returnBook(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        mutate(ISBN, () -> log.appendReturnBook(ISBN), () -> delegate.returnBook(ISBN));
+    }
+
+    /**
+     * Forces every logged mutation to the storage device.
+     */
+    public void flush() {
+        try {
+            log.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces and closes the log. The wrapped database is left open.
+     *
+     * @throws IOException If the log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    // Logs a mutation, waits for its record to be durable without holding the stripe, and then applies it
+    // once every earlier mutation of the stripe was applied.
+    private void mutate(long key, Record record, Runnable apply) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        Stripe stripe = stripes[(int) (hash >>> 58) & (LOCK_STRIPES - 1)];
+        long ticket;
+        long sequence;
+        synchronized (stripe) {
+            try {
+                sequence = record.append();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ticket = stripe.logged++;
+        }
+
+        IOException failure = null;
+        try {
+            log.awaitDurable(sequence);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        synchronized (stripe) {
+            while (stripe.applied != ticket) {
+                try {
+                    stripe.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            try {
+                if (failure == null) {
+                    apply.run();
+                }
+            } finally {
+                stripe.applied++;
+                stripe.notifyAll();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * A persistent {@link DatabaseService} backed by memory-mapped files.
+ * <p>
+ * Books and users live in two {@link MappedRecordFile}s in a directory, {@code books.dat} and
+ * {@code users.dat}, each an on-disk hash table of fixed-layout records keyed by ISBN key and user Id
+ * key. The catalog survives restarts and reopening it only maps the files. Lookups are lock-free and
+ * probe the mapped pages directly; a {@link Book} or {@link User} object is only materialized for
+ * the record that is found.
+ * <p>
+ * Book record (512 bytes): sequence, title length, author length, ISBN key, borrower key (-1 if not
+ * borrowed), title (up to {@value #MAX_TITLE_BYTES} UTF-8 bytes), author (up to
+ * {@value #MAX_AUTHOR_BYTES} UTF-8 bytes). User record (256 bytes): sequence, name length, Id key,
+ * name (up to {@value #MAX_NAME_BYTES} UTF-8 bytes). A user's {@link NotificationService} cannot be
+ * persisted; it is supplied by a factory when the user is read.
+ * <p>
+ * Each lookup returns a new {@link Book} whose borrowed state reflects the record. Changes are written
+ * to the mapped pages immediately and reach the disk when the operating system flushes them, on
+ * {@link #flush()}, or on {@link #close()}.
+ */
+public class MappedDatabaseService implements DatabaseService, Closeable {
+
+    // Book record layout.
+    private static final int BOOK_RECORD_SIZE = 512;
+    private static final int BOOK_TITLE_LENGTH = 4;
+    private static final int BOOK_AUTHOR_LENGTH = 6;
+    private static final int BOOK_BORROWER = 16;
+    private static final int BOOK_TITLE = 24;
+    private static final int MAX_TITLE_BYTES = 320;
+    private static final int BOOK_AUTHOR = BOOK_TITLE + MAX_TITLE_BYTES;
+    private static final int MAX_AUTHOR_BYTES = BOOK_RECORD_SIZE - BOOK_AUTHOR;
+
+    // User record layout.
+    private static final int USER_RECORD_SIZE = 256;
+    private static final int USER_NAME_LENGTH = 4;
+    private static final int USER_NAME = 16;
+    private static final int MAX_NAME_BYTES = USER_RECORD_SIZE - USER_NAME;
+
+    // Borrower key of a book that is not borrowed.
+    private static final long NOT_BORROWED = -1L;
+
+    private final MappedRecordFile books;
+    private final MappedRecordFile users;
+    private final Function<String, NotificationService> notificationServices;
+
+    private MappedDatabaseService(MappedRecordFile books, MappedRecordFile users,
+                                  Function<String, NotificationService> notificationServices) {
+        this.books = books;
+        this.users = users;
+        this.notificationServices = notificationServices;
+    }
+
+    /**
+     * Opens the database stored in a directory, creating it if it does not exist.
+     *
+     * @param directory            The directory holding the database files.
+     * @param bookCapacity         The number of books a new database can hold; ignored if the database exists.
+     * @param userCapacity         The number of users a new database can hold; ignored if the database exists.
+     * @param notificationServices Supplies the notification service of a user read back from disk, by user Id.
+     * @return The open database.
+     * @throws IOException If the files cannot be opened or were not written by this class.
+     */
+    public static MappedDatabaseService open(Path directory, long bookCapacity, long userCapacity,
+                                             Function<String, NotificationService> notificationServices) throws IOException {
+        if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification service factory.");
+        }
+        Files.createDirectories(directory);
+        // Slots are kept at most three quarters full.
+        MappedRecordFile books = MappedRecordFile.open(directory.resolve("books.dat"), BOOK_RECORD_SIZE,
+                bookCapacity + bookCapacity / 3 + 1);
+        try {
+            MappedRecordFile users = MappedRecordFile.open(directory.resolve("users.dat"), USER_RECORD_SIZE,
+                    userCapacity + userCapacity / 3 + 1);
+            return new MappedDatabaseService(books, users, notificationServices);
+        } catch (IOException | RuntimeException e) {
+            books.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the title or author does not fit in a record.
+     * @throws IllegalStateException    If the database is full.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long key = IsbnKey.of(ISBN);
+        byte[] title = encode(book.getTitle(), MAX_TITLE_BYTES, "Invalid title.");
+        byte[] author = encode(book.getAuthor(), MAX_AUTHOR_BYTES, "Invalid author.");
+        // A book borrowed without naming the user cannot be recorded as borrowed.
+        long borrower = book.getBorrowerKey() == UserKey.NONE ? NOT_BORROWED : book.getBorrowerKey();
+
+        synchronized (books) {
+            long slot = books.findOrClaim(key);
+            boolean claimed = slot < 0;
+            slot = claimed ? ~slot : slot;
+            MappedByteBuffer buffer = books.buffer(slot);
+            int offset = books.offset(slot);
+            books.beginWrite(slot);
+            buffer.putLong(offset + MappedRecordFile.KEY, key);
+            buffer.putLong(offset + BOOK_BORROWER, borrower);
+            buffer.putShort(offset + BOOK_TITLE_LENGTH, (short) title.length);
+            buffer.put(offset + BOOK_TITLE, title);
+            buffer.putShort(offset + BOOK_AUTHOR_LENGTH, (short) author.length);
+            buffer.put(offset + BOOK_AUTHOR, author);
+            books.endWrite(slot, claimed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the name does not fit in a record.
+     * @throws IllegalStateException    If the database is full.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long key = UserKey.of(id);
+        byte[] name = encode(user.getName(), MAX_NAME_BYTES, "Invalid user name.");
+
+        synchronized (users) {
+            long slot = users.findOrClaim(key);
+            boolean claimed = slot < 0;
+            slot = claimed ? ~slot : slot;
+            MappedByteBuffer buffer = users.buffer(slot);
+            int offset = users.offset(slot);
+            users.beginWrite(slot);
+            buffer.putLong(offset + MappedRecordFile.KEY, key);
+            buffer.putShort(offset + USER_NAME_LENGTH, (short) name.length);
+            buffer.put(offset + USER_NAME, name);
+            users.endWrite(slot, claimed);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnKey.parse(ISBN);
+        return key == IsbnKey.NONE ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        long slot = books.find(ISBN);
+        if (slot < 0) {
+            return null;
+        }
+        MappedByteBuffer buffer = books.buffer(slot);
+        int offset = books.offset(slot);
+        while (true) {
+            int stamp = books.beginRead(slot);
+            long borrower = buffer.getLong(offset + BOOK_BORROWER);
+            String title = decode(buffer, offset + BOOK_TITLE, buffer.getShort(offset + BOOK_TITLE_LENGTH), MAX_TITLE_BYTES);
+            String author = decode(buffer, offset + BOOK_AUTHOR, buffer.getShort(offset + BOOK_AUTHOR_LENGTH), MAX_AUTHOR_BYTES);
+            if (books.validateRead(slot, stamp)) {
+                Book book = new Book(IsbnKey.toString(ISBN), title, author);
+                if (borrower != NOT_BORROWED) {
+                    book.tryBorrow(borrower);
+                }
+                return book;
+            }
+        }
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        long slot = books.find(ISBN);
+        if (slot < 0) {
+            return UserKey.NONE;
+        }
+        MappedByteBuffer buffer = books.buffer(slot);
+        int offset = books.offset(slot);
+        while (true) {
+            int stamp = books.beginRead(slot);
+            long borrower = buffer.getLong(offset + BOOK_BORROWER);
+            if (books.validateRead(slot, stamp)) {
+                return borrower == NOT_BORROWED ? UserKey.NONE : borrower;
+            }
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserKey.parse(userId);
+        return key == UserKey.NONE ? null : getUserById(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        long slot = users.find(userId);
+        if (slot < 0) {
+            return null;
+        }
+        MappedByteBuffer buffer = users.buffer(slot);
+        int offset = users.offset(slot);
+        while (true) {
+            int stamp = users.beginRead(slot);
+            String name = decode(buffer, offset + USER_NAME, buffer.getShort(offset + USER_NAME_LENGTH), MAX_NAME_BYTES);
+            if (users.validateRead(slot, stamp)) {
+                String id = UserKey.toString(userId);
+                return new User(name, id, notificationServices.apply(id));
+            }
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(IsbnKey.of(ISBN), UserKey.of(userId));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotFoundException        If the book is not in the database.
+     * @throws BookAlreadyBorrowedException If the book is recorded as borrowed by another user.
+     */
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        synchronized (books) {
+            long slot = books.find(ISBN);
+            if (slot < 0) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            MappedByteBuffer buffer = books.buffer(slot);
+            int offset = books.offset(slot);
+            long borrower = buffer.getLong(offset + BOOK_BORROWER);
+            if (borrower == userId) {
+                return;
+            } else if (borrower != NOT_BORROWED) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            books.beginWrite(slot);
+            buffer.putLong(offset + BOOK_BORROWER, userId);
+            books.endWrite(slot, false);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(IsbnKey.of(ISBN));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotBorrowedException If the book is not recorded as borrowed.
+     */
+    @Override
+    public void returnBook(long ISBN) {
+        synchronized (books) {
+            long slot = books.find(ISBN);
+            MappedByteBuffer buffer = slot < 0 ? null : books.buffer(slot);
+            int offset = slot < 0 ? 0 : books.offset(slot);
+            if (buffer == null || buffer.getLong(offset + BOOK_BORROWER) == NOT_BORROWED) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            books.beginWrite(slot);
+            buffer.putLong(offset + BOOK_BORROWER, NOT_BORROWED);
+            books.endWrite(slot, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads the key of every record slot of the books file without materializing the books.
+     */
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        books.forEachKey(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads the key of every record slot of the users file without materializing the users.
+     */
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        users.forEachKey(action);
+    }
+
+    /**
+     * Counts the books in the database.
+     *
+     * @return The number of books.
+     */
+    public long getBookCount() {
+        return books.count();
+    }
+
+    /**
+     * Counts the users registered in the database.
+     *
+     * @return The number of users.
+     */
+    public long getUserCount() {
+        return users.count();
+    }
+
+    /**
+     * Writes all changes through to the storage device.
+     */
+    public void flush() {
+        books.force();
+        users.force();
+    }
+
+    /**
+     * Flushes and closes the database files.
+     *
+     * @throws IOException If a file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            books.close();
+        } finally {
+            users.close();
+        }
+    }
+
+    private static byte[] encode(String value, int maxBytes, String error) {
+        if (value == null) {
+            throw new IllegalArgumentException(error);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException(error);
+        }
+        return bytes;
+    }
+
+    // Lengths read during a racing write may be garbage; clamp them so the read stays in the record.
+    private static String decode(MappedByteBuffer buffer, int offset, int length, int maxBytes) {
+        byte[] bytes = new byte[Math.max(0, Math.min(length, maxBytes))];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
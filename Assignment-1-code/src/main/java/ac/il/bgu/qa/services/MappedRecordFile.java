@@ -0,0 +1,347 @@
+package ac.il.bgu.qa.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * A file of fixed-size records addressed by a primitive long key, memory-mapped with
+ * {@link FileChannel#map}.
+ * <p>
+ * The file is an on-disk open-addressing hash table: record slot {@code i} holds the key whose probe
+ * sequence reaches it first, so a lookup touches only the mapped pages of the slots it probes and never
+ * copies the table onto the Java heap. Opening a file maps it without reading it, so it takes the same
+ * time regardless of size. Only a file that was not closed since it was last opened is scanned, to repair
+ * writes interrupted by a crash.
+ * <p>
+ * Layout: slot 0 is the header ({@code magic, version, record size, closed, capacity, count}); slots
+ * 1..capacity are records. Every record starts with an int sequence number (0 for an empty slot, odd
+ * while the record is being written) and the long key at offset 8. Writers are serialized on this
+ * object; readers are lock-free and retry when they observe a concurrent write through the sequence
+ * number.
+ */
+final class MappedRecordFile implements Closeable {
+
+    // Identifies files written by this class.
+    private static final int MAGIC = 0x51414C42;
+    // Version of the file layout.
+    private static final int FORMAT_VERSION = 1;
+    // Header field offsets within slot 0.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_CLOSED = 12;
+    private static final int HEADER_CAPACITY = 16;
+    private static final int HEADER_COUNT = 24;
+    // Record field offsets shared by every record layout.
+    static final int SEQUENCE = 0;
+    static final int KEY = 8;
+    // Each mapped segment covers at most 1 GiB.
+    private static final int SEGMENT_BITS = 30;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int recordSize;
+    private final int recordShift;
+    private final int segmentShift;
+    private final long capacity;
+    private long count;
+
+    private MappedRecordFile(FileChannel channel, int recordSize, long capacity) throws IOException {
+        this.channel = channel;
+        this.recordSize = recordSize;
+        this.recordShift = Integer.numberOfTrailingZeros(recordSize);
+        this.segmentShift = SEGMENT_BITS - recordShift;
+        this.capacity = capacity;
+
+        long fileSize = (capacity + 1) * recordSize;
+        long segmentBytes = 1L << SEGMENT_BITS;
+        int segmentCount = (int) ((fileSize + segmentBytes - 1) / segmentBytes);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * segmentBytes;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(segmentBytes, fileSize - start));
+        }
+    }
+
+    /**
+     * Opens a record file, creating it if it does not exist.
+     *
+     * @param file       The file.
+     * @param recordSize The size of a record in bytes; a power of two of at least 32.
+     * @param capacity   The number of record slots of a new file; rounded up to a power of two.
+     *                   Ignored when the file exists.
+     * @return The open file.
+     * @throws IOException If the file cannot be opened or was written with another layout.
+     */
+    static MappedRecordFile open(Path file, int recordSize, long capacity) throws IOException {
+        if (recordSize < 32 || Integer.bitCount(recordSize) != 1) {
+            throw new IllegalArgumentException("Invalid record size.");
+        } else if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (exists) {
+                ByteBuffer header = ByteBuffer.allocate(32);
+                channel.read(header, 0);
+                if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != FORMAT_VERSION
+                        || header.getInt(HEADER_RECORD_SIZE) != recordSize) {
+                    throw new IOException("Unrecognized record file: " + file);
+                }
+                MappedRecordFile records = new MappedRecordFile(channel, recordSize, header.getLong(HEADER_CAPACITY));
+                records.count = header.getLong(HEADER_COUNT);
+                if (header.getInt(HEADER_CLOSED) == 0) {
+                    records.recover();
+                }
+                records.markClosed(false);
+                return records;
+            }
+
+            long slots = Long.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+            MappedRecordFile records = new MappedRecordFile(channel, recordSize, slots);
+            MappedByteBuffer header = records.segments[0];
+            header.putInt(HEADER_VERSION, FORMAT_VERSION);
+            header.putInt(HEADER_RECORD_SIZE, recordSize);
+            header.putLong(HEADER_CAPACITY, slots);
+            header.putLong(HEADER_COUNT, 0);
+            // The magic number goes last, so a crash during creation leaves an unrecognized file.
+            header.force();
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.force();
+            return records;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Settles records left mid-write by a crash, which readers would otherwise wait on forever. A slot
+    // claimed but never published is emptied again; an interrupted update is published as it is.
+    private void recover() {
+        boolean repaired = false;
+        for (long slot = 1; slot <= capacity; slot++) {
+            MappedByteBuffer buffer = buffer(slot);
+            int offset = offset(slot);
+            int sequence = buffer.getInt(offset + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                continue;
+            }
+            if (sequence == 1) {
+                buffer.put(offset, new byte[recordSize]);
+            } else {
+                buffer.putInt(offset + SEQUENCE, sequence + 1);
+            }
+            repaired = true;
+        }
+        if (repaired) {
+            force();
+        }
+    }
+
+    /**
+     * Retrieves the buffer holding a record. Records never straddle segments.
+     *
+     * @param slot The record slot, 1-based.
+     * @return The mapped segment containing the record.
+     */
+    MappedByteBuffer buffer(long slot) {
+        return segments[(int) (slot >>> segmentShift)];
+    }
+
+    /**
+     * Retrieves the offset of a record within its buffer.
+     *
+     * @param slot The record slot, 1-based.
+     * @return The byte offset of the record in {@link #buffer(long)}.
+     */
+    int offset(long slot) {
+        return (int) ((slot & ((1L << segmentShift) - 1)) << recordShift);
+    }
+
+    /**
+     * Finds the slot holding a key. Lock-free; the caller must read the record through
+     * {@link #beginRead} and {@link #validateRead}.
+     *
+     * @param key The key.
+     * @return The record slot, or -1 if the key is absent.
+     */
+    long find(long key) {
+        long mask = capacity - 1;
+        long index = hash(key) & mask;
+        for (long probes = 0; probes < capacity; probes++) {
+            long slot = index + 1;
+            MappedByteBuffer buffer = buffer(slot);
+            int offset = offset(slot);
+            int sequence = waitStable(buffer, offset);
+            if (sequence == 0) {
+                return -1;
+            }
+            // Keys never change once written, so no validation is needed.
+            if (buffer.getLong(offset + KEY) == key) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot holding a key, or claims an empty one for it. Must be called with this object locked.
+     *
+     * @param key The key.
+     * @return The record slot; negative (the bitwise complement of the slot) if the slot was empty.
+     * @throws IllegalStateException If the file is full.
+     */
+    long findOrClaim(long key) {
+        assert Thread.holdsLock(this);
+        long mask = capacity - 1;
+        long index = hash(key) & mask;
+        while (true) {
+            long slot = index + 1;
+            MappedByteBuffer buffer = buffer(slot);
+            int offset = offset(slot);
+            if ((int) INT.getAcquire(buffer, offset + SEQUENCE) == 0) {
+                // Keep a quarter of the slots free so probe sequences stay short.
+                if ((count + 1) * 4 > capacity * 3) {
+                    throw new IllegalStateException("Database is full.");
+                }
+                return ~slot;
+            }
+            if (buffer.getLong(offset + KEY) == key) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Marks the start of a write to a record. Must be called with this object locked.
+     *
+     * @param slot The record slot.
+     */
+    void beginWrite(long slot) {
+        MappedByteBuffer buffer = buffer(slot);
+        int offset = offset(slot);
+        int sequence = (int) INT.getAcquire(buffer, offset + SEQUENCE);
+        INT.setRelease(buffer, offset + SEQUENCE, sequence + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Marks the end of a write to a record, publishing it to readers. Must be called with this object locked.
+     *
+     * @param slot    The record slot.
+     * @param claimed Whether the record was written into a previously empty slot.
+     */
+    void endWrite(long slot, boolean claimed) {
+        MappedByteBuffer buffer = buffer(slot);
+        int offset = offset(slot);
+        int sequence = (int) INT.getAcquire(buffer, offset + SEQUENCE);
+        INT.setRelease(buffer, offset + SEQUENCE, sequence + 1);
+        if (claimed) {
+            count++;
+            segments[0].putLong(HEADER_COUNT, count);
+        }
+    }
+
+    /**
+     * Starts an optimistic read of a record.
+     *
+     * @param slot The record slot.
+     * @return The stamp to pass to {@link #validateRead}.
+     */
+    int beginRead(long slot) {
+        return waitStable(buffer(slot), offset(slot));
+    }
+
+    /**
+     * Checks that no write to a record happened since {@link #beginRead}.
+     *
+     * @param slot  The record slot.
+     * @param stamp The stamp returned by {@link #beginRead}.
+     * @return true if the fields read in between are consistent, otherwise false.
+     */
+    boolean validateRead(long slot, int stamp) {
+        VarHandle.loadLoadFence();
+        return (int) INT.getAcquire(buffer(slot), offset(slot) + SEQUENCE) == stamp;
+    }
+
+    /**
+     * Visits the key of every record. Lock-free; a record added concurrently may be missed.
+     *
+     * @param action Receives each key.
+     */
+    void forEachKey(LongConsumer action) {
+        for (long slot = 1; slot <= capacity; slot++) {
+            MappedByteBuffer buffer = buffer(slot);
+            int offset = offset(slot);
+            // A slot still being claimed (sequence 1) may not hold its key yet; keys never change afterwards.
+            if ((int) INT.getAcquire(buffer, offset + SEQUENCE) > 1) {
+                action.accept(buffer.getLong(offset + KEY));
+            }
+        }
+    }
+
+    /**
+     * Counts the records in the file.
+     *
+     * @return The number of records.
+     */
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Writes all changes through to the storage device.
+     */
+    synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        markClosed(true);
+        channel.close();
+    }
+
+    // Records in the header whether the file was closed cleanly; the records are forced before it is set.
+    private void markClosed(boolean closed) {
+        MappedByteBuffer header = segments[0];
+        header.putInt(HEADER_CLOSED, closed ? 1 : 0);
+        header.force(0, recordSize);
+    }
+
+    // Spins while a record is being written and returns its stable sequence number.
+    private static int waitStable(MappedByteBuffer buffer, int offset) {
+        int sequence;
+        while (((sequence = (int) INT.getAcquire(buffer, offset + SEQUENCE)) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key & Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,157 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link DatabaseService} decorator that records the latency and outcome of every call in a
+ * {@link MetricsRegistry}, under {@code database.<method>}. The key-based overloads share the
+ * operation of their string-keyed counterparts.
+ */
+public class MeteredDatabaseService implements DatabaseService {
+
+    private final DatabaseService delegate;
+    private final OperationMetrics addBook;
+    private final OperationMetrics registerUser;
+    private final OperationMetrics getBookByISBN;
+    private final OperationMetrics getUserById;
+    private final OperationMetrics borrowBook;
+    private final OperationMetrics returnBook;
+    private final OperationMetrics addBooks;
+    private final OperationMetrics getBooksByISBN;
+    private final OperationMetrics borrowBooks;
+    private final OperationMetrics returnBooks;
+    private final OperationMetrics findBooksByTitlePrefix;
+    private final OperationMetrics findBooksByAuthorPrefix;
+    private final OperationMetrics forEachISBN;
+    private final OperationMetrics forEachUserId;
+    private final OperationMetrics getBorrowerId;
+
+    /**
+     * Constructs a metering decorator.
+     *
+     * @param delegate The service to measure.
+     * @param metrics  Receives the measurements.
+     */
+    public MeteredDatabaseService(DatabaseService delegate, MetricsRegistry metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.addBook = metrics.operation("database.addBook");
+        this.registerUser = metrics.operation("database.registerUser");
+        this.getBookByISBN = metrics.operation("database.getBookByISBN");
+        this.getUserById = metrics.operation("database.getUserById");
+        this.borrowBook = metrics.operation("database.borrowBook");
+        this.returnBook = metrics.operation("database.returnBook");
+        this.addBooks = metrics.operation("database.addBooks");
+        this.getBooksByISBN = metrics.operation("database.getBooksByISBN");
+        this.borrowBooks = metrics.operation("database.borrowBooks");
+        this.returnBooks = metrics.operation("database.returnBooks");
+        this.findBooksByTitlePrefix = metrics.operation("database.findBooksByTitlePrefix");
+        this.findBooksByAuthorPrefix = metrics.operation("database.findBooksByAuthorPrefix");
+        this.forEachISBN = metrics.operation("database.forEachISBN");
+        this.forEachUserId = metrics.operation("database.forEachUserId");
+        this.getBorrowerId = metrics.operation("database.getBorrowerId");
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        addBook.run(() -> delegate.addBook(ISBN, book));
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        registerUser.run(() -> delegate.registerUser(id, user));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return getBookByISBN.call(() -> delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return getUserById.call(() -> delegate.getUserById(userId));
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook.run(() -> delegate.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook.run(() -> delegate.returnBook(ISBN));
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return getBookByISBN.call(() -> delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return getUserById.call(() -> delegate.getUserById(userId));
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        borrowBook.run(() -> delegate.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        returnBook.run(() -> delegate.returnBook(ISBN));
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        addBooks.run(() -> delegate.addBooks(books));
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return getBooksByISBN.call(() -> delegate.getBooksByISBN(ISBNs));
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        borrowBooks.run(() -> delegate.borrowBooks(ISBNs, userId));
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        returnBooks.run(() -> delegate.returnBooks(ISBNs));
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return findBooksByTitlePrefix.call(() -> delegate.findBooksByTitlePrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return findBooksByAuthorPrefix.call(() -> delegate.findBooksByAuthorPrefix(prefix, limit));
+    }
+
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        forEachISBN.run(() -> delegate.forEachISBN(action));
+    }
+
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        forEachUserId.run(() -> delegate.forEachUserId(action));
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return getBorrowerId.call(() -> delegate.getBorrowerId(ISBN));
+    }
+}
@@ -0,0 +1,32 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+/**
+ * A {@link NotificationService} decorator that records the latency and outcome of every delivery attempt
+ * in a {@link MetricsRegistry}, under {@code notification.notifyUser}.
+ */
+public class MeteredNotificationService implements NotificationService {
+
+    private final NotificationService delegate;
+    private final OperationMetrics notifyUser;
+
+    /**
+     * Constructs a metering decorator.
+     *
+     * @param delegate The service to measure.
+     * @param metrics  Receives the measurements.
+     */
+    public MeteredNotificationService(NotificationService delegate, MetricsRegistry metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        this.delegate = delegate;
+        this.notifyUser = metrics.operation("notification.notifyUser");
+    }
+
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        notifyUser.run(() -> delegate.notifyUser(userId, message));
+    }
+}
@@ -0,0 +1,41 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+
+/**
+ * A {@link ReviewService} decorator that records the latency and outcome of every call in a
+ * {@link MetricsRegistry}, under {@code review.getReviewsForBook} and {@code review.close}.
+ */
+public class MeteredReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+    private final OperationMetrics getReviewsForBook;
+    private final OperationMetrics close;
+
+    /**
+     * Constructs a metering decorator.
+     *
+     * @param delegate The service to measure.
+     * @param metrics  Receives the measurements.
+     */
+    public MeteredReviewService(ReviewService delegate, MetricsRegistry metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        this.delegate = delegate;
+        this.getReviewsForBook = metrics.operation("review.getReviewsForBook");
+        this.close = metrics.operation("review.close");
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        return getReviewsForBook.call(() -> delegate.getReviewsForBook(ISBN));
+    }
+
+    @Override
+    public void close() {
+        close.run(delegate::close);
+    }
+}
@@ -0,0 +1,90 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link OperationMetrics} of every measured operation by name.
+ * <p>
+ * The metered decorators ({@link MeteredDatabaseService}, {@link MeteredReviewService},
+ * {@link MeteredNotificationService} and {@link ac.il.bgu.qa.MeteredLibrary}) look up their operations once,
+ * when they are constructed. The operations of a disabled registry record nothing, so metering can be
+ * switched off without rewiring the services.
+ */
+public class MetricsRegistry {
+
+    // Shared by every disabled registry.
+    private static final MetricsRegistry DISABLED = new MetricsRegistry(false);
+    // Handed out by the disabled registry for every operation.
+    private static final OperationMetrics DISABLED_OPERATION = new OperationMetrics("disabled", false);
+
+    // False to hand out operations that record nothing.
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an enabled registry.
+     */
+    public MetricsRegistry() {
+        this(true);
+    }
+
+    private MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Retrieves a registry that records nothing.
+     *
+     * @return The disabled registry.
+     */
+    public static MetricsRegistry disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Retrieves whether the registry records anything.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retrieves the metrics of an operation, creating them on first use. A disabled registry returns one
+     * shared instance that records nothing, whatever the name.
+     *
+     * @param name The name of the operation, such as {@code database.getBookByISBN}.
+     * @return The metrics of the operation.
+     */
+    public OperationMetrics operation(String name) {
+        if (!enabled) {
+            return DISABLED_OPERATION;
+        }
+        return operations.computeIfAbsent(name, key -> new OperationMetrics(key, true));
+    }
+
+    /**
+     * Retrieves the metrics of every operation used so far.
+     *
+     * @return The operations, sorted by name.
+     */
+    public Map<String, OperationMetrics> getOperations() {
+        return new TreeMap<>(operations);
+    }
+
+    /**
+     * Formats the metrics of every operation, one operation per line.
+     *
+     * @return The report.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (OperationMetrics operation : getOperations().values()) {
+            report.append(operation).append('\n');
+        }
+        return report.toString();
+    }
+}
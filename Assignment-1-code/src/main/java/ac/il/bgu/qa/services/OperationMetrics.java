@@ -0,0 +1,155 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The metrics of one operation: a latency histogram, and a counter for each outcome.
+ * <p>
+ * The outcome of a call is {@value #SUCCESS} or the simple name of the exception or error it threw, such
+ * as {@code BookNotFoundException}. A disabled instance (see {@link MetricsRegistry#disabled()}) records
+ * nothing and does not read the clock.
+ */
+public class OperationMetrics {
+
+    /**
+     * The outcome of a call that returned normally.
+     */
+    public static final String SUCCESS = "success";
+
+    // Names the operation in snapshots.
+    private final String name;
+    // False to record nothing.
+    private final boolean enabled;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Number of calls by outcome.
+    private final ConcurrentHashMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    OperationMetrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @return The start time to pass to {@link #success} or {@link #failure}.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a call that returned normally.
+     *
+     * @param start The start time returned by {@link #start}.
+     */
+    public void success(long start) {
+        if (enabled) {
+            record(start, SUCCESS);
+        }
+    }
+
+    /**
+     * Records a call that threw an exception.
+     *
+     * @param start   The start time returned by {@link #start}.
+     * @param failure The exception thrown.
+     */
+    public void failure(long start, Throwable failure) {
+        if (enabled) {
+            record(start, failure.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Times a call that returns a value.
+     *
+     * @param call The call.
+     * @return The value returned by the call.
+     */
+    public <T> T call(Supplier<T> call) {
+        long start = start();
+        try {
+            T result = call.get();
+            success(start);
+            return result;
+        } catch (Throwable e) {
+            failure(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Times a call that returns nothing.
+     *
+     * @param call The call.
+     */
+    public void run(Runnable call) {
+        long start = start();
+        try {
+            call.run();
+            success(start);
+        } catch (Throwable e) {
+            failure(start, e);
+            throw e;
+        }
+    }
+
+    private void record(long start, String outcome) {
+        latency.record(System.nanoTime() - start);
+        LongAdder counter = outcomes.get(outcome);
+        if (counter == null) {
+            counter = outcomes.computeIfAbsent(outcome, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Retrieves the name of the operation.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the number of calls that had a given outcome.
+     *
+     * @param outcome {@value #SUCCESS} or the simple name of an exception class.
+     * @return The call count.
+     */
+    public long getCount(String outcome) {
+        LongAdder counter = outcomes.get(outcome);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Retrieves the number of calls by outcome.
+     *
+     * @return The call counts, sorted by outcome.
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, counter) -> counts.put(outcome, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Takes a snapshot of the latencies of every call, whatever its outcome.
+     *
+     * @return The latency snapshot.
+     */
+    public HistogramSnapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getLatency() + " " + getCounts();
+    }
+}
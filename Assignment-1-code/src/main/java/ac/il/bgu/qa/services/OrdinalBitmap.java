@@ -0,0 +1,271 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative int ordinals, in the manner of a roaring bitmap.
+ * <p>
+ * Ordinals are grouped by their upper 16 bits into containers of up to 65536 values. A sparse container is a
+ * sorted array of the lower 16 bits, two bytes per value; once it would hold more than 4096 values it becomes
+ * a plain bitmap of 8 kilobytes, which is then the smaller form, and turns back into an array when it drops
+ * to half that. The total cardinality is maintained on every update, so counting is constant-time. Not
+ * thread-safe.
+ */
+final class OrdinalBitmap {
+
+    // Most values a container holds as an array.
+    private static final int ARRAY_LIMIT = 4096;
+
+    // Upper 16 bits of each container's values, in increasing order.
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    // Number of containers in use.
+    private int size;
+    // Number of ordinals in the set.
+    private long cardinality;
+
+    /**
+     * Adds an ordinal to the set.
+     *
+     * @param ordinal The ordinal; not negative.
+     * @return false if it was already in the set.
+     */
+    boolean add(int ordinal) {
+        char key = (char) (ordinal >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(containers, index, containers, index + 1, size - index);
+            keys[index] = key;
+            containers[index] = new Container();
+            size++;
+        }
+        if (!containers[index].add((char) ordinal)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Removes an ordinal from the set.
+     *
+     * @param ordinal The ordinal.
+     * @return false if it was not in the set.
+     */
+    boolean remove(int ordinal) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (ordinal >>> 16));
+        if (ordinal < 0 || index < 0 || !containers[index].remove((char) ordinal)) {
+            return false;
+        }
+        if (containers[index].cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        }
+        cardinality--;
+        return true;
+    }
+
+    /**
+     * Tells whether an ordinal is in the set.
+     *
+     * @param ordinal The ordinal.
+     * @return true if it is.
+     */
+    boolean contains(int ordinal) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (ordinal >>> 16));
+        return ordinal >= 0 && index >= 0 && containers[index].contains((char) ordinal);
+    }
+
+    /**
+     * Counts the ordinals in the set.
+     *
+     * @return The cardinality.
+     */
+    long cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Retrieves the smallest ordinals in the set.
+     *
+     * @param limit The maximum number of ordinals to return.
+     * @return The ordinals in increasing order.
+     */
+    int[] first(int limit) {
+        int[] ordinals = new int[(int) Math.min(limit, cardinality)];
+        int count = 0;
+        for (int i = 0; i < size && count < ordinals.length; i++) {
+            count = containers[i].copyTo(keys[i] << 16, ordinals, count);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Computes the intersection of this set with another.
+     *
+     * @param other The other set.
+     * @return A new set of the ordinals in both.
+     */
+    OrdinalBitmap and(OrdinalBitmap other) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int i = 0;
+        int j = 0;
+        // Containers pair up by key; a key in one set only contributes nothing.
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality > 0) {
+                    if (result.size == result.keys.length) {
+                        result.keys = Arrays.copyOf(result.keys, result.size * 2);
+                        result.containers = Arrays.copyOf(result.containers, result.size * 2);
+                    }
+                    result.keys[result.size] = keys[i];
+                    result.containers[result.size++] = container;
+                    result.cardinality += container.cardinality;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The values sharing the upper 16 bits: a sorted array while sparse, a bitmap while dense.
+     */
+    private static final class Container {
+        // Sorted lower bits of the values; null while dense.
+        private char[] values = new char[4];
+        // One bit per possible value; null while sparse.
+        private long[] words;
+        private int cardinality;
+
+        boolean add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) != 0) {
+                    return false;
+                }
+                words[value >>> 6] |= bit;
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toWords();
+                return add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(cardinality * 2, 4), ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    return false;
+                }
+                words[value >>> 6] &= ~bit;
+                // Turning back at half the limit keeps a container near it from converting on every update.
+                if (--cardinality == ARRAY_LIMIT / 2) {
+                    toValues();
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean contains(char value) {
+            return words != null
+                    ? (words[value >>> 6] & (1L << value)) != 0
+                    : Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        // Copies the values, offset by base, into ordinals from offset on until it is full; returns the new offset.
+        int copyTo(int base, int[] ordinals, int offset) {
+            if (words == null) {
+                for (int i = 0; i < cardinality && offset < ordinals.length; i++) {
+                    ordinals[offset++] = base | values[i];
+                }
+                return offset;
+            }
+            for (int i = 0; i < words.length && offset < ordinals.length; i++) {
+                for (long word = words[i]; word != 0 && offset < ordinals.length; word &= word - 1) {
+                    ordinals[offset++] = base | (i << 6) | Long.numberOfTrailingZeros(word);
+                }
+            }
+            return offset;
+        }
+
+        Container and(Container other) {
+            Container result = new Container();
+            if (words != null && other.words != null) {
+                result.words = new long[words.length];
+                for (int i = 0; i < words.length; i++) {
+                    result.words[i] = words[i] & other.words[i];
+                    result.cardinality += Long.bitCount(result.words[i]);
+                }
+                result.values = null;
+                if (result.cardinality <= ARRAY_LIMIT) {
+                    result.toValues();
+                }
+                return result;
+            }
+            // Probe the other container with each value of the sparse one; the result is no larger than it.
+            Container sparse = words == null ? this : other;
+            Container probed = sparse == this ? other : this;
+            result.values = new char[Math.max(sparse.cardinality, 1)];
+            for (int i = 0; i < sparse.cardinality; i++) {
+                if (probed.contains(sparse.values[i])) {
+                    result.values[result.cardinality++] = sparse.values[i];
+                }
+            }
+            return result;
+        }
+
+        private void toWords() {
+            words = new long[1 << 10];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toValues() {
+            values = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            words = null;
+        }
+    }
+}
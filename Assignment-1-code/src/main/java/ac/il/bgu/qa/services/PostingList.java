@@ -0,0 +1,155 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Arrays;
+
+/**
+ * The documents a term occurs in, with the positions of each occurrence, compressed.
+ * <p>
+ * Documents are appended in increasing order of Id. Each is encoded as the gap from the previous Id, the
+ * number of occurrences, and the gaps between successive positions, all as variable-length integers of
+ * seven bits per byte, so most postings take one or two bytes per number. Not thread-safe; the
+ * {@link ReviewIndex} guards it.
+ */
+class PostingList {
+
+    private byte[] bytes = new byte[8];
+    // Bytes in use.
+    private int length;
+    // Id of the last document appended; -1 if none.
+    private int lastDocument = -1;
+    // Number of documents appended.
+    private int documents;
+
+    /**
+     * Appends a document.
+     *
+     * @param document  The document Id, greater than every Id appended before.
+     * @param positions The positions of the term in the document, in increasing order.
+     * @param count     The number of positions.
+     */
+    void append(int document, int[] positions, int count) {
+        writeVarint(document - lastDocument);
+        writeVarint(count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarint(positions[i] - previous);
+            previous = positions[i];
+        }
+        lastDocument = document;
+        documents++;
+    }
+
+    /**
+     * Counts the documents appended, including documents since deleted from the index.
+     *
+     * @return The document frequency.
+     */
+    int getDocumentCount() {
+        return documents;
+    }
+
+    /**
+     * Retrieves the encoded size of the list.
+     *
+     * @return The number of bytes used.
+     */
+    int getByteCount() {
+        return length;
+    }
+
+    /**
+     * Opens a cursor at the start of the list.
+     *
+     * @return The cursor.
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void writeVarint(int value) {
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Reads the documents of the list in order.
+     */
+    class Cursor {
+        private int offset;
+        private int document = -1;
+        private int count;
+        // Whether the positions of the current document were read.
+        private boolean positionsRead = true;
+
+        /**
+         * Moves to the next document.
+         *
+         * @return false if there is none.
+         */
+        boolean next() {
+            if (!positionsRead) {
+                for (int i = 0; i < count; i++) {
+                    readVarint();
+                }
+            }
+            if (offset >= length) {
+                return false;
+            }
+            document += readVarint();
+            count = readVarint();
+            positionsRead = false;
+            return true;
+        }
+
+        /**
+         * Retrieves the Id of the current document.
+         *
+         * @return The document Id.
+         */
+        int document() {
+            return document;
+        }
+
+        /**
+         * Retrieves the number of occurrences of the term in the current document.
+         *
+         * @return The term frequency.
+         */
+        int count() {
+            return count;
+        }
+
+        /**
+         * Reads the positions of the term in the current document; callable once per document.
+         *
+         * @return The positions in increasing order.
+         */
+        int[] positions() {
+            int[] positions = new int[count];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                position += readVarint();
+                positions[i] = position;
+            }
+            positionsRead = true;
+            return positions;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
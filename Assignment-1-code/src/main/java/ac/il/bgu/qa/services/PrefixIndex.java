@@ -0,0 +1,187 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * A case-insensitive prefix index of books by a text field, such as the title or the author.
+ * <p>
+ * The index is a sorted map from normalized text to book, so a prefix query is one logarithmic seek
+ * followed by a scan of the matching entries only. Besides the whole text, every word of it starts an
+ * entry of its own, so "mart" finds "Robert Martin". Each key ends with the book's ISBN, keeping books
+ * with the same text apart. Updates and queries may run concurrently.
+ */
+class PrefixIndex {
+
+    // Separates the text from the ISBN in a key; sorts before every character of the text.
+    private static final char SEPARATOR = '\u0000';
+
+    // Books by normalized text suffix and ISBN.
+    private final ConcurrentSkipListMap<String, Book> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * Indexes a book by a text.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @param text The text to index the book by; null to skip it.
+     * @param book The book.
+     */
+    void add(String ISBN, String text, Book book) {
+        if (text == null) {
+            return;
+        }
+        String normalized = normalize(text);
+        for (int start = 0; start < normalized.length(); start = nextWord(normalized, start)) {
+            entries.put(normalized.substring(start) + SEPARATOR + ISBN, book);
+        }
+    }
+
+    /**
+     * Removes a book indexed by a text.
+     *
+     * @param ISBN The International Standard Book Number the book was indexed under.
+     * @param text The text the book was indexed by; null if it was skipped.
+     */
+    void remove(String ISBN, String text) {
+        if (text == null) {
+            return;
+        }
+        String normalized = normalize(text);
+        for (int start = 0; start < normalized.length(); start = nextWord(normalized, start)) {
+            entries.remove(normalized.substring(start) + SEPARATOR + ISBN);
+        }
+    }
+
+    /**
+     * Finds the books whose text, or a word in it, starts with a prefix, ignoring case.
+     *
+     * @param prefix The prefix.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books in order of the matched text, each book once.
+     */
+    List<Book> find(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        List<Book> found = new ArrayList<>(Math.min(limit, 16));
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Book> entry : entries.tailMap(normalized, true).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(normalized)) {
+                break;
+            }
+            // A book found through several of its words is returned once.
+            if (seen.add(key.substring(key.lastIndexOf(SEPARATOR) + 1))) {
+                found.add(entry.getValue());
+                if (found.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Computes the key {@link #find} ranks a book by, so results of several indexes can be merged in the
+     * order one index would return them.
+     *
+     * @param prefix The prefix searched for.
+     * @param text   The text the book is indexed by.
+     * @param ISBN   The International Standard Book Number the book is indexed under.
+     * @return The smallest key of the book that starts with the prefix, or null if none does.
+     */
+    static String rankKey(String prefix, String text, String ISBN) {
+        if (text == null) {
+            return null;
+        }
+        String normalizedPrefix = normalize(prefix);
+        String normalized = normalize(text);
+        String best = null;
+        for (int start = 0; start < normalized.length(); start = nextWord(normalized, start)) {
+            String key = normalized.substring(start) + SEPARATOR + ISBN;
+            if (key.startsWith(normalizedPrefix) && (best == null || key.compareTo(best) < 0)) {
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the books of a database whose text, or a word in it, starts with a prefix, ignoring case, by
+     * reading every book. Returns what an index of the database would, in the same order.
+     *
+     * @param database The database to scan.
+     * @param prefix   The prefix.
+     * @param limit    The maximum number of books to return.
+     * @param text     Retrieves the text a book is matched by.
+     * @return The matching books in order of the matched text, each book once.
+     * @throws UnsupportedOperationException If the database cannot list its books.
+     */
+    static List<Book> scan(DatabaseService database, String prefix, int limit, Function<Book, String> text) {
+        // The keys are collected first, as the database may not be called back while listing.
+        long[][] keys = {new long[64]};
+        int[] count = {0};
+        database.forEachISBN(key -> {
+            if (count[0] == keys[0].length) {
+                keys[0] = Arrays.copyOf(keys[0], count[0] * 2);
+            }
+            keys[0][count[0]++] = key;
+        });
+
+        // The best matches so far by rank key, the worst dropped once there are more than limit.
+        TreeMap<String, Book> found = new TreeMap<>();
+        for (int i = 0; i < count[0]; i++) {
+            Book book = database.getBookByISBN(keys[0][i]);
+            String rank = book == null ? null : rankKey(prefix, text.apply(book), book.getISBN());
+            if (rank != null) {
+                found.put(rank, book);
+                if (found.size() > limit) {
+                    found.pollLastEntry();
+                }
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * Counts the entries of the index.
+     *
+     * @return The number of entries, one per indexed word.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    // Lower case, with the words separated by single spaces.
+    private static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == SEPARATOR) {
+                if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+                    normalized.append(' ');
+                }
+            } else {
+                normalized.append(c);
+            }
+        }
+        if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == ' ') {
+            normalized.setLength(normalized.length() - 1);
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // The start of the word after the one at start, or the length of the text if there is none.
+    private static int nextWord(String normalized, int start) {
+        int space = normalized.indexOf(' ', start);
+        return space < 0 ? normalized.length() : space + 1;
+    }
+}
@@ -0,0 +1,558 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link DatabaseService} replicated from a leader to read replicas.
+ * <p>
+ * Every write is applied by the leader and, once the leader accepted it, appended to an ordered change log
+ * under a sequence number. Each replica applies the log in order on a thread of its own, so replicas trail
+ * the leader but never diverge from its order. Reads go to the replicas in turn, as long as the replica
+ * meets the {@link ReadConsistency}, and to the leader otherwise. A replica whose store rejects a change
+ * stops applying and serves no more reads. Replicas in the same process share the leader's book and user
+ * objects.
+ * <p>
+ * {@link ReadConsistency#READ_YOUR_WRITES} follows the writes of each thread, so it does not cover reads a
+ * caller hands to other threads, such as the lookups of a {@link ac.il.bgu.qa.Library} with a lookup
+ * executor or of {@link AsyncDatabaseService#of}. For those, take the sequence number of the caller's last
+ * write with {@link #getLastWriteSequence} and read through {@link #readingAfter}, which carries it to
+ * whichever thread reads.
+ */
+public class ReplicatedDatabaseService implements DatabaseService, AutoCloseable {
+
+    /**
+     * Which replicas may serve a read.
+     */
+    public enum ReadConsistency {
+        // Every read goes to the leader.
+        LEADER,
+        // A replica that applied every write of the calling thread; a thread always sees its own writes,
+        // but not the writes of the thread that handed it the read (see readingAfter).
+        READ_YOUR_WRITES,
+        // A replica whose oldest unapplied change is at most the staleness bound old.
+        BOUNDED_STALENESS
+    }
+
+    /**
+     * A write accepted by the leader.
+     */
+    private static final class Change {
+        private final long sequence;
+        private final long timeMillis;
+        private final WriteAheadLog.Operation operation;
+        private final String ISBN;
+        private final String userId;
+        private final Book book;
+        private final User user;
+
+        Change(long sequence, long timeMillis, WriteAheadLog.Operation operation, String ISBN, String userId,
+               Book book, User user) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.operation = operation;
+            this.ISBN = ISBN;
+            this.userId = userId;
+            this.book = book;
+            this.user = user;
+        }
+    }
+
+    /**
+     * A read replica and the thread applying the change log to it.
+     */
+    private final class Replica implements Runnable {
+        private final DatabaseService store;
+        // Changes not yet applied, oldest first; the head stays queued while it is applied.
+        private final ConcurrentLinkedQueue<Change> backlog = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        // Sequence number of the last change applied.
+        private volatile long applied;
+        // Set once the store rejected a change.
+        private volatile boolean failed;
+
+        Replica(DatabaseService store, int index) {
+            this.store = store;
+            this.thread = new Thread(this, "replica-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!closed && !failed) {
+                Change change = backlog.peek();
+                if (change == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                try {
+                    apply(store, change);
+                    applied = change.sequence;
+                } catch (RuntimeException e) {
+                    // The replica no longer matches the leader; stop applying and serving reads.
+                    failed = true;
+                    backlog.clear();
+                    return;
+                }
+                backlog.poll();
+            }
+        }
+
+        // Whether the replica may serve a read that must see every change up to a sequence number.
+        boolean canServe(long after) {
+            if (failed || applied < after) {
+                return false;
+            } else if (consistency != ReadConsistency.BOUNDED_STALENESS) {
+                return true;
+            }
+            Change oldest = backlog.peek();
+            return oldest == null || clock.getAsLong() - oldest.timeMillis <= maxStalenessMillis;
+        }
+    }
+
+    private final DatabaseService leader;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ReadConsistency consistency;
+    private final long maxStalenessMillis;
+    private final LongSupplier clock;
+    // Orders the writes: the leader applies them and the log receives them in the same order.
+    private final ReentrantLock writes = new ReentrantLock();
+    // Sequence number of the last change logged; guarded by writes.
+    private long sequence;
+    // Sequence number of the last write of each thread.
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
+    // Spreads the reads over the replicas.
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a replicated database and starts applying the change log to the replicas.
+     *
+     * @param leader             The store applying every write.
+     * @param replicas           The stores serving reads; they should start with the same content as the leader.
+     * @param consistency        Which replicas may serve a read.
+     * @param maxStalenessMillis How old the oldest unapplied change of a replica may be for it to serve reads
+     *                           under {@link ReadConsistency#BOUNDED_STALENESS}.
+     */
+    public ReplicatedDatabaseService(DatabaseService leader, List<? extends DatabaseService> replicas,
+                                     ReadConsistency consistency, long maxStalenessMillis) {
+        this(leader, replicas, consistency, maxStalenessMillis, System::currentTimeMillis);
+    }
+
+    ReplicatedDatabaseService(DatabaseService leader, List<? extends DatabaseService> replicas,
+                              ReadConsistency consistency, long maxStalenessMillis, LongSupplier clock) {
+        if (leader == null || replicas == null || replicas.stream().anyMatch(store -> store == null)) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (consistency == null) {
+            throw new IllegalArgumentException("Invalid consistency.");
+        } else if (maxStalenessMillis < 0) {
+            throw new IllegalArgumentException("Invalid staleness.");
+        }
+        this.leader = leader;
+        this.consistency = consistency;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.clock = clock;
+        for (DatabaseService store : replicas) {
+            this.replicas.add(new Replica(store, this.replicas.size() + 1));
+        }
+        for (Replica replica : this.replicas) {
+            replica.thread.start();
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last write logged.
+     *
+     * @return The sequence number; 0 before the first write.
+     */
+    public long getSequence() {
+        writes.lock();
+        try {
+            return sequence;
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the calling thread's last write, to hand to {@link #readingAfter}
+     * along with a read run by another thread.
+     *
+     * @return The sequence number; 0 if the thread did not write.
+     */
+    public long getLastWriteSequence() {
+        return lastWrite.get()[0];
+    }
+
+    /**
+     * Creates a view of this database whose reads see every change up to a sequence number, on whichever
+     * thread they run, and every write made through the view. Reads go to a replica that applied them, or
+     * to the leader; writes go through this database.
+     *
+     * @param sequence The sequence number of the last write to see, such as from {@link #getLastWriteSequence}.
+     * @return The view.
+     */
+    public DatabaseService readingAfter(long sequence) {
+        return new Session(sequence);
+    }
+
+    /**
+     * Tells whether a replica stopped applying the change log because its store rejected a change.
+     *
+     * @param replica The index of the replica, in the order given.
+     * @return true if the replica serves no more reads.
+     */
+    public boolean isFailed(int replica) {
+        return replicas.get(replica).failed;
+    }
+
+    /**
+     * Retrieves the sequence number of the last change a replica applied.
+     *
+     * @param replica The index of the replica, in the order given.
+     * @return The sequence number.
+     */
+    public long getAppliedSequence(int replica) {
+        return replicas.get(replica).applied;
+    }
+
+    /**
+     * Stops applying the change log to the replicas; reads and writes keep going to the leader.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Replica replica : replicas) {
+            LockSupport.unpark(replica.thread);
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        write(() -> leader.addBook(ISBN, book), WriteAheadLog.Operation.ADD_BOOK, ISBN, null, book, null);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        write(() -> leader.registerUser(id, user), WriteAheadLog.Operation.REGISTER_USER, null, id, null, user);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        write(() -> leader.borrowBook(ISBN, userId), WriteAheadLog.Operation.BORROW_BOOK, ISBN, userId, null, null);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        write(() -> leader.returnBook(ISBN), WriteAheadLog.Operation.RETURN_BOOK, ISBN, null, null, null);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        write(() -> leader.borrowBook(ISBN, userId), WriteAheadLog.Operation.BORROW_BOOK,
+                IsbnKey.toString(ISBN), UserKey.toString(userId), null, null);
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        write(() -> leader.returnBook(ISBN), WriteAheadLog.Operation.RETURN_BOOK,
+                IsbnKey.toString(ISBN), null, null, null);
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        writes.lock();
+        try {
+            leader.addBooks(books);
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                log(WriteAheadLog.Operation.ADD_BOOK, entry.getKey(), null, entry.getValue(), null);
+            }
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        writes.lock();
+        try {
+            leader.borrowBooks(ISBNs, userId);
+            for (String ISBN : ISBNs) {
+                log(WriteAheadLog.Operation.BORROW_BOOK, ISBN, userId, null, null);
+            }
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        writes.lock();
+        try {
+            leader.returnBooks(ISBNs);
+            for (String ISBN : ISBNs) {
+                log(WriteAheadLog.Operation.RETURN_BOOK, ISBN, null, null, null);
+            }
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return read(store -> store.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return read(store -> store.getUserById(userId));
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return read(store -> store.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return read(store -> store.getUserById(userId));
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return read(store -> store.getBooksByISBN(ISBNs));
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return read(store -> store.findBooksByTitlePrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        return read(store -> store.findBooksByAuthorPrefix(prefix, limit));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Lists the leader, which holds every accepted write.
+     */
+    @Override
+    public void forEachISBN(LongConsumer action) {
+        leader.forEachISBN(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Lists the leader, which holds every accepted write.
+     */
+    @Override
+    public void forEachUserId(LongConsumer action) {
+        leader.forEachUserId(action);
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        return read(store -> store.getBorrowerId(ISBN));
+    }
+
+    // Applies a write at the leader and logs it if the leader accepted it.
+    private void write(Runnable apply, WriteAheadLog.Operation operation, String ISBN, String userId,
+                       Book book, User user) {
+        writes.lock();
+        try {
+            apply.run();
+            log(operation, ISBN, userId, book, user);
+        } finally {
+            writes.unlock();
+        }
+    }
+
+    // Appends a change and wakes the replicas; the caller holds the write lock.
+    private void log(WriteAheadLog.Operation operation, String ISBN, String userId, Book book, User user) {
+        Change change = new Change(++sequence, clock.getAsLong(), operation, ISBN, userId, book, user);
+        lastWrite.get()[0] = change.sequence;
+        for (Replica replica : replicas) {
+            if (!closed && !replica.failed) {
+                replica.backlog.add(change);
+                LockSupport.unpark(replica.thread);
+            }
+        }
+    }
+
+    private <T> T read(Function<DatabaseService, T> lookup) {
+        return read(lookup, 0);
+    }
+
+    // Reads from the next replica able to serve the calling thread, or from the leader if there is none.
+    private <T> T read(Function<DatabaseService, T> lookup, long after) {
+        if (consistency != ReadConsistency.LEADER && !closed) {
+            if (consistency == ReadConsistency.READ_YOUR_WRITES) {
+                after = Math.max(after, lastWrite.get()[0]);
+            }
+            int start = nextReplica.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                if (replica.canServe(after)) {
+                    return lookup.apply(replica.store);
+                }
+            }
+        }
+        return lookup.apply(leader);
+    }
+
+    private static void apply(DatabaseService store, Change change) {
+        switch (change.operation) {
+            case ADD_BOOK:
+                store.addBook(change.ISBN, change.book);
+                break;
+            case REGISTER_USER:
+                store.registerUser(change.userId, change.user);
+                break;
+            case BORROW_BOOK:
+                store.borrowBook(change.ISBN, change.userId);
+                break;
+            case RETURN_BOOK:
+                store.returnBook(change.ISBN);
+                break;
+        }
+    }
+
+    /**
+     * A view of the database whose reads see every change up to a sequence number, which its writes raise.
+     */
+    private final class Session implements DatabaseService {
+        // Sequence number of the last change the reads must see.
+        private final AtomicLong after;
+
+        Session(long after) {
+            this.after = new AtomicLong(after);
+        }
+
+        @Override
+        public void addBook(String ISBN, Book book) {
+            ReplicatedDatabaseService.this.addBook(ISBN, book);
+            wrote();
+        }
+
+        @Override
+        public void registerUser(String id, User user) {
+            ReplicatedDatabaseService.this.registerUser(id, user);
+            wrote();
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            ReplicatedDatabaseService.this.borrowBook(ISBN, userId);
+            wrote();
+        }
+
+        @Override
+        public void returnBook(String ISBN) {
+            ReplicatedDatabaseService.this.returnBook(ISBN);
+            wrote();
+        }
+
+        @Override
+        public void borrowBook(long ISBN, long userId) {
+            ReplicatedDatabaseService.this.borrowBook(ISBN, userId);
+            wrote();
+        }
+
+        @Override
+        public void returnBook(long ISBN) {
+            ReplicatedDatabaseService.this.returnBook(ISBN);
+            wrote();
+        }
+
+        @Override
+        public void addBooks(Map<String, Book> books) {
+            ReplicatedDatabaseService.this.addBooks(books);
+            wrote();
+        }
+
+        @Override
+        public void borrowBooks(Collection<String> ISBNs, String userId) {
+            ReplicatedDatabaseService.this.borrowBooks(ISBNs, userId);
+            wrote();
+        }
+
+        @Override
+        public void returnBooks(Collection<String> ISBNs) {
+            ReplicatedDatabaseService.this.returnBooks(ISBNs);
+            wrote();
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            return read(store -> store.getBookByISBN(ISBN), after.get());
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            return read(store -> store.getUserById(userId), after.get());
+        }
+
+        @Override
+        public Book getBookByISBN(long ISBN) {
+            return read(store -> store.getBookByISBN(ISBN), after.get());
+        }
+
+        @Override
+        public User getUserById(long userId) {
+            return read(store -> store.getUserById(userId), after.get());
+        }
+
+        @Override
+        public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+            return read(store -> store.getBooksByISBN(ISBNs), after.get());
+        }
+
+        @Override
+        public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+            return read(store -> store.findBooksByTitlePrefix(prefix, limit), after.get());
+        }
+
+        @Override
+        public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+            return read(store -> store.findBooksByAuthorPrefix(prefix, limit), after.get());
+        }
+
+        @Override
+        public void forEachISBN(LongConsumer action) {
+            leader.forEachISBN(action);
+        }
+
+        @Override
+        public void forEachUserId(LongConsumer action) {
+            leader.forEachUserId(action);
+        }
+
+        @Override
+        public long getBorrowerId(long ISBN) {
+            return read(store -> store.getBorrowerId(ISBN), after.get());
+        }
+
+        // Makes the reads see the write the calling thread just made.
+        private void wrote() {
+            after.accumulateAndGet(lastWrite.get()[0], Math::max);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.NotificationRejectedException;
+
+/**
+ * A {@link NotificationService} decorator that guards the wrapped service with a {@link Bulkhead} and a
+ * {@link CircuitBreaker}.
+ * <p>
+ * A notification is rejected with a {@link NotificationRejectedException} when the breaker is open or
+ * the bulkhead is full; {@link ac.il.bgu.qa.NotificationDispatcher} does not retry rejected
+ * notifications. The breaker is asked first, so an open breaker fails fast instead of waiting for a
+ * bulkhead permit. Anything thrown by the wrapped service, an {@link Error} included, counts as a
+ * failure for the breaker.
+ */
+public class ResilientNotificationService implements NotificationService {
+
+    private final NotificationService delegate;
+    // May be null, to skip the breaker.
+    private final CircuitBreaker circuitBreaker;
+    // May be null, to skip the bulkhead.
+    private final Bulkhead bulkhead;
+
+    /**
+     * Constructs a guarding decorator.
+     *
+     * @param delegate       The service to guard.
+     * @param circuitBreaker The circuit breaker; null for none.
+     * @param bulkhead       The bulkhead; null for none.
+     */
+    public ResilientNotificationService(NotificationService delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NotificationRejectedException If the circuit breaker is open or the bulkhead is full.
+     */
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            throw new NotificationRejectedException("Notification service circuit open!");
+        }
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            if (circuitBreaker != null) {
+                circuitBreaker.releasePermission();
+            }
+            throw new NotificationRejectedException("Notification service bulkhead full!");
+        }
+        boolean succeeded = false;
+        try {
+            delegate.notifyUser(userId, message);
+            succeeded = true;
+        } finally {
+            // Whatever the wrapped service threw, the breaker hears of it and gets its permit back.
+            if (circuitBreaker != null) {
+                if (succeeded) {
+                    circuitBreaker.onSuccess();
+                } else {
+                    circuitBreaker.onFailure();
+                }
+            }
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewCallRejectedException;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+
+/**
+ * A {@link ReviewService} decorator that guards the wrapped service with a {@link Bulkhead} and a
+ * {@link CircuitBreaker}.
+ * <p>
+ * A lookup is rejected with a {@link ReviewCallRejectedException} when the breaker is open or the
+ * bulkhead is full; since that is a {@link ReviewException}, {@link ac.il.bgu.qa.Library} reports the
+ * review service as unavailable right away, but keeps the session, which was never used. The breaker is
+ * asked first, so an open breaker fails fast instead of waiting for a bulkhead permit. Anything thrown
+ * by the wrapped service, an {@link Error} included, counts as a failure for the breaker. The breaker and
+ * bulkhead may be shared by several decorators, for instance by every session of a
+ * {@link ReviewSessionPool}.
+ */
+public class ResilientReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+    // May be null, to skip the breaker.
+    private final CircuitBreaker circuitBreaker;
+    // May be null, to skip the bulkhead.
+    private final Bulkhead bulkhead;
+
+    /**
+     * Constructs a guarding decorator.
+     *
+     * @param delegate       The service to guard.
+     * @param circuitBreaker The circuit breaker; null for none.
+     * @param bulkhead       The bulkhead; null for none.
+     */
+    public ResilientReviewService(ReviewService delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ReviewCallRejectedException If the circuit breaker is open or the bulkhead is full.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            throw new ReviewCallRejectedException("Review service circuit open!");
+        }
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            if (circuitBreaker != null) {
+                circuitBreaker.releasePermission();
+            }
+            throw new ReviewCallRejectedException("Review service bulkhead full!");
+        }
+        boolean succeeded = false;
+        try {
+            List<String> reviews = delegate.getReviewsForBook(ISBN);
+            succeeded = true;
+            return reviews;
+        } finally {
+            // Whatever the wrapped service threw, the breaker hears of it and gets its permit back.
+            if (circuitBreaker != null) {
+                if (succeeded) {
+                    circuitBreaker.onSuccess();
+                } else {
+                    circuitBreaker.onFailure();
+                }
+            }
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
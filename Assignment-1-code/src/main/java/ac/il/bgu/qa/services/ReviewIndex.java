@@ -0,0 +1,523 @@
+package ac.il.bgu.qa.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted full-text index of book reviews, answering ranked term and phrase queries with ISBNs.
+ * <p>
+ * All the reviews of a book form one document. Review text is split into lower-case words of letters and
+ * digits, and every word maps to a {@link PostingList} of the documents it occurs in and its positions in
+ * each. Reindexing a book whose reviews changed supersedes its document with a new one; the stale postings
+ * stay in the lists, skipped by queries, until superseded documents outnumber the current ones and the
+ * lists are rewritten without them. Reindexing unchanged reviews does nothing and takes only the read
+ * lock, so the index can be fed with every fetch. Results are ranked by BM25, counting superseded
+ * documents not yet compacted away in the document frequency of a word. Queries walk the posting lists
+ * one document at a time and keep only the best matches, so their memory does not grow with the index.
+ * Queries run concurrently with each other; updates run one at a time.
+ */
+public class ReviewIndex {
+
+    // BM25 saturation of the term frequency.
+    private static final double K1 = 1.2;
+    // BM25 normalization by document length.
+    private static final double B = 0.75;
+    // Fewest superseded documents worth compacting away.
+    private static final int MIN_COMPACTION = 64;
+
+    // Guards everything below.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Postings by word.
+    private final Map<String, PostingList> postings = new HashMap<>();
+    // Current document of each indexed book.
+    private final Map<String, Document> documents = new HashMap<>();
+    // ISBN of each document, by Id; null once superseded.
+    private String[] isbns = new String[16];
+    // Number of words of each document, by Id.
+    private int[] lengths = new int[16];
+    // Id of the next document.
+    private int nextDocument;
+    // Total number of words of the current documents.
+    private long totalLength;
+    // Number of superseded documents still in the posting lists.
+    private int superseded;
+
+    /**
+     * A matching book and its score.
+     */
+    private static class Match {
+        private final String isbn;
+        private final double score;
+
+        Match(String isbn, double score) {
+            this.isbn = isbn;
+            this.score = score;
+        }
+    }
+
+    /**
+     * A book's current document.
+     */
+    private static class Document {
+        private final int id;
+        // Hash of the reviews the document was built from.
+        private final long hash;
+
+        Document(int id, long hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Indexes the reviews of a book, replacing the reviews indexed for it before.
+     *
+     * @param ISBN    The International Standard Book Number of the book.
+     * @param reviews The reviews of the book; null or empty to remove the book from the index.
+     * @return false if the reviews were already indexed for the book.
+     * @throws IllegalArgumentException If the ISBN is null.
+     */
+    public boolean index(String ISBN, List<String> reviews) {
+        if (ISBN == null) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        long hash = hash(reviews);
+        lock.readLock().lock();
+        try {
+            if (unchanged(ISBN, reviews, hash)) {
+                return false;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            boolean changed = update(ISBN, reviews, hash);
+            compactIfStale();
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the reviews of many books at once, as {@link #index} does for each.
+     *
+     * @param reviewsByISBN The reviews of each book by its ISBN.
+     * @return The number of books whose indexed reviews changed.
+     * @throws IllegalArgumentException If the map is null or holds a null ISBN; the books before it stay indexed.
+     */
+    public int indexAll(Map<String, ? extends List<String>> reviewsByISBN) {
+        if (reviewsByISBN == null) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        int changed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, ? extends List<String>> entry : reviewsByISBN.entrySet()) {
+                if (entry.getKey() == null) {
+                    throw new IllegalArgumentException("Invalid ISBN.");
+                } else if (update(entry.getKey(), entry.getValue(), hash(entry.getValue()))) {
+                    changed++;
+                }
+            }
+        } finally {
+            compactIfStale();
+            lock.writeLock().unlock();
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the books whose reviews mention any word of a query, best matches first.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of books to return.
+     * @return The ISBNs of the matching books.
+     * @throws IllegalArgumentException If the query is null or the limit is not positive.
+     */
+    public List<String> searchTerms(String query, int limit) {
+        List<String> words = validateQuery(query, limit);
+        lock.readLock().lock();
+        try {
+            List<PostingList.Cursor> cursors = new ArrayList<>();
+            List<Double> idfs = new ArrayList<>();
+            for (String word : new LinkedHashSet<>(words)) {
+                PostingList list = postings.get(word);
+                if (list != null) {
+                    PostingList.Cursor cursor = list.cursor();
+                    if (cursor.next()) {
+                        cursors.add(cursor);
+                        idfs.add(idf(list));
+                    }
+                }
+            }
+
+            PriorityQueue<Match> best = new PriorityQueue<>(ReviewIndex::compareMatches);
+            double averageLength = averageLength();
+            while (!cursors.isEmpty()) {
+                // Score the lowest document any cursor is on, then move the cursors on it past it.
+                int document = Integer.MAX_VALUE;
+                for (PostingList.Cursor cursor : cursors) {
+                    document = Math.min(document, cursor.document());
+                }
+                double score = 0;
+                for (int i = cursors.size() - 1; i >= 0; i--) {
+                    PostingList.Cursor cursor = cursors.get(i);
+                    if (cursor.document() != document) {
+                        continue;
+                    }
+                    score += score(idfs.get(i), cursor.count(), lengths[document], averageLength);
+                    if (!cursor.next()) {
+                        cursors.remove(i);
+                        idfs.remove(i);
+                    }
+                }
+                if (isbns[document] != null) {
+                    offer(best, new Match(isbns[document], score), limit);
+                }
+            }
+            return drain(best);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the books with a review containing the words of a phrase in order, best matches first.
+     *
+     * @param phrase The phrase to look for.
+     * @param limit  The maximum number of books to return.
+     * @return The ISBNs of the matching books.
+     * @throws IllegalArgumentException If the phrase is null or the limit is not positive.
+     */
+    public List<String> searchPhrase(String phrase, int limit) {
+        List<String> words = validateQuery(phrase, limit);
+        lock.readLock().lock();
+        try {
+            if (words.isEmpty()) {
+                return List.of();
+            }
+            PostingList.Cursor[] cursors = new PostingList.Cursor[words.size()];
+            double idf = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                PostingList list = postings.get(words.get(i));
+                if (list == null) {
+                    return List.of();
+                }
+                idf += idf(list);
+                cursors[i] = list.cursor();
+                if (!cursors[i].next()) {
+                    return List.of();
+                }
+            }
+
+            PriorityQueue<Match> best = new PriorityQueue<>(ReviewIndex::compareMatches);
+            double averageLength = averageLength();
+            int[][] positions = new int[cursors.length][];
+            while (true) {
+                // Advance every cursor to the furthest document; a document all of them reach holds every word.
+                int target = 0;
+                for (PostingList.Cursor cursor : cursors) {
+                    target = Math.max(target, cursor.document());
+                }
+                boolean aligned = true;
+                for (PostingList.Cursor cursor : cursors) {
+                    while (cursor.document() < target) {
+                        if (!cursor.next()) {
+                            return drain(best);
+                        }
+                    }
+                    aligned &= cursor.document() == target;
+                }
+                if (!aligned) {
+                    continue;
+                }
+
+                if (isbns[target] != null) {
+                    for (int i = 0; i < cursors.length; i++) {
+                        positions[i] = cursors[i].positions();
+                    }
+                    int occurrences = countPhrase(positions);
+                    if (occurrences > 0) {
+                        offer(best, new Match(isbns[target], score(idf, occurrences, lengths[target], averageLength)),
+                                limit);
+                    }
+                }
+                if (!cursors[0].next()) {
+                    return drain(best);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the books in the index.
+     *
+     * @return The number of books with indexed reviews.
+     */
+    public int getBookCount() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the encoded size of all the posting lists.
+     *
+     * @return The number of bytes used by postings.
+     */
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                bytes += list.getByteCount();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the posting lists without the documents of superseded reviews and renumbers the current
+     * documents. Runs on its own once superseded documents outnumber the current ones.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactNow();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lower-case words of letters and digits.
+     *
+     * @param text The text.
+     * @return The words in order.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Whether the reviews are those indexed for the book; the caller holds a lock.
+    private boolean unchanged(String ISBN, List<String> reviews, long hash) {
+        Document current = documents.get(ISBN);
+        boolean empty = reviews == null || reviews.isEmpty();
+        return current == null ? empty : current.hash == hash && !empty;
+    }
+
+    // Replaces the document of a book; the caller holds the write lock.
+    private boolean update(String ISBN, List<String> reviews, long hash) {
+        if (unchanged(ISBN, reviews, hash)) {
+            return false;
+        }
+        Document current = documents.get(ISBN);
+        if (current != null) {
+            isbns[current.id] = null;
+            totalLength -= lengths[current.id];
+            documents.remove(ISBN);
+            superseded++;
+        }
+        if (reviews == null || reviews.isEmpty()) {
+            return true;
+        }
+
+        // Collect the positions of every word; a gap between reviews keeps phrases from spanning two of them.
+        Map<String, int[]> occurrences = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int position = 0;
+        int length = 0;
+        for (String review : reviews) {
+            if (review == null) {
+                continue;
+            }
+            for (String word : tokenize(review)) {
+                int count = counts.getOrDefault(word, 0);
+                int[] positions = occurrences.get(word);
+                if (positions == null || positions.length == count) {
+                    positions = positions == null ? new int[2] : Arrays.copyOf(positions, count * 2);
+                    occurrences.put(word, positions);
+                }
+                positions[count] = position++;
+                counts.put(word, count + 1);
+                length++;
+            }
+            position++;
+        }
+
+        int id = nextDocument++;
+        if (id == isbns.length) {
+            isbns = Arrays.copyOf(isbns, id * 2);
+            lengths = Arrays.copyOf(lengths, id * 2);
+        }
+        isbns[id] = ISBN;
+        lengths[id] = length;
+        totalLength += lengths[id];
+        documents.put(ISBN, new Document(id, hash));
+        for (Map.Entry<String, int[]> entry : occurrences.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), word -> new PostingList())
+                    .append(id, entry.getValue(), counts.get(entry.getKey()));
+        }
+        return true;
+    }
+
+    // Compacts once superseded documents outnumber the current ones; the caller holds the write lock.
+    private void compactIfStale() {
+        if (superseded >= MIN_COMPACTION && superseded > documents.size()) {
+            compactNow();
+        }
+    }
+
+    // Renumbers the current documents densely in their order and drops the rest; the caller holds the write lock.
+    private void compactNow() {
+        if (superseded == 0) {
+            return;
+        }
+        int[] ids = new int[nextDocument];
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, documents.size()) * 2 - 1));
+        String[] compactedIsbns = new String[capacity];
+        int[] compactedLengths = new int[capacity];
+        int count = 0;
+        for (int document = 0; document < nextDocument; document++) {
+            if (isbns[document] == null) {
+                ids[document] = -1;
+            } else {
+                ids[document] = count;
+                compactedIsbns[count] = isbns[document];
+                compactedLengths[count] = lengths[document];
+                count++;
+            }
+        }
+
+        for (Iterator<Map.Entry<String, PostingList>> it = postings.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, PostingList> entry = it.next();
+            PostingList compacted = new PostingList();
+            PostingList.Cursor cursor = entry.getValue().cursor();
+            while (cursor.next()) {
+                int id = ids[cursor.document()];
+                if (id >= 0) {
+                    compacted.append(id, cursor.positions(), cursor.count());
+                }
+            }
+            if (compacted.getDocumentCount() == 0) {
+                it.remove();
+            } else {
+                entry.setValue(compacted);
+            }
+        }
+        for (Map.Entry<String, Document> entry : documents.entrySet()) {
+            Document document = entry.getValue();
+            entry.setValue(new Document(ids[document.id], document.hash));
+        }
+        isbns = compactedIsbns;
+        lengths = compactedLengths;
+        nextDocument = count;
+        superseded = 0;
+    }
+
+    // Counts the starts of the phrase: positions of its first word followed by each next word in turn.
+    private static int countPhrase(int[][] positions) {
+        int occurrences = 0;
+        for (int start : positions[0]) {
+            boolean found = true;
+            for (int i = 1; i < positions.length && found; i++) {
+                found = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (found) {
+                occurrences++;
+            }
+        }
+        return occurrences;
+    }
+
+    private double idf(PostingList list) {
+        int books = documents.size();
+        int frequency = Math.min(list.getDocumentCount(), books);
+        return Math.log(1 + (books - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private double averageLength() {
+        return documents.isEmpty() ? 1 : Math.max(1, (double) totalLength / documents.size());
+    }
+
+    private static double score(double idf, int frequency, int length, double averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    // Orders worse matches first: lower scores, ties broken by ISBN.
+    private static int compareMatches(Match a, Match b) {
+        return a.score != b.score ? Double.compare(a.score, b.score) : b.isbn.compareTo(a.isbn);
+    }
+
+    // Keeps a match if it is among the best seen so far.
+    private static void offer(PriorityQueue<Match> best, Match match, int limit) {
+        if (match.score > 0) {
+            best.add(match);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+    }
+
+    // The ISBNs of the kept matches, best first.
+    private static List<String> drain(PriorityQueue<Match> best) {
+        String[] found = new String[best.size()];
+        for (int i = found.length - 1; i >= 0; i--) {
+            found[i] = best.poll().isbn;
+        }
+        return List.of(found);
+    }
+
+    private static List<String> validateQuery(String query, int limit) {
+        if (query == null) {
+            throw new IllegalArgumentException("Invalid query.");
+        } else if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+        return tokenize(query);
+    }
+
+    // A 64-bit FNV-1a hash of the reviews, telling whether a book's reviews changed.
+    private static long hash(List<String> reviews) {
+        long hash = 0xcbf29ce484222325L;
+        if (reviews != null) {
+            for (String review : reviews) {
+                String text = review == null ? "" : review;
+                for (int i = 0; i < text.length(); i++) {
+                    hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+                }
+                hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,322 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ReviewSessionProvider} that keeps review sessions open and reuses them across lookups.
+ * <p>
+ * At most a fixed number of sessions exist at once; {@link #acquire} waits up to a timeout for one to
+ * be released when they are all leased. Idle sessions are reused most-recently-released first, so the
+ * least used ones age out: a session idle for longer than the idle timeout, or open for longer than
+ * the maximum lifetime, is closed instead of being leased again. An idle session is also health-checked
+ * before it is leased and replaced if the check fails.
+ */
+public class ReviewSessionPool implements ReviewSessionProvider, AutoCloseable {
+
+    /**
+     * A pooled session and its bookkeeping.
+     */
+    private static final class Session {
+        final ReviewService service;
+        final long createdAt;
+        long releasedAt;
+
+        Session(ReviewService service, long createdAt) {
+            this.service = service;
+            this.createdAt = createdAt;
+            this.releasedAt = createdAt;
+        }
+    }
+
+    // Opens new sessions.
+    private final Supplier<ReviewService> factory;
+    // Checks an idle session before it is leased again.
+    private final Predicate<ReviewService> healthCheck;
+    // Maximum number of sessions, idle and leased.
+    private final int maxSessions;
+    // How long an acquirer waits for a session when all are leased.
+    private final long acquireTimeoutNanos;
+    // How long a session may stay idle.
+    private final long maxIdleNanos;
+    // How long a session may stay open.
+    private final long maxLifetimeNanos;
+    // Monotonic time source in nanoseconds.
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // Idle sessions, most recently released first.
+    private final ArrayDeque<Session> idle = new ArrayDeque<>();
+    // Leased sessions by identity.
+    private final IdentityHashMap<ReviewService, Session> leased = new IdentityHashMap<>();
+    // Number of open sessions, idle and leased, including those being opened.
+    private int total;
+    private long created;
+    private boolean closed;
+
+    /**
+     * Constructs an empty pool.
+     *
+     * @param factory              Opens new sessions.
+     * @param healthCheck          Checks an idle session before it is leased again; null to skip the check.
+     * @param maxSessions          The maximum number of open sessions.
+     * @param acquireTimeoutMillis How long {@link #acquire} waits when all sessions are leased.
+     * @param maxIdleMillis        How long a session may stay idle before it is closed.
+     * @param maxLifetimeMillis    How long a session may stay open before it is closed.
+     */
+    public ReviewSessionPool(Supplier<ReviewService> factory, Predicate<ReviewService> healthCheck, int maxSessions,
+                             long acquireTimeoutMillis, long maxIdleMillis, long maxLifetimeMillis) {
+        this(factory, healthCheck, maxSessions, acquireTimeoutMillis, maxIdleMillis, maxLifetimeMillis, System::nanoTime);
+    }
+
+    ReviewSessionPool(Supplier<ReviewService> factory, Predicate<ReviewService> healthCheck, int maxSessions,
+                      long acquireTimeoutMillis, long maxIdleMillis, long maxLifetimeMillis, LongSupplier clock) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid session factory.");
+        } else if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (acquireTimeoutMillis < 0 || maxIdleMillis <= 0 || maxLifetimeMillis <= 0) {
+            throw new IllegalArgumentException("Invalid timeout.");
+        }
+        this.factory = factory;
+        this.healthCheck = healthCheck;
+        this.maxSessions = maxSessions;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+        this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ReviewException If the pool is closed, no session was released within the timeout, or a
+     *                         new session could not be opened.
+     */
+    @Override
+    public ReviewService acquire() throws ReviewException {
+        // One deadline across retries, so discarding stale idle sessions does not extend the wait.
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        while (true) {
+            Session session;
+            lock.lock();
+            try {
+                while (!closed && idle.isEmpty() && total >= maxSessions) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new ReviewException("No review session available.");
+                    }
+                    available.awaitNanos(remaining);
+                }
+                if (closed) {
+                    throw new ReviewException("Review session pool closed.");
+                }
+                session = idle.pollFirst();
+                if (session == null) {
+                    total++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ReviewException("Interrupted while waiting for a review session.");
+            } finally {
+                lock.unlock();
+            }
+
+            if (session == null) {
+                session = open();
+            } else if (isExpired(session, clock.getAsLong()) || !isHealthy(session.service)) {
+                discard(session);
+                continue;
+            }
+
+            lock.lock();
+            try {
+                leased.put(session.service, session);
+            } finally {
+                lock.unlock();
+            }
+            return session.service;
+        }
+    }
+
+    @Override
+    public void release(ReviewService session) {
+        Session released;
+        boolean keep;
+        lock.lock();
+        try {
+            released = leased.remove(session);
+            if (released == null) {
+                throw new IllegalArgumentException("Unknown review session.");
+            }
+            released.releasedAt = clock.getAsLong();
+            keep = !closed && released.releasedAt - released.createdAt < maxLifetimeNanos;
+            if (keep) {
+                idle.addFirst(released);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!keep) {
+            discard(released);
+        }
+        evictIdle();
+    }
+
+    @Override
+    public void invalidate(ReviewService session) {
+        Session invalidated;
+        lock.lock();
+        try {
+            invalidated = leased.remove(session);
+            if (invalidated == null) {
+                throw new IllegalArgumentException("Unknown review session.");
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(invalidated);
+    }
+
+    /**
+     * Closes the idle sessions that exceeded the idle timeout or the maximum lifetime.
+     */
+    public void evictIdle() {
+        List<Session> evicted = new ArrayList<>();
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            // The least recently released sessions are at the tail.
+            while (!idle.isEmpty() && isExpired(idle.peekLast(), now)) {
+                evicted.add(idle.pollLast());
+            }
+        } finally {
+            lock.unlock();
+        }
+        evicted.forEach(this::discard);
+    }
+
+    /**
+     * Counts the idle sessions.
+     *
+     * @return The number of idle sessions.
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts the leased sessions.
+     *
+     * @return The number of leased sessions.
+     */
+    public int getLeasedCount() {
+        lock.lock();
+        try {
+            return leased.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts the sessions opened since the pool was constructed.
+     *
+     * @return The number of sessions opened.
+     */
+    public long getCreatedCount() {
+        lock.lock();
+        try {
+            return created;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the idle sessions; leased sessions are closed when they are released.
+     */
+    @Override
+    public void close() {
+        List<Session> sessions;
+        lock.lock();
+        try {
+            closed = true;
+            sessions = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        sessions.forEach(this::discard);
+    }
+
+    private Session open() {
+        try {
+            ReviewService service = factory.get();
+            if (service == null) {
+                throw new ReviewException("Could not open a review session.");
+            }
+            lock.lock();
+            try {
+                created++;
+            } finally {
+                lock.unlock();
+            }
+            return new Session(service, clock.getAsLong());
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void discard(Session session) {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            session.service.close();
+        } catch (RuntimeException e) {
+            // The session is gone either way.
+        }
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.releasedAt >= maxIdleNanos || now - session.createdAt >= maxLifetimeNanos;
+    }
+
+    private boolean isHealthy(ReviewService service) {
+        try {
+            return healthCheck == null || healthCheck.test(service);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+/**
+ * Leases {@link ReviewService} sessions to callers for the duration of a lookup.
+ * <p>
+ * A caller acquires a session, uses it, and hands it back with {@link #release} when it is done, or
+ * with {@link #invalidate} if the session failed and must not be reused. Providers decide whether a
+ * session outlives the lease (see {@link ReviewSessionPool}) or is closed after every use (see
+ * {@link #closingEach}).
+ */
+public interface ReviewSessionProvider {
+
+    /**
+     * Leases a session.
+     *
+     * @return The session.
+     * @throws ReviewException If no session can be provided.
+     */
+    ReviewService acquire() throws ReviewException;
+
+    /**
+     * Returns a healthy session after use.
+     *
+     * @param session A session previously returned by {@link #acquire}.
+     */
+    void release(ReviewService session);
+
+    /**
+     * Returns a session that failed; it is closed and never leased again.
+     *
+     * @param session A session previously returned by {@link #acquire}.
+     */
+    void invalidate(ReviewService session);
+
+    /**
+     * Creates a provider that leases the same service every time and closes it after every use, the
+     * lifecycle {@link ac.il.bgu.qa.Library} has always applied to its review service.
+     *
+     * @param reviewService The service to lease.
+     * @return The provider.
+     */
+    static ReviewSessionProvider closingEach(ReviewService reviewService) {
+        return new ReviewSessionProvider() {
+            @Override
+            public ReviewService acquire() {
+                return reviewService;
+            }
+
+            @Override
+            public void release(ReviewService session) {
+                session.close();
+            }
+
+            @Override
+            public void invalidate(ReviewService session) {
+                session.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,597 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserKey;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseService} that partitions books by ISBN and users by Id across several backing stores,
+ * placing them with a {@link ConsistentHashRing}.
+ * <p>
+ * A borrow is a property of the book, so {@code borrowBook} and {@code returnBook} go to the store of the
+ * book, whichever store holds the user. Batch calls are split by store, and prefix searches ask every store
+ * and merge the results in the order a single {@link IndexedDatabaseService} would return them.
+ * <p>
+ * Placement is derived from the ring alone; the router keeps no directory of entries. When a shard is
+ * added or removed, the ring segments whose owner changed are queued and their entries moved by
+ * {@link #rebalance} a batch at a time, one source store after another: the router lists the entries of
+ * the store (see {@link DatabaseService#forEachISBN}) and moves those in its changed segments. Until a
+ * segment is moved, every call on its entries still goes to its old store, except for entries already
+ * moved, so the catalog stays readable and writable throughout. A moved entry is copied to its new store
+ * with its borrow state, but is left behind in the old one, which cannot remove it; a removed shard is no
+ * longer called once its segments are moved. Adding or removing a shard first finishes any moves still
+ * pending. Calls run concurrently, except with a rebalancing batch.
+ */
+public class ShardedDatabaseService implements DatabaseService {
+
+    // Separates the positions of books and users on the ring.
+    private static final long BOOK_SEED = 0x6b6f6f62L;
+    private static final long USER_SEED = 0x72657375L;
+
+    // Guards everything below against rebalancing: calls share it, a rebalancing batch takes it exclusively.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Backing stores by shard name, including removed shards that still hold entries to move.
+    private final Map<String, DatabaseService> stores = new ConcurrentHashMap<>();
+    // Ring segments whose entries are still to be moved, by increasing end.
+    private Segment[] segments = new Segment[0];
+    // Store whose entries are being moved, or null.
+    private String source;
+    // Entries of the source store queued to move.
+    private final Queue<Move> moves = new ArrayDeque<>();
+    // Books and users of the source store already moved, which calls now reach in their new store.
+    private final Set<String> movedBooks = new HashSet<>();
+    private final Set<String> movedUsers = new HashSet<>();
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * A segment of the ring whose owner changed: the positions after low, up to and including high,
+     * wrapping around the end of the ring if low is not below high.
+     */
+    private static final class Segment {
+        private final long low;
+        private final long high;
+        private final String from;
+        private final String to;
+
+        Segment(long low, long high, String from, String to) {
+            this.low = low;
+            this.high = high;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean contains(long hash) {
+            return low < high ? hash > low && hash <= high : hash > low || hash <= high;
+        }
+    }
+
+    /**
+     * An entry to move to its owner.
+     */
+    private static final class Move {
+        private final boolean book;
+        private final String key;
+
+        Move(boolean book, String key) {
+            this.book = book;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Constructs a router with no shards.
+     *
+     * @param virtualNodes The number of points of each shard on the ring; more spread the entries more evenly.
+     */
+    public ShardedDatabaseService(int virtualNodes) {
+        this.ring = new ConsistentHashRing(virtualNodes);
+    }
+
+    /**
+     * Adds a shard. The ring segments it now owns are moved to it by {@link #rebalance}.
+     *
+     * @param name  The name of the shard; it decides the shard's place on the ring.
+     * @param store The backing store of the shard.
+     * @return The number of ring segments to move.
+     * @throws IllegalArgumentException      If the name is taken or the store is null.
+     * @throws UnsupportedOperationException If a store with entries to move cannot list them; the shard is
+     *                                       then not added.
+     */
+    public int addShard(String name, DatabaseService store) {
+        if (name == null || store == null) {
+            throw new IllegalArgumentException("Invalid shard.");
+        }
+        lock.writeLock().lock();
+        try {
+            if (stores.containsKey(name)) {
+                throw new IllegalArgumentException("Shard already exists.");
+            }
+            // Finish the moves of an earlier change, so every entry is where the current ring places it.
+            moveEntries(Integer.MAX_VALUE);
+            int planned = planMoves(ring.with(name));
+            stores.put(name, store);
+            return planned;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a shard. Its ring segments are moved to the other shards by {@link #rebalance}; it is
+     * called for their entries until then.
+     *
+     * @param name The name of the shard.
+     * @return The number of ring segments to move.
+     * @throws IllegalArgumentException      If there is no such shard, or it is the last one.
+     * @throws UnsupportedOperationException If the shard cannot list its entries; it is then not removed.
+     */
+    public int removeShard(String name) {
+        lock.writeLock().lock();
+        try {
+            if (name == null || !ring.contains(name)) {
+                throw new IllegalArgumentException("Invalid shard.");
+            } else if (ring.getShards().length == 1) {
+                throw new IllegalArgumentException("Cannot remove the last shard.");
+            }
+            // Finish the moves of an earlier change, so every entry is where the current ring places it.
+            moveEntries(Integer.MAX_VALUE);
+            int planned = planMoves(ring.without(name));
+            if (planned == 0) {
+                stores.keySet().removeIf(shard -> !ring.contains(shard));
+            }
+            return planned;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a batch of entries to the shards that own them after a shard was added or removed.
+     *
+     * @param maxMoves The maximum number of entries to move.
+     * @return The number of ring segments still to move.
+     * @throws UnsupportedOperationException If a store with entries to move cannot list them.
+     */
+    public int rebalance(int maxMoves) {
+        if (maxMoves <= 0) {
+            throw new IllegalArgumentException("Invalid number of moves.");
+        }
+        lock.writeLock().lock();
+        try {
+            return moveEntries(maxMoves);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the ring segments waiting to be moved by {@link #rebalance}.
+     *
+     * @return The number of segments.
+     */
+    public int getPendingMoves() {
+        lock.readLock().lock();
+        try {
+            return segments.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the names of the shards on the ring.
+     *
+     * @return The names, in the order the shards were added.
+     */
+    public List<String> getShardNames() {
+        return List.of(ring.getShards());
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        lock.readLock().lock();
+        try {
+            stores.get(bookShard(ISBN)).addBook(ISBN, book);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        lock.readLock().lock();
+        try {
+            stores.get(userShard(id)).registerUser(id, user);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        lock.readLock().lock();
+        try {
+            return stores.get(bookShard(ISBN)).getBookByISBN(ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        lock.readLock().lock();
+        try {
+            return stores.get(userShard(userId)).getUserById(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        lock.readLock().lock();
+        try {
+            stores.get(bookShard(ISBN)).borrowBook(ISBN, userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        lock.readLock().lock();
+        try {
+            stores.get(bookShard(ISBN)).returnBook(ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        lock.readLock().lock();
+        try {
+            return stores.get(bookShard(IsbnKey.toString(ISBN))).getBookByISBN(ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getBorrowerId(long ISBN) {
+        lock.readLock().lock();
+        try {
+            return stores.get(bookShard(IsbnKey.toString(ISBN))).getBorrowerId(ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        lock.readLock().lock();
+        try {
+            return stores.get(userShard(UserKey.toString(userId))).getUserById(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void borrowBook(long ISBN, long userId) {
+        lock.readLock().lock();
+        try {
+            stores.get(bookShard(IsbnKey.toString(ISBN))).borrowBook(ISBN, userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        lock.readLock().lock();
+        try {
+            stores.get(bookShard(IsbnKey.toString(ISBN))).returnBook(ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        lock.readLock().lock();
+        try {
+            Map<String, Map<String, Book>> byShard = new HashMap<>();
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                byShard.computeIfAbsent(bookShard(entry.getKey()), shard -> new LinkedHashMap<>())
+                        .put(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Map<String, Book>> group : byShard.entrySet()) {
+                stores.get(group.getKey()).addBooks(group.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        lock.readLock().lock();
+        try {
+            Map<String, Book> found = new HashMap<>();
+            for (Map.Entry<String, List<String>> group : groupByShard(ISBNs).entrySet()) {
+                found.putAll(stores.get(group.getKey()).getBooksByISBN(group.getValue()));
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void borrowBooks(Collection<String> ISBNs, String userId) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, List<String>> group : groupByShard(ISBNs).entrySet()) {
+                stores.get(group.getKey()).borrowBooks(group.getValue(), userId);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void returnBooks(Collection<String> ISBNs) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, List<String>> group : groupByShard(ISBNs).entrySet()) {
+                stores.get(group.getKey()).returnBooks(group.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Book> found = new ArrayList<>();
+            for (Map.Entry<String, DatabaseService> shard : stores.entrySet()) {
+                collect(shard.getKey(), shard.getValue().findBooksByTitlePrefix(prefix, limit), found);
+            }
+            return merge(found, limit, book -> PrefixIndex.rankKey(prefix, book.getTitle(), book.getISBN()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorPrefix(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Book> found = new ArrayList<>();
+            for (Map.Entry<String, DatabaseService> shard : stores.entrySet()) {
+                collect(shard.getKey(), shard.getValue().findBooksByAuthorPrefix(prefix, limit), found);
+            }
+            return merge(found, limit, book -> PrefixIndex.rankKey(prefix, book.getAuthor(), book.getISBN()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The shard holding a book.
+    private String bookShard(String ISBN) {
+        return shard(BOOK_SEED, ISBN, movedBooks);
+    }
+
+    // The shard holding a user.
+    private String userShard(String userId) {
+        return shard(USER_SEED, userId, movedUsers);
+    }
+
+    // The old store of an entry in a segment still to move, unless the entry was moved; its owner otherwise.
+    private String shard(long seed, String key, Set<String> moved) {
+        String text = key == null ? "" : key;
+        long hash = ConsistentHashRing.hash(seed, text);
+        Segment segment = pendingSegment(hash);
+        if (segment != null) {
+            return moved.contains(text) ? segment.to : segment.from;
+        }
+        String shard = ring.owner(hash);
+        if (shard == null) {
+            throw new IllegalStateException("No shards.");
+        }
+        return shard;
+    }
+
+    // The segment still to move that holds a position, or null.
+    private Segment pendingSegment(long hash) {
+        if (segments.length == 0) {
+            return null;
+        }
+        // Segments do not overlap, so only the first one ending at or after the position can hold it.
+        int low = 0;
+        int high = segments.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segments[middle].high < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        Segment segment = segments[low == segments.length ? 0 : low];
+        return segment.contains(hash) ? segment : null;
+    }
+
+    private Map<String, List<String>> groupByShard(Collection<String> ISBNs) {
+        Map<String, List<String>> byShard = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            byShard.computeIfAbsent(bookShard(ISBN), shard -> new ArrayList<>()).add(ISBN);
+        }
+        return byShard;
+    }
+
+    // Adds the books a shard found that live there; copies left behind by a move are skipped.
+    private void collect(String shard, List<Book> candidates, List<Book> found) {
+        for (Book book : candidates) {
+            long key = book.getISBNKey();
+            if (key == IsbnKey.NONE || shard.equals(bookShard(IsbnKey.toString(key)))) {
+                found.add(book);
+            }
+        }
+    }
+
+    // Switches to a new ring and queues the segments whose owner changed; the caller holds the write lock
+    // and no moves are pending. Fails before switching if a store the segments move from cannot list them.
+    private int planMoves(ConsistentHashRing next) {
+        long[] current = ring.getPoints();
+        long[] added = next.getPoints();
+        long[] bounds = Arrays.copyOf(current, current.length + added.length);
+        System.arraycopy(added, 0, bounds, current.length, added.length);
+        Arrays.sort(bounds);
+        bounds = Arrays.stream(bounds).distinct().toArray();
+
+        // Between two consecutive points of either ring, both rings have a single owner.
+        List<Segment> changed = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i++) {
+            String from = ring.owner(bounds[i]);
+            String to = next.owner(bounds[i]);
+            if (from != null && !from.equals(to)) {
+                changed.add(new Segment(bounds[i == 0 ? bounds.length - 1 : i - 1], bounds[i], from, to));
+            }
+        }
+        // Listing each source once up front costs no more than moving its entries, and keeps a store that
+        // cannot list them from leaving segments pending that no rebalance could move.
+        Set<String> sources = new HashSet<>();
+        for (Segment segment : changed) {
+            if (sources.add(segment.from)) {
+                DatabaseService store = stores.get(segment.from);
+                store.forEachISBN(key -> { });
+                store.forEachUserId(key -> { });
+            }
+        }
+        ring = next;
+        segments = changed.toArray(new Segment[0]);
+        return segments.length;
+    }
+
+    // Moves up to maxMoves entries, store by store; the caller holds the write lock.
+    private int moveEntries(int maxMoves) {
+        int moved = 0;
+        while (segments.length > 0 && moved < maxMoves) {
+            if (moves.isEmpty()) {
+                if (source == null) {
+                    source = segments[0].from;
+                }
+                // Listing again picks up entries added to the store while its first listing was moved.
+                if (!queueMoves(source)) {
+                    retire(source);
+                    continue;
+                }
+            }
+            Move move = moves.poll();
+            if (move.book) {
+                moveBook(move.key);
+            } else {
+                moveUser(move.key);
+            }
+            moved++;
+        }
+        // A removed shard with nothing left to move is no longer needed.
+        if (segments.length == 0) {
+            stores.keySet().removeIf(name -> !ring.contains(name));
+        }
+        return segments.length;
+    }
+
+    // Queues the entries of a store in its segments still to move that were not moved yet.
+    private boolean queueMoves(String shard) {
+        DatabaseService store = stores.get(shard);
+        store.forEachISBN(key -> {
+            String ISBN = IsbnKey.toString(key);
+            if (!movedBooks.contains(ISBN) && isMovedFrom(shard, ConsistentHashRing.hash(BOOK_SEED, ISBN))) {
+                moves.add(new Move(true, ISBN));
+            }
+        });
+        store.forEachUserId(key -> {
+            String userId = UserKey.toString(key);
+            if (!movedUsers.contains(userId) && isMovedFrom(shard, ConsistentHashRing.hash(USER_SEED, userId))) {
+                moves.add(new Move(false, userId));
+            }
+        });
+        return !moves.isEmpty();
+    }
+
+    private boolean isMovedFrom(String shard, long hash) {
+        Segment segment = pendingSegment(hash);
+        return segment != null && segment.from.equals(shard);
+    }
+
+    // Drops the segments of a store whose entries were all moved.
+    private void retire(String shard) {
+        segments = Arrays.stream(segments).filter(segment -> !segment.from.equals(shard)).toArray(Segment[]::new);
+        movedBooks.clear();
+        movedUsers.clear();
+        source = null;
+    }
+
+    // Copies a book, with the borrower its old store records, to its owner; the caller holds the write lock.
+    private void moveBook(String ISBN) {
+        Segment segment = pendingSegment(ConsistentHashRing.hash(BOOK_SEED, ISBN));
+        movedBooks.add(ISBN);
+        DatabaseService from = stores.get(segment.from);
+        Book book = from.getBookByISBN(ISBN);
+        if (book == null) {
+            return;
+        }
+        // The book object may not name its borrower, such as one marked borrowed by Book.borrow().
+        long borrower = from.getBorrowerId(IsbnKey.of(ISBN));
+        DatabaseService target = stores.get(segment.to);
+        target.addBook(ISBN, book);
+        if (borrower != UserKey.NONE) {
+            target.borrowBook(ISBN, UserKey.toString(borrower));
+        }
+    }
+
+    // Copies a user to their owner; the caller holds the write lock.
+    private void moveUser(String userId) {
+        Segment segment = pendingSegment(ConsistentHashRing.hash(USER_SEED, userId));
+        movedUsers.add(userId);
+        User user = stores.get(segment.from).getUserById(userId);
+        if (user != null) {
+            stores.get(segment.to).registerUser(userId, user);
+        }
+    }
+
+    // The first books in the order of the key each shard ranks its results by.
+    private static List<Book> merge(List<Book> found, int limit, Function<Book, String> rankKey) {
+        Map<Book, String> keys = new IdentityHashMap<>();
+        for (Book book : found) {
+            String key = rankKey.apply(book);
+            keys.put(book, key == null ? "" : key);
+        }
+        found.sort(Comparator.comparing(keys::get));
+        return found.size() <= limit ? found : new ArrayList<>(found.subList(0, limit));
+    }
+}
@@ -0,0 +1,317 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A concurrent hash map from primitive long keys to non-null values.
+ * <p>
+ * Keys are spread over a fixed number of stripes, each an open-addressing table guarded by its own
+ * {@link StampedLock}. Reads are optimistic and only fall back to the stripe's read lock if a write
+ * raced with them; writes contend only with other writes to the same stripe.
+ *
+ * @param <V> The type of the values.
+ */
+final class StripedLongMap<V> {
+
+    // Initial number of slots in each stripe's table; always a power of two.
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param concurrency The expected number of concurrent writers; rounded up to a power of two stripes.
+     */
+    StripedLongMap(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency level.");
+        }
+        int count = Integer.highestOneBit(Math.min(concurrency, 1 << 16) * 2 - 1);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        // The top bits of the hash select the stripe, the bottom bits select the slot.
+        stripeShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Fetches the value associated with a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        Object value = stripe.find(key, hash);
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            try {
+                value = stripe.find(key, hash);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return (V) value;
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key.
+     * @return true if the key has a value, otherwise false.
+     */
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value; must not be null.
+     * @return The previous value, or null if the key was absent.
+     */
+    V put(long key, V value) {
+        return insert(key, value, false);
+    }
+
+    /**
+     * Associates a value with a key only if the key is absent.
+     *
+     * @param key   The key.
+     * @param value The value; must not be null.
+     * @return The existing value, or null if the value was inserted.
+     */
+    V putIfAbsent(long key, V value) {
+        return insert(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(long key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return (V) stripe.insert(key, hash, value, onlyIfAbsent);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the value associated with a key.
+     *
+     * @param key The key.
+     * @return The removed value, or null if the key was absent.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        long hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return (V) stripe.remove(key, hash, null);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a key only if it is currently associated with the given value.
+     *
+     * @param key   The key.
+     * @param value The expected value, compared with equals.
+     * @return true if the key was removed, otherwise false.
+     */
+    boolean remove(long key, V value) {
+        long hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.remove(key, hash, value) != null;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Counts the entries of the map. The result is exact only while no writes are in progress.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * Receives the entries of a {@link StripedLongMap}.
+     *
+     * @param <V> The type of the values.
+     */
+    @FunctionalInterface
+    interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Visits every entry. Each stripe is visited under its read lock, so the consumer must not
+     * write to this map.
+     *
+     * @param consumer Receives each key and value.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<? super V> consumer) {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                long[] keys = stripe.keys;
+                Object[] values = stripe.values;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        consumer.accept(keys[i], (V) values[i]);
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private Stripe stripeFor(long hash) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (hash >>> stripeShift)];
+    }
+
+    // Spreads the key bits so that sequential keys (e.g. consecutive ISBNs) land in different stripes.
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * One open-addressing table with linear probing. A slot is empty when its value is null.
+     * The arrays are only replaced or mutated under the write lock; readers may observe them
+     * mid-update, which the caller detects by validating its optimistic stamp.
+     */
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        long[] keys = new long[INITIAL_CAPACITY];
+        Object[] values = new Object[INITIAL_CAPACITY];
+        volatile int size;
+
+        Object find(long key, long hash) {
+            long[] keys = this.keys;
+            Object[] values = this.values;
+            // The two arrays may belong to different tables while a resize is racing; the
+            // caller's validation rejects the result in that case.
+            int mask = Math.min(keys.length, values.length) - 1;
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = values[slot];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[slot] == key) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        Object insert(long key, long hash, Object value, boolean onlyIfAbsent) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    Object previous = values[slot];
+                    if (!onlyIfAbsent) {
+                        values[slot] = value;
+                    }
+                    return previous;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size = size + 1;
+            if (size * 4 > keys.length * 3) {
+                resize();
+            }
+            return null;
+        }
+
+        Object remove(long key, long hash, Object expected) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    Object previous = values[slot];
+                    if (expected != null && !expected.equals(previous)) {
+                        return null;
+                    }
+                    shiftBack(slot);
+                    size = size - 1;
+                    return previous;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        // Backward-shift deletion: pull later entries of the probe run into the hole so that
+        // lookups never need tombstones.
+        private void shiftBack(int hole) {
+            int mask = keys.length - 1;
+            int slot = (hole + 1) & mask;
+            while (values[slot] != null) {
+                int home = (int) hash(keys[slot]) & mask;
+                // Move the entry if its home slot does not lie cyclically in (hole, slot].
+                if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    values[hole] = values[slot];
+                    hole = slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            values[hole] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            int capacity = oldKeys.length * 2;
+            int mask = capacity - 1;
+            long[] newKeys = new long[capacity];
+            Object[] newValues = new Object[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = (int) hash(oldKeys[i]) & mask;
+                    while (newValues[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newKeys[slot] = oldKeys[i];
+                    newValues[slot] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+}
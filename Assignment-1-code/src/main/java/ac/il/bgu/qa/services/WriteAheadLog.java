@@ -0,0 +1,383 @@
+package ac.il.bgu.qa.services;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of database mutations, written ahead of applying them.
+ * <p>
+ * Each record is framed as {@code [int length][int CRC-32][payload]}, so a record torn by a crash is
+ * detected and discarded on recovery. An append returns the sequence number of its record, and
+ * {@link #awaitDurable} waits for that record to reach the disk as the {@link Durability} mode requires;
+ * in {@link Durability#GROUP_COMMIT} mode, callers waiting concurrently share a single {@code fsync}.
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * When an appended record is forced to the storage device.
+     */
+    public enum Durability {
+        // Every append forces the log before returning; appends are serialized behind each fsync.
+        PER_OPERATION,
+        // Waiting for a record forces the log, but one fsync covers all records appended meanwhile.
+        GROUP_COMMIT,
+        // Records are durable once written to the operating system; the log is forced periodically in the background.
+        ASYNC
+    }
+
+    /**
+     * The kinds of mutation recorded in the log.
+     */
+    public enum Operation {
+        ADD_BOOK, REGISTER_USER, BORROW_BOOK, RETURN_BOOK
+    }
+
+    /**
+     * Receives the records of a log during {@link #replay}.
+     */
+    public interface Visitor {
+        void addBook(long ISBN, String title, String author);
+
+        void registerUser(long userId, String name);
+
+        void borrowBook(long ISBN, long userId);
+
+        void returnBook(long ISBN);
+    }
+
+    // Frame header: payload length and checksum.
+    private static final int FRAME_HEADER = 8;
+    // Upper bound on a payload, to reject garbage lengths during recovery.
+    private static final int MAX_PAYLOAD = 1 << 20;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final ScheduledExecutorService flusher;
+
+    // Serializes writes to the channel.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guards the group commit state below.
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    // Sequence number of the last record written to the channel.
+    private volatile long appended;
+    // Sequence number of the last record known to be on the storage device.
+    private long durable;
+    // Whether some caller is currently forcing the channel on behalf of the others.
+    private boolean syncing;
+
+    private WriteAheadLog(FileChannel channel, Durability durability, long flushIntervalMillis) {
+        this.channel = channel;
+        this.durability = durability;
+        if (durability == Durability.ASYNC) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens a log for appending, creating it if needed. Records already in the file should be replayed
+     * with {@link #replay} first; a torn record at the end of the file is truncated away.
+     *
+     * @param file                The log file.
+     * @param durability          When appended records are forced to the storage device.
+     * @param flushIntervalMillis How often the log is forced in {@link Durability#ASYNC} mode.
+     * @return The open log.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static WriteAheadLog open(Path file, Durability durability, long flushIntervalMillis) throws IOException {
+        if (durability == null) {
+            throw new IllegalArgumentException("Invalid durability.");
+        } else if (durability == Durability.ASYNC && flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid flush interval.");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long valid = scan(Channels.newInputStream(channel.position(0)), null).bytes;
+            channel.truncate(valid);
+            channel.position(valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new WriteAheadLog(channel, durability, flushIntervalMillis);
+    }
+
+    /**
+     * Reads every intact record of a log, in order, stopping at the first torn or corrupt record.
+     *
+     * @param file    The log file.
+     * @param visitor Receives the records.
+     * @return The number of records read.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long replay(Path file, Visitor visitor) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return scan(Channels.newInputStream(channel), visitor).records;
+        }
+    }
+
+    /**
+     * Appends an {@link Operation#ADD_BOOK} record.
+     *
+     * @param ISBN   The ISBN key of the book.
+     * @param title  The title of the book.
+     * @param author The author of the book.
+     * @return The sequence number of the record, for {@link #awaitDurable}.
+     * @throws IOException If the record cannot be written or forced.
+     */
+    public long appendAddBook(long ISBN, String title, String author) throws IOException {
+        byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        byte[] authorBytes = author.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + titleBytes.length + 4 + authorBytes.length);
+        payload.put((byte) Operation.ADD_BOOK.ordinal()).putLong(ISBN)
+                .putInt(titleBytes.length).put(titleBytes)
+                .putInt(authorBytes.length).put(authorBytes);
+        return append(payload);
+    }
+
+    /**
+     * Appends an {@link Operation#REGISTER_USER} record.
+     *
+     * @param userId The Id key of the user.
+     * @param name   The name of the user.
+     * @return The sequence number of the record, for {@link #awaitDurable}.
+     * @throws IOException If the record cannot be written or forced.
+     */
+    public long appendRegisterUser(long userId, String name) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + nameBytes.length);
+        payload.put((byte) Operation.REGISTER_USER.ordinal()).putLong(userId).putInt(nameBytes.length).put(nameBytes);
+        return append(payload);
+    }
+
+    /**
+     * Appends an {@link Operation#BORROW_BOOK} record.
+     *
+     * @param ISBN   The ISBN key of the book.
+     * @param userId The Id key of the borrowing user.
+     * @return The sequence number of the record, for {@link #awaitDurable}.
+     * @throws IOException If the record cannot be written or forced.
+     */
+    public long appendBorrowBook(long ISBN, long userId) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 8);
+        payload.put((byte) Operation.BORROW_BOOK.ordinal()).putLong(ISBN).putLong(userId);
+        return append(payload);
+    }
+
+    /**
+     * Appends an {@link Operation#RETURN_BOOK} record.
+     *
+     * @param ISBN The ISBN key of the book.
+     * @return The sequence number of the record, for {@link #awaitDurable}.
+     * @throws IOException If the record cannot be written or forced.
+     */
+    public long appendReturnBook(long ISBN) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8);
+        payload.put((byte) Operation.RETURN_BOOK.ordinal()).putLong(ISBN);
+        return append(payload);
+    }
+
+    private long append(ByteBuffer payload) throws IOException {
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.remaining());
+        frame.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload).flip();
+
+        long sequence;
+        writeLock.lock();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            if (durability == Durability.PER_OPERATION) {
+                channel.force(false);
+            }
+            sequence = ++appended;
+        } finally {
+            writeLock.unlock();
+        }
+        return sequence;
+    }
+
+    /**
+     * Waits until an appended record is as durable as the {@link Durability} mode promises: forced to the
+     * storage device in {@link Durability#GROUP_COMMIT} mode, and at once in the other modes.
+     *
+     * @param sequence The sequence number returned by the append.
+     * @throws IOException If the log cannot be forced.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        if (durability == Durability.GROUP_COMMIT) {
+            forceThrough(sequence);
+        }
+    }
+
+    // Leader/follower group commit: the first waiter forces the channel for every record written so far,
+    // the others wait for it and return if its fsync covered their record.
+    private void forceThrough(long sequence) throws IOException {
+        syncLock.lock();
+        try {
+            while (durable < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = appended;
+                IOException failure = null;
+                syncLock.unlock();
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (failure == null) {
+                        durable = Math.max(durable, target);
+                    }
+                    synced.signalAll();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Forces every record appended so far to the storage device.
+     *
+     * @throws IOException If the log cannot be forced.
+     */
+    public void flush() throws IOException {
+        forceThrough(appended);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // The next flush or close reports persistent failures.
+        }
+    }
+
+    /**
+     * Forces and closes the log.
+     *
+     * @throws IOException If the log cannot be forced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * The extent of the intact prefix of a log.
+     */
+    private static final class ScanResult {
+        long bytes;
+        long records;
+    }
+
+    /**
+     * Reads intact records from a stream, handing them to the visitor if one is given.
+     *
+     * @return The size and number of the intact records.
+     */
+    private static ScanResult scan(InputStream stream, Visitor visitor) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        ScanResult valid = new ScanResult();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length <= 0 || length > MAX_PAYLOAD) {
+                    return valid;
+                }
+                payload = new byte[length];
+                input.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return valid;
+                }
+            } catch (EOFException e) {
+                return valid;
+            }
+            if (visitor != null && !dispatch(ByteBuffer.wrap(payload), visitor)) {
+                return valid;
+            }
+            valid.bytes += FRAME_HEADER + payload.length;
+            valid.records++;
+        }
+    }
+
+    private static boolean dispatch(ByteBuffer payload, Visitor visitor) {
+        int type = payload.get();
+        if (type < 0 || type >= Operation.values().length) {
+            return false;
+        }
+        switch (Operation.values()[type]) {
+            case ADD_BOOK:
+                visitor.addBook(payload.getLong(), readString(payload), readString(payload));
+                break;
+            case REGISTER_USER:
+                visitor.registerUser(payload.getLong(), readString(payload));
+                break;
+            case BORROW_BOOK:
+                visitor.borrowBook(payload.getLong(), payload.getLong());
+                break;
+            case RETURN_BOOK:
+                visitor.returnBook(payload.getLong());
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,212 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.BorrowLimitExceededException;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.errors.ReviewServiceUnavailableException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+import ac.il.bgu.qa.services.AsyncDatabaseService;
+import ac.il.bgu.qa.services.AsyncNotificationService;
+import ac.il.bgu.qa.services.AsyncReviewService;
+import ac.il.bgu.qa.services.BorrowLedger;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestAsyncLibrary {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+    private static final long VALID_USER_KEY = 123456789012L;
+
+    private ExecutorService executor;
+    private DatabaseService databaseService;
+    private ReviewService reviewService;
+    private NotificationService notificationService;
+    private AsyncLibrary library;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        databaseService = mock(DatabaseService.class);
+        reviewService = mock(ReviewService.class);
+        notificationService = mock(NotificationService.class);
+        library = new AsyncLibrary(AsyncDatabaseService.of(databaseService, executor),
+                AsyncReviewService.of(reviewService, executor), AsyncNotificationService.of(executor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenInvalidISBN_WhenBorrowBookAsync_ThenFutureFailsWithoutDatabaseCall() {
+        CompletableFuture<Void> borrowing = library.borrowBookAsync("123", VALID_USER_ID);
+
+        assertFailsWith(IllegalArgumentException.class, borrowing);
+        verify(databaseService, never()).getBookByISBN(anyString());
+    }
+
+    @Test
+    void GivenInvalidArguments_WhenCalledAsync_ThenValidationRejectionsEmittedAsByLibrary() {
+        List<String> rejections = new CopyOnWriteArrayList<>();
+        EventLog events = new EventLog(16, event -> rejections.add(
+                event.getType() + " " + event.getOperation() + " " + event.getReason()));
+        AsyncLibrary library = new AsyncLibrary(AsyncDatabaseService.of(databaseService, executor),
+                AsyncReviewService.of(reviewService, executor), AsyncNotificationService.of(executor), events);
+
+        assertFailsWith(IllegalArgumentException.class, library.borrowBookAsync("123", VALID_USER_ID));
+        assertFailsWith(IllegalArgumentException.class, library.returnBookAsync(null));
+        assertFailsWith(IllegalArgumentException.class, library.notifyUserWithBookReviewsAsync(VALID_ISBN, "42"));
+        assertFailsWith(IllegalArgumentException.class, library.getBookByISBNAsync("123", VALID_USER_ID));
+        events.close();
+
+        assertEquals(List.of(
+                "VALIDATION_REJECTED borrowBook Invalid ISBN.",
+                "VALIDATION_REJECTED returnBook Invalid ISBN.",
+                "VALIDATION_REJECTED notifyUserWithBookReviews Invalid user Id.",
+                "VALIDATION_REJECTED getBookByISBN Invalid ISBN."), rejections);
+    }
+
+    @Test
+    void GivenRegisteredUser_WhenBorrowBookAsync_ThenBookBorrowed() throws Exception {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+
+        library.borrowBookAsync(VALID_ISBN, VALID_USER_ID).get(5, TimeUnit.SECONDS);
+
+        assertEquals(VALID_USER_KEY, book.getBorrowerKey());
+        verify(databaseService).borrowBook(VALID_ISBN, VALID_USER_ID);
+    }
+
+    @Test
+    void GivenDatabaseRejectsBorrow_WhenBorrowBookAsync_ThenBookReleased() {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+        doThrow(new IllegalStateException("Down")).when(databaseService).borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertFailsWith(IllegalStateException.class, library.borrowBookAsync(VALID_ISBN, VALID_USER_ID));
+        assertFalse(book.isBorrowed());
+    }
+
+    @Test
+    void GivenLedgerWithLimit_WhenBorrowBookAsyncBeyondIt_ThenFutureFailsAndLedgerShared() throws Exception {
+        String otherISBN = "9780132350884";
+        BorrowLedger ledger = new BorrowLedger(1);
+        library = new AsyncLibrary(AsyncDatabaseService.of(databaseService, executor),
+                AsyncReviewService.of(reviewService, executor), AsyncNotificationService.of(executor),
+                EventLog.shared(), ledger);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        when(databaseService.getBookByISBN(otherISBN)).thenReturn(new Book(otherISBN, "Clean Code", "Robert Martin"));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+
+        library.borrowBookAsync(VALID_ISBN, VALID_USER_ID).get(5, TimeUnit.SECONDS);
+
+        assertFailsWith(BorrowLimitExceededException.class, library.borrowBookAsync(otherISBN, VALID_USER_ID));
+        assertEquals(VALID_USER_KEY, ledger.getBorrowerOf(9780306406157L));
+        verify(databaseService, never()).borrowBook(otherISBN, VALID_USER_ID);
+
+        library.returnBookAsync(VALID_ISBN).get(5, TimeUnit.SECONDS);
+        assertEquals(0, ledger.getBorrowedCount(VALID_USER_KEY));
+    }
+
+    @Test
+    void GivenUnregisteredUser_WhenBorrowBookAsync_ThenFutureFailsWithUserNotRegistered() {
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+
+        assertFailsWith(UserNotRegisteredException.class, library.borrowBookAsync(VALID_ISBN, VALID_USER_ID));
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenReturnBookAsyncTwice_ThenSecondFailsWithNotBorrowed() throws Exception {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        book.tryBorrow(VALID_USER_KEY);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+
+        library.returnBookAsync(VALID_ISBN).get(5, TimeUnit.SECONDS);
+
+        assertFailsWith(BookNotBorrowedException.class, library.returnBookAsync(VALID_ISBN));
+        verify(databaseService).returnBook(VALID_ISBN);
+    }
+
+    @Test
+    void GivenReviews_WhenNotifyUserWithBookReviewsAsync_ThenUserNotifiedAndServiceClosed() throws Exception {
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great", "Classic"));
+
+        library.notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID).get(5, TimeUnit.SECONDS);
+
+        verify(notificationService).notifyUser(VALID_USER_ID, "Reviews for 'Clean Code':\nGreat\nClassic");
+        verify(reviewService).close();
+    }
+
+    @Test
+    void GivenReviewServiceFails_WhenNotifyUserWithBookReviewsAsync_ThenFutureFailsWithUnavailable() {
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("Down"));
+
+        assertFailsWith(ReviewServiceUnavailableException.class,
+                library.notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID));
+        verify(notificationService, never()).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    void GivenFailingNotification_WhenGetBookByISBNAsync_ThenBookStillReturned() throws Exception {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great"));
+        doThrow(new NotificationException("Down")).when(notificationService).notifyUser(anyString(), anyString());
+
+        assertSame(book, library.getBookByISBNAsync(VALID_ISBN, VALID_USER_ID).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void GivenMissingOrBorrowedBook_WhenGetBookByISBNAsync_ThenFutureFailsLikeLibrary() {
+        Book borrowed = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        borrowed.tryBorrow(VALID_USER_KEY);
+
+        assertFailsWith(BookNotFoundException.class, library.getBookByISBNAsync(VALID_ISBN, VALID_USER_ID));
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(borrowed);
+        assertFailsWith(BookAlreadyBorrowedException.class, library.getBookByISBNAsync(VALID_ISBN, VALID_USER_ID));
+        assertFailsWith(IllegalArgumentException.class, library.getBookByISBNAsync(VALID_ISBN, "12"));
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(expected, e.getCause());
+        assertTrue(future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,72 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBook {
+
+    private static final long USER_KEY = 123456789012L;
+    private static final long OTHER_USER_KEY = 1L;
+
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        book = new Book("9780306406157", "Clean Code", "Robert Martin");
+    }
+
+    @Test
+    void GivenAvailableBook_WhenTryBorrow_ThenBorrowedByUser() {
+        assertTrue(book.tryBorrow(USER_KEY));
+
+        assertTrue(book.isBorrowed());
+        assertEquals(USER_KEY, book.getBorrowerKey());
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenTryBorrow_ThenFalseAndBorrowerUnchanged() {
+        book.tryBorrow(USER_KEY);
+
+        assertFalse(book.tryBorrow(OTHER_USER_KEY));
+        assertEquals(USER_KEY, book.getBorrowerKey());
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenTryReturn_ThenAvailable() {
+        book.tryBorrow(USER_KEY);
+
+        assertTrue(book.tryReturn());
+        assertFalse(book.isBorrowed());
+        assertEquals(UserKey.NONE, book.getBorrowerKey());
+        assertFalse(book.tryReturn());
+    }
+
+    @Test
+    void GivenBookBorrowedByOtherUser_WhenTryReturnForUser_ThenFalse() {
+        book.tryBorrow(USER_KEY);
+
+        assertFalse(book.tryReturn(OTHER_USER_KEY));
+        assertTrue(book.tryReturn(USER_KEY));
+    }
+
+    @Test
+    void GivenBookBorrowedWithoutUser_WhenGetBorrowerKey_ThenNone() {
+        book.borrow();
+
+        assertTrue(book.isBorrowed());
+        assertEquals(UserKey.NONE, book.getBorrowerKey());
+        assertThrows(IllegalStateException.class, () -> book.borrow());
+        book.returnBook();
+        assertThrows(IllegalStateException.class, () -> book.returnBook());
+    }
+
+    @Test
+    void GivenNegativeUserKey_WhenTryBorrow_ThenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> book.tryBorrow(UserKey.NONE));
+    }
+}
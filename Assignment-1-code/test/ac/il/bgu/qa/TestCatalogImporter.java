@@ -0,0 +1,107 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.isbn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestCatalogImporter {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String OTHER_ISBN = "9780132350884";
+    private static final String THIRD_ISBN = "9780201633610";
+
+    private InMemoryDatabaseService databaseService;
+    private CatalogImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        databaseService = new InMemoryDatabaseService();
+        importer = new CatalogImporter(databaseService, 2, 3);
+    }
+
+    @Test
+    void GivenValidCsv_WhenImport_ThenAllBooksAdded() throws Exception {
+        String csv = "isbn,title,author\n"
+                + VALID_ISBN + ",Clean Code,Robert Martin\n"
+                + "978-0-13-235088-4,\"Code \"\"Complete\"\", 2nd\",\"Steve McConnell\"\n"
+                + THIRD_ISBN + ",Design Patterns,Erich Gamma\n";
+
+        ImportReport report = importer.importFrom(new StringReader(csv), ',', true);
+
+        assertEquals(3, report.getLinesRead());
+        assertEquals(3, report.getImported());
+        assertEquals(List.of(), report.getRejections());
+        assertEquals("Code \"Complete\", 2nd", databaseService.getBookByISBN(OTHER_ISBN).getTitle());
+        assertEquals("Steve McConnell", databaseService.getBookByISBN(OTHER_ISBN).getAuthor());
+    }
+
+    @Test
+    void GivenInvalidLines_WhenImport_ThenRejectedWithAddBookReasons() throws Exception {
+        String tsv = VALID_ISBN + "\tClean Code\tRobert Martin\n"
+                + "123\tBad ISBN\tRobert Martin\n"
+                + OTHER_ISBN + "\t\tRobert Martin\n"
+                + THIRD_ISBN + "\tDesign Patterns\tJohn--Doe\n"
+                + "only two\tfields\n"
+                + "978-0-306-40615-7\tClean Code Again\tRobert Martin\n";
+
+        ImportReport report = importer.importFrom(new StringReader(tsv), '\t', false);
+
+        assertEquals(6, report.getLinesRead());
+        assertEquals(1, report.getImported());
+        assertEquals(List.of(
+                        "line 2 (123): Invalid ISBN.",
+                        "line 3 (" + OTHER_ISBN + "): Invalid title.",
+                        "line 4 (" + THIRD_ISBN + "): Invalid author.",
+                        "line 5 (only two): Malformed line.",
+                        "line 6 (978-0-306-40615-7): Duplicate ISBN."),
+                report.getRejections().stream().map(Object::toString).collect(Collectors.toList()));
+        assertEquals("Clean Code", databaseService.getBookByISBN(VALID_ISBN).getTitle());
+    }
+
+    @Test
+    void GivenBookAlreadyInDatabase_WhenImport_ThenRejected() throws Exception {
+        Book existing = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        databaseService.addBook(VALID_ISBN, existing);
+
+        ImportReport report = importer.importFrom(new StringReader(VALID_ISBN + ",Other,Someone Else\n"), ',', false);
+
+        assertEquals(0, report.getImported());
+        assertEquals("Book already exists.", report.getRejections().get(0).getReason());
+        assertEquals(existing, databaseService.getBookByISBN(VALID_ISBN));
+    }
+
+    @Test
+    void GivenLargeFile_WhenImportFile_ThenStreamedInChunks(@TempDir Path directory) throws Exception {
+        int books = 5_000;
+        StringBuilder csv = new StringBuilder();
+        for (int n = 0; n < books; n++) {
+            csv.append(isbn(n)).append(",Title ").append(n).append(",Author\n");
+        }
+        Path file = directory.resolve("catalog.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ImportReport report = new CatalogImporter(databaseService, 128, 4).importFile(file, ',', false);
+
+        assertEquals(books, report.getImported());
+        assertEquals(books, databaseService.getBookCount());
+        assertNotNull(databaseService.getBookByISBN(isbn(books - 1)));
+    }
+
+    @Test
+    void GivenInvalidChunkSize_WhenConstruct_ThenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new CatalogImporter(databaseService, 0, 1));
+    }
+}
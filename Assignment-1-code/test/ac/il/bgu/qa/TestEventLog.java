@@ -0,0 +1,121 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewSessionProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestEventLog {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+
+    @Test
+    void GivenEmittedEvents_WhenLogClosed_ThenSinkReceivedThemInOrder() {
+        EventLog log = new EventLog(8, event -> lines.add(event.getType() + " " + event.getReason()));
+
+        for (int i = 0; i < 100; i++) {
+            log.validationRejected("borrowBook", VALID_ISBN, VALID_USER_ID, "#" + i);
+            while (log.getDeliveredCount() + 8 <= i + 1) {
+                Thread.onSpinWait();
+            }
+        }
+        log.close();
+
+        assertEquals(100, lines.size());
+        assertEquals("VALIDATION_REJECTED #0", lines.get(0));
+        assertEquals("VALIDATION_REJECTED #99", lines.get(99));
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    void GivenNotificationConsoleSink_WhenEventsEmitted_ThenOnlyNotificationEventsPrinted() {
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(printed, true));
+        try {
+            EventLog log = new EventLog(8, EventLog.Sink.notificationConsole());
+            log.validationRejected("borrowBook", "123", VALID_USER_ID, "Invalid ISBN.");
+            log.notificationRetry(VALID_USER_ID, 1, 5, "fail");
+            log.close();
+        } finally {
+            System.setErr(stderr);
+        }
+
+        String output = printed.toString();
+        assertTrue(output.contains("NOTIFICATION_RETRY"));
+        assertFalse(output.contains("VALIDATION_REJECTED"));
+    }
+
+    @Test
+    void GivenSlowSink_WhenBufferFull_ThenNewEventsDroppedWithoutBlocking() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventLog log = new EventLog(4, event -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(event.getUserId());
+        });
+        log.notificationRetry("first", 1, 5, "Down");
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            log.notificationRetry("user" + i, 1, 5, "Down");
+        }
+        release.countDown();
+        log.close();
+
+        // The event being handled still holds its slot, so three more fit.
+        assertEquals(List.of("first", "user0", "user1", "user2"), lines);
+        assertEquals(7, log.getDroppedCount());
+    }
+
+    @Test
+    void GivenLibraryWithEventLog_WhenRejectedAndNotificationRetried_ThenTypedEventsEmitted() {
+        EventLog log = new EventLog(64, event -> lines.add(event.toString().substring(event.toString().indexOf(' ') + 1)));
+        DatabaseService databaseService = mock(DatabaseService.class);
+        ReviewService reviewService = mock(ReviewService.class);
+        NotificationService notificationService = mock(NotificationService.class);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(new User("Alice", VALID_USER_ID, notificationService));
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great"));
+        doThrow(new NotificationException("Down")).when(notificationService).notifyUser(anyString(), anyString());
+        Library library = new Library(databaseService, ReviewSessionProvider.closingEach(reviewService),
+                NotificationDispatcher.inline(2, log), null, log);
+
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook("123", VALID_USER_ID));
+        library.getBookByISBN(VALID_ISBN, VALID_USER_ID);
+        log.close();
+
+        assertEquals(List.of(
+                "VALIDATION_REJECTED operation=borrowBook isbn=123 userId=123456789012 reason=\"Invalid ISBN.\"",
+                "NOTIFICATION_RETRY userId=123456789012 attempt=1/2 reason=\"Down\"",
+                "NOTIFICATION_RETRY userId=123456789012 attempt=2/2 reason=\"Down\"",
+                "NOTIFICATION_FAILED operation=getBookByISBN isbn=9780306406157 userId=123456789012 reason=\"Notification failed!\""),
+                lines);
+    }
+}
@@ -0,0 +1,89 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestIdentifierValidator {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"9780306406157", "978-0-306-40615-7", "-9780306406157-", "978--0306406157", "0000000000000"})
+    void GivenValidISBN_WhenIsISBNValid_ThenTrue(String isbn) {
+        assertTrue(IdentifierValidator.isISBNValid(isbn));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "-", "123", "97803064061AB", "9780306406158", "97803064061570", "978 0306406157",
+            "\u0669780306406157"})
+    void GivenInvalidISBN_WhenIsISBNValid_ThenFalse(String isbn) {
+        assertFalse(IdentifierValidator.isISBNValid(isbn));
+    }
+
+    @Test
+    void GivenNullISBN_WhenIsISBNValid_ThenFalse() {
+        assertFalse(IdentifierValidator.isISBNValid(null));
+    }
+
+    @Test
+    void GivenISBNArray_WhenValidateISBNs_ThenResultPerEntry() {
+        CharSequence[] isbns = {"9780306406157", null, "9780306406158", new StringBuilder("978-0-306-40615-7")};
+        boolean[] results = new boolean[isbns.length];
+
+        assertEquals(2, IdentifierValidator.validateISBNs(isbns, results));
+        assertArrayEquals(new boolean[]{true, false, false, true}, results);
+    }
+
+    @Test
+    void GivenResultArrayTooShort_WhenValidateISBNs_ThenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> IdentifierValidator.validateISBNs(new CharSequence[2], new boolean[1]));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"123456789012", "000000000000"})
+    void GivenValidUserId_WhenIsUserIdValid_ThenTrue(String userId) {
+        assertTrue(IdentifierValidator.isUserIdValid(userId));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "123", "1234567890123", "12345678901a", "1234-5678901"})
+    void GivenInvalidUserId_WhenIsUserIdValid_ThenFalse(String userId) {
+        assertFalse(IdentifierValidator.isUserIdValid(userId));
+    }
+
+    @Test
+    void GivenNullUserId_WhenIsUserIdValid_ThenFalse() {
+        assertFalse(IdentifierValidator.isUserIdValid(null));
+    }
+
+    @Test
+    void GivenHyphenatedISBN_WhenParseIsbnKey_ThenRoundTripToCanonicalForm() {
+        long key = IsbnKey.parse("978-0-306-40615-7");
+
+        assertEquals(9780306406157L, key);
+        assertEquals("9780306406157", IsbnKey.toString(key));
+    }
+
+    @Test
+    void GivenISBNWithLeadingZeros_WhenParseIsbnKey_ThenKeepZeroPadding() {
+        assertEquals("0000000000000", IsbnKey.toString(IsbnKey.parse("0000000000000")));
+    }
+
+    @Test
+    void GivenInvalidISBN_WhenIsbnKeyOf_ThenThrowIllegalArgumentException() {
+        assertEquals(IsbnKey.NONE, IsbnKey.parse("9780306406158"));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.of("9780306406158"));
+    }
+
+    @Test
+    void GivenUserId_WhenParseUserKey_ThenRoundTrip() {
+        assertEquals("000000000042", UserKey.toString(UserKey.of("000000000042")));
+        assertEquals(UserKey.NONE, UserKey.parse("12345"));
+    }
+}
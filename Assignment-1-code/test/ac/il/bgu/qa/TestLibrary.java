@@ -2,30 +2,47 @@ package ac.il.bgu.qa;
 import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
 import ac.il.bgu.qa.errors.BookNotBorrowedException;
 import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.BorrowLimitExceededException;
 import ac.il.bgu.qa.errors.NoReviewsFoundException;
 import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.ReviewCallRejectedException;
 import ac.il.bgu.qa.errors.ReviewException;
 import ac.il.bgu.qa.errors.ReviewServiceUnavailableException;
 import ac.il.bgu.qa.errors.UserNotRegisteredException;
+import ac.il.bgu.qa.services.BorrowLedger;
 import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryReviewService;
 import ac.il.bgu.qa.services.NotificationService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewSessionPool;
+import ac.il.bgu.qa.services.ReviewSessionProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -37,9 +54,12 @@ import static org.mockito.Mockito.when;
 public class TestLibrary {
 
     private static final String VALID_ISBN = "9780306406157";
+    private static final String OTHER_ISBN = "9780132350884";
+    private static final String MISSING_ISBN = "9780201633610";
     private static final String VALID_TITLE = "Clean Code";
     private static final String VALID_AUTHOR = "Robert Martin";
     private static final String VALID_USER_ID = "123456789012";
+    private static final long VALID_USER_KEY = 123456789012L;
     private static final String VALID_USER_NAME = "Alice";
 
     private DatabaseService databaseService;
@@ -63,6 +83,16 @@ public class TestLibrary {
         verify(databaseService).addBook(VALID_ISBN, book);
     }
 
+    @Test
+    void GivenBookWithHyphenatedISBN_WhenAddBook_ThenStoreUnderCanonicalISBN() {
+        Book book = new Book("978-0-306-40615-7", VALID_TITLE, VALID_AUTHOR);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(null);
+
+        library.addBook(book);
+
+        verify(databaseService).addBook(VALID_ISBN, book);
+    }
+
     @Test
     void GivenBookButBookNull_WhenAddBook_ThenThrowIllegalArgumentException() {
         assertThrows(IllegalArgumentException.class, () -> library.addBook(null));
@@ -216,7 +246,19 @@ public class TestLibrary {
         library.borrowBook(VALID_ISBN, VALID_USER_ID);
 
         assertTrue(book.isBorrowed());
-        verify(book).borrow();
+        assertEquals(VALID_USER_KEY, book.getBorrowerKey());
+        verify(book).tryBorrow(VALID_USER_KEY);
+        verify(databaseService).borrowBook(VALID_ISBN, VALID_USER_ID);
+    }
+
+    @Test
+    void GivenHyphenatedISBN_WhenBorrowBook_ThenUseCanonicalISBN() {
+        Book book = createValidBook();
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+
+        library.borrowBook("978-0-306-40615-7", VALID_USER_ID);
+
         verify(databaseService).borrowBook(VALID_ISBN, VALID_USER_ID);
     }
 
@@ -269,6 +311,175 @@ public class TestLibrary {
         assertThrows(BookAlreadyBorrowedException.class, () -> library.borrowBook(VALID_ISBN, VALID_USER_ID));
     }
 
+    @Test
+    void GivenManyUsersRacing_WhenBorrowBook_ThenExactlyOneWinsAndOthersGetBookAlreadyBorrowed() throws Exception {
+        int threads = 16;
+        Book book = createValidBook();
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(anyString())).thenReturn(createValidUser());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+        AtomicInteger losers = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                String userId = String.format("%012d", t);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        library.borrowBook(VALID_ISBN, userId);
+                        winners.incrementAndGet();
+                    } catch (BookAlreadyBorrowedException e) {
+                        losers.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, winners.get());
+        assertEquals(threads - 1, losers.get());
+        verify(databaseService, times(1)).borrowBook(anyString(), anyString());
+    }
+
+    @Test
+    void GivenDatabaseRejectsBorrow_WhenBorrowBook_ThenBookReleased() {
+        Book book = createValidBook();
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+        doThrow(new IllegalStateException("fail")).when(databaseService).borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertThrows(IllegalStateException.class, () -> library.borrowBook(VALID_ISBN, VALID_USER_ID));
+        assertFalse(book.isBorrowed());
+    }
+
+    @Test
+    void GivenMixedBatch_WhenBorrowBooks_ThenOutcomePerItemAndOneDatabaseWrite() {
+        Book available = createValidBook();
+        Book borrowed = new Book(OTHER_ISBN, VALID_TITLE, VALID_AUTHOR);
+        borrowed.borrow();
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+        when(databaseService.getBooksByISBN(any())).thenReturn(Map.of(VALID_ISBN, available, OTHER_ISBN, borrowed));
+
+        Map<String, BatchOutcome> outcomes = library.borrowBooks(VALID_USER_ID,
+                List.of(VALID_ISBN, "123", OTHER_ISBN, "978-0-306-40615-7", MISSING_ISBN));
+
+        assertEquals(List.of(VALID_ISBN, "123", OTHER_ISBN, "978-0-306-40615-7", MISSING_ISBN),
+                new ArrayList<>(outcomes.keySet()));
+        assertEquals(BatchOutcome.BORROWED, outcomes.get(VALID_ISBN));
+        assertEquals(BatchOutcome.INVALID_ISBN, outcomes.get("123"));
+        assertEquals(BatchOutcome.ALREADY_BORROWED, outcomes.get(OTHER_ISBN));
+        assertEquals(BatchOutcome.DUPLICATE_ISBN, outcomes.get("978-0-306-40615-7"));
+        assertEquals(BatchOutcome.BOOK_NOT_FOUND, outcomes.get(MISSING_ISBN));
+        assertEquals(VALID_USER_KEY, available.getBorrowerKey());
+        verify(databaseService).getBooksByISBN(List.of(VALID_ISBN, OTHER_ISBN, MISSING_ISBN));
+        verify(databaseService).borrowBooks(List.of(VALID_ISBN), VALID_USER_ID);
+        verify(databaseService, never()).borrowBook(anyString(), anyString());
+    }
+
+    @Test
+    void GivenUserNotRegistered_WhenBorrowBooks_ThenThrowUserNotRegisteredException() {
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(null);
+
+        assertThrows(UserNotRegisteredException.class, () -> library.borrowBooks(VALID_USER_ID, List.of(VALID_ISBN)));
+        verify(databaseService, never()).getBooksByISBN(any());
+    }
+
+    @Test
+    void GivenInvalidUserId_WhenBorrowBooks_ThenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBooks("123", List.of(VALID_ISBN)));
+    }
+
+    @Test
+    void GivenDatabaseRejectsBatch_WhenBorrowBooks_ThenBooksReleased() {
+        Book book = createValidBook();
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+        when(databaseService.getBooksByISBN(any())).thenReturn(Map.of(VALID_ISBN, book));
+        doThrow(new IllegalStateException("fail")).when(databaseService).borrowBooks(any(), anyString());
+
+        assertThrows(IllegalStateException.class, () -> library.borrowBooks(VALID_USER_ID, List.of(VALID_ISBN)));
+        assertFalse(book.isBorrowed());
+    }
+
+    @Test
+    void GivenOnlyInvalidISBNs_WhenReturnBooks_ThenDatabaseNotQueried() {
+        Map<String, BatchOutcome> outcomes = library.returnBooks(List.of("abc", "123"));
+
+        assertEquals(BatchOutcome.INVALID_ISBN, outcomes.get("abc"));
+        verify(databaseService, never()).getBooksByISBN(any());
+    }
+
+    @Test
+    void GivenMixedBatch_WhenReturnBooks_ThenOutcomePerItemAndOneDatabaseWrite() {
+        Book borrowed = createValidBook();
+        borrowed.borrow();
+        Book available = new Book(OTHER_ISBN, VALID_TITLE, VALID_AUTHOR);
+        when(databaseService.getBooksByISBN(any())).thenReturn(Map.of(VALID_ISBN, borrowed, OTHER_ISBN, available));
+
+        Map<String, BatchOutcome> outcomes = library.returnBooks(List.of(VALID_ISBN, OTHER_ISBN, MISSING_ISBN, "abc"));
+
+        assertEquals(BatchOutcome.RETURNED, outcomes.get(VALID_ISBN));
+        assertEquals(BatchOutcome.NOT_BORROWED, outcomes.get(OTHER_ISBN));
+        assertEquals(BatchOutcome.BOOK_NOT_FOUND, outcomes.get(MISSING_ISBN));
+        assertEquals(BatchOutcome.INVALID_ISBN, outcomes.get("abc"));
+        assertFalse(borrowed.isBorrowed());
+        verify(databaseService).returnBooks(List.of(VALID_ISBN));
+    }
+
+    @Test
+    void GivenUserAtBorrowLimit_WhenBorrowBook_ThenThrowBorrowLimitExceededException() {
+        Library limited = createLibraryWithLedger(new BorrowLedger(1));
+        Book other = new Book(OTHER_ISBN, VALID_TITLE, VALID_AUTHOR);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getBookByISBN(OTHER_ISBN)).thenReturn(other);
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+
+        limited.borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertThrows(BorrowLimitExceededException.class, () -> limited.borrowBook(OTHER_ISBN, VALID_USER_ID));
+        assertFalse(other.isBorrowed());
+        verify(databaseService, never()).borrowBook(OTHER_ISBN, VALID_USER_ID);
+    }
+
+    @Test
+    void GivenBorrowLimit_WhenBorrowBooks_ThenItemsBeyondLimitExceedIt() {
+        Library limited = createLibraryWithLedger(new BorrowLedger(1));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+        when(databaseService.getBooksByISBN(any())).thenReturn(Map.of(
+                VALID_ISBN, createValidBook(), OTHER_ISBN, new Book(OTHER_ISBN, VALID_TITLE, VALID_AUTHOR)));
+
+        Map<String, BatchOutcome> outcomes = limited.borrowBooks(VALID_USER_ID, List.of(VALID_ISBN, OTHER_ISBN));
+
+        assertEquals(BatchOutcome.BORROWED, outcomes.get(VALID_ISBN));
+        assertEquals(BatchOutcome.LIMIT_EXCEEDED, outcomes.get(OTHER_ISBN));
+        verify(databaseService).borrowBooks(List.of(VALID_ISBN), VALID_USER_ID);
+    }
+
+    @Test
+    void GivenBorrowedAndReturnedBooks_WhenQueryLedger_ThenCurrentHoldersReported() {
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getBookByISBN(OTHER_ISBN)).thenReturn(new Book(OTHER_ISBN, VALID_TITLE, VALID_AUTHOR));
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+
+        library.borrowBook(VALID_ISBN, VALID_USER_ID);
+        library.borrowBook("978-0-13-235088-4", VALID_USER_ID);
+        assertEquals(List.of(OTHER_ISBN, VALID_ISBN), library.getBorrowedBooks(VALID_USER_ID));
+        library.returnBook(VALID_ISBN);
+
+        assertEquals(List.of(OTHER_ISBN), library.getBorrowedBooks(VALID_USER_ID));
+        assertEquals(VALID_USER_ID, library.getBorrower(OTHER_ISBN));
+        assertNull(library.getBorrower(VALID_ISBN));
+        assertThrows(IllegalArgumentException.class, () -> library.getBorrowedBooks("123"));
+    }
+
     @Test
     void GivenValidISBN_WhenReturnBook_ThenSuccess() {
         Book book = spy(createValidBook());
@@ -278,7 +489,7 @@ public class TestLibrary {
         library.returnBook(VALID_ISBN);
 
         assertFalse(book.isBorrowed());
-        verify(book).returnBook();
+        verify(book).tryReturn();
         verify(databaseService).returnBook(VALID_ISBN);
     }
 
@@ -430,17 +641,67 @@ public class TestLibrary {
         verify(reviewService).close();
     }
 
+    @Test
+    void GivenSessionPool_WhenNotifyUserWithBookReviewsRepeatedly_ThenOneSessionReused() {
+        InMemoryReviewService reviews = new InMemoryReviewService();
+        reviews.addReview(VALID_ISBN, "Great");
+        ReviewSessionPool pool = new ReviewSessionPool(reviews::openSession, null, 4, 100, 60_000, 600_000);
+        Library pooledLibrary = new Library(databaseService, pool);
+        User user = mock(User.class);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(user);
+
+        for (int i = 0; i < 3; i++) {
+            pooledLibrary.notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        }
+
+        verify(user, times(3)).sendNotification("Reviews for 'Clean Code':\nGreat");
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getIdleCount());
+        pool.close();
+    }
+
+    @Test
+    void GivenFailedSession_WhenNotifyUserWithBookReviews_ThenSessionInvalidated() {
+        ReviewService session = mock(ReviewService.class);
+        ReviewSessionProvider sessions = mock(ReviewSessionProvider.class);
+        when(sessions.acquire()).thenReturn(session);
+        when(session.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("fail"));
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+
+        assertThrows(ReviewServiceUnavailableException.class,
+                () -> new Library(databaseService, sessions).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID));
+        verify(sessions).invalidate(session);
+        verify(sessions, never()).release(session);
+    }
+
+    @Test
+    void GivenRejectedReviewCall_WhenNotifyUserWithBookReviews_ThenSessionReleased() {
+        ReviewService session = mock(ReviewService.class);
+        ReviewSessionProvider sessions = mock(ReviewSessionProvider.class);
+        when(sessions.acquire()).thenReturn(session);
+        when(session.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewCallRejectedException("open"));
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(createValidUser());
+
+        assertThrows(ReviewServiceUnavailableException.class,
+                () -> new Library(databaseService, sessions).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID));
+        verify(sessions).release(session);
+        verify(sessions, never()).invalidate(session);
+    }
+
     @Test
     void GivenValidRequest_WhenGetBookByISBN_ThenSucceed() {
         Book book = createValidBook();
         when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
         Library spyLibrary = spy(new Library(databaseService, reviewService));
-        doNothing().when(spyLibrary).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        doReturn(CompletableFuture.completedFuture(null)).when(spyLibrary).notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID);
 
         Book result = spyLibrary.getBookByISBN(VALID_ISBN, VALID_USER_ID);
 
         assertEquals(book, result);
-        verify(spyLibrary).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        verify(spyLibrary).notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID);
     }
 
     @Test
@@ -474,12 +735,101 @@ public class TestLibrary {
         Book book = createValidBook();
         when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
         Library spyLibrary = spy(new Library(databaseService, reviewService));
-        doThrow(new NotificationException("fail")).when(spyLibrary).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        doThrow(new NotificationException("fail")).when(spyLibrary).notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID);
 
         Book result = spyLibrary.getBookByISBN(VALID_ISBN, VALID_USER_ID);
 
         assertEquals(book, result);
-        verify(spyLibrary).notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        verify(spyLibrary).notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID);
+    }
+
+    @Test
+    void GivenAsynchronousDeliveryFails_WhenGetBookByISBN_ThenReturnBookWithoutWaiting() {
+        Book book = createValidBook();
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(book);
+        Library spyLibrary = spy(new Library(databaseService, reviewService));
+        doReturn(CompletableFuture.failedFuture(new NotificationException("fail")))
+                .when(spyLibrary).notifyUserWithBookReviewsAsync(VALID_ISBN, VALID_USER_ID);
+
+        assertEquals(book, spyLibrary.getBookByISBN(VALID_ISBN, VALID_USER_ID));
+    }
+
+    @Test
+    void GivenLookupExecutor_WhenNotifyUserWithBookReviews_ThenLookupsRunConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch started = new CountDownLatch(3);
+        User user = createValidUser();
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenAnswer(invocation -> arrive(started, createValidBook()));
+        when(databaseService.getUserById(VALID_USER_ID)).thenAnswer(invocation -> arrive(started, user));
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenAnswer(invocation -> arrive(started, List.of("Great")));
+        Library concurrentLibrary = new Library(databaseService, ReviewSessionProvider.closingEach(reviewService),
+                NotificationDispatcher.inline(5), executor);
+
+        try {
+            // Each lookup only returns once all three have started, so a sequential fetch would fail.
+            concurrentLibrary.notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(user.getNotificationService()).notifyUser(VALID_USER_ID, "Reviews for 'Clean Code':\nGreat");
+    }
+
+    @Test
+    void GivenLookupExecutorAndMissingBook_WhenNotifyUserWithBookReviews_ThenBookNotFoundAndReviewFetchCancelled() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenAnswer(invocation -> {
+            assertTrue(fetching.await(5, TimeUnit.SECONDS));
+            return null;
+        });
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(null);
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenAnswer(invocation -> {
+            fetching.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            throw new ReviewException("Interrupted");
+        });
+        Library concurrentLibrary = new Library(databaseService, ReviewSessionProvider.closingEach(reviewService),
+                NotificationDispatcher.inline(5), executor);
+
+        try {
+            assertThrows(BookNotFoundException.class, () -> concurrentLibrary.notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void GivenLookupExecutorAndUnregisteredUser_WhenReviewsFail_ThenUserNotRegisteredTakesPrecedence() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        when(databaseService.getBookByISBN(VALID_ISBN)).thenReturn(createValidBook());
+        when(databaseService.getUserById(VALID_USER_ID)).thenReturn(null);
+        when(reviewService.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("Down"));
+        Library concurrentLibrary = new Library(databaseService, ReviewSessionProvider.closingEach(reviewService),
+                NotificationDispatcher.inline(5), executor);
+
+        try {
+            assertThrows(UserNotRegisteredException.class, () -> concurrentLibrary.notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T arrive(CountDownLatch started, T result) throws InterruptedException {
+        started.countDown();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private Library createLibraryWithLedger(BorrowLedger ledger) {
+        return new Library(databaseService, ReviewSessionProvider.closingEach(reviewService),
+                NotificationDispatcher.inline(5), null, EventLog.shared(), ledger);
     }
 
     private Book createValidBook() {
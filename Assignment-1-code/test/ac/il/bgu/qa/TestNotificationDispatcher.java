@@ -0,0 +1,159 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.NotificationRejectedException;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestNotificationDispatcher {
+
+    private static final String VALID_USER_ID = "123456789012";
+
+    private final List<NotificationDispatcher.FailedNotification> deadLetters = new CopyOnWriteArrayList<>();
+    private NotificationDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    void GivenInlineDispatcherAndFailingService_WhenDispatch_ThenEveryAttemptMadeBeforeReturning() {
+        NotificationService notificationService = mock(NotificationService.class);
+        doThrow(new NotificationException("fail")).when(notificationService).notifyUser(anyString(), anyString());
+        dispatcher = NotificationDispatcher.inline(5);
+
+        CompletableFuture<Void> delivery = dispatcher.dispatch(new User("Alice", VALID_USER_ID, notificationService), "Hi");
+
+        assertTrue(delivery.isCompletedExceptionally());
+        verify(notificationService, times(5)).notifyUser(VALID_USER_ID, "Hi");
+    }
+
+    @Test
+    void GivenRejectedNotification_WhenDispatch_ThenNotRetried() {
+        NotificationService notificationService = mock(NotificationService.class);
+        doThrow(new NotificationRejectedException("open")).when(notificationService).notifyUser(anyString(), anyString());
+        dispatcher = NotificationDispatcher.inline(5);
+
+        CompletableFuture<Void> delivery = dispatcher.dispatch(new User("Alice", VALID_USER_ID, notificationService), "Hi");
+
+        assertTrue(delivery.isCompletedExceptionally());
+        verify(notificationService, times(1)).notifyUser(VALID_USER_ID, "Hi");
+    }
+
+    @Test
+    void GivenTransientFailures_WhenDispatch_ThenRetriedUntilDelivered() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationService flaky = (userId, message) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new NotificationException("fail");
+            }
+        };
+        dispatcher = new NotificationDispatcher(2, 10, 5, 1, 10, deadLetters::add);
+
+        dispatcher.dispatch(new User("Alice", VALID_USER_ID, flaky), "Hi").get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, attempts.get());
+        assertTrue(deadLetters.isEmpty());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    void GivenPersistentFailure_WhenDispatch_ThenDeadLetteredAfterLastAttempt() {
+        NotificationService failing = (userId, message) -> {
+            throw new NotificationException("fail");
+        };
+        dispatcher = new NotificationDispatcher(2, 10, 4, 1, 5, deadLetters::add);
+
+        CompletableFuture<Void> delivery = dispatcher.dispatch(new User("Alice", VALID_USER_ID, failing), "Hi");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(NotificationException.class, e.getCause());
+        assertEquals(1, deadLetters.size());
+        assertEquals(VALID_USER_ID, deadLetters.get(0).getUserId());
+        assertEquals("Hi", deadLetters.get(0).getMessage());
+        assertEquals(4, deadLetters.get(0).getAttempts());
+    }
+
+    @Test
+    void GivenFullDispatcher_WhenDispatch_ThenCallerBlockedUntilCapacityFrees() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        NotificationService blocking = (userId, message) -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        dispatcher = new NotificationDispatcher(2, 1, 1, 0, 0, deadLetters::add);
+        User user = new User("Alice", VALID_USER_ID, blocking);
+        CompletableFuture<Void> first = dispatcher.dispatch(user, "First");
+
+        CompletableFuture<CompletableFuture<Void>> second = CompletableFuture.supplyAsync(() -> dispatcher.dispatch(user, "Second"));
+        Thread.sleep(100);
+        assertFalse(second.isDone());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void GivenClosedDispatcher_WhenRetryPending_ThenDeliveryFails() {
+        NotificationService failing = (userId, message) -> {
+            throw new NotificationException("fail");
+        };
+        dispatcher = new NotificationDispatcher(1, 10, 5, 10_000, 10_000, deadLetters::add);
+        CompletableFuture<Void> delivery = dispatcher.dispatch(new User("Alice", VALID_USER_ID, failing), "Hi");
+
+        dispatcher.close();
+
+        assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void GivenThrowingDeadLetterHandlerOrError_WhenDispatch_ThenDeliveryFailsAndCapacityFreed() throws Exception {
+        NotificationService failing = (userId, message) -> {
+            throw new NotificationException("fail");
+        };
+        NotificationService crashing = (userId, message) -> {
+            throw new AssertionError("crash");
+        };
+        dispatcher = new NotificationDispatcher(1, 1, 1, 0, 0, failed -> {
+            throw new IllegalStateException("handler");
+        });
+
+        CompletableFuture<Void> first = dispatcher.dispatch(new User("Alice", VALID_USER_ID, failing), "Hi");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause().getSuppressed()[0]);
+
+        CompletableFuture<Void> second = dispatcher.dispatch(new User("Alice", VALID_USER_ID, crashing), "Hi");
+        e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AssertionError.class, e.getCause());
+
+        CompletableFuture<Void> third = dispatcher.dispatch(new User("Alice", VALID_USER_ID, (userId, message) -> { }), "Hi");
+        third.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,180 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.isbn;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.runConcurrently;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.userId;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class TestAvailabilityDatabaseService {
+
+    private static final String VALID_USER_ID = "123456789012";
+    private static final Book CLEAN_CODE = new Book("9780132350884", "Clean Code", "Robert Martin");
+    private static final Book CLEAN_ARCHITECTURE = new Book("9780134494166", "Clean Architecture", "Robert Martin");
+    private static final Book REFACTORING = new Book("9780201485677", "Refactoring", "Martin Fowler");
+
+    private final AvailabilityDatabaseService database =
+            new AvailabilityDatabaseService(new IndexedDatabaseService(new InMemoryDatabaseService()));
+
+    @Test
+    void GivenBorrowsAndReturns_WhenCounted_ThenAvailabilityMirrored() {
+        database.addBook(CLEAN_CODE.getISBN(), CLEAN_CODE);
+        database.addBook(CLEAN_ARCHITECTURE.getISBN(), CLEAN_ARCHITECTURE);
+        database.addBooks(Map.of(REFACTORING.getISBN(), REFACTORING));
+
+        database.borrowBook(CLEAN_CODE.getISBN(), VALID_USER_ID);
+        database.borrowBook(9780201485677L, 123456789012L);
+        database.returnBook(REFACTORING.getISBN());
+
+        assertEquals(3, database.getTrackedCount());
+        assertEquals(2, database.getAvailableCount());
+        assertFalse(database.isAvailable(CLEAN_CODE.getISBN()));
+        assertTrue(database.isAvailable(REFACTORING.getISBN()));
+        assertEquals(List.of(CLEAN_ARCHITECTURE), database.getAvailableBooks(1));
+    }
+
+    @Test
+    void GivenRejectedBorrow_WhenCounted_ThenBitmapUnchanged() {
+        database.addBook(CLEAN_CODE.getISBN(), CLEAN_CODE);
+
+        assertThrows(BookNotFoundException.class, () -> database.borrowBook(REFACTORING.getISBN(), VALID_USER_ID));
+
+        assertEquals(1, database.getAvailableCount());
+        assertThrows(IllegalArgumentException.class, () -> database.getAvailableBooks(0));
+    }
+
+    @Test
+    void GivenSearchResults_WhenNarrowedToAvailable_ThenBorrowedBooksDropped() {
+        database.addBook(CLEAN_CODE.getISBN(), CLEAN_CODE);
+        database.addBook(CLEAN_ARCHITECTURE.getISBN(), CLEAN_ARCHITECTURE);
+        database.addBook(REFACTORING.getISBN(), REFACTORING);
+        database.borrowBook(CLEAN_CODE.getISBN(), VALID_USER_ID);
+
+        assertEquals(List.of(CLEAN_ARCHITECTURE), database.findAvailableBooksByTitlePrefix("clean", 10));
+        assertEquals(List.of(CLEAN_ARCHITECTURE, REFACTORING), database.findAvailableBooksByAuthorPrefix("martin", 10));
+    }
+
+    @Test
+    void GivenBorrowedAndUntrackedCandidates_WhenRetainAvailable_ThenOnlyAvailableKeptInAddedOrder() {
+        IndexedDatabaseService indexed = new IndexedDatabaseService(new InMemoryDatabaseService());
+        AvailabilityDatabaseService tracked = new AvailabilityDatabaseService(indexed);
+        tracked.addBook(CLEAN_CODE.getISBN(), CLEAN_CODE);
+        tracked.addBook(CLEAN_ARCHITECTURE.getISBN(), CLEAN_ARCHITECTURE);
+        tracked.addBook(REFACTORING.getISBN(), REFACTORING);
+        tracked.borrowBook(CLEAN_ARCHITECTURE.getISBN(), VALID_USER_ID);
+        // Added around the decorator, so the search finds it but the bitmap does not track it.
+        Book untracked = new Book(isbn(1), "Clean Agile", "Robert Martin");
+        indexed.addBook(untracked.getISBN(), untracked);
+
+        List<Book> found = indexed.findBooksByAuthorPrefix("mart", 10);
+
+        assertEquals(4, found.size());
+        assertEquals(List.of(CLEAN_CODE, REFACTORING), tracked.retainAvailable(found, 10));
+        assertEquals(List.of(CLEAN_CODE), tracked.retainAvailable(found, 1));
+        assertEquals(List.of(REFACTORING), tracked.retainAvailable(List.of(REFACTORING, untracked, CLEAN_ARCHITECTURE), 10));
+
+        tracked.returnBook(CLEAN_ARCHITECTURE.getISBN());
+
+        assertEquals(List.of(CLEAN_CODE, CLEAN_ARCHITECTURE, REFACTORING), tracked.retainAvailable(found, 10));
+        assertThrows(IllegalArgumentException.class, () -> tracked.retainAvailable(found, 0));
+    }
+
+    @Test
+    void GivenManyBooks_WhenBitmapContainersGrowAndShrink_ThenSetOperationsAgree() {
+        OrdinalBitmap evens = new OrdinalBitmap();
+        OrdinalBitmap thirds = new OrdinalBitmap();
+        for (int ordinal = 0; ordinal < 200_000; ordinal++) {
+            if (ordinal % 2 == 0) {
+                evens.add(ordinal);
+            }
+            if (ordinal % 3 == 0) {
+                thirds.add(ordinal);
+            }
+        }
+        // Thin the first container of thirds back below the array limit.
+        for (int ordinal = 0; ordinal < 60_000; ordinal += 3) {
+            thirds.remove(ordinal);
+        }
+
+        OrdinalBitmap sixths = evens.and(thirds);
+
+        assertEquals(100_000, evens.cardinality());
+        assertEquals(200_000 / 6 + 1 - 10_000, sixths.cardinality());
+        assertArrayEquals(new int[]{60_000, 60_006, 60_012}, sixths.first(3));
+        assertTrue(sixths.contains(199_998));
+        assertFalse(sixths.contains(199_997));
+    }
+
+    @Test
+    void GivenCatalogOfManyBooks_WhenBorrowed_ThenCountStaysExact() {
+        Map<String, Book> books = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            String ISBN = isbn(i);
+            books.put(ISBN, new Book(ISBN, "Title " + i, "Author"));
+        }
+        database.addBooks(books);
+
+        for (int i = 0; i < 10_000; i += 2) {
+            database.borrowBook(isbn(i), VALID_USER_ID);
+        }
+
+        assertEquals(5_000, database.getAvailableCount());
+        assertEquals(5_000, database.getAvailableBooks(10_000).size());
+    }
+
+    @Test
+    void GivenRacingBorrowsAndReturnsOfOneBook_WhenDone_ThenBitmapMatchesDatabase() throws Exception {
+        database.addBook(CLEAN_CODE.getISBN(), CLEAN_CODE);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < 1_000; i++) {
+                try {
+                    database.borrowBook(CLEAN_CODE.getISBN(), userId(thread));
+                } catch (BookAlreadyBorrowedException e) {
+                    continue;
+                }
+                database.returnBook(CLEAN_CODE.getISBN());
+            }
+            return null;
+        });
+
+        assertTrue(database.isAvailable(CLEAN_CODE.getISBN()));
+        assertEquals(1, database.getAvailableCount());
+    }
+
+    @Test
+    void GivenMostMatchesBorrowed_WhenFindAvailable_ThenSearchRequestsGrowFromLimit() {
+        DatabaseService indexed = spy(new IndexedDatabaseService(new InMemoryDatabaseService()));
+        AvailabilityDatabaseService available = new AvailabilityDatabaseService(indexed);
+        for (int i = 0; i < 100; i++) {
+            available.addBook(isbn(i), new Book(isbn(i), "Title " + i, "Author"));
+        }
+        for (int i = 0; i < 90; i++) {
+            available.borrowBook(isbn(i), VALID_USER_ID);
+        }
+
+        List<Book> found = available.findAvailableBooksByTitlePrefix("title", 5);
+
+        assertEquals(5, found.size());
+        for (Book book : found) {
+            assertTrue(available.isAvailable(book.getISBN()));
+        }
+        verify(indexed).findBooksByTitlePrefix("title", 10);
+        verify(indexed, never()).findBooksByTitlePrefix("title", Integer.MAX_VALUE);
+    }
+}
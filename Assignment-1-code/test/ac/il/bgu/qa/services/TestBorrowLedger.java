@@ -0,0 +1,102 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.BatchOutcome;
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.UserKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBorrowLedger {
+
+    private static final long FIRST_ISBN = 9780000000000L;
+    private static final long USER_KEY = 123456789012L;
+
+    @Test
+    void GivenManyBooksBorrowedAndReturned_WhenQueried_ThenHoldingsExact() {
+        BorrowLedger ledger = new BorrowLedger();
+        List<Book> books = books(100);
+        for (int i = 0; i < books.size(); i++) {
+            assertEquals(BatchOutcome.BORROWED, ledger.tryBorrow(books.get(i), FIRST_ISBN + i, USER_KEY));
+        }
+        for (int i = 0; i < books.size(); i += 2) {
+            assertTrue(ledger.tryReturn(books.get(i), FIRST_ISBN + i));
+        }
+
+        assertEquals(50, ledger.getBorrowedCount(USER_KEY));
+        assertEquals(FIRST_ISBN + 1, ledger.getBooksOf(USER_KEY)[0]);
+        assertEquals(USER_KEY, ledger.getBorrowerOf(FIRST_ISBN + 99));
+        assertEquals(UserKey.NONE, ledger.getBorrowerOf(FIRST_ISBN));
+        assertFalse(ledger.tryReturn(books.get(0), FIRST_ISBN));
+        assertArrayEquals(new long[0], ledger.getBooksOf(USER_KEY + 1));
+    }
+
+    @Test
+    void GivenConcurrentBorrowersAndReturners_WhenSettled_ThenLedgerAgreesWithBooksAndLimit() throws Exception {
+        BorrowLedger ledger = new BorrowLedger(3);
+        List<Book> books = books(16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < 4; worker++) {
+                long userKey = USER_KEY + worker;
+                workers.add(executor.submit(() -> {
+                    for (int round = 0; round < 2_000; round++) {
+                        int i = (int) ((round * 7 + userKey) % books.size());
+                        if (ledger.tryBorrow(books.get(i), FIRST_ISBN + i, userKey) == BatchOutcome.ALREADY_BORROWED) {
+                            ledger.tryReturn(books.get(i), FIRST_ISBN + i);
+                        }
+                        assertTrue(ledger.getBorrowedCount(userKey) <= 3);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int held = 0;
+        for (int i = 0; i < books.size(); i++) {
+            assertEquals(books.get(i).getBorrowerKey(), ledger.getBorrowerOf(FIRST_ISBN + i));
+            held += books.get(i).isBorrowed() ? 1 : 0;
+        }
+        for (int worker = 0; worker < 4; worker++) {
+            held -= ledger.getBorrowedCount(USER_KEY + worker);
+        }
+        assertEquals(0, held);
+    }
+
+    @Test
+    void GivenFreshBookCopiesPerLookup_WhenSecondUserBorrowsAndUndoes_ThenFirstUserKeepsBook() {
+        BorrowLedger ledger = new BorrowLedger();
+
+        assertEquals(BatchOutcome.BORROWED, ledger.tryBorrow(books(1).get(0), FIRST_ISBN, USER_KEY));
+        Book copy = books(1).get(0);
+        assertEquals(BatchOutcome.ALREADY_BORROWED, ledger.tryBorrow(copy, FIRST_ISBN, USER_KEY + 1));
+        copy.tryBorrow(USER_KEY + 1);
+        ledger.undoBorrow(copy, FIRST_ISBN, USER_KEY + 1);
+
+        assertEquals(USER_KEY, ledger.getBorrowerOf(FIRST_ISBN));
+        assertEquals(1, ledger.getBorrowedCount(USER_KEY));
+        assertFalse(copy.isBorrowed());
+    }
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            books.add(new Book(String.valueOf(FIRST_ISBN + i), "Title " + i, "Author"));
+        }
+        return books;
+    }
+}
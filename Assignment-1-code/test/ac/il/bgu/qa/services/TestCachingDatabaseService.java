@@ -0,0 +1,149 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.isbn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCachingDatabaseService {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final long VALID_ISBN_KEY = 9780306406157L;
+    private static final String VALID_USER_ID = "123456789012";
+
+    private DatabaseService delegate;
+    private CachingDatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(DatabaseService.class);
+        databaseService = new CachingDatabaseService(delegate, 2, 2);
+    }
+
+    @Test
+    void GivenCachedBook_WhenGetBookByISBNAgain_ThenDelegateQueriedOnce() {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+        when(delegate.getBookByISBN(VALID_ISBN_KEY)).thenReturn(book);
+
+        assertSame(book, databaseService.getBookByISBN(VALID_ISBN));
+        assertSame(book, databaseService.getBookByISBN("978-0-306-40615-7"));
+
+        verify(delegate, times(1)).getBookByISBN(VALID_ISBN_KEY);
+        CacheStatistics statistics = databaseService.getBookStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(0.5, statistics.getHitRate());
+    }
+
+    @Test
+    void GivenMissingBook_WhenGetBookByISBN_ThenNotCached() {
+        assertNull(databaseService.getBookByISBN(VALID_ISBN));
+        assertNull(databaseService.getBookByISBN(VALID_ISBN));
+
+        verify(delegate, times(2)).getBookByISBN(VALID_ISBN_KEY);
+        assertEquals(0, databaseService.getBookStatistics().getSize());
+    }
+
+    @Test
+    void GivenCachedBook_WhenBorrowBook_ThenNextLookupReadsDelegate() {
+        when(delegate.getBookByISBN(VALID_ISBN_KEY)).thenReturn(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        databaseService.getBookByISBN(VALID_ISBN);
+
+        databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+        databaseService.getBookByISBN(VALID_ISBN);
+
+        verify(delegate).borrowBook(VALID_ISBN, VALID_USER_ID);
+        verify(delegate, times(2)).getBookByISBN(VALID_ISBN_KEY);
+    }
+
+    @Test
+    void GivenFullCache_WhenRarelyReadBookMisses_ThenFrequentBooksKept() {
+        for (int n = 0; n < 3; n++) {
+            when(delegate.getBookByISBN(IsbnKey.of(isbn(n)))).thenReturn(new Book(isbn(n), "Title", "Author"));
+        }
+        for (int i = 0; i < 5; i++) {
+            databaseService.getBookByISBN(isbn(0));
+            databaseService.getBookByISBN(isbn(1));
+        }
+
+        databaseService.getBookByISBN(isbn(2));
+        databaseService.getBookByISBN(isbn(0));
+        databaseService.getBookByISBN(isbn(1));
+
+        verify(delegate, times(1)).getBookByISBN(IsbnKey.of(isbn(0)));
+        verify(delegate, times(1)).getBookByISBN(IsbnKey.of(isbn(1)));
+        assertEquals(0, databaseService.getBookStatistics().getEvictions());
+    }
+
+    @Test
+    void GivenFullCache_WhenNewBookReadOften_ThenLeastRecentlyUsedEvicted() {
+        for (int n = 0; n < 3; n++) {
+            when(delegate.getBookByISBN(IsbnKey.of(isbn(n)))).thenReturn(new Book(isbn(n), "Title", "Author"));
+        }
+        databaseService.getBookByISBN(isbn(0));
+        databaseService.getBookByISBN(isbn(1));
+
+        for (int i = 0; i < 3; i++) {
+            databaseService.getBookByISBN(isbn(2));
+        }
+
+        assertEquals(1, databaseService.getBookStatistics().getEvictions());
+        assertEquals(2, databaseService.getBookStatistics().getSize());
+    }
+
+    @Test
+    void GivenPartlyCachedBooks_WhenGetBooksByISBN_ThenOnlyMissingFetched() {
+        Book cached = new Book(isbn(0), "Title", "Author");
+        Book fetched = new Book(isbn(1), "Title", "Author");
+        when(delegate.getBookByISBN(IsbnKey.of(isbn(0)))).thenReturn(cached);
+        when(delegate.getBooksByISBN(List.of(isbn(1)))).thenReturn(Map.of(isbn(1), fetched));
+        databaseService.getBookByISBN(isbn(0));
+
+        Map<String, Book> books = databaseService.getBooksByISBN(List.of(isbn(0), isbn(1)));
+
+        assertEquals(Map.of(isbn(0), cached, isbn(1), fetched), books);
+        verify(delegate).getBooksByISBN(List.of(isbn(1)));
+    }
+
+    @Test
+    void GivenOtherBookInvalidatedDuringLoad_WhenGetBookByISBN_ThenLoadedBookCached() {
+        Book book = new Book(isbn(0), "Title", "Author");
+        when(delegate.getBookByISBN(IsbnKey.of(isbn(0)))).thenAnswer(invocation -> {
+            databaseService.borrowBook(isbn(1), VALID_USER_ID);
+            return book;
+        });
+
+        databaseService.getBookByISBN(isbn(0));
+        databaseService.getBookByISBN(isbn(0));
+
+        verify(delegate, times(1)).getBookByISBN(IsbnKey.of(isbn(0)));
+    }
+
+    @Test
+    void GivenLargeCache_WhenManyBooksRead_ThenAllCachedAcrossStripes() {
+        CachingDatabaseService large = new CachingDatabaseService(delegate, 4_096, 2);
+        when(delegate.getBookByISBN(anyLong())).thenAnswer(invocation -> new Book(VALID_ISBN, "Title", "Author"));
+        for (int round = 0; round < 2; round++) {
+            for (int n = 0; n < 1_000; n++) {
+                large.getBookByISBN(isbn(n));
+            }
+        }
+
+        assertEquals(1_000, large.getBookStatistics().getMisses());
+        assertEquals(1_000, large.getBookStatistics().getHits());
+        assertEquals(1_000, large.getBookStatistics().getSize());
+    }
+}
@@ -0,0 +1,191 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.THREADS;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.runConcurrently;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCachingReviewService {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String OTHER_ISBN = "9780132350884";
+    private static final long TTL_MILLIS = 1000;
+    private static final long NEGATIVE_TTL_MILLIS = 100;
+
+    private ReviewService delegate;
+    private AtomicLong now;
+    private CachingReviewService reviewService;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(ReviewService.class);
+        now = new AtomicLong();
+        reviewService = new CachingReviewService(ReviewSessionProvider.closingEach(delegate), TTL_MILLIS,
+                NEGATIVE_TTL_MILLIS, 100, now::get);
+    }
+
+    @Test
+    void GivenCachedReviews_WhenGetReviewsWithinTtl_ThenDelegateCalledOnceAndClosed() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great", "Good"));
+
+        reviewService.getReviewsForBook(VALID_ISBN);
+        reviewService.close();
+        List<String> reviews = reviewService.getReviewsForBook(VALID_ISBN);
+
+        assertEquals(List.of("Great", "Good"), reviews);
+        verify(delegate, times(1)).getReviewsForBook(VALID_ISBN);
+        verify(delegate, times(1)).close();
+        assertEquals(1, reviewService.getStatistics().getHits());
+    }
+
+    @Test
+    void GivenExpiredReviews_WhenGetReviews_ThenDelegateCalledAgain() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great"));
+        reviewService.getReviewsForBook(VALID_ISBN);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS));
+        reviewService.getReviewsForBook(VALID_ISBN);
+
+        verify(delegate, times(2)).getReviewsForBook(VALID_ISBN);
+    }
+
+    @Test
+    void GivenNoReviews_WhenGetReviewsRepeatedly_ThenEmptyResultCachedForNegativeTtl() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenReturn(Collections.emptyList());
+
+        assertTrue(reviewService.getReviewsForBook(VALID_ISBN).isEmpty());
+        assertTrue(reviewService.getReviewsForBook(VALID_ISBN).isEmpty());
+        verify(delegate, times(1)).getReviewsForBook(VALID_ISBN);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(NEGATIVE_TTL_MILLIS));
+        reviewService.getReviewsForBook(VALID_ISBN);
+        verify(delegate, times(2)).getReviewsForBook(VALID_ISBN);
+    }
+
+    @Test
+    void GivenFailingDelegate_WhenGetReviews_ThenExceptionNotCached() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("Down")).thenReturn(List.of("Great"));
+
+        assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+
+        assertEquals(List.of("Great"), reviewService.getReviewsForBook(VALID_ISBN));
+        verify(delegate, times(2)).close();
+    }
+
+    @Test
+    void GivenCharacterBoundExceeded_WhenCacheReviews_ThenOldestEvicted() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("a".repeat(60)));
+        when(delegate.getReviewsForBook(OTHER_ISBN)).thenReturn(List.of("b".repeat(60)));
+
+        reviewService.getReviewsForBook(VALID_ISBN);
+        reviewService.getReviewsForBook(OTHER_ISBN);
+        reviewService.getReviewsForBook(OTHER_ISBN);
+        reviewService.getReviewsForBook(VALID_ISBN);
+
+        assertEquals(60, reviewService.getCachedCharacters());
+        verify(delegate, times(2)).getReviewsForBook(VALID_ISBN);
+        verify(delegate, times(1)).getReviewsForBook(OTHER_ISBN);
+        assertEquals(2, reviewService.getStatistics().getEvictions());
+    }
+
+    @Test
+    void GivenConcurrentMisses_WhenGetReviews_ThenOneUpstreamCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicReference<CachingReviewService> cache = new AtomicReference<>();
+        ReviewService slow = new ReviewService() {
+            @Override
+            public List<String> getReviewsForBook(String ISBN) {
+                calls.incrementAndGet();
+                // Complete only once every other thread has joined this call; each counts as a hit on joining.
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (cache.get().getStatistics().getHits() < THREADS - 1 && System.nanoTime() - deadline < 0) {
+                    Thread.onSpinWait();
+                }
+                return List.of("Great");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        cache.set(new CachingReviewService(slow, TTL_MILLIS, NEGATIVE_TTL_MILLIS, 100));
+
+        runConcurrently(thread -> {
+            assertEquals(List.of("Great"), cache.get().getReviewsForBook(VALID_ISBN));
+            return null;
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(THREADS - 1, cache.get().getStatistics().getHits());
+    }
+
+    @Test
+    void GivenDelegateThrowingError_WhenConcurrentMisses_ThenEveryCallerSeesIt() throws Exception {
+        AtomicReference<CachingReviewService> cache = new AtomicReference<>();
+        ReviewService broken = new ReviewService() {
+            @Override
+            public List<String> getReviewsForBook(String ISBN) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (cache.get().getStatistics().getHits() < THREADS - 1 && System.nanoTime() - deadline < 0) {
+                    Thread.onSpinWait();
+                }
+                throw new LinkageError("Broken review client");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        cache.set(new CachingReviewService(broken, TTL_MILLIS, NEGATIVE_TTL_MILLIS, 100));
+
+        runConcurrently(thread -> {
+            assertThrows(LinkageError.class, () -> cache.get().getReviewsForBook(VALID_ISBN));
+            return null;
+        });
+
+        assertEquals(0, cache.get().getStatistics().getSize());
+    }
+
+    @Test
+    void GivenSessionPool_WhenGetReviewsMiss_ThenSessionReusedAndNotClosed() {
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenReturn(List.of("Great"));
+        when(delegate.getReviewsForBook(OTHER_ISBN)).thenReturn(List.of("Good"));
+        try (ReviewSessionPool pool = new ReviewSessionPool(() -> delegate, null, 1, 1000, 60_000, 60_000)) {
+            CachingReviewService cache = new CachingReviewService(pool, TTL_MILLIS, NEGATIVE_TTL_MILLIS, 100);
+
+            cache.getReviewsForBook(VALID_ISBN);
+            cache.getReviewsForBook(OTHER_ISBN);
+            cache.close();
+
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(1, pool.getIdleCount());
+            verify(delegate, never()).close();
+        }
+    }
+
+    @Test
+    void GivenInvalidIsbn_WhenGetReviews_ThenForwardedUncached() {
+        reviewService.getReviewsForBook("invalid");
+        reviewService.getReviewsForBook("invalid");
+
+        verify(delegate, times(2)).getReviewsForBook("invalid");
+        verify(delegate, never()).getReviewsForBook(VALID_ISBN);
+    }
+}
@@ -0,0 +1,221 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.NotificationRejectedException;
+import ac.il.bgu.qa.errors.ReviewCallRejectedException;
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCircuitBreaker {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final long OPEN_DURATION_MILLIS = 1_000;
+
+    private AtomicLong now;
+    private CircuitBreaker circuitBreaker;
+    private final List<String> transitions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong();
+        circuitBreaker = new CircuitBreaker("reviews", 4, 4, 50, OPEN_DURATION_MILLIS, 2, now::get);
+        circuitBreaker.addListener((name, from, to) -> transitions.add(name + ": " + from + " -> " + to));
+    }
+
+    @Test
+    void GivenFailureRateBelowThreshold_WhenCallsRecorded_ThenBreakerStaysClosed() {
+        record(false, true, false, false, false, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(25.0, circuitBreaker.getFailureRate());
+    }
+
+    @Test
+    void GivenFailureRateReachesThreshold_WhenCallsRecorded_ThenBreakerOpensAndRejects() {
+        record(false, true, false, true);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals(1, circuitBreaker.getRejectedCalls());
+        assertEquals(List.of("reviews: CLOSED -> OPEN"), transitions);
+    }
+
+    @Test
+    void GivenOpenDurationPassed_WhenTrialCallsSucceed_ThenBreakerCloses() {
+        record(true, true, true, true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MILLIS));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+        assertEquals(List.of("reviews: CLOSED -> OPEN", "reviews: OPEN -> HALF_OPEN", "reviews: HALF_OPEN -> CLOSED"),
+                transitions);
+    }
+
+    @Test
+    void GivenHalfOpenBreaker_WhenTrialCallFails_ThenBreakerOpensAgain() {
+        record(true, true, true, true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MILLIS));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void GivenOpenBreaker_WhenGetReviewsThroughResilientService_ThenRejectedWithoutCallingDelegate() {
+        ReviewService delegate = mock(ReviewService.class);
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("Down"));
+        ReviewService reviewService = new ResilientReviewService(delegate, circuitBreaker, null);
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+        }
+
+        assertThrows(ReviewCallRejectedException.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+        verify(delegate, times(4)).getReviewsForBook(VALID_ISBN);
+    }
+
+    @Test
+    void GivenOpenBreaker_WhenNotifyThroughResilientService_ThenRejected() {
+        NotificationService delegate = mock(NotificationService.class);
+        doThrow(new NotificationException("Down")).when(delegate).notifyUser(anyString(), anyString());
+        NotificationService notificationService = new ResilientNotificationService(delegate, circuitBreaker, null);
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(NotificationException.class, () -> notificationService.notifyUser("123456789012", "Hi"));
+        }
+
+        assertThrows(NotificationRejectedException.class, () -> notificationService.notifyUser("123456789012", "Hi"));
+        verify(delegate, times(4)).notifyUser("123456789012", "Hi");
+    }
+
+    @Test
+    void GivenFullBulkhead_WhenGetReviews_ThenRejected() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ReviewService slow = new ReviewService() {
+            @Override
+            public List<String> getReviewsForBook(String ISBN) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of("Great");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Bulkhead bulkhead = new Bulkhead("reviews", 1, 10);
+        ReviewService reviewService = new ResilientReviewService(slow, null, bulkhead);
+        Thread holder = new Thread(() -> reviewService.getReviewsForBook(VALID_ISBN));
+        holder.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertThrows(ReviewCallRejectedException.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+        assertEquals(1, bulkhead.getConcurrentCalls());
+        assertEquals(1, bulkhead.getRejectedCalls());
+
+        release.countDown();
+        holder.join(5_000);
+        assertEquals(0, bulkhead.getConcurrentCalls());
+    }
+
+    @Test
+    void GivenOpenBreakerAndFullBulkhead_WhenGetReviews_ThenRejectedWithoutWaitingForBulkhead() {
+        record(true, true, true, true);
+        Bulkhead bulkhead = new Bulkhead("reviews", 1, 60_000);
+        assertTrue(bulkhead.tryAcquire());
+        ReviewService reviewService = new ResilientReviewService(mock(ReviewService.class), circuitBreaker, bulkhead);
+
+        ReviewCallRejectedException e = assertThrows(ReviewCallRejectedException.class,
+                () -> reviewService.getReviewsForBook(VALID_ISBN));
+
+        assertEquals("Review service circuit open!", e.getMessage());
+        assertEquals(0, bulkhead.getRejectedCalls());
+    }
+
+    @Test
+    void GivenHalfOpenBreakerAndFullBulkhead_WhenGetReviews_ThenTrialPermissionReturned() {
+        record(true, true, true, true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MILLIS));
+        Bulkhead bulkhead = new Bulkhead("reviews", 1, 0);
+        assertTrue(bulkhead.tryAcquire());
+        ReviewService reviewService = new ResilientReviewService(mock(ReviewService.class), circuitBreaker, bulkhead);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ReviewCallRejectedException.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+        }
+        bulkhead.release();
+        reviewService.getReviewsForBook(VALID_ISBN);
+        reviewService.getReviewsForBook(VALID_ISBN);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void GivenHalfOpenBreaker_WhenTrialReviewLookupThrowsError_ThenBreakerOpensAgain() {
+        record(true, true, true, true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MILLIS));
+        ReviewService delegate = mock(ReviewService.class);
+        when(delegate.getReviewsForBook(VALID_ISBN)).thenThrow(new LinkageError("Broken client"));
+        ReviewService reviewService = new ResilientReviewService(delegate, circuitBreaker, null);
+
+        assertThrows(LinkageError.class, () -> reviewService.getReviewsForBook(VALID_ISBN));
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void GivenHalfOpenBreaker_WhenTrialNotificationThrowsError_ThenBreakerOpensAgain() {
+        record(true, true, true, true);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MILLIS));
+        NotificationService delegate = mock(NotificationService.class);
+        doThrow(new LinkageError("Broken client")).when(delegate).notifyUser(anyString(), anyString());
+        NotificationService notificationService = new ResilientNotificationService(delegate, circuitBreaker, null);
+
+        assertThrows(LinkageError.class, () -> notificationService.notifyUser("123456789012", "Hi"));
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private void record(boolean... failures) {
+        for (boolean failure : failures) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            if (failure) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+    }
+}
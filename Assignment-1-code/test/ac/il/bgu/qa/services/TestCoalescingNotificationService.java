@@ -0,0 +1,159 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.EventLog;
+import ac.il.bgu.qa.NotificationDispatcher;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TestCoalescingNotificationService {
+
+    private static final String VALID_USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    private final Map<String, List<List<String>>> delivered = new ConcurrentHashMap<>();
+    private CoalescingNotificationService notificationService;
+
+    @AfterEach
+    void tearDown() {
+        if (notificationService != null) {
+            notificationService.close();
+        }
+    }
+
+    @Test
+    void GivenMessagesWithinWindow_WhenWindowElapses_ThenOneDeliveryPerUser() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        notificationService = new CoalescingNotificationService((userId, messages) -> {
+            delivered.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(messages);
+            done.countDown();
+        }, 50, 100, Runnable::run);
+
+        notificationService.submit(VALID_USER_ID, "First");
+        notificationService.submit(OTHER_USER_ID, "Other");
+        notificationService.submit(VALID_USER_ID, "Second");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("First", "Second")), delivered.get(VALID_USER_ID));
+        assertEquals(List.of(List.of("Other")), delivered.get(OTHER_USER_ID));
+        assertEquals(3, notificationService.getMessageCount());
+        assertEquals(2, notificationService.getDeliveryCount());
+    }
+
+    @Test
+    void GivenBatchReachesSizeCap_WhenSubmit_ThenDeliveredImmediately() {
+        notificationService = new CoalescingNotificationService((userId, messages) ->
+                delivered.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(messages),
+                60_000, 2, Runnable::run);
+
+        notificationService.submit(VALID_USER_ID, "First");
+        notificationService.submit(VALID_USER_ID, "Second");
+        notificationService.submit(VALID_USER_ID, "Third");
+
+        assertEquals(List.of(List.of("First", "Second")), delivered.get(VALID_USER_ID));
+        notificationService.flush();
+        assertEquals(List.of(List.of("First", "Second"), List.of("Third")), delivered.get(VALID_USER_ID));
+    }
+
+    @Test
+    void GivenFailingDelivery_WhenBatchDelivered_ThenFailureReachesCaller() {
+        notificationService = new CoalescingNotificationService((userId, messages) -> {
+            throw new NotificationException("fail");
+        }, 60_000, 10, Runnable::run);
+
+        CompletableFuture<Void> first = notificationService.submit(VALID_USER_ID, "First");
+        notificationService.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, first::get);
+        assertEquals("fail", e.getCause().getMessage());
+        assertThrows(NotificationException.class, () -> notificationService.notifyUser(VALID_USER_ID, "Late"));
+    }
+
+    @Test
+    void GivenSlowUser_WhenBatchesDelivered_ThenOtherUsersNotDelayed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            notificationService = new CoalescingNotificationService((userId, messages) -> {
+                if (userId.equals(VALID_USER_ID)) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 10, 100, executor);
+
+            CompletableFuture<Void> slow = notificationService.submit(VALID_USER_ID, "First");
+            notificationService.notifyUser(OTHER_USER_ID, "Other");
+
+            assertFalse(slow.isDone());
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void GivenInlineDispatcher_WhenUserNotifiedTwice_ThenEachMessageWaitsOutItsOwnWindow() {
+        notificationService = new CoalescingNotificationService((userId, messages) ->
+                delivered.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(messages),
+                50, 100, Runnable::run);
+        User user = new User("Alice", VALID_USER_ID, notificationService);
+        NotificationDispatcher dispatcher = NotificationDispatcher.inline(1, new EventLog(16, event -> { }));
+
+        long start = System.nanoTime();
+        dispatcher.dispatch(user, "First").join();
+        dispatcher.dispatch(user, "Second").join();
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(List.of(List.of("First"), List.of("Second")), delivered.get(VALID_USER_ID));
+    }
+
+    @Test
+    void GivenAsyncDispatcher_WhenUserNotifiedTwice_ThenMessagesCoalesced() {
+        notificationService = new CoalescingNotificationService((userId, messages) ->
+                delivered.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(messages),
+                200, 100, Runnable::run);
+        User user = new User("Alice", VALID_USER_ID, notificationService);
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(2, 10, 1, 0, 0, null,
+                new EventLog(16, event -> { }))) {
+            CompletableFuture<Void> first = dispatcher.dispatch(user, "First");
+            CompletableFuture<Void> second = dispatcher.dispatch(user, "Second");
+            CompletableFuture.allOf(first, second).join();
+        }
+
+        List<List<String>> batches = delivered.get(VALID_USER_ID);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    void GivenSingleMessageService_WhenJoining_ThenBatchSentAsOneMessage() {
+        NotificationService single = mock(NotificationService.class);
+
+        BatchNotificationService.joining(single, "\n\n").notifyUser(VALID_USER_ID, List.of("First", "Second"));
+
+        verify(single).notifyUser(VALID_USER_ID, "First\n\nSecond");
+    }
+}
@@ -0,0 +1,241 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestInMemoryDatabaseService {
+
+    static final int THREADS = 16;
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+
+    private InMemoryDatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() {
+        databaseService = new InMemoryDatabaseService(4);
+    }
+
+    @Test
+    void GivenAddedBook_WhenGetBookByISBN_ThenReturnSameBookForAnyForm() {
+        Book book = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+
+        databaseService.addBook(VALID_ISBN, book);
+
+        assertSame(book, databaseService.getBookByISBN(VALID_ISBN));
+        assertSame(book, databaseService.getBookByISBN("978-0-306-40615-7"));
+        assertSame(book, databaseService.getBookByISBN(9780306406157L));
+        assertNull(databaseService.getBookByISBN("9780306406158"));
+    }
+
+    @Test
+    void GivenRegisteredUser_WhenGetUserById_ThenReturnUser() {
+        User user = createUser(VALID_USER_ID);
+
+        databaseService.registerUser(VALID_USER_ID, user);
+
+        assertSame(user, databaseService.getUserById(VALID_USER_ID));
+        assertSame(user, databaseService.getUserById(123456789012L));
+        assertNull(databaseService.getUserById("000000000000"));
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenReturnBook_ThenAssociationCleared() {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+
+        databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+        assertEquals(VALID_USER_ID, databaseService.getBorrowerId(VALID_ISBN));
+
+        databaseService.returnBook(VALID_ISBN);
+        assertNull(databaseService.getBorrowerId(VALID_ISBN));
+        assertThrows(BookNotBorrowedException.class, () -> databaseService.returnBook(VALID_ISBN));
+    }
+
+    @Test
+    void GivenMissingBook_WhenBorrowBook_ThenThrowBookNotFoundException() {
+        assertThrows(BookNotFoundException.class, () -> databaseService.borrowBook(VALID_ISBN, VALID_USER_ID));
+    }
+
+    @Test
+    void GivenBookBorrowedByOtherUser_WhenBorrowBook_ThenThrowBookAlreadyBorrowedException() {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertThrows(BookAlreadyBorrowedException.class, () -> databaseService.borrowBook(VALID_ISBN, "000000000001"));
+    }
+
+    @Test
+    void GivenBatchWithMissingBook_WhenBorrowBooks_ThenEarlierBorrowsUndone() {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+
+        assertThrows(BookNotFoundException.class,
+                () -> databaseService.borrowBooks(List.of(VALID_ISBN, isbn(1)), VALID_USER_ID));
+
+        assertNull(databaseService.getBorrowerId(VALID_ISBN));
+    }
+
+    @Test
+    void GivenManyThreads_WhenAddBooksAndRegisterUsers_ThenAllVisible() throws Exception {
+        int perThread = 2_000;
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < perThread; i++) {
+                int n = thread * perThread + i;
+                databaseService.addBook(isbn(n), new Book(isbn(n), "Title " + n, "Author"));
+                databaseService.registerUser(userId(n), createUser(userId(n)));
+            }
+            return null;
+        });
+
+        assertEquals(THREADS * perThread, databaseService.getBookCount());
+        assertEquals(THREADS * perThread, databaseService.getUserCount());
+        for (int n = 0; n < THREADS * perThread; n++) {
+            assertEquals("Title " + n, databaseService.getBookByISBN(isbn(n)).getTitle());
+            assertEquals(userId(n), databaseService.getUserById(userId(n)).getId());
+        }
+    }
+
+    @Test
+    void GivenReadersDuringWrites_WhenGetBookByISBN_ThenNeverSeeWrongBook() throws Exception {
+        int books = 20_000;
+        AtomicInteger wrong = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            if (thread == 0) {
+                for (int n = 0; n < books; n++) {
+                    databaseService.addBook(isbn(n), new Book(isbn(n), "Title", "Author"));
+                }
+            } else {
+                for (int round = 0; round < 3; round++) {
+                    for (int n = 0; n < books; n++) {
+                        Book book = databaseService.getBookByISBN(isbn(n));
+                        if (book != null && !book.getISBN().equals(isbn(n))) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+
+        assertEquals(0, wrong.get());
+        assertEquals(books, databaseService.getBookCount());
+    }
+
+    @Test
+    void GivenManyUsers_WhenBorrowSameBookConcurrently_ThenExactlyOneSucceeds() throws Exception {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        AtomicInteger successes = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            try {
+                databaseService.borrowBook(VALID_ISBN, userId(thread));
+                successes.incrementAndGet();
+            } catch (BookAlreadyBorrowedException e) {
+                // Lost the race.
+            }
+            return null;
+        });
+
+        assertEquals(1, successes.get());
+    }
+
+    @Test
+    void GivenManyThreads_WhenBorrowAndReturnRepeatedly_ThenEveryBookEndsReturned() throws Exception {
+        int books = 64;
+        for (int n = 0; n < books; n++) {
+            databaseService.addBook(isbn(n), new Book(isbn(n), "Title", "Author"));
+        }
+        AtomicInteger borrowed = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            for (int round = 0; round < 1_000; round++) {
+                String isbn = isbn((thread * 7 + round) % books);
+                try {
+                    databaseService.borrowBook(isbn, userId(thread));
+                    borrowed.incrementAndGet();
+                    databaseService.returnBook(isbn);
+                    returned.incrementAndGet();
+                } catch (BookAlreadyBorrowedException e) {
+                    // Another thread holds it.
+                }
+            }
+            return null;
+        });
+
+        assertTrue(borrowed.get() > 0);
+        assertEquals(borrowed.get(), returned.get());
+        for (int n = 0; n < books; n++) {
+            assertNull(databaseService.getBorrowerId(isbn(n)));
+        }
+    }
+
+    // Runs the task on THREADS threads released at the same moment and rethrows any failure.
+    static void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> callable = () -> {
+                    start.await();
+                    return task.run(thread);
+                };
+                futures.add(executor.submit(callable));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    interface ThreadTask {
+        Void run(int thread) throws Exception;
+    }
+
+    // Builds the n-th valid ISBN-13 in the 978 prefix.
+    public static String isbn(int n) {
+        String digits = String.format("978%09d", n);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += i % 2 == 0 ? digit : digit * 3;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    static String userId(int n) {
+        return String.format("%012d", n);
+    }
+
+    private static User createUser(String id) {
+        return new User("User " + id, id, (userId, message) -> { });
+    }
+}
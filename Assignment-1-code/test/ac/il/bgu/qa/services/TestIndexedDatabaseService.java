@@ -0,0 +1,150 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.runConcurrently;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+
+public class TestIndexedDatabaseService {
+
+    private static final String CLEAN_CODE = "9780306406157";
+    private static final String CLEAN_ARCHITECTURE = "9780132350884";
+    private static final String DESIGN_PATTERNS = "9780201633610";
+
+    @TempDir
+    Path directory;
+
+    private IndexedDatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() {
+        databaseService = new IndexedDatabaseService(new InMemoryDatabaseService());
+        databaseService.addBook(CLEAN_CODE, new Book(CLEAN_CODE, "Clean Code", "Robert Martin"));
+        databaseService.addBooks(Map.of(
+                CLEAN_ARCHITECTURE, new Book(CLEAN_ARCHITECTURE, "Clean  Architecture", "Robert Martin"),
+                DESIGN_PATTERNS, new Book(DESIGN_PATTERNS, "Design Patterns", "Erich Gamma")));
+    }
+
+    @Test
+    void GivenIndexedBooks_WhenFindByTitlePrefix_ThenMatchesIgnoringCaseInTitleOrder() {
+        assertEquals(List.of(CLEAN_ARCHITECTURE, CLEAN_CODE), isbns(databaseService.findBooksByTitlePrefix("CLEAN", 10)));
+        assertEquals(List.of(CLEAN_ARCHITECTURE), isbns(databaseService.findBooksByTitlePrefix("clean a", 10)));
+        assertEquals(List.of(CLEAN_CODE), isbns(databaseService.findBooksByTitlePrefix("cod", 10)));
+        assertEquals(List.of(), databaseService.findBooksByTitlePrefix("refactoring", 10));
+    }
+
+    @Test
+    void GivenBookMatchingSeveralWords_WhenFindByAuthorPrefix_ThenEachBookOnceUpToLimit() {
+        databaseService.addBook("9781234567897", new Book("9781234567897", "Misc", "Martin Martinez"));
+
+        assertEquals(List.of(CLEAN_ARCHITECTURE), isbns(databaseService.findBooksByAuthorPrefix("mart", 1)));
+        assertEquals(3, databaseService.findBooksByAuthorPrefix("mart", 10).size());
+        assertEquals(List.of(DESIGN_PATTERNS), isbns(databaseService.findBooksByAuthorPrefix("gam", 10)));
+    }
+
+    @Test
+    void GivenBookReplacedUnderSameISBN_WhenSearched_ThenOnlyNewTitleMatches() {
+        databaseService.addBook(CLEAN_CODE, new Book(CLEAN_CODE, "The Clean Coder", "Robert Martin"));
+
+        assertEquals(List.of("Clean  Architecture", "The Clean Coder"), databaseService.findBooksByTitlePrefix("clean", 10)
+                .stream().map(Book::getTitle).collect(Collectors.toList()));
+        assertEquals(List.of(CLEAN_CODE), isbns(databaseService.findBooksByTitlePrefix("the", 10)));
+        assertEquals(3, databaseService.getIndexedCount());
+    }
+
+    @Test
+    void GivenLibrary_WhenSearchWithInvalidArgumentsOrUnlistableDatabase_ThenRejected() {
+        Library library = new Library(databaseService, new InMemoryReviewService());
+        Library unlistable = new Library(mock(DatabaseService.class, CALLS_REAL_METHODS), new InMemoryReviewService());
+
+        assertEquals(List.of(CLEAN_ARCHITECTURE), isbns(library.searchBooksByTitle("clean", 1)));
+        assertThrows(IllegalArgumentException.class, () -> library.searchBooksByAuthor(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> library.searchBooksByAuthor("rob", 0));
+        assertThrows(UnsupportedOperationException.class, () -> unlistable.searchBooksByTitle("clean", 10));
+    }
+
+    @Test
+    void GivenUnindexedDatabase_WhenSearched_ThenScanMatchesIndexInOrder() {
+        InMemoryDatabaseService unindexed = new InMemoryDatabaseService();
+        for (String ISBN : List.of(CLEAN_CODE, CLEAN_ARCHITECTURE, DESIGN_PATTERNS)) {
+            unindexed.addBook(ISBN, databaseService.getBookByISBN(ISBN));
+        }
+        unindexed.addBook("9781234567897", new Book("9781234567897", "Misc", "Martin Martinez"));
+        databaseService.addBook("9781234567897", unindexed.getBookByISBN("9781234567897"));
+
+        for (int limit = 1; limit <= 4; limit++) {
+            assertEquals(databaseService.findBooksByTitlePrefix("clean", limit), unindexed.findBooksByTitlePrefix("clean", limit));
+            assertEquals(databaseService.findBooksByAuthorPrefix("mart", limit), unindexed.findBooksByAuthorPrefix("mart", limit));
+        }
+        assertEquals(List.of(CLEAN_CODE), isbns(new Library(unindexed, new InMemoryReviewService()).searchBooksByTitle("cod", 10)));
+    }
+
+    @Test
+    void GivenBooksAlreadyInDatabase_WhenIndexed_ThenSearchable() throws IOException {
+        try (MappedDatabaseService store = MappedDatabaseService.open(directory, 16, 16, id -> (userId, message) -> { })) {
+            store.addBook(CLEAN_CODE, new Book(CLEAN_CODE, "Clean Code", "Robert Martin"));
+            store.addBook(DESIGN_PATTERNS, new Book(DESIGN_PATTERNS, "Design Patterns", "Erich Gamma"));
+        }
+
+        try (MappedDatabaseService reopened = MappedDatabaseService.open(directory, 16, 16, id -> (userId, message) -> { })) {
+            IndexedDatabaseService indexed = new IndexedDatabaseService(reopened);
+
+            assertEquals(2, indexed.getIndexedCount());
+            assertEquals(List.of(CLEAN_CODE), isbns(indexed.findBooksByTitlePrefix("code", 10)));
+            assertEquals(List.of(DESIGN_PATTERNS), isbns(indexed.findBooksByAuthorPrefix("erich", 10)));
+        }
+    }
+
+    @Test
+    void GivenRacingAdditionsOfOneISBN_WhenSearched_ThenIndexHoldsStoredBook() throws Exception {
+        InMemoryDatabaseService store = new InMemoryDatabaseService();
+        IndexedDatabaseService indexed = new IndexedDatabaseService(store);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < 200; i++) {
+                indexed.addBook(CLEAN_CODE, new Book(CLEAN_CODE, "Title " + thread, "Author"));
+            }
+            return null;
+        });
+
+        List<Book> found = indexed.findBooksByTitlePrefix("title", 10);
+        assertEquals(1, found.size());
+        assertSame(store.getBookByISBN(CLEAN_CODE), found.get(0));
+    }
+
+    @Test
+    void GivenLargeCatalog_WhenFindByPrefix_ThenOnlyMatchingEntriesScanned() {
+        PrefixIndex index = new PrefixIndex();
+        Book book = new Book(CLEAN_CODE, "Clean Code", "Robert Martin");
+        for (int i = 0; i < 100_000; i++) {
+            index.add(String.valueOf(i), "Title " + i, book);
+        }
+
+        long start = System.nanoTime();
+        List<Book> found = index.find("title 4999", 5);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(5, found.size());
+        assertEquals(200_000, index.size());
+        assertTrue(elapsed < 50_000_000, "prefix query took " + elapsed + "ns");
+    }
+
+    private static List<String> isbns(List<Book> books) {
+        return books.stream().map(Book::getISBN).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,148 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.THREADS;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.isbn;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.runConcurrently;
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.userId;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class TestLoggingDatabaseService {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String OTHER_ISBN = "9780132350884";
+    private static final String VALID_USER_ID = "123456789012";
+    private static final NotificationService NOTIFICATION_SERVICE = (userId, message) -> { };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void GivenLoggedMutations_WhenRecoverIntoEmptyDatabase_ThenStateRestored() throws IOException {
+        Path log = directory.resolve("db.wal");
+        try (LoggingDatabaseService databaseService = recover(log, new InMemoryDatabaseService())) {
+            databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+            databaseService.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Refactoring", "Martin Fowler"));
+            databaseService.registerUser(VALID_USER_ID, new User("Alice", VALID_USER_ID, NOTIFICATION_SERVICE));
+            databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+            databaseService.borrowBook(OTHER_ISBN, VALID_USER_ID);
+            databaseService.returnBook(OTHER_ISBN);
+        }
+
+        InMemoryDatabaseService recovered = new InMemoryDatabaseService();
+        try (LoggingDatabaseService databaseService = recover(log, recovered)) {
+            assertEquals("Clean Code", databaseService.getBookByISBN(VALID_ISBN).getTitle());
+            assertEquals("Alice", databaseService.getUserById(VALID_USER_ID).getName());
+            assertEquals(VALID_USER_ID, recovered.getBorrowerId(VALID_ISBN));
+            assertTrue(recovered.getBookByISBN(VALID_ISBN).isBorrowed());
+            assertNull(recovered.getBorrowerId(OTHER_ISBN));
+            assertFalse(recovered.getBookByISBN(OTHER_ISBN).isBorrowed());
+        }
+    }
+
+    @Test
+    void GivenRejectedBorrow_WhenReplay_ThenOnlyAcceptedMutationsApplied() throws IOException {
+        Path log = directory.resolve("db.wal");
+        try (LoggingDatabaseService databaseService = recover(log, new InMemoryDatabaseService())) {
+            databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+            databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+            assertThrows(BookAlreadyBorrowedException.class,
+                    () -> databaseService.borrowBook(VALID_ISBN, "000000000001"));
+            assertThrows(BookNotBorrowedException.class, () -> databaseService.returnBook(OTHER_ISBN));
+        }
+
+        assertEquals(2, LoggingDatabaseService.replay(log, new InMemoryDatabaseService(), id -> NOTIFICATION_SERVICE));
+    }
+
+    @Test
+    void GivenTornRecordAtEnd_WhenRecover_ThenIntactPrefixReplayedAndTailTruncated() throws IOException {
+        Path log = directory.resolve("db.wal");
+        try (LoggingDatabaseService databaseService = recover(log, new InMemoryDatabaseService())) {
+            databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        }
+        long intact = Files.size(log);
+        // A frame header promising more payload than was written before the crash.
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        InMemoryDatabaseService recovered = new InMemoryDatabaseService();
+        try (LoggingDatabaseService databaseService = recover(log, recovered)) {
+            assertEquals(intact, Files.size(log));
+            databaseService.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Refactoring", "Martin Fowler"));
+        }
+
+        assertEquals(2, LoggingDatabaseService.replay(log, new InMemoryDatabaseService(), id -> NOTIFICATION_SERVICE));
+    }
+
+    @Test
+    void GivenManyThreads_WhenAppendWithGroupCommit_ThenEveryMutationRecovered() throws Exception {
+        Path log = directory.resolve("db.wal");
+        int booksPerThread = 200;
+        try (LoggingDatabaseService databaseService = recover(log, new InMemoryDatabaseService())) {
+            runConcurrently(thread -> {
+                for (int i = 0; i < booksPerThread; i++) {
+                    String ISBN = isbn(thread * booksPerThread + i);
+                    databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+                }
+                databaseService.registerUser(userId(thread), new User("User", userId(thread), NOTIFICATION_SERVICE));
+                return null;
+            });
+        }
+
+        InMemoryDatabaseService recovered = new InMemoryDatabaseService();
+        long applied = LoggingDatabaseService.replay(log, recovered, id -> NOTIFICATION_SERVICE);
+
+        assertEquals(THREADS * (booksPerThread + 1), applied);
+        assertEquals(THREADS * booksPerThread, recovered.getBookCount());
+        assertNotNull(recovered.getUserById(userId(THREADS - 1)));
+    }
+
+    @Test
+    void GivenLogThatCannotBeWritten_WhenMutate_ThenDatabaseUnchanged() throws IOException {
+        InMemoryDatabaseService delegate = new InMemoryDatabaseService();
+        LoggingDatabaseService databaseService = recover(directory.resolve("db.wal"), delegate);
+        databaseService.close();
+
+        assertThrows(UncheckedIOException.class,
+                () -> databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin")));
+
+        assertNull(delegate.getBookByISBN(VALID_ISBN));
+    }
+
+    @Test
+    void GivenDatabaseFailingUnexpectedly_WhenReplay_ThenThrowIOException() throws IOException {
+        Path log = directory.resolve("db.wal");
+        try (LoggingDatabaseService databaseService = recover(log, new InMemoryDatabaseService())) {
+            databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        }
+        DatabaseService failing = mock(DatabaseService.class);
+        doThrow(new IllegalStateException("Database is full.")).when(failing).addBook(eq(VALID_ISBN), any());
+
+        assertThrows(IOException.class, () -> LoggingDatabaseService.replay(log, failing, id -> NOTIFICATION_SERVICE));
+    }
+
+    private static LoggingDatabaseService recover(Path log, DatabaseService delegate) throws IOException {
+        return LoggingDatabaseService.recover(log, delegate, WriteAheadLog.Durability.GROUP_COMMIT, 0,
+                id -> NOTIFICATION_SERVICE);
+    }
+}
@@ -0,0 +1,195 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMappedDatabaseService {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+    private static final NotificationService NOTIFICATION_SERVICE = (userId, message) -> { };
+
+    @TempDir
+    Path directory;
+
+    private MappedDatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        databaseService = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        databaseService.close();
+    }
+
+    @Test
+    void GivenAddedBook_WhenGetBookByISBN_ThenReturnEqualBook() {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+
+        Book book = databaseService.getBookByISBN("978-0-306-40615-7");
+
+        assertEquals(VALID_ISBN, book.getISBN());
+        assertEquals("Clean Code", book.getTitle());
+        assertEquals("Robert Martin", book.getAuthor());
+        assertFalse(book.isBorrowed());
+        assertNull(databaseService.getBookByISBN("9780132350884"));
+    }
+
+    @Test
+    void GivenRegisteredUser_WhenGetUserById_ThenNotificationServiceSupplied() {
+        databaseService.registerUser(VALID_USER_ID, new User("Alice", VALID_USER_ID, NOTIFICATION_SERVICE));
+
+        User user = databaseService.getUserById(VALID_USER_ID);
+
+        assertEquals("Alice", user.getName());
+        assertEquals(VALID_USER_ID, user.getId());
+        assertSame(NOTIFICATION_SERVICE, user.getNotificationService());
+        assertNull(databaseService.getUserById("000000000000"));
+    }
+
+    @Test
+    void GivenReopenedDatabase_WhenGetBookByISBN_ThenCatalogSurvived() throws IOException {
+        for (int n = 0; n < 100; n++) {
+            databaseService.addBook(TestInMemoryDatabaseService.isbn(n),
+                    new Book(TestInMemoryDatabaseService.isbn(n), "Title " + n, "Author"));
+        }
+        databaseService.registerUser(VALID_USER_ID, new User("Alice", VALID_USER_ID, NOTIFICATION_SERVICE));
+        databaseService.borrowBook(TestInMemoryDatabaseService.isbn(7), VALID_USER_ID);
+        databaseService.close();
+
+        databaseService = open();
+
+        assertEquals(100, databaseService.getBookCount());
+        assertEquals(1, databaseService.getUserCount());
+        assertEquals("Title 99", databaseService.getBookByISBN(TestInMemoryDatabaseService.isbn(99)).getTitle());
+        Book borrowed = databaseService.getBookByISBN(TestInMemoryDatabaseService.isbn(7));
+        assertTrue(borrowed.isBorrowed());
+        assertEquals(123456789012L, borrowed.getBorrowerKey());
+        assertEquals("Alice", databaseService.getUserById(VALID_USER_ID).getName());
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenBorrowByOtherUserOrReturnTwice_ThenThrow() {
+        databaseService.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        databaseService.borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertThrows(BookAlreadyBorrowedException.class, () -> databaseService.borrowBook(VALID_ISBN, "000000000001"));
+
+        databaseService.returnBook(VALID_ISBN);
+        assertFalse(databaseService.getBookByISBN(VALID_ISBN).isBorrowed());
+        assertThrows(BookNotBorrowedException.class, () -> databaseService.returnBook(VALID_ISBN));
+    }
+
+    @Test
+    void GivenFullDatabase_WhenAddBook_ThenThrowIllegalStateException() {
+        int added = 0;
+        try {
+            while (added < 1_000) {
+                String isbn = TestInMemoryDatabaseService.isbn(added);
+                databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+                added++;
+            }
+        } catch (IllegalStateException e) {
+            // Expected once the slots are three quarters full.
+        }
+
+        assertTrue(added >= 100 && added < 1_000);
+        assertEquals(added, databaseService.getBookCount());
+    }
+
+    @Test
+    void GivenTitleTooLong_WhenAddBook_ThenThrowIllegalArgumentException() {
+        Book book = new Book(VALID_ISBN, "x".repeat(1_000), "Robert Martin");
+
+        assertThrows(IllegalArgumentException.class, () -> databaseService.addBook(VALID_ISBN, book));
+    }
+
+    @Test
+    void GivenForeignFile_WhenOpen_ThenThrowIOException() throws IOException {
+        Path other = directory.resolve("other");
+        Files.createDirectories(other);
+        Files.write(other.resolve("books.dat"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> MappedDatabaseService.open(other, 10, 10, id -> NOTIFICATION_SERVICE));
+    }
+
+    @Test
+    void GivenWritesInterruptedByCrash_WhenReopen_ThenRecordsReadable() throws IOException {
+        Path file = directory.resolve("records.dat");
+        MappedRecordFile crashed = MappedRecordFile.open(file, 32, 16);
+        try {
+            synchronized (crashed) {
+                long published = ~crashed.findOrClaim(1);
+                write(crashed, published, 1, true);
+                // Crash in the middle of updating key 1 and of claiming a slot for key 2, without closing.
+                crashed.beginWrite(published);
+                write(crashed, ~crashed.findOrClaim(2), 2, false);
+            }
+            crashed.force();
+
+            try (MappedRecordFile records = MappedRecordFile.open(file, 32, 16)) {
+                long slot = records.find(1);
+                assertTrue(slot > 0);
+                assertEquals(0, records.beginRead(slot) & 1);
+                assertEquals(-1, records.find(2));
+                assertEquals(1, records.count());
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void GivenFileClosedCleanly_WhenReopen_ThenRecordsNotScanned() throws IOException {
+        Path file = directory.resolve("records.dat");
+        long slot;
+        try (MappedRecordFile records = MappedRecordFile.open(file, 32, 16)) {
+            synchronized (records) {
+                slot = ~records.findOrClaim(1);
+                write(records, slot, 1, true);
+            }
+        }
+        // Mark the record mid-write behind the closed file's back; only a repair scan would settle it.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 3), slot * 32 + MappedRecordFile.SEQUENCE);
+        }
+
+        try (MappedRecordFile records = MappedRecordFile.open(file, 32, 16)) {
+            assertEquals(3, records.buffer(slot).getInt(records.offset(slot) + MappedRecordFile.SEQUENCE));
+        }
+    }
+
+    private static void write(MappedRecordFile records, long slot, long key, boolean publish) {
+        records.beginWrite(slot);
+        records.buffer(slot).putLong(records.offset(slot) + MappedRecordFile.KEY, key);
+        if (publish) {
+            records.endWrite(slot, true);
+        }
+    }
+
+    private MappedDatabaseService open() throws IOException {
+        return MappedDatabaseService.open(directory, 100, 10, id -> NOTIFICATION_SERVICE);
+    }
+}
@@ -0,0 +1,143 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.EventLog;
+import ac.il.bgu.qa.MeteredLibrary;
+import ac.il.bgu.qa.NotificationDispatcher;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.BorrowLimitExceededException;
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestMetricsRegistry {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+
+    @Test
+    void GivenRecordedLatencies_WhenPercentilesTaken_ThenWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMax());
+        assertEquals(50_000.5, snapshot.getMean());
+        assertEquals(50_000, snapshot.getValueAtPercentile(50), 50_000 * 0.04);
+        assertEquals(99_000, snapshot.getValueAtPercentile(99), 99_000 * 0.04);
+        assertEquals(100_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    void GivenEveryBucket_WhenHighestValueTaken_ThenItIsTheLastValueBeforeTheNextBucket() {
+        for (int bucket = 0; bucket < 1_000; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+        }
+        assertEquals(LatencyHistogram.bucketOf(Long.MAX_VALUE), LatencyHistogram.bucketOf(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void GivenMeteredServices_WhenCalled_ThenOutcomesCountedPerMethod() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        DatabaseService database = new MeteredDatabaseService(new InMemoryDatabaseService(), metrics);
+        ReviewService failing = mock(ReviewService.class);
+        when(failing.getReviewsForBook(VALID_ISBN)).thenThrow(new ReviewException("Down"));
+        ReviewService reviews = new MeteredReviewService(failing, metrics);
+
+        database.addBook(VALID_ISBN, new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        database.getBookByISBN(VALID_ISBN);
+        assertThrows(BookNotBorrowedException.class, () -> database.returnBook(9780132350884L));
+        assertThrows(ReviewException.class, () -> reviews.getReviewsForBook(VALID_ISBN));
+
+        Map<String, OperationMetrics> operations = metrics.getOperations();
+        assertEquals(1, operations.get("database.addBook").getCount(OperationMetrics.SUCCESS));
+        assertEquals(1, operations.get("database.getBookByISBN").getLatency().getCount());
+        assertEquals(Map.of("BookNotBorrowedException", 1L), operations.get("database.returnBook").getCounts());
+        assertEquals(1, operations.get("review.getReviewsForBook").getCount("ReviewException"));
+        assertTrue(metrics.report().contains("database.addBook count=1"));
+    }
+
+    @Test
+    void GivenMeteredLibrary_WhenOperationsFail_ThenEachExceptionTypeCounted() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        InMemoryReviewService reviews = new InMemoryReviewService();
+        reviews.addReview(VALID_ISBN, "Great");
+        MeteredLibrary library = new MeteredLibrary(new InMemoryDatabaseService(), reviews, metrics);
+        library.addBook(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook("123", VALID_USER_ID));
+        assertThrows(BookNotFoundException.class, () -> library.borrowBook("9780132350884", VALID_USER_ID));
+
+        OperationMetrics borrowBook = metrics.getOperations().get("library.borrowBook");
+        assertEquals(Map.of("IllegalArgumentException", 1L, "BookNotFoundException", 1L), borrowBook.getCounts());
+        assertEquals(2, borrowBook.getLatency().getCount());
+        assertEquals(1, metrics.getOperations().get("library.addBook").getCount(OperationMetrics.SUCCESS));
+    }
+
+    @Test
+    void GivenMeteredLibraryWithLedger_WhenNotifySynchronously_ThenCountedOnceAndLimitApplied() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        InMemoryReviewService reviews = new InMemoryReviewService();
+        reviews.addReview(VALID_ISBN, "Great");
+        MeteredLibrary library = new MeteredLibrary(new InMemoryDatabaseService(),
+                ReviewSessionProvider.closingEach(reviews), NotificationDispatcher.inline(1), null,
+                EventLog.shared(), new BorrowLedger(1), metrics);
+        library.addBook(new Book(VALID_ISBN, "Clean Code", "Robert Martin"));
+        library.addBook(new Book("9780132350884", "Refactoring", "Martin Fowler"));
+        library.registerUser(new User("Alice", VALID_USER_ID, (userId, message) -> { }));
+
+        library.notifyUserWithBookReviews(VALID_ISBN, VALID_USER_ID);
+        library.borrowBook(VALID_ISBN, VALID_USER_ID);
+
+        assertThrows(BorrowLimitExceededException.class, () -> library.borrowBook("9780132350884", VALID_USER_ID));
+        Map<String, OperationMetrics> operations = metrics.getOperations();
+        assertEquals(1, operations.get("library.notifyUserWithBookReviews").getCount(OperationMetrics.SUCCESS));
+        assertEquals(0, operations.get("library.notifyUserWithBookReviewsAsync").getLatency().getCount());
+    }
+
+    @Test
+    void GivenDisabledRegistry_WhenServicesCalled_ThenNothingRecorded() {
+        MetricsRegistry metrics = MetricsRegistry.disabled();
+        DatabaseService database = new MeteredDatabaseService(new InMemoryDatabaseService(), metrics);
+        ReviewService reviews = new MeteredReviewService(new InMemoryReviewService(), metrics);
+
+        database.getBookByISBN(VALID_ISBN);
+        assertEquals(List.of(), reviews.getReviewsForBook(VALID_ISBN));
+
+        assertTrue(metrics.getOperations().isEmpty());
+        assertEquals(0, metrics.operation("database.getBookByISBN").getLatency().getCount());
+        assertSame(metrics.operation("database.getBookByISBN"), metrics.operation("reviews.getReviewsForBook"));
+    }
+
+    @Test
+    void GivenOperationThrowingError_WhenCalled_ThenOutcomeAndLatencyRecorded() {
+        OperationMetrics operation = new MetricsRegistry().operation("reviews.getReviewsForBook");
+
+        assertThrows(LinkageError.class, () -> operation.run(() -> {
+            throw new LinkageError("Broken client");
+        }));
+        assertThrows(LinkageError.class, () -> operation.call(() -> {
+            throw new LinkageError("Broken client");
+        }));
+
+        assertEquals(2, operation.getCount("LinkageError"));
+        assertEquals(2, operation.getLatency().getCount());
+    }
+}
@@ -0,0 +1,139 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.services.ReplicatedDatabaseService.ReadConsistency;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TestReplicatedDatabaseService {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final String VALID_USER_ID = "123456789012";
+    private static final Book BOOK = new Book(VALID_ISBN, "Clean Code", "Robert Martin");
+
+    @Test
+    void GivenLaggingReplica_WhenReadYourWrites_ThenWriterReadsFromLeaderUntilApplied() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DatabaseService replica = mock(DatabaseService.class);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(replica).addBook(VALID_ISBN, BOOK);
+        try (ReplicatedDatabaseService database = new ReplicatedDatabaseService(new InMemoryDatabaseService(),
+                List.of(replica), ReadConsistency.READ_YOUR_WRITES, 0)) {
+            database.addBook(VALID_ISBN, BOOK);
+
+            assertSame(BOOK, database.getBookByISBN(VALID_ISBN));
+            verify(replica, never()).getBookByISBN(anyString());
+
+            release.countDown();
+            awaitReplication(database, 1);
+            assertNull(database.getBookByISBN(VALID_ISBN));
+            verify(replica).getBookByISBN(VALID_ISBN);
+        }
+    }
+
+    @Test
+    void GivenLaggingReplica_WhenReadHandedToAnotherThread_ThenSessionCarriesTheWrite() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DatabaseService replica = mock(DatabaseService.class);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(replica).addBook(VALID_ISBN, BOOK);
+        try (ReplicatedDatabaseService database = new ReplicatedDatabaseService(new InMemoryDatabaseService(),
+                List.of(replica), ReadConsistency.READ_YOUR_WRITES, 0)) {
+            database.addBook(VALID_ISBN, BOOK);
+            DatabaseService session = database.readingAfter(database.getLastWriteSequence());
+
+            // Another thread did not write, so on its own it may read the lagging replica.
+            assertNull(CompletableFuture.supplyAsync(() -> database.getBookByISBN(VALID_ISBN)).get());
+            assertSame(BOOK, CompletableFuture.supplyAsync(() -> session.getBookByISBN(VALID_ISBN)).get());
+            verify(replica).getBookByISBN(VALID_ISBN);
+
+            release.countDown();
+        }
+    }
+
+    @Test
+    void GivenLaggingReplica_WhenStalenessBoundPassed_ThenReadsMoveToLeader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong clock = new AtomicLong();
+        DatabaseService replica = mock(DatabaseService.class);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(replica).addBook(VALID_ISBN, BOOK);
+        try (ReplicatedDatabaseService database = new ReplicatedDatabaseService(new InMemoryDatabaseService(),
+                List.of(replica), ReadConsistency.BOUNDED_STALENESS, 100, clock::get)) {
+            database.addBook(VALID_ISBN, BOOK);
+
+            clock.set(100);
+            assertNull(database.getBookByISBN(VALID_ISBN));
+            clock.set(101);
+            assertSame(BOOK, database.getBookByISBN(VALID_ISBN));
+
+            release.countDown();
+            awaitReplication(database, 1);
+            assertNull(database.getBookByISBN(VALID_ISBN));
+        }
+    }
+
+    @Test
+    void GivenManyWrites_WhenReplicated_ThenReplicasMatchLeaderInOrder() throws Exception {
+        InMemoryDatabaseService leader = new InMemoryDatabaseService();
+        List<InMemoryDatabaseService> replicas = List.of(new InMemoryDatabaseService(), new InMemoryDatabaseService());
+        try (ReplicatedDatabaseService database = new ReplicatedDatabaseService(leader, replicas,
+                ReadConsistency.READ_YOUR_WRITES, 0)) {
+            database.addBook(VALID_ISBN, BOOK);
+            for (int i = 0; i < 500; i++) {
+                database.borrowBook(VALID_ISBN, VALID_USER_ID);
+                database.returnBook(VALID_ISBN);
+            }
+            database.borrowBook(9780306406157L, 123456789012L);
+
+            awaitReplication(database, replicas.size());
+            assertEquals(1_002, database.getSequence());
+            for (InMemoryDatabaseService replica : replicas) {
+                assertSame(BOOK, replica.getBookByISBN(VALID_ISBN));
+                assertEquals(VALID_USER_ID, replica.getBorrowerId(VALID_ISBN));
+            }
+        }
+    }
+
+    @Test
+    void GivenReplicaRejectingChange_WhenRead_ThenLeaderServesIt() throws Exception {
+        DatabaseService replica = mock(DatabaseService.class);
+        doThrow(new IllegalStateException("Disk full")).when(replica).addBook(VALID_ISBN, BOOK);
+        try (ReplicatedDatabaseService database = new ReplicatedDatabaseService(new InMemoryDatabaseService(),
+                List.of(replica), ReadConsistency.BOUNDED_STALENESS, Long.MAX_VALUE)) {
+            database.addBook(VALID_ISBN, BOOK);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!database.isFailed(0)) {
+                assertTrue(System.nanoTime() < deadline, "Replica did not fail");
+                Thread.sleep(1);
+            }
+
+            assertNotNull(database.getBookByISBN(VALID_ISBN));
+            verify(replica, never()).getBookByISBN(anyString());
+        }
+    }
+
+    private static void awaitReplication(ReplicatedDatabaseService database, int replicas) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (int i = 0; i < replicas; i++) {
+            while (database.getAppliedSequence(i) < database.getSequence()) {
+                assertTrue(System.nanoTime() < deadline, "Replica " + i + " did not catch up");
+                Thread.sleep(1);
+            }
+        }
+    }
+}
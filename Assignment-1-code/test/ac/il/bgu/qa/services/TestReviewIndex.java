@@ -0,0 +1,106 @@
+package ac.il.bgu.qa.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestReviewIndex {
+
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String REFACTORING = "9780201485677";
+    private static final String PRAGMATIC = "9780201616224";
+
+    private final ReviewIndex index = new ReviewIndex();
+
+    @Test
+    void GivenIndexedReviews_WhenSearchTerms_ThenBooksRankedByRelevance() {
+        index.indexAll(Map.of(
+                CLEAN_CODE, List.of("Clean code, clean functions, clean tests.", "A classic."),
+                REFACTORING, List.of("Turns messy code into clean code step by step."),
+                PRAGMATIC, List.of("Practical advice for programmers.")));
+
+        assertEquals(List.of(CLEAN_CODE, REFACTORING), index.searchTerms("CLEAN", 10));
+        assertEquals(List.of(CLEAN_CODE), index.searchTerms("clean", 1));
+        assertEquals(List.of(PRAGMATIC), index.searchTerms("advice!", 10));
+        assertEquals(List.of(), index.searchTerms("rust", 10));
+    }
+
+    @Test
+    void GivenIndexedReviews_WhenSearchPhrase_ThenOnlyBooksWithWordsInOrderFound() {
+        index.index(CLEAN_CODE, List.of("Every function should be small.", "Read it twice."));
+        index.index(REFACTORING, List.of("Small functions are easy to read."));
+        index.index(PRAGMATIC, List.of("Keep it small", "functions matter"));
+
+        assertEquals(List.of(REFACTORING), index.searchPhrase("small functions", 10));
+        assertEquals(List.of(CLEAN_CODE), index.searchPhrase("should be small", 10));
+        // The words are in order but in two separate reviews.
+        assertEquals(List.of(), index.searchPhrase("small functions matter", 10));
+        assertEquals(List.of(), index.searchPhrase("functions small", 10));
+    }
+
+    @Test
+    void GivenReindexedBook_WhenSearched_ThenOnlyNewReviewsMatch() {
+        assertTrue(index.index(CLEAN_CODE, List.of("Outdated advice.")));
+        assertFalse(index.index(CLEAN_CODE, List.of("Outdated advice.")));
+        assertTrue(index.index(CLEAN_CODE, List.of("Timeless advice.")));
+
+        assertEquals(List.of(), index.searchTerms("outdated", 10));
+        assertEquals(List.of(CLEAN_CODE), index.searchTerms("advice", 10));
+        assertEquals(1, index.getBookCount());
+
+        assertTrue(index.index(CLEAN_CODE, List.of()));
+        assertEquals(List.of(), index.searchTerms("timeless", 10));
+        assertEquals(0, index.getBookCount());
+    }
+
+    @Test
+    void GivenBooksReindexedRepeatedly_WhenSearched_ThenStalePostingsCompactedAway() {
+        assertTrue(index.index("9780000000001", List.of("A steady review.")));
+        for (int i = 0; i < 500; i++) {
+            assertTrue(index.index(CLEAN_CODE, List.of("Revision " + i + " of clean functions.")));
+        }
+        long bytes = index.getPostingBytes();
+        index.compact();
+
+        assertTrue(bytes < 200 * 12);
+        assertEquals(List.of(CLEAN_CODE), index.searchPhrase("clean functions", 10));
+        assertEquals(List.of(CLEAN_CODE), index.searchTerms("499", 10));
+        assertEquals(List.of(), index.searchTerms("498", 10));
+        assertEquals(List.of("9780000000001"), index.searchPhrase("steady review", 10));
+        assertEquals(2, index.getBookCount());
+    }
+
+    @Test
+    void GivenManyBooks_WhenIndexed_ThenPostingsStayCompact() {
+        Map<String, List<String>> reviews = new HashMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            reviews.put(String.valueOf(9780000000000L + i), List.of("A great book about code, number " + i));
+        }
+
+        assertEquals(1_000, index.indexAll(reviews));
+
+        assertEquals(1_000, index.searchTerms("great", 2_000).size());
+        assertEquals(List.of("9780000000042"), index.searchPhrase("number 42", 10));
+        // Seven words per review; a posting of a common word takes three bytes.
+        assertTrue(index.getPostingBytes() < 1_000 * 7 * 4);
+        assertThrows(IllegalArgumentException.class, () -> index.searchTerms("great", 0));
+    }
+
+    @Test
+    void GivenIndexingReviewService_WhenReviewsFetched_ThenTheyBecomeSearchable() {
+        InMemoryReviewService backend = new InMemoryReviewService();
+        backend.addReview(CLEAN_CODE, "A must read.");
+        ReviewService reviews = new IndexingReviewService(backend, index);
+
+        assertEquals(List.of("A must read."), reviews.getReviewsForBook(CLEAN_CODE));
+
+        assertEquals(List.of(CLEAN_CODE), index.searchPhrase("must read", 10));
+    }
+}
@@ -0,0 +1,111 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestReviewSessionPool {
+
+    private static final String VALID_ISBN = "9780306406157";
+    private static final long MAX_IDLE_MILLIS = 1_000;
+    private static final long MAX_LIFETIME_MILLIS = 10_000;
+
+    private InMemoryReviewService backend;
+    private AtomicLong now;
+    private ReviewSessionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        backend = new InMemoryReviewService();
+        backend.addReview(VALID_ISBN, "Great");
+        now = new AtomicLong();
+        pool = new ReviewSessionPool(backend::openSession, session -> ((InMemoryReviewService) session).isOpen(),
+                2, 50, MAX_IDLE_MILLIS, MAX_LIFETIME_MILLIS, now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void GivenReleasedSession_WhenAcquire_ThenSameSessionReused() {
+        ReviewService first = pool.acquire();
+        assertEquals(List.of("Great"), first.getReviewsForBook(VALID_ISBN));
+        pool.release(first);
+
+        ReviewService second = pool.acquire();
+
+        assertSame(first, second);
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getLeasedCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void GivenAllSessionsLeased_WhenAcquire_ThenTimeOutWithReviewException() {
+        pool.acquire();
+        pool.acquire();
+
+        assertThrows(ReviewException.class, () -> pool.acquire());
+    }
+
+    @Test
+    void GivenInvalidatedSession_WhenAcquire_ThenNewSessionOpened() {
+        ReviewService first = pool.acquire();
+        pool.invalidate(first);
+
+        ReviewService second = pool.acquire();
+
+        assertFalse(((InMemoryReviewService) first).isOpen());
+        assertNotSame(first, second);
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    @Test
+    void GivenSessionIdleTooLong_WhenAcquire_ThenClosedAndReplaced() {
+        ReviewService first = pool.acquire();
+        pool.release(first);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_MILLIS));
+        ReviewService second = pool.acquire();
+
+        assertNotSame(first, second);
+        assertFalse(((InMemoryReviewService) first).isOpen());
+    }
+
+    @Test
+    void GivenSessionPastMaxLifetime_WhenRelease_ThenClosed() {
+        ReviewService first = pool.acquire();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_LIFETIME_MILLIS));
+        pool.release(first);
+
+        assertFalse(((InMemoryReviewService) first).isOpen());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void GivenUnhealthyIdleSession_WhenAcquire_ThenReplaced() {
+        ReviewService first = pool.acquire();
+        pool.release(first);
+        first.close();
+
+        ReviewService second = pool.acquire();
+
+        assertNotSame(first, second);
+        assertTrue(((InMemoryReviewService) second).isOpen());
+    }
+}
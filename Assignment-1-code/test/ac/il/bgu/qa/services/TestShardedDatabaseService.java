@@ -0,0 +1,216 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnKey;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ac.il.bgu.qa.services.TestInMemoryDatabaseService.isbn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+
+public class TestShardedDatabaseService {
+
+    private static final int BOOKS = 3_000;
+
+    private final Map<String, InMemoryDatabaseService> nodes = new LinkedHashMap<>();
+    private final ShardedDatabaseService database = new ShardedDatabaseService(128);
+
+    @BeforeEach
+    void setUp() {
+        for (String name : List.of("branch-a", "branch-b", "branch-c")) {
+            addNode(name);
+        }
+        assertEquals(0, database.rebalance(BOOKS));
+    }
+
+    @Test
+    void GivenThreeShards_WhenBooksAdded_ThenEachHoldsAFairShare() {
+        addBooks();
+
+        for (InMemoryDatabaseService node : nodes.values()) {
+            int held = count(node);
+            assertTrue(held > BOOKS / 3 * 0.7 && held < BOOKS / 3 * 1.3, "Shard holds " + held);
+        }
+    }
+
+    @Test
+    void GivenAddedShard_WhenRebalancedIncrementally_ThenOnlyItsShareMovesAndAllStayReadable() {
+        addBooks();
+
+        assertTrue(addNode("branch-d") > 0);
+
+        assertTrue(database.rebalance(100) > 0);
+        assertEquals(100, count(nodes.get("branch-d")));
+        assertAllReadable();
+        assertEquals(0, database.rebalance(BOOKS));
+        assertAllReadable();
+        int moved = count(nodes.get("branch-d"));
+        assertTrue(moved > BOOKS / 4 * 0.7 && moved < BOOKS / 4 * 1.3, "Moved " + moved);
+        assertEquals(0, database.getPendingMoves());
+    }
+
+    @Test
+    void GivenBooksAddedWhileRebalancing_WhenRebalanceFinishes_ThenAllReadable() {
+        addBooks();
+        addNode("branch-d");
+        database.rebalance(100);
+
+        for (int i = BOOKS; i < BOOKS + 200; i++) {
+            database.addBook(isbn(i), new Book(isbn(i), "Title " + i, "Author"));
+        }
+        assertEquals(0, database.rebalance(BOOKS * 2));
+
+        for (int i = 0; i < BOOKS + 200; i++) {
+            assertEquals("Title " + i, database.getBookByISBN(isbn(i)).getTitle());
+        }
+        assertEquals(List.of("branch-a", "branch-b", "branch-c", "branch-d"), database.getShardNames());
+    }
+
+    @Test
+    void GivenRemovedShard_WhenRebalanced_ThenItsEntriesLiveElsewhere() {
+        addBooks();
+        database.registerUser("123456789012", new User("Alice", "123456789012", mock(NotificationService.class)));
+
+        database.removeShard("branch-b");
+        database.rebalance(BOOKS);
+
+        assertEquals(List.of("branch-a", "branch-c"), database.getShardNames());
+        assertAllReadable();
+        assertNotNull(database.getUserById("123456789012"));
+        assertThrows(IllegalArgumentException.class, () -> database.removeShard("branch-b"));
+    }
+
+    @Test
+    void GivenBorrowedBookOnMovedShard_WhenRebalanced_ThenBorrowRecordMovesWithIt() {
+        addBooks();
+        String ISBN = isbn(7);
+        database.getBookByISBN(ISBN).tryBorrow(123456789012L);
+        database.borrowBook(ISBN, "123456789012");
+
+        database.removeShard(shardOf(ISBN));
+        database.rebalance(BOOKS);
+
+        assertEquals("123456789012", nodes.get(shardOf(ISBN)).getBorrowerId(ISBN));
+        database.returnBook(ISBN);
+        assertNull(nodes.get(shardOf(ISBN)).getBorrowerId(ISBN));
+    }
+
+    @Test
+    void GivenBookBorrowedWithoutNamingUser_WhenMoved_ThenStoreBorrowerMovesWithIt() {
+        addBooks();
+        String ISBN = isbn(7);
+        database.getBookByISBN(ISBN).borrow();
+        database.borrowBook(ISBN, "123456789012");
+
+        database.removeShard(shardOf(ISBN));
+        database.rebalance(BOOKS);
+
+        assertEquals("123456789012", nodes.get(shardOf(ISBN)).getBorrowerId(ISBN));
+        assertEquals(123456789012L, database.getBorrowerId(IsbnKey.of(ISBN)));
+    }
+
+    @Test
+    void GivenMeteredAndReplicatedStores_WhenShardRemoved_ThenEntriesMoved() {
+        InMemoryDatabaseService leader = new InMemoryDatabaseService();
+        try (ReplicatedDatabaseService replicated = new ReplicatedDatabaseService(leader, List.of(),
+                ReplicatedDatabaseService.ReadConsistency.LEADER, 0)) {
+            ShardedDatabaseService decorated = new ShardedDatabaseService(16);
+            decorated.addShard("metered", new MeteredDatabaseService(new InMemoryDatabaseService(), new MetricsRegistry()));
+            decorated.addShard("replicated", replicated);
+            for (int i = 0; i < 100; i++) {
+                decorated.addBook(isbn(i), new Book(isbn(i), "Title " + i, "Author"));
+            }
+
+            decorated.removeShard("replicated");
+            assertEquals(0, decorated.rebalance(100));
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Title " + i, decorated.getBookByISBN(isbn(i)).getTitle());
+            }
+            assertTrue(leader.getBookCount() > 0);
+        }
+    }
+
+    @Test
+    void GivenStoreThatCannotList_WhenItsSegmentsWouldMove_ThenRingUnchanged() {
+        ShardedDatabaseService unlistable = new ShardedDatabaseService(16);
+        unlistable.addShard("listing", new InMemoryDatabaseService());
+        unlistable.addShard("opaque", mock(DatabaseService.class, CALLS_REAL_METHODS));
+
+        assertThrows(UnsupportedOperationException.class, () -> unlistable.removeShard("opaque"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> unlistable.addShard("added", new InMemoryDatabaseService()));
+
+        assertEquals(List.of("listing", "opaque"), unlistable.getShardNames());
+        assertEquals(0, unlistable.getPendingMoves());
+        assertEquals(0, unlistable.rebalance(1));
+    }
+
+    @Test
+    void GivenShardedIndexedStores_WhenSearched_ThenResultsMergedInIndexOrder() {
+        ShardedDatabaseService indexed = new ShardedDatabaseService(16);
+        indexed.addShard("one", new IndexedDatabaseService(new InMemoryDatabaseService()));
+        indexed.addShard("two", new IndexedDatabaseService(new InMemoryDatabaseService()));
+        indexed.rebalance(1);
+        IndexedDatabaseService single = new IndexedDatabaseService(new InMemoryDatabaseService());
+        Map<String, Book> books = new LinkedHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            String author = i % 2 == 0 ? "Robert Martin" : "Martin Fowler";
+            books.put(isbn(i), new Book(isbn(i), (char) ('A' + i % 26) + " Title " + i, author));
+        }
+        indexed.addBooks(books);
+        single.addBooks(books);
+
+        assertEquals(single.findBooksByTitlePrefix("title", 10), indexed.findBooksByTitlePrefix("title", 10));
+        assertEquals(single.findBooksByAuthorPrefix("mart", 10), indexed.findBooksByAuthorPrefix("mart", 10));
+        assertSame(books.get(isbn(3)), indexed.getBookByISBN(IsbnKey.of(isbn(3))));
+    }
+
+    private int addNode(String name) {
+        InMemoryDatabaseService node = new InMemoryDatabaseService();
+        nodes.put(name, node);
+        return database.addShard(name, node);
+    }
+
+    private void addBooks() {
+        for (int i = 0; i < BOOKS; i++) {
+            database.addBook(isbn(i), new Book(isbn(i), "Title " + i, "Author"));
+        }
+    }
+
+    private void assertAllReadable() {
+        for (int i = 0; i < BOOKS; i++) {
+            assertEquals("Title " + i, database.getBookByISBN(isbn(i)).getTitle());
+        }
+    }
+
+    // The shard an ISBN lives in, found by asking each node; copies left behind are ignored.
+    private String shardOf(String ISBN) {
+        for (Map.Entry<String, InMemoryDatabaseService> node : nodes.entrySet()) {
+            if (database.getShardNames().contains(node.getKey()) && node.getValue().getBookByISBN(ISBN) != null) {
+                return node.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static int count(InMemoryDatabaseService node) {
+        int held = 0;
+        for (int i = 0; i < BOOKS; i++) {
+            held += node.getBookByISBN(isbn(i)) == null ? 0 : 1;
+        }
+        return held;
+    }
+}